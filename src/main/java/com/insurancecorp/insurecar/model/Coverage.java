@@ -1,12 +1,17 @@
 package com.insurancecorp.insurecar.model;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.openxava.annotations.*;
+import com.insurancecorp.insurecar.service.CoverageChangeListener;
+import com.insurancecorp.insurecar.service.CoverageRepricingListener;
 import javax.persistence.*;
 import java.time.LocalDate;
 
 
 @Entity
+@EntityListeners({CoverageChangeListener.class, CoverageRepricingListener.class})
 @Getter
 @Setter
 public class Coverage {
@@ -16,9 +21,47 @@ public class Coverage {
 
     private String name;
     private String description;
-    private Double basePremium;
+    @Hidden
+    private long basePremiumCents; // prima base en centavos
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private long loadedBasePremiumCents; // prima base tal como se leyó de la base de datos
     private Boolean isActive;
 
     private LocalDate createdAt;
     private LocalDate updatedAt;
+
+    // Los listeners de la entidad se ejecutan antes, por lo que aún ven el cambio
+    @PostLoad
+    @PostPersist
+    @PostUpdate
+    protected void rememberBasePremium() {
+        loadedBasePremiumCents = basePremiumCents;
+    }
+
+    /**
+     * Indica si la prima base cambió desde que se leyó de la base de datos
+     * @return true si cambió
+     */
+    @Hidden
+    public boolean isBasePremiumChanged() {
+        return basePremiumCents != loadedBasePremiumCents;
+    }
+
+    /**
+     * Obtiene la prima base en unidades monetarias
+     * @return prima base
+     */
+    public Double getBasePremium() {
+        return Money.toAmount(basePremiumCents);
+    }
+
+    /**
+     * Establece la prima base en unidades monetarias
+     * @param basePremium prima base, nula equivale a 0
+     */
+    public void setBasePremium(Double basePremium) {
+        this.basePremiumCents = Money.ofAmount(basePremium);
+    }
 }
@@ -1,13 +1,19 @@
 package com.insurancecorp.insurecar.model;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.openxava.annotations.*;
 import javax.persistence.*;
 import javax.validation.constraints.*;
 import java.time.LocalDate;
-import java.time.Period;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "IDX_CUSTOMER_STATE_ELIGIBLE", columnList = "state, eligible"),
+        @Index(name = "IDX_CUSTOMER_ELIGIBLE_BIRTH", columnList = "eligible, dateOfBirth")
+    },
+    uniqueConstraints = @UniqueConstraint(name = "UK_CUSTOMER_EMAIL", columnNames = "email"))
 @Getter
 @Setter
 public class Customer {
@@ -46,6 +52,11 @@ public class Customer {
     @Pattern(regexp = "^[0-9]{5}(-[0-9]{4})?$", message = "El código postal debe tener formato válido")
     private String zipCode;
 
+    // Elegibilidad calculada al guardar; EligibilityRefreshJob la actualiza al cumplir 18 años
+    @ReadOnly
+    @Setter(AccessLevel.NONE)
+    private Boolean eligible;
+
     private LocalDate createdAt;
     private LocalDate updatedAt;
 
@@ -53,11 +64,13 @@ public class Customer {
     protected void onCreate() {
         createdAt = LocalDate.now();
         updatedAt = LocalDate.now();
+        eligible = isEligibleForInsurance();
     }
 
     @PreUpdate
     protected void onUpdate() {
         updatedAt = LocalDate.now();
+        eligible = isEligibleForInsurance();
     }
 
     /**
@@ -65,10 +78,19 @@ public class Customer {
      * @return edad en años
      */
     public int getAge() {
+        return getAge(EvaluationContext.today());
+    }
+
+    /**
+     * Calcula la edad del cliente en la fecha de evaluación
+     * @param context contexto de evaluación
+     * @return edad en años
+     */
+    public int getAge(EvaluationContext context) {
         if (dateOfBirth == null) {
             return 0;
         }
-        return Period.between(dateOfBirth, LocalDate.now()).getYears();
+        return context.yearsSince(dateOfBirth);
     }
 
     /**
@@ -76,7 +98,16 @@ public class Customer {
      * @return true si es mayor de edad
      */
     public boolean isAdult() {
-        return getAge() >= 18;
+        return isAdult(EvaluationContext.today());
+    }
+
+    /**
+     * Verifica si el cliente es mayor de edad en la fecha de evaluación
+     * @param context contexto de evaluación
+     * @return true si es mayor de edad
+     */
+    public boolean isAdult(EvaluationContext context) {
+        return getAge(context) >= 18;
     }
 
     /**
@@ -92,7 +123,16 @@ public class Customer {
      * @return true si es elegible
      */
     public boolean isEligibleForInsurance() {
-        return isAdult() && 
+        return isEligibleForInsurance(EvaluationContext.today());
+    }
+
+    /**
+     * Valida si el cliente puede obtener un seguro en la fecha de evaluación
+     * @param context contexto de evaluación
+     * @return true si es elegible
+     */
+    public boolean isEligibleForInsurance(EvaluationContext context) {
+        return isAdult(context) && 
                firstName != null && !firstName.trim().isEmpty() &&
                lastName != null && !lastName.trim().isEmpty() &&
                email != null && !email.trim().isEmpty();
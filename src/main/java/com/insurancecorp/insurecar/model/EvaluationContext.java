@@ -0,0 +1,105 @@
+package com.insurancecorp.insurecar.model;
+
+import java.time.LocalDate;
+
+/**
+ * Fecha de evaluación compartida por todos los cálculos de una cotización o de un lote.
+ *
+ * La fecha se fija una sola vez y se precalculan sus valores numéricos (día
+ * epoch, año y mes-día), de modo que edades, antigüedades y vigencias se
+ * calculan con aritmética entera, sin leer el reloj ni crear objetos
+ * {@code Period}. Un proceso nocturno que cruza la medianoche sigue usando la
+ * misma fecha de principio a fin.
+ */
+public final class EvaluationContext {
+
+    private final LocalDate asOf;
+    private final long asOfEpochDay;
+    private final int asOfYear;
+    private final int asOfMonthDay;
+
+    private EvaluationContext(LocalDate asOf) {
+        this.asOf = asOf;
+        this.asOfEpochDay = asOf.toEpochDay();
+        this.asOfYear = asOf.getYear();
+        this.asOfMonthDay = monthDay(asOf);
+    }
+
+    /**
+     * Crea un contexto con la fecha actual
+     * @return contexto evaluado hoy
+     */
+    public static EvaluationContext today() {
+        return new EvaluationContext(LocalDate.now());
+    }
+
+    /**
+     * Crea un contexto con una fecha fija
+     * @param asOf fecha de evaluación
+     * @return contexto evaluado en esa fecha
+     */
+    public static EvaluationContext of(LocalDate asOf) {
+        if (asOf == null) {
+            throw new IllegalArgumentException("La fecha de evaluación no puede ser nula");
+        }
+        return new EvaluationContext(asOf);
+    }
+
+    /** @return fecha de evaluación */
+    public LocalDate getAsOf() {
+        return asOf;
+    }
+
+    /** @return fecha de evaluación como día epoch */
+    public long getAsOfEpochDay() {
+        return asOfEpochDay;
+    }
+
+    /** @return año de la fecha de evaluación */
+    public int getAsOfYear() {
+        return asOfYear;
+    }
+
+    /**
+     * Calcula los años completos transcurridos desde una fecha hasta la fecha
+     * de evaluación. Equivale a {@code Period.between(date, asOf).getYears()},
+     * incluido el resultado negativo cuando la fecha es posterior.
+     * @param date fecha inicial
+     * @return años completos
+     */
+    public int yearsSince(LocalDate date) {
+        int dateYear = date.getYear();
+        int dateMonthDay = monthDay(date);
+        if (date.toEpochDay() <= asOfEpochDay) {
+            return asOfYear - dateYear - (asOfMonthDay < dateMonthDay ? 1 : 0);
+        }
+        return -(dateYear - asOfYear - (dateMonthDay < asOfMonthDay ? 1 : 0));
+    }
+
+    /**
+     * Indica si una fecha es anterior a la fecha de evaluación
+     * @param date fecha a comparar
+     * @return true si es anterior
+     */
+    public boolean isPast(LocalDate date) {
+        return date.toEpochDay() < asOfEpochDay;
+    }
+
+    /**
+     * Indica si una fecha es posterior a la fecha de evaluación
+     * @param date fecha a comparar
+     * @return true si es posterior
+     */
+    public boolean isFuture(LocalDate date) {
+        return date.toEpochDay() > asOfEpochDay;
+    }
+
+    private static int monthDay(LocalDate date) {
+        return date.getMonthValue() * 32 + date.getDayOfMonth();
+    }
+
+    @Override
+    public String toString() {
+        return "EvaluationContext[" + asOf + "]";
+    }
+}
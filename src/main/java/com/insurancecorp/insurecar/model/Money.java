@@ -0,0 +1,87 @@
+package com.insurancecorp.insurecar.model;
+
+/**
+ * Aritmética monetaria de punto fijo.
+ *
+ * Los importes se representan como un {@code long} primitivo con la cantidad
+ * de centavos. Todas las operaciones son estáticas y no crean objetos, de modo
+ * que las sumas son exactas y los caminos críticos no generan boxing.
+ *
+ * Por eso no hay un tipo de valor con convertidor JPA: las entidades guardan
+ * los centavos en columnas {@code long} y exponen el importe decimal con sus
+ * getters. Las bases con las columnas decimales anteriores se pasan a
+ * centavos con la migración "money-cents" de SchemaMigrations.
+ */
+public final class Money {
+
+    /** Centavos por unidad monetaria */
+    public static final long CENTS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Convierte un importe decimal a centavos, redondeando al centavo más cercano
+     * @param amount importe en unidades monetarias
+     * @return importe en centavos
+     */
+    public static long ofAmount(double amount) {
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    /**
+     * Convierte un importe decimal opcional a centavos
+     * @param amount importe en unidades monetarias, puede ser nulo
+     * @return importe en centavos, 0 si es nulo
+     */
+    public static long ofAmount(Double amount) {
+        return amount != null ? ofAmount(amount.doubleValue()) : 0L;
+    }
+
+    /**
+     * Convierte centavos a un importe decimal
+     * @param cents importe en centavos
+     * @return importe en unidades monetarias
+     */
+    public static double toAmount(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    /**
+     * Suma dos importes
+     * @throws ArithmeticException si el resultado desborda
+     */
+    public static long add(long cents, long otherCents) {
+        return Math.addExact(cents, otherCents);
+    }
+
+    /**
+     * Resta dos importes
+     * @throws ArithmeticException si el resultado desborda
+     */
+    public static long subtract(long cents, long otherCents) {
+        return Math.subtractExact(cents, otherCents);
+    }
+
+    /**
+     * Aplica un factor a un importe, redondeando al centavo más cercano
+     * @param cents importe en centavos
+     * @param factor factor multiplicativo
+     * @return importe resultante en centavos
+     */
+    public static long multiply(long cents, double factor) {
+        return Math.round(cents * factor);
+    }
+
+    /**
+     * Formatea un importe con dos decimales
+     * @param cents importe en centavos
+     * @return texto como "1234.50" o "-0.05"
+     */
+    public static String format(long cents) {
+        // Se divide antes de tomar el valor absoluto: Math.abs(Long.MIN_VALUE) sigue siendo negativo
+        long units = Math.abs(cents / CENTS_PER_UNIT);
+        long fraction = Math.abs(cents % CENTS_PER_UNIT);
+        return (cents < 0 ? "-" : "") + units + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+}
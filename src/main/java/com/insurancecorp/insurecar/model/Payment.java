@@ -1,16 +1,30 @@
 package com.insurancecorp.insurecar.model;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.openxava.annotations.*;
 import javax.persistence.*;
 import java.time.LocalDate;
+import java.util.Locale;
 import javax.persistence.PostPersist;
 import javax.persistence.PostUpdate;
 
 @Entity
+@Table(indexes = @Index(name = "IDX_PAYMENT_POLICY_STATUS_AMOUNT", columnList = "policy_id, status, amountCents"),
+    uniqueConstraints = {
+        @UniqueConstraint(name = "UK_PAYMENT_BANK_REFERENCE", columnNames = "bankReference"),
+        @UniqueConstraint(name = "UK_PAYMENT_JOURNAL_ENTRY", columnNames = {"journalInstance", "journalSequence"})
+    })
 @Getter
 @Setter
 public class Payment {
+    /** Estado de un pago que cuenta en el total pagado de la póliza */
+    public static final String COMPLETED = "completed";
+
+    /** Estado de un pago rechazado o anulado */
+    public static final String FAILED = "failed";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -18,14 +32,134 @@ public class Payment {
     @ManyToOne
     private Policy policy;
 
-    private Double amount;
+    @Hidden
+    private long amountCents; // monto en centavos
     private LocalDate paymentDate;
     private String method; // e.g., cash, card, transfer
     private String status; // e.g., completed, pending, failed
 
+    @ReadOnly
+    private String bankReference; // referencia del movimiento en el archivo del banco, si se importó
+
+    // Solo los escriben PaymentPoster y PaymentJournalProjector; un pago guardado por JPA queda fuera del diario
+    @Hidden
+    @Setter(AccessLevel.NONE)
+    @Column(insertable = false, updatable = false)
+    private String journalInstance; // diario de pagos del servidor que registró el pago
+
+    @Hidden
+    @Setter(AccessLevel.NONE)
+    @Column(insertable = false, updatable = false)
+    private Long journalSequence; // registro del diario de pagos que originó la fila, si se registró con diario
+
     private LocalDate createdAt;
     private LocalDate updatedAt;
 
+    // Aporte de este pago a los totales de una póliza, para aplicar solo la diferencia al cambiar
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Policy appliedPolicy;
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private long appliedCents;
+
+    /**
+     * Obtiene el monto del pago en unidades monetarias
+     * @return monto
+     */
+    public Double getAmount() {
+        return Money.toAmount(amountCents);
+    }
+
+    /**
+     * Establece el monto del pago en unidades monetarias
+     * @param amount monto, nulo equivale a 0
+     */
+    public void setAmount(Double amount) {
+        this.amountCents = Money.ofAmount(amount);
+        applyToPolicy();
+    }
+
+    public void setAmountCents(long amountCents) {
+        this.amountCents = amountCents;
+        applyToPolicy();
+    }
+
+    /**
+     * Establece el estado del pago en minúsculas, para que las sumas por
+     * estado en la base usen el índice sin convertir cada fila
+     * @param status estado del pago
+     */
+    public void setStatus(String status) {
+        this.status = status != null ? status.trim().toLowerCase(Locale.ROOT) : null;
+        applyToPolicy();
+    }
+
+    public void setPolicy(Policy policy) {
+        this.policy = policy;
+        applyToPolicy();
+    }
+
+    /**
+     * Indica si el pago cuenta en el total pagado de la póliza
+     * @return true si está completado
+     */
+    public boolean isCompleted() {
+        return COMPLETED.equalsIgnoreCase(status);
+    }
+
+    /**
+     * Asocia el pago a una póliza cuyos totales se están recalculando desde cero
+     */
+    void attachTo(Policy policy) {
+        if (appliedPolicy == policy) {
+            appliedPolicy = null;
+        }
+        setPolicy(policy);
+    }
+
+    /**
+     * Un pago leído de la base ya está incluido en los totales guardados de su póliza
+     */
+    @PostLoad
+    protected void onLoad() {
+        appliedPolicy = isCompleted() ? policy : null;
+        appliedCents = amountCents;
+    }
+
+    /**
+     * Aplica a los totales de la póliza la diferencia entre el aporte anterior
+     * del pago y el actual, sin recorrer los demás pagos
+     */
+    private void applyToPolicy() {
+        Policy target = isCompleted() ? policy : null;
+        if (appliedPolicy == target && appliedCents == amountCents) {
+            return;
+        }
+        if (appliedPolicy != null) {
+            appliedPolicy.applyPayment(-appliedCents, -1);
+        }
+        if (target != null) {
+            target.applyPayment(amountCents, 1);
+        }
+        appliedPolicy = target;
+        appliedCents = amountCents;
+    }
+
+    /**
+     * Un pago eliminado deja de contar en los totales y el estado de su póliza
+     */
+    @PreRemove
+    protected void onRemove() {
+        if (appliedPolicy != null) {
+            appliedPolicy.applyPayment(-appliedCents, -1);
+            appliedPolicy.updateStatusByPayments();
+            appliedPolicy = null;
+        }
+    }
+
     @PostPersist
     @PostUpdate
     public void updatePolicyStatus() {
@@ -1,13 +1,22 @@
 package com.insurancecorp.insurecar.model;
 
+import com.insurancecorp.insurecar.service.PolicyOverlapListener;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.openxava.annotations.*;
 import java.time.LocalDate;
 import java.time.Period;
 import javax.persistence.*;
 import javax.validation.constraints.*;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "IDX_POLICY_COVERAGE", columnList = "coverage_id, id"),
+        @Index(name = "IDX_POLICY_VEHICLE_DATES", columnList = "vehicle_id, startDate, endDate")
+    },
+    uniqueConstraints = @UniqueConstraint(name = "UK_POLICY_NUMBER", columnNames = "policyNumber"))
+@EntityListeners(PolicyOverlapListener.class)
 @Getter
 @Setter
 public class Policy {
@@ -35,24 +44,50 @@ public class Policy {
     @Future(message = "La fecha de fin debe ser futura")
     private LocalDate endDate;
 
-    @NotNull(message = "La prima es obligatoria")
-    @DecimalMin(value = "0.01", message = "La prima debe ser mayor a 0")
-    @DecimalMax(value = "100000.00", message = "La prima no puede exceder $100,000")
-    private Double premium;
+    @Hidden
+    @Min(value = 1, message = "La prima debe ser mayor a 0")
+    @Max(value = 10_000_000, message = "La prima no puede exceder $100,000")
+    private long premiumCents; // prima en centavos
 
     @ManyToOne
     @NotNull(message = "La cobertura es obligatoria")
     private Coverage coverage;
 
+    @ReadOnly
+    private String ratingVersion; // versión de las reglas de tarificación que calcularon la prima
+
+    @Hidden
+    private Long renewalPremiumCents; // prima de renovación en centavos, recalculada al cambiar la cobertura
+
+    @ReadOnly
+    private String renewalRatingVersion; // versión de las reglas que calcularon la prima de renovación
+
     @OneToMany(mappedBy = "policy")
     private java.util.List<Payment> payments;
 
+    @Hidden
+    @Setter(AccessLevel.NONE)
+    private long totalPaidCents; // suma de los pagos completados, mantenida por cada pago al cambiar
+
+    @ReadOnly
+    @Setter(AccessLevel.NONE)
+    private int completedPaymentCount; // cantidad de pagos completados
+
     private LocalDate createdAt;
     private LocalDate updatedAt;
 
     @Enumerated(EnumType.STRING)
     private PolicyStatus status = PolicyStatus.UNPAID;
 
+    @Version
+    @Hidden
+    private long version; // control de concurrencia optimista; cada actualización lo incrementa
+
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String loadedTerm; // vehículo, vigencia y cancelación tal como se leyeron de la base de datos
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDate.now();
@@ -67,24 +102,75 @@ public class Policy {
         updatedAt = LocalDate.now();
     }
 
+    // Los listeners de la entidad se ejecutan antes, por lo que aún ven el cambio
+    @PostLoad
+    @PostPersist
+    @PostUpdate
+    protected void rememberTerm() {
+        loadedTerm = term();
+    }
+
+    /**
+     * Indica si el vehículo, las fechas de vigencia o la cancelación cambiaron
+     * desde que la póliza se leyó de la base de datos; una póliza sin guardar
+     * se considera cambiada
+     * @return true si cambió
+     */
+    @Hidden
+    public boolean isTermChanged() {
+        return !term().equals(loadedTerm);
+    }
+
+    private String term() {
+        return (vehicle != null ? vehicle.getId() : null) + "/" + startDate + "/" + endDate + "/"
+            + (status == PolicyStatus.CANCELLED);
+    }
+
+    /**
+     * Reemplaza los pagos de la póliza y recalcula los totales a partir de ellos
+     * @param payments pagos de la póliza
+     */
+    public void setPayments(java.util.List<Payment> payments) {
+        this.payments = payments;
+        totalPaidCents = 0;
+        completedPaymentCount = 0;
+        if (payments != null) {
+            for (Payment payment : payments) {
+                payment.attachTo(this);
+            }
+        }
+    }
+
+    /**
+     * Suma o resta un pago completado de los totales
+     * @param amountCents monto del pago en centavos, negativo si deja de contar
+     * @param count 1 si el pago pasa a contar, -1 si deja de contar
+     */
+    void applyPayment(long amountCents, int count) {
+        totalPaidCents += amountCents;
+        completedPaymentCount += count;
+    }
+
     /**
      * Actualiza el estado de la póliza basado en los pagos realizados
      */
     public void updateStatusByPayments() {
-        if (payments == null || payments.isEmpty()) {
-            this.status = PolicyStatus.UNPAID;
-            return;
-        }
-        double totalPaid = payments.stream()
-            .filter(p -> "completed".equalsIgnoreCase(p.getStatus()))
-            .mapToDouble(Payment::getAmount)
-            .sum();
-        if (totalPaid == 0) {
-            this.status = PolicyStatus.UNPAID;
-        } else if (totalPaid < this.premium) {
-            this.status = PolicyStatus.PARTIALLY_PAID;
+        this.status = statusForPayments(totalPaidCents, premiumCents);
+    }
+
+    /**
+     * Calcula el estado de pago de una póliza
+     * @param totalPaidCents total pagado en centavos
+     * @param premiumCents prima en centavos
+     * @return estado según el total pagado
+     */
+    public static PolicyStatus statusForPayments(long totalPaidCents, long premiumCents) {
+        if (totalPaidCents == 0) {
+            return PolicyStatus.UNPAID;
+        } else if (totalPaidCents < premiumCents) {
+            return PolicyStatus.PARTIALLY_PAID;
         } else {
-            this.status = PolicyStatus.PAID;
+            return PolicyStatus.PAID;
         }
     }
 
@@ -99,14 +185,33 @@ public class Policy {
         return (int) java.time.temporal.ChronoUnit.DAYS.between(startDate, endDate);
     }
 
+    /**
+     * Calcula la duración de la póliza en meses completos
+     * @return duración en meses
+     */
+    public int getDurationInMonths() {
+        if (startDate == null || endDate == null) {
+            return 0;
+        }
+        return (int) java.time.temporal.ChronoUnit.MONTHS.between(startDate, endDate);
+    }
+
     /**
      * Verifica si la póliza está activa
      * @return true si está activa
      */
     public boolean isActive() {
-        LocalDate today = LocalDate.now();
+        return isActive(EvaluationContext.today());
+    }
+
+    /**
+     * Verifica si la póliza está activa en la fecha de evaluación
+     * @param context contexto de evaluación
+     * @return true si está activa
+     */
+    public boolean isActive(EvaluationContext context) {
         return startDate != null && endDate != null &&
-               !startDate.isAfter(today) && !endDate.isBefore(today) &&
+               !context.isFuture(startDate) && !context.isPast(endDate) &&
                status != PolicyStatus.CANCELLED;
     }
 
@@ -115,7 +220,16 @@ public class Policy {
      * @return true si está vencida
      */
     public boolean isExpired() {
-        return endDate != null && endDate.isBefore(LocalDate.now());
+        return isExpired(EvaluationContext.today());
+    }
+
+    /**
+     * Verifica si la póliza está vencida en la fecha de evaluación
+     * @param context contexto de evaluación
+     * @return true si está vencida
+     */
+    public boolean isExpired(EvaluationContext context) {
+        return endDate != null && context.isPast(endDate);
     }
 
     /**
@@ -123,14 +237,50 @@ public class Policy {
      * @return monto restante
      */
     public double getRemainingAmount() {
-        if (payments == null || payments.isEmpty()) {
-            return premium != null ? premium : 0.0;
-        }
-        double totalPaid = payments.stream()
-            .filter(p -> "completed".equalsIgnoreCase(p.getStatus()))
-            .mapToDouble(Payment::getAmount)
-            .sum();
-        return Math.max(0, (premium != null ? premium : 0.0) - totalPaid);
+        return Money.toAmount(getRemainingCents());
+    }
+
+    /**
+     * Calcula el monto restante por pagar en centavos
+     * @return monto restante en centavos
+     */
+    @Hidden
+    public long getRemainingCents() {
+        return Math.max(0, premiumCents - totalPaidCents);
+    }
+
+    /**
+     * Obtiene el total pagado en unidades monetarias
+     * @return total de los pagos completados
+     */
+    @ReadOnly
+    public Double getTotalPaid() {
+        return Money.toAmount(totalPaidCents);
+    }
+
+    /**
+     * Obtiene la prima en unidades monetarias
+     * @return prima
+     */
+    public Double getPremium() {
+        return Money.toAmount(premiumCents);
+    }
+
+    /**
+     * Establece la prima en unidades monetarias
+     * @param premium prima, nula equivale a 0
+     */
+    public void setPremium(Double premium) {
+        this.premiumCents = Money.ofAmount(premium);
+    }
+
+    /**
+     * Obtiene la prima de renovación en unidades monetarias
+     * @return prima de renovación, o null si aún no se calculó
+     */
+    @ReadOnly
+    public Double getRenewalPremium() {
+        return renewalPremiumCents != null ? Money.toAmount(renewalPremiumCents) : null;
     }
 
     /**
@@ -138,11 +288,20 @@ public class Policy {
      * @return true si es elegible
      */
     public boolean isEligibleForCreation() {
-        return customer != null && customer.isEligibleForInsurance() &&
+        return isEligibleForCreation(EvaluationContext.today());
+    }
+
+    /**
+     * Verifica si la póliza es elegible para ser creada en la fecha de evaluación
+     * @param context contexto de evaluación
+     * @return true si es elegible
+     */
+    public boolean isEligibleForCreation(EvaluationContext context) {
+        return customer != null && customer.isEligibleForInsurance(context) &&
                vehicle != null && vehicle.isEligibleForInsurance() &&
                coverage != null && coverage.getIsActive() &&
                startDate != null && endDate != null &&
                startDate.isBefore(endDate) &&
-               premium != null && premium > 0;
+               premiumCents > 0;
     }
 }
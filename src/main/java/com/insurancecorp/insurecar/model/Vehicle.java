@@ -1,12 +1,18 @@
 package com.insurancecorp.insurecar.model;
 
+import com.insurancecorp.insurecar.service.VehicleSymbolListener;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.openxava.annotations.*;
 import javax.persistence.*;
 import javax.validation.constraints.*;
 import java.time.LocalDate;
 
 @Entity
+@Table(indexes = @Index(name = "IDX_VEHICLE_OWNER_ELIGIBLE", columnList = "owner_id, eligible"),
+    uniqueConstraints = @UniqueConstraint(name = "UK_VEHICLE_VIN", columnNames = "vin"))
+@EntityListeners(VehicleSymbolListener.class)
 @Getter
 @Setter
 public class Vehicle {
@@ -15,9 +21,14 @@ public class Vehicle {
     private Long id;
 
     @NotBlank(message = "El VIN es obligatorio")
-    @Pattern(regexp = "^[A-HJ-NPR-Z0-9]{17}$", message = "El VIN debe tener exactamente 17 caracteres alfanuméricos")
+    @Vin
     private String vin;
 
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String loadedVin; // VIN tal como se leyó de la base de datos
+
     @NotBlank(message = "La marca es obligatoria")
     @Size(min = 2, max = 50, message = "La marca debe tener entre 2 y 50 caracteres")
     private String make;
@@ -26,6 +37,10 @@ public class Vehicle {
     @Size(min = 1, max = 50, message = "El modelo debe tener entre 1 y 50 caracteres")
     private String model;
 
+    // Símbolo de tarificación de la marca y modelo, asignado al guardar
+    @ReadOnly
+    private Integer ratingSymbol;
+
     @NotBlank(message = "El año es obligatorio")
     @Pattern(regexp = "^[0-9]{4}$", message = "El año debe ser un número de 4 dígitos")
     private String year;
@@ -40,6 +55,11 @@ public class Vehicle {
     @NotNull(message = "El propietario es obligatorio")
     private Customer owner;
 
+    // Elegibilidad calculada al guardar, para filtrar por SQL
+    @ReadOnly
+    @Setter(AccessLevel.NONE)
+    private Boolean eligible;
+
     private LocalDate createdAt;
     private LocalDate updatedAt;
 
@@ -47,11 +67,43 @@ public class Vehicle {
     protected void onCreate() {
         createdAt = LocalDate.now();
         updatedAt = LocalDate.now();
+        eligible = isEligibleForInsurance();
     }
 
     @PreUpdate
     protected void onUpdate() {
         updatedAt = LocalDate.now();
+        eligible = isEligibleForInsurance();
+    }
+
+    @PostLoad
+    @PostPersist
+    @PostUpdate
+    protected void rememberVin() {
+        loadedVin = vin;
+    }
+
+    /**
+     * Verifica el dígito verificador de un VIN de Norteamérica nuevo o
+     * cambiado. Los VIN ya guardados sin cambios y los de otras regiones solo
+     * se verifican por su juego de caracteres ({@link Vin}).
+     * @return true si el dígito es correcto o no corresponde verificarlo
+     */
+    @Hidden
+    @AssertTrue(message = "El dígito verificador del VIN no es correcto")
+    public boolean isVinCheckDigitValid() {
+        return vin == null || vin.equals(loadedVin) || !VinValidator.isNorthAmerican(vin)
+            || VinValidator.isValid(vin, true);
+    }
+
+    public void setMake(String make) {
+        this.make = make;
+        this.ratingSymbol = null; // se vuelve a resolver con la nueva marca
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+        this.ratingSymbol = null; // se vuelve a resolver con el nuevo modelo
     }
 
     /**
@@ -59,10 +111,17 @@ public class Vehicle {
      * @return antigüedad en años
      */
     public int getVehicleAge() {
+        return getVehicleAge(EvaluationContext.today());
+    }
+
+    /**
+     * Calcula la antigüedad del vehículo en la fecha de evaluación
+     * @param context contexto de evaluación
+     * @return antigüedad en años
+     */
+    public int getVehicleAge(EvaluationContext context) {
         try {
-            int yearInt = Integer.parseInt(year);
-            int currentYear = LocalDate.now().getYear();
-            return currentYear - yearInt;
+            return context.getAsOfYear() - Integer.parseInt(year);
         } catch (NumberFormatException e) {
             return 0;
         }
@@ -73,7 +132,16 @@ public class Vehicle {
      * @return true si es nuevo
      */
     public boolean isNewVehicle() {
-        return getVehicleAge() <= 2;
+        return isNewVehicle(EvaluationContext.today());
+    }
+
+    /**
+     * Verifica si el vehículo es nuevo en la fecha de evaluación
+     * @param context contexto de evaluación
+     * @return true si es nuevo
+     */
+    public boolean isNewVehicle(EvaluationContext context) {
+        return getVehicleAge(context) <= 2;
     }
 
     /**
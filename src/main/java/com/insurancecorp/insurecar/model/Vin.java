@@ -0,0 +1,36 @@
+package com.insurancecorp.insurecar.model;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import javax.validation.Constraint;
+import javax.validation.Payload;
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Número de identificación vehicular (VIN) según ISO 3779: 17 caracteres
+ * alfanuméricos en mayúsculas, sin I, O ni Q. Con {@code checkDigit = true}
+ * también se exige el dígito verificador de la posición 9, que solo usan los
+ * VIN de Norteamérica. Un valor nulo se considera válido.
+ */
+@Documented
+@Constraint(validatedBy = VinValidator.class)
+@Target({FIELD, METHOD, PARAMETER, ANNOTATION_TYPE, TYPE_USE})
+@Retention(RUNTIME)
+public @interface Vin {
+
+    String message() default "El VIN debe tener 17 caracteres válidos (sin I, O ni Q) y, si se verifica, un dígito verificador correcto";
+
+    Class<?>[] groups() default {};
+
+    Class<? extends Payload>[] payload() default {};
+
+    /**
+     * Verificar el dígito de la posición 9. Desactivado por defecto: los VIN
+     * de otras regiones y los vehículos ya guardados no lo cumplen, y no
+     * podrían volver a guardarse. Vehicle lo verifica aparte, solo en los VIN
+     * de Norteamérica nuevos o cambiados.
+     */
+    boolean checkDigit() default false;
+}
@@ -0,0 +1,97 @@
+package com.insurancecorp.insurecar.model;
+
+import java.util.Arrays;
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintValidatorContext;
+
+/**
+ * Validador de {@link Vin}.
+ *
+ * Verifica el juego de caracteres y el dígito verificador en una sola pasada
+ * sobre los caracteres, con una tabla de transliteración, sin expresiones
+ * regulares ni objetos intermedios. Se ejecuta en cada importación de
+ * vehículos.
+ */
+public class VinValidator implements ConstraintValidator<Vin, CharSequence> {
+
+    /** Longitud de un VIN */
+    public static final int LENGTH = 17;
+
+    /** Posición del dígito verificador, desde 0 */
+    static final int CHECK_DIGIT_POSITION = 8;
+
+    private static final int[] WEIGHTS = {8, 7, 6, 5, 4, 3, 2, 10, 0, 9, 8, 7, 6, 5, 4, 3, 2};
+
+    /** Valor de transliteración de cada carácter hasta 'Z'; -1 si no se admite */
+    private static final int[] VALUES = new int['Z' + 1];
+
+    static {
+        Arrays.fill(VALUES, -1);
+        for (char c = '0'; c <= '9'; c++) {
+            VALUES[c] = c - '0';
+        }
+        String letters = "ABCDEFGHJKLMNPRSTUVWXYZ";
+        int[] letterValues = {1, 2, 3, 4, 5, 6, 7, 8, 1, 2, 3, 4, 5, 7, 9, 2, 3, 4, 5, 6, 7, 8, 9};
+        for (int i = 0; i < letters.length(); i++) {
+            VALUES[letters.charAt(i)] = letterValues[i];
+        }
+    }
+
+    private boolean checkDigit;
+
+    @Override
+    public void initialize(Vin annotation) {
+        checkDigit = annotation.checkDigit();
+    }
+
+    @Override
+    public boolean isValid(CharSequence value, ConstraintValidatorContext context) {
+        return value == null || isValid(value, checkDigit);
+    }
+
+    /**
+     * Verifica un VIN
+     * @param vin valor a verificar
+     * @param checkDigit verificar también el dígito de la posición 9
+     * @return true si tiene 17 caracteres admitidos y, si se pide, dígito verificador correcto
+     */
+    public static boolean isValid(CharSequence vin, boolean checkDigit) {
+        if (vin == null || vin.length() != LENGTH) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            char c = vin.charAt(i);
+            int value = c < VALUES.length ? VALUES[c] : -1;
+            if (value < 0) {
+                return false;
+            }
+            sum += value * WEIGHTS[i];
+        }
+        if (!checkDigit) {
+            return true;
+        }
+        int remainder = sum % 11;
+        char expected = remainder == 10 ? 'X' : (char) ('0' + remainder);
+        return vin.charAt(CHECK_DIGIT_POSITION) == expected;
+    }
+
+    /**
+     * Indica si el VIN es de un fabricante de Norteamérica (primer carácter
+     * del 1 al 5), cuya región usa el dígito verificador
+     * @param vin valor a verificar
+     * @return true si el fabricante es de Norteamérica
+     */
+    public static boolean isNorthAmerican(CharSequence vin) {
+        return vin != null && vin.length() > 0 && vin.charAt(0) >= '1' && vin.charAt(0) <= '5';
+    }
+
+    /**
+     * Verifica un VIN con su dígito verificador
+     * @param vin valor a verificar
+     * @return true si es un VIN válido
+     */
+    public static boolean isValid(CharSequence vin) {
+        return isValid(vin, true);
+    }
+}
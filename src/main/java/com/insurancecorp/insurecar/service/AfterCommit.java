@@ -0,0 +1,70 @@
+package com.insurancecorp.insurecar.service;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.openxava.jpa.XPersistence;
+
+/**
+ * Ejecuta acciones después de confirmar la transacción JPA en curso.
+ *
+ * Los listeners {@code @PostUpdate} y {@code @PostRemove} se ejecutan al
+ * sincronizar con la base, antes de confirmar: lo que hagan ahí lo puede ver
+ * otro hilo antes de que el cambio sea visible, y sigue hecho aunque la
+ * transacción se revierta. Las acciones registradas aquí se ejecutan solo si
+ * la transacción se confirma. Sin transacción activa (por ejemplo, fuera de
+ * la aplicación web) se ejecutan enseguida.
+ */
+final class AfterCommit {
+
+    /**
+     * Registra una acción en la transacción en curso
+     */
+    interface Registrar {
+        /** @return false si no hay transacción activa */
+        boolean register(Runnable action);
+    }
+
+    static volatile Registrar registrar = AfterCommit::registerWithHibernate;
+
+    private AfterCommit() {
+    }
+
+    /**
+     * Ejecuta una acción cuando se confirme la transacción en curso, o enseguida si no hay ninguna
+     * @param action acción a ejecutar
+     */
+    static void run(Runnable action) {
+        if (!registrar.register(action)) {
+            action.run();
+        }
+    }
+
+    private static boolean registerWithHibernate(Runnable action) {
+        EntityManager manager;
+        try {
+            manager = XPersistence.getManager();
+        } catch (RuntimeException e) {
+            return false; // sin JPA configurado no hay transacción que esperar
+        }
+        Transaction transaction = manager.unwrap(Session.class).getTransaction();
+        if (!transaction.isActive()) {
+            return false;
+        }
+        transaction.registerSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
+        return true;
+    }
+}
@@ -0,0 +1,511 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Importa el archivo diario del banco y registra los pagos de cada póliza.
+ *
+ * Antes de leer el archivo se carga un índice en memoria de número de póliza
+ * a id, así que cada línea se asocia sin consultar la base. El archivo se lee
+ * como flujo en bloques de tamaño fijo; cada bloque inserta sus pagos con una
+ * inserción JDBC por lotes y, al final del bloque, actualiza una sola vez los
+ * totales y el estado de cada póliza tocada, en la misma transacción. Si falla
+ * un bloque se revierte solo ese bloque; los anteriores quedan confirmados y
+ * en el reporte.
+ *
+ * La primera línea es el encabezado; las columnas se ubican por nombre y sin
+ * distinguir mayúsculas. Son obligatorias {@value #POLICY_NUMBER} y
+ * {@value #AMOUNT}; {@value #REFERENCE}, {@value #DATE} y {@value #METHOD} son
+ * opcionales. Una línea cuya referencia ya apareció en el archivo o ya se
+ * importó antes es un duplicado. Cada línea de entrada produce una línea del
+ * reporte con su resultado.
+ */
+public class BankReconciliationImporter {
+
+    public static final String REFERENCE = "reference";
+    public static final String POLICY_NUMBER = "policyNumber";
+    public static final String AMOUNT = "amount";
+    public static final String DATE = "date";
+    public static final String METHOD = "method";
+
+    /** Encabezado del reporte */
+    public static final String REPORT_HEADER = "line,reference,policyNumber,amount,result,detail";
+
+    /** Medio de pago de las líneas sin método */
+    static final String DEFAULT_METHOD = "transfer";
+
+    static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    static final String SELECT_POLICY_INDEX = "select id, policyNumber from Policy";
+
+    static final String INSERT_PAYMENT =
+        "insert into Payment (policy_id, amountCents, paymentDate, method, status, bankReference, createdAt, updatedAt)"
+        + " values (?, ?, ?, ?, '" + Payment.COMPLETED + "', ?, ?, ?)";
+
+    static final String UPDATE_POLICY =
+        "update Policy set totalPaidCents = ?, completedPaymentCount = ?, status = ?, version = version + 1"
+        + " where id = ?";
+
+    /**
+     * Resultado de una línea del archivo
+     */
+    public enum LineResult {
+        /** Pago registrado en su póliza */
+        MATCHED,
+        /** No hay póliza con ese número */
+        UNMATCHED,
+        /** La referencia ya apareció en el archivo o ya se importó */
+        DUPLICATE,
+        /** Faltan datos o el monto o la fecha no son válidos */
+        INVALID
+    }
+
+    private final DataSource dataSource;
+    private final int chunkSize;
+
+    public BankReconciliationImporter(DataSource dataSource) {
+        this(dataSource, DEFAULT_CHUNK_SIZE);
+    }
+
+    public BankReconciliationImporter(DataSource dataSource, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de bloque debe ser mayor a 0");
+        }
+        this.dataSource = dataSource;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Crea un importador sobre la fuente de datos de la aplicación
+     * @return importador listo para usar
+     * @throws IllegalStateException si la fuente de datos no está disponible
+     */
+    public static BankReconciliationImporter forApplication() {
+        try {
+            return new BankReconciliationImporter((DataSource) new InitialContext().lookup(CoverageRepricingJob.DATA_SOURCE_NAME));
+        } catch (NamingException e) {
+            throw new IllegalStateException("No se encontró la fuente de datos " + CoverageRepricingJob.DATA_SOURCE_NAME, e);
+        }
+    }
+
+    /**
+     * Importa un archivo del banco y escribe el reporte en otro
+     * @param input archivo CSV del banco
+     * @param report archivo CSV del reporte; se reemplaza si existe
+     * @return resumen de la importación
+     * @throws IOException si no se pueden leer o escribir los archivos
+     */
+    public ReconciliationResult importFile(Path input, Path report) throws IOException {
+        try (Reader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             Writer writer = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+            return importFile(reader, writer);
+        }
+    }
+
+    /**
+     * Importa un flujo CSV del banco
+     * @param input líneas del banco en CSV
+     * @param report destino del reporte; no se cierra
+     * @return resumen de la importación
+     * @throws IOException si no se puede leer o escribir
+     * @throws IllegalArgumentException si el encabezado no tiene las columnas obligatorias
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public ReconciliationResult importFile(Reader input, Writer report) throws IOException {
+        long start = System.nanoTime();
+        BufferedReader lines = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input);
+        Writer writer = report instanceof BufferedWriter ? report : new BufferedWriter(report);
+
+        String header = lines.readLine();
+        if (header == null) {
+            throw new IllegalArgumentException("El archivo del banco está vacío");
+        }
+        Columns columns = new Columns(BulkQuoteProcessor.splitCsv(header));
+        writer.write(REPORT_HEADER);
+        writer.write('\n');
+
+        long[] counts = new long[LineResult.values().length];
+        long matchedCents = 0;
+        int chunks = 0;
+        LocalDate today = LocalDate.now();
+        try (Connection connection = dataSource.getConnection()) {
+            Map<String, Long> policyIds = loadPolicyIndex(connection);
+            // Referencias ya vistas en el archivo, con su línea
+            Map<String, Long> seenReferences = new HashMap<>();
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_PAYMENT);
+                 PreparedStatement update = connection.prepareStatement(UPDATE_POLICY)) {
+                List<BankLine> chunk = new ArrayList<>(chunkSize);
+                long lineNumber = 1;
+                String line;
+                do {
+                    line = lines.readLine();
+                    if (line != null) {
+                        lineNumber++;
+                        if (!line.trim().isEmpty()) {
+                            chunk.add(parse(columns, line, lineNumber, policyIds, seenReferences, today));
+                        }
+                    }
+                    if (chunk.size() == chunkSize || (line == null && !chunk.isEmpty())) {
+                        matchedCents += importChunk(connection, insert, update, chunk, today);
+                        connection.commit();
+                        StringBuilder text = new StringBuilder(chunk.size() * 64);
+                        for (BankLine bankLine : chunk) {
+                            counts[bankLine.result.ordinal()]++;
+                            bankLine.appendTo(text);
+                        }
+                        writer.append(text);
+                        chunks++;
+                        chunk.clear();
+                    }
+                } while (line != null);
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al importar el archivo del banco", e);
+        } finally {
+            writer.flush();
+        }
+        return new ReconciliationResult(counts[LineResult.MATCHED.ordinal()], matchedCents,
+            counts[LineResult.UNMATCHED.ordinal()], counts[LineResult.DUPLICATE.ordinal()],
+            counts[LineResult.INVALID.ordinal()], chunks, System.nanoTime() - start);
+    }
+
+    private static Map<String, Long> loadPolicyIndex(Connection connection) throws SQLException {
+        Map<String, Long> index = new HashMap<>();
+        try (PreparedStatement select = connection.prepareStatement(SELECT_POLICY_INDEX)) {
+            select.setFetchSize(DEFAULT_CHUNK_SIZE);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    index.put(normalize(rs.getString(2)), rs.getLong(1));
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Interpreta una línea y la asocia a su póliza; los duplicados contra la
+     * base se resuelven después, por bloque
+     */
+    private static BankLine parse(Columns columns, String line, long lineNumber, Map<String, Long> policyIds,
+                                  Map<String, Long> seenReferences, LocalDate today) {
+        String[] fields = BulkQuoteProcessor.splitCsv(line);
+        BankLine bankLine = new BankLine(lineNumber, columns.value(fields, columns.reference),
+            columns.value(fields, columns.policyNumber), columns.value(fields, columns.amount));
+        try {
+            if (bankLine.policyNumber.isEmpty() || bankLine.amount.isEmpty()) {
+                return bankLine.reject(LineResult.INVALID, "Faltan el número de póliza o el monto");
+            }
+            bankLine.amountCents = new BigDecimal(bankLine.amount).movePointRight(2).longValueExact();
+            if (bankLine.amountCents <= 0) {
+                return bankLine.reject(LineResult.INVALID, "El monto debe ser mayor a 0");
+            }
+            String date = columns.value(fields, columns.date);
+            bankLine.paymentDate = date.isEmpty() ? today : LocalDate.parse(date);
+        } catch (NumberFormatException | ArithmeticException e) {
+            return bankLine.reject(LineResult.INVALID, "Monto inválido");
+        } catch (DateTimeParseException e) {
+            return bankLine.reject(LineResult.INVALID, "Fecha inválida");
+        }
+        String method = columns.value(fields, columns.method);
+        bankLine.method = method.isEmpty() ? DEFAULT_METHOD : method;
+
+        Long policyId = policyIds.get(normalize(bankLine.policyNumber));
+        if (policyId == null) {
+            return bankLine.reject(LineResult.UNMATCHED, "No existe la póliza");
+        }
+        if (!bankLine.reference.isEmpty()) {
+            Long firstLine = seenReferences.putIfAbsent(bankLine.reference, lineNumber);
+            if (firstLine != null) {
+                return bankLine.reject(LineResult.DUPLICATE, "Repite la línea " + firstLine);
+            }
+        }
+        bankLine.policyId = policyId;
+        bankLine.result = LineResult.MATCHED;
+        return bankLine;
+    }
+
+    /**
+     * Registra los pagos asociados de un bloque y actualiza una vez cada póliza tocada
+     * @return monto registrado en centavos
+     */
+    private static long importChunk(Connection connection, PreparedStatement insert, PreparedStatement update,
+                                    List<BankLine> chunk, LocalDate today) throws SQLException {
+        markImportedReferences(connection, chunk);
+
+        // Ordenadas por id, para que dos importaciones concurrentes bloqueen las pólizas en el mismo orden
+        Map<Long, long[]> deltas = new TreeMap<>();
+        long matchedCents = 0;
+        for (BankLine bankLine : chunk) {
+            if (bankLine.result != LineResult.MATCHED) {
+                continue;
+            }
+            insert.setLong(1, bankLine.policyId);
+            insert.setLong(2, bankLine.amountCents);
+            insert.setObject(3, bankLine.paymentDate);
+            insert.setString(4, bankLine.method);
+            insert.setString(5, bankLine.reference.isEmpty() ? null : bankLine.reference);
+            insert.setObject(6, today);
+            insert.setObject(7, today);
+            insert.addBatch();
+            long[] delta = deltas.computeIfAbsent(bankLine.policyId, id -> new long[2]);
+            delta[0] += bankLine.amountCents;
+            delta[1]++;
+            matchedCents += bankLine.amountCents;
+        }
+        if (deltas.isEmpty()) {
+            return 0;
+        }
+        insert.executeBatch();
+
+        // Lee los totales vigentes con bloqueo, para no pisar pagos registrados en paralelo
+        List<Long> ids = new ArrayList<>(deltas.keySet());
+        for (int from = 0; from < ids.size(); from += UniquenessChecker.MAX_IN_PARAMETERS) {
+            int to = Math.min(ids.size(), from + UniquenessChecker.MAX_IN_PARAMETERS);
+            try (PreparedStatement select = connection.prepareStatement(selectPoliciesForUpdate(to - from))) {
+                for (int i = from; i < to; i++) {
+                    select.setLong(i - from + 1, ids.get(i));
+                }
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        long[] delta = deltas.get(rs.getLong(1));
+                        long paidCents = rs.getLong(3) + delta[0];
+                        String status = rs.getString(5);
+                        if (!PolicyStatus.CANCELLED.name().equals(status)) {
+                            status = Policy.statusForPayments(paidCents, rs.getLong(2)).name();
+                        }
+                        update.setLong(1, paidCents);
+                        update.setInt(2, rs.getInt(4) + (int) delta[1]);
+                        update.setString(3, status);
+                        update.setLong(4, rs.getLong(1));
+                        update.addBatch();
+                    }
+                }
+            }
+        }
+        update.executeBatch();
+        return matchedCents;
+    }
+
+    /**
+     * Marca como duplicadas las líneas cuya referencia ya se importó, con una
+     * consulta IN por bloque
+     */
+    private static void markImportedReferences(Connection connection, List<BankLine> chunk) throws SQLException {
+        Map<String, BankLine> byReference = new HashMap<>();
+        for (BankLine bankLine : chunk) {
+            if (bankLine.result == LineResult.MATCHED && !bankLine.reference.isEmpty()) {
+                byReference.put(bankLine.reference, bankLine);
+            }
+        }
+        List<String> references = new ArrayList<>(byReference.keySet());
+        for (int from = 0; from < references.size(); from += UniquenessChecker.MAX_IN_PARAMETERS) {
+            int to = Math.min(references.size(), from + UniquenessChecker.MAX_IN_PARAMETERS);
+            try (PreparedStatement select = connection.prepareStatement(
+                    selectIn("select bankReference from Payment where bankReference", to - from, ""))) {
+                for (int i = from; i < to; i++) {
+                    select.setString(i - from + 1, references.get(i));
+                }
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        byReference.get(rs.getString(1)).reject(LineResult.DUPLICATE, "Ya importada");
+                    }
+                }
+            }
+        }
+    }
+
+    static String selectPoliciesForUpdate(int count) {
+        return selectIn("select id, premiumCents, totalPaidCents, completedPaymentCount, status from Policy where id",
+            count, " for update");
+    }
+
+    private static String selectIn(String prefix, int count, String suffix) {
+        StringBuilder sql = new StringBuilder(prefix).append(" in (");
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').append(suffix).toString();
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Línea del archivo y su resultado
+     */
+    private static final class BankLine {
+
+        final long lineNumber;
+        final String reference;
+        final String policyNumber;
+        final String amount;
+        long amountCents;
+        LocalDate paymentDate;
+        String method;
+        long policyId;
+        LineResult result;
+        String detail = "";
+
+        BankLine(long lineNumber, String reference, String policyNumber, String amount) {
+            this.lineNumber = lineNumber;
+            this.reference = reference;
+            this.policyNumber = policyNumber;
+            this.amount = amount;
+        }
+
+        BankLine reject(LineResult result, String detail) {
+            this.result = result;
+            this.detail = detail;
+            return this;
+        }
+
+        void appendTo(StringBuilder text) {
+            text.append(lineNumber).append(',');
+            BulkQuoteProcessor.appendField(text, reference).append(',');
+            BulkQuoteProcessor.appendField(text, policyNumber).append(',');
+            BulkQuoteProcessor.appendField(text, amount).append(',');
+            text.append(result).append(',');
+            BulkQuoteProcessor.appendField(text, detail).append('\n');
+        }
+    }
+
+    /**
+     * Posición de cada columna en el encabezado, o -1 si no figura
+     */
+    private static final class Columns {
+
+        final int reference;
+        final int policyNumber;
+        final int amount;
+        final int date;
+        final int method;
+
+        Columns(String[] header) {
+            Map<String, Integer> positions = new HashMap<>();
+            for (int i = 0; i < header.length; i++) {
+                positions.putIfAbsent(normalize(header[i]), i);
+            }
+            reference = positions.getOrDefault(normalize(REFERENCE), -1);
+            date = positions.getOrDefault(normalize(DATE), -1);
+            method = positions.getOrDefault(normalize(METHOD), -1);
+            policyNumber = required(positions, POLICY_NUMBER);
+            amount = required(positions, AMOUNT);
+        }
+
+        private static int required(Map<String, Integer> positions, String name) {
+            Integer position = positions.get(normalize(name));
+            if (position == null) {
+                throw new IllegalArgumentException("Falta la columna " + name + " en el archivo del banco");
+            }
+            return position;
+        }
+
+        String value(String[] fields, int position) {
+            return position >= 0 && position < fields.length ? fields[position] : "";
+        }
+    }
+
+    /**
+     * Resumen de una importación
+     */
+    public static final class ReconciliationResult {
+
+        private final long matchedCount;
+        private final long matchedCents;
+        private final long unmatchedCount;
+        private final long duplicateCount;
+        private final long invalidCount;
+        private final int chunkCount;
+        private final long elapsedNanos;
+
+        ReconciliationResult(long matchedCount, long matchedCents, long unmatchedCount, long duplicateCount,
+                             long invalidCount, int chunkCount, long elapsedNanos) {
+            this.matchedCount = matchedCount;
+            this.matchedCents = matchedCents;
+            this.unmatchedCount = unmatchedCount;
+            this.duplicateCount = duplicateCount;
+            this.invalidCount = invalidCount;
+            this.chunkCount = chunkCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** @return líneas registradas como pagos */
+        public long getMatchedCount() {
+            return matchedCount;
+        }
+
+        /** @return monto registrado en centavos */
+        public long getMatchedCents() {
+            return matchedCents;
+        }
+
+        /** @return líneas sin póliza */
+        public long getUnmatchedCount() {
+            return unmatchedCount;
+        }
+
+        /** @return líneas duplicadas */
+        public long getDuplicateCount() {
+            return duplicateCount;
+        }
+
+        /** @return líneas con datos inválidos */
+        public long getInvalidCount() {
+            return invalidCount;
+        }
+
+        /** @return líneas leídas, sin contar el encabezado ni las líneas vacías */
+        public long getLineCount() {
+            return matchedCount + unmatchedCount + duplicateCount + invalidCount;
+        }
+
+        /** @return bloques confirmados */
+        public int getChunkCount() {
+            return chunkCount;
+        }
+
+        /** @return tiempo total en nanosegundos */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d líneas: %d asociadas por %s, %d sin póliza, %d duplicadas, %d inválidas"
+                + " en %d bloques y %d ms", getLineCount(), matchedCount,
+                BigDecimal.valueOf(matchedCents, 2).toPlainString(), unmatchedCount, duplicateCount, invalidCount,
+                chunkCount, elapsedNanos / 1_000_000);
+        }
+    }
+}
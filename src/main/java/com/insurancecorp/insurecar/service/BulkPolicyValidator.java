@@ -0,0 +1,286 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+
+/**
+ * Valida lotes grandes de pólizas en paralelo.
+ *
+ * Cada póliza pasa por las reglas de {@link InsuranceService#checkPolicy} y por
+ * las restricciones de Bean Validation de la póliza, su cliente y su vehículo.
+ * La entrada se lee en bloques de tamaño fijo que se validan en el pool; la
+ * cantidad de bloques en vuelo está acotada y los problemas se entregan como
+ * flujo, en el orden de la entrada, a medida que se consumen. Así la memoria
+ * usada no depende del tamaño del lote.
+ *
+ * En modo {@link Mode#FAIL_FAST} el flujo termina con la primera póliza
+ * inválida y se deja de leer la entrada; en modo {@link Mode#FULL_REPORT} se
+ * informan todas las pólizas inválidas con todas sus violaciones.
+ */
+public class BulkPolicyValidator {
+
+    /**
+     * Modo de validación de un lote
+     */
+    public enum Mode {
+        /** Se detiene en la primera póliza inválida, para controles de ingreso */
+        FAIL_FAST,
+        /** Informa todas las pólizas inválidas, para auditorías de calidad de datos */
+        FULL_REPORT
+    }
+
+    static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final InsuranceService insuranceService;
+    private final Validator validator;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public BulkPolicyValidator(InsuranceService insuranceService) {
+        this(insuranceService, DefaultValidator.INSTANCE, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public BulkPolicyValidator(InsuranceService insuranceService, Validator validator, ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de bloque debe ser mayor a 0");
+        }
+        this.insuranceService = insuranceService;
+        this.validator = validator;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Valida un lote de pólizas a la fecha de hoy
+     * @param policies pólizas a validar; se cierran al cerrar el flujo resultante
+     * @param mode modo de validación
+     * @return pólizas inválidas en el orden de la entrada
+     */
+    public Stream<PolicyIssue> validate(Stream<Policy> policies, Mode mode) {
+        return validate(policies, mode, EvaluationContext.today());
+    }
+
+    /**
+     * Valida un lote de pólizas en una fecha de evaluación.
+     * La validación avanza a medida que se consume el flujo resultante, que
+     * debe cerrarse para liberar la entrada y los bloques en vuelo.
+     * @param policies pólizas a validar; se cierran al cerrar el flujo resultante
+     * @param mode modo de validación
+     * @param context fecha de evaluación de todo el lote
+     * @return pólizas inválidas en el orden de la entrada
+     */
+    public Stream<PolicyIssue> validate(Stream<Policy> policies, Mode mode, EvaluationContext context) {
+        IssueSpliterator issues = new IssueSpliterator(policies, mode, context);
+        return StreamSupport.stream(issues, false).onClose(issues::close);
+    }
+
+    /**
+     * Valida una póliza y devuelve su problema, o null si es válida
+     */
+    PolicyIssue check(long index, Policy policy, Mode mode, EvaluationContext context) {
+        PolicyValidation validation = insuranceService.checkPolicy(policy, context);
+        if (mode == Mode.FAIL_FAST && !validation.isValid()) {
+            return new PolicyIssue(index, policy, validation, Collections.emptySet());
+        }
+        Set<ConstraintViolation<?>> violations = Collections.emptySet();
+        if (policy != null) {
+            violations = addViolations(violations, validator.validate(policy));
+            if (policy.getCustomer() != null) {
+                violations = addViolations(violations, validator.validate(policy.getCustomer()));
+            }
+            if (policy.getVehicle() != null) {
+                violations = addViolations(violations, validator.validate(policy.getVehicle()));
+            }
+        }
+        if (validation.isValid() && violations.isEmpty()) {
+            return null;
+        }
+        return new PolicyIssue(index, policy, validation, violations);
+    }
+
+    private static Set<ConstraintViolation<?>> addViolations(Set<ConstraintViolation<?>> violations,
+                                                             Set<? extends ConstraintViolation<?>> more) {
+        if (more.isEmpty()) {
+            return violations;
+        }
+        if (violations.isEmpty()) {
+            violations = new LinkedHashSet<>();
+        }
+        violations.addAll(more);
+        return violations;
+    }
+
+    /**
+     * Lee la entrada por bloques, los valida en el pool y entrega sus problemas en orden
+     */
+    private final class IssueSpliterator extends Spliterators.AbstractSpliterator<PolicyIssue> {
+
+        private final Stream<Policy> source;
+        private final Iterator<Policy> input;
+        private final Mode mode;
+        private final EvaluationContext context;
+        private final int maxInFlight = Math.max(2, pool.getParallelism() * 2);
+        private final ArrayDeque<ForkJoinTask<List<PolicyIssue>>> inFlight = new ArrayDeque<>(maxInFlight);
+        /** Posición de la primera póliza inválida encontrada, en modo FAIL_FAST */
+        private final AtomicLong firstFailure = new AtomicLong(Long.MAX_VALUE);
+        private Iterator<PolicyIssue> ready = Collections.emptyIterator();
+        private long nextIndex;
+        private boolean finished;
+
+        IssueSpliterator(Stream<Policy> source, Mode mode, EvaluationContext context) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.source = source;
+            this.input = source.iterator();
+            this.mode = mode;
+            this.context = context;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super PolicyIssue> action) {
+            while (!finished) {
+                if (ready.hasNext()) {
+                    PolicyIssue issue = ready.next();
+                    if (mode == Mode.FAIL_FAST) {
+                        close();
+                    }
+                    action.accept(issue);
+                    return true;
+                }
+                fill();
+                if (inFlight.isEmpty()) {
+                    finished = true;
+                    break;
+                }
+                ready = inFlight.removeFirst().join().iterator();
+            }
+            return false;
+        }
+
+        /**
+         * Entrega bloques al pool hasta llenar la ventana o agotar la entrada
+         */
+        private void fill() {
+            while (inFlight.size() < maxInFlight && input.hasNext() && nextIndex < firstFailure.get()) {
+                Policy[] chunk = new Policy[chunkSize];
+                int size = 0;
+                while (size < chunkSize && input.hasNext()) {
+                    chunk[size++] = input.next();
+                }
+                long first = nextIndex;
+                int length = size;
+                inFlight.addLast(pool.submit(() -> checkChunk(chunk, length, first)));
+                nextIndex += size;
+            }
+        }
+
+        private List<PolicyIssue> checkChunk(Policy[] chunk, int size, long first) {
+            List<PolicyIssue> issues = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                long index = first + i;
+                if (index > firstFailure.get()) {
+                    break;
+                }
+                PolicyIssue issue = check(index, chunk[i], mode, context);
+                if (issue != null) {
+                    issues.add(issue);
+                    if (mode == Mode.FAIL_FAST) {
+                        firstFailure.accumulateAndGet(index, Math::min);
+                        break;
+                    }
+                }
+            }
+            return issues;
+        }
+
+        void close() {
+            finished = true;
+            for (ForkJoinTask<List<PolicyIssue>> task : inFlight) {
+                task.cancel(false);
+            }
+            inFlight.clear();
+            source.close();
+        }
+    }
+
+    /**
+     * Póliza inválida de un lote con todas sus violaciones
+     */
+    public static final class PolicyIssue {
+
+        private final long index;
+        private final Policy policy;
+        private final PolicyValidation validation;
+        private final Set<ConstraintViolation<?>> constraintViolations;
+
+        PolicyIssue(long index, Policy policy, PolicyValidation validation,
+                    Set<ConstraintViolation<?>> constraintViolations) {
+            this.index = index;
+            this.policy = policy;
+            this.validation = validation;
+            this.constraintViolations = Collections.unmodifiableSet(constraintViolations);
+        }
+
+        /** @return posición de la póliza en el lote, desde 0 */
+        public long getIndex() {
+            return index;
+        }
+
+        /** @return póliza inválida, o null si la entrada traía un nulo */
+        public Policy getPolicy() {
+            return policy;
+        }
+
+        /** @return reglas de negocio violadas */
+        public PolicyValidation getValidation() {
+            return validation;
+        }
+
+        /** @return restricciones de Bean Validation violadas por la póliza, su cliente o su vehículo */
+        public Set<ConstraintViolation<?>> getConstraintViolations() {
+            return constraintViolations;
+        }
+
+        /**
+         * Obtiene todos los mensajes: primero los de las reglas de negocio y
+         * después los de las restricciones, sin repetir
+         * @return mensajes en español
+         */
+        public List<String> getMessages() {
+            Set<String> messages = new LinkedHashSet<>(validation.getMessages());
+            for (ConstraintViolation<?> violation : constraintViolations) {
+                messages.add(violation.getMessage());
+            }
+            return new ArrayList<>(messages);
+        }
+
+        @Override
+        public String toString() {
+            String number = policy != null && policy.getPolicyNumber() != null ? policy.getPolicyNumber() : "sin número";
+            return "Póliza " + index + " (" + number + "): " + String.join("; ", getMessages());
+        }
+    }
+
+    /**
+     * Validador de Bean Validation creado solo si se usa el constructor por defecto
+     */
+    private static final class DefaultValidator {
+        static final Validator INSTANCE = Validation.buildDefaultValidatorFactory().getValidator();
+    }
+}
@@ -0,0 +1,410 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Cotización masiva de prospectos desde un archivo CSV.
+ *
+ * El archivo se lee como flujo en bloques de tamaño fijo; cada bloque se
+ * tarifica en el pool con la lógica de {@link InsuranceService} y su salida se
+ * escribe en cuanto le toca, en el mismo orden de la entrada. La cantidad de
+ * bloques en vuelo está acotada, de modo que la memoria usada no depende del
+ * tamaño del archivo y se pueden procesar archivos mayores que el heap.
+ *
+ * La primera línea es el encabezado; las columnas se ubican por nombre y sin
+ * distinguir mayúsculas. Son obligatorias {@value #DATE_OF_BIRTH},
+ * {@value #YEAR}, {@value #COVERAGE} y {@value #DURATION}; {@value #REFERENCE},
+ * {@value #ZIP_CODE}, {@value #MAKE} y {@value #MODEL} son opcionales. Cada
+ * fila de entrada produce exactamente una fila de salida con la referencia, la
+ * cobertura, la prima y la versión de las reglas, o el motivo del rechazo.
+ */
+public class BulkQuoteProcessor {
+
+    public static final String REFERENCE = "reference";
+    public static final String DATE_OF_BIRTH = "dateOfBirth";
+    public static final String ZIP_CODE = "zipCode";
+    public static final String YEAR = "year";
+    public static final String MAKE = "make";
+    public static final String MODEL = "model";
+    public static final String COVERAGE = "coverage";
+    public static final String DURATION = "durationMonths";
+
+    /** Encabezado del archivo de salida */
+    public static final String OUTPUT_HEADER = "reference,coverage,premium,ratingVersion,error";
+
+    static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final InsuranceService insuranceService;
+    private final Map<String, Coverage> coveragesByName;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    /**
+     * Crea un procesador sobre las coberturas activas del catálogo
+     * @param insuranceService servicio que tarifica cada fila
+     */
+    public BulkQuoteProcessor(InsuranceService insuranceService) {
+        this(insuranceService, CoverageCatalog.shared().getActiveCoverages(), ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Crea un procesador
+     * @param insuranceService servicio que tarifica cada fila
+     * @param coverages coberturas que se pueden cotizar, buscadas por nombre
+     * @param pool pool que tarifica los bloques
+     * @param chunkSize filas por bloque
+     */
+    public BulkQuoteProcessor(InsuranceService insuranceService, List<Coverage> coverages, ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de bloque debe ser mayor a 0");
+        }
+        this.insuranceService = insuranceService;
+        this.coveragesByName = new HashMap<>();
+        for (Coverage coverage : coverages) {
+            coveragesByName.putIfAbsent(normalize(coverage.getName()), coverage);
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Cotiza un archivo y escribe las cotizaciones en otro
+     * @param input archivo CSV de prospectos
+     * @param output archivo CSV de cotizaciones; se reemplaza si existe
+     * @return resumen del proceso
+     * @throws IOException si no se pueden leer o escribir los archivos
+     */
+    public BulkQuoteResult process(Path input, Path output) throws IOException {
+        try (Reader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            return process(reader, writer);
+        }
+    }
+
+    /**
+     * Cotiza un flujo CSV con las reglas vigentes a la fecha de hoy
+     * @param input prospectos en CSV
+     * @param output destino de las cotizaciones; no se cierra
+     * @return resumen del proceso
+     * @throws IOException si no se puede leer o escribir
+     */
+    public BulkQuoteResult process(Reader input, Writer output) throws IOException {
+        return process(RatingRulesRegistry.current(), EvaluationContext.today(), input, output);
+    }
+
+    /**
+     * Cotiza un flujo CSV con una versión concreta de las reglas
+     * @param engine reglas a aplicar a todo el archivo
+     * @param context fecha de evaluación de todo el archivo
+     * @param input prospectos en CSV
+     * @param output destino de las cotizaciones; no se cierra
+     * @return resumen del proceso
+     * @throws IOException si no se puede leer o escribir
+     * @throws IllegalArgumentException si el encabezado no tiene las columnas obligatorias
+     */
+    public BulkQuoteResult process(RatingEngine engine, EvaluationContext context, Reader input, Writer output)
+            throws IOException {
+        long start = System.nanoTime();
+        BufferedReader lines = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input);
+        Writer writer = output instanceof BufferedWriter ? output : new BufferedWriter(output);
+
+        String header = lines.readLine();
+        if (header == null) {
+            throw new IllegalArgumentException("El archivo de prospectos está vacío");
+        }
+        Columns columns = new Columns(splitCsv(header));
+        writer.write(OUTPUT_HEADER);
+        writer.write('\n');
+
+        int maxInFlight = Math.max(2, pool.getParallelism() * 2);
+        ArrayDeque<ForkJoinTask<ChunkResult>> inFlight = new ArrayDeque<>(maxInFlight);
+        long rows = 0;
+        long quoted = 0;
+        long rejected = 0;
+        try {
+            long firstRow = 1;
+            String line;
+            String[] chunk = new String[chunkSize];
+            int size = 0;
+            while (true) {
+                line = lines.readLine();
+                if (line != null && !line.trim().isEmpty()) {
+                    chunk[size++] = line;
+                }
+                if (size == chunkSize || (line == null && size > 0)) {
+                    if (inFlight.size() == maxInFlight) {
+                        ChunkResult done = inFlight.removeFirst().join();
+                        done.writeTo(writer);
+                        quoted += done.quoted;
+                        rejected += done.rejected;
+                    }
+                    String[] lineChunk = chunk;
+                    int chunkLength = size;
+                    long chunkFirstRow = firstRow;
+                    inFlight.addLast(pool.submit(() -> quoteChunk(engine, context, columns, lineChunk, chunkLength,
+                        chunkFirstRow)));
+                    rows += size;
+                    firstRow += size;
+                    chunk = new String[chunkSize];
+                    size = 0;
+                }
+                if (line == null) {
+                    break;
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                ChunkResult done = inFlight.removeFirst().join();
+                done.writeTo(writer);
+                quoted += done.quoted;
+                rejected += done.rejected;
+            }
+        } finally {
+            // Si algo falló, no dejar bloques tarificando sin destino
+            for (ForkJoinTask<ChunkResult> task : inFlight) {
+                task.cancel(false);
+            }
+        }
+        writer.flush();
+        return new BulkQuoteResult(engine.getVersion(), rows, quoted, rejected, System.nanoTime() - start);
+    }
+
+    /**
+     * Tarifica un bloque de filas y devuelve su salida ya formateada.
+     * Las entidades de trabajo se reutilizan en todo el bloque.
+     */
+    private ChunkResult quoteChunk(RatingEngine engine, EvaluationContext context, Columns columns, String[] lines,
+                                   int size, long firstRow) {
+        StringBuilder text = new StringBuilder(size * 48);
+        Customer customer = new Customer();
+        Vehicle vehicle = new Vehicle();
+        int quoted = 0;
+        for (int i = 0; i < size; i++) {
+            String[] fields = splitCsv(lines[i]);
+            String reference = columns.value(fields, columns.reference);
+            if (reference.isEmpty()) {
+                reference = String.valueOf(firstRow + i);
+            }
+            String coverageName = columns.value(fields, columns.coverage);
+            appendField(text, reference).append(',');
+            appendField(text, coverageName).append(',');
+            try {
+                Coverage coverage = coveragesByName.get(normalize(coverageName));
+                if (coverage == null) {
+                    throw new IllegalArgumentException("Cobertura desconocida");
+                }
+                customer.setDateOfBirth(LocalDate.parse(columns.value(fields, columns.dateOfBirth)));
+                customer.setZipCode(columns.value(fields, columns.zipCode));
+                vehicle.setYear(columns.value(fields, columns.year));
+                vehicle.setMake(columns.value(fields, columns.make));
+                vehicle.setModel(columns.value(fields, columns.model));
+                int months = Integer.parseInt(columns.value(fields, columns.duration));
+                if (months <= 0) {
+                    throw new IllegalArgumentException("Duración inválida");
+                }
+                if (vehicle.getVehicleAge(context) < 0 || customer.getAge(context) < 0) {
+                    throw new IllegalArgumentException("Fecha de nacimiento o año del vehículo inválidos");
+                }
+                long premiumCents = insuranceService.calculatePremiumCents(engine, customer, vehicle, coverage, months,
+                    context);
+                text.append(BigDecimal.valueOf(premiumCents, 2).toPlainString()).append(',')
+                    .append(engine.getVersion()).append(",\n");
+                quoted++;
+            } catch (DateTimeParseException e) {
+                text.append(",,Fecha de nacimiento inválida\n");
+            } catch (NumberFormatException e) {
+                text.append(",,Número inválido\n");
+            } catch (IllegalArgumentException e) {
+                text.append(",,");
+                appendField(text, e.getMessage()).append('\n');
+            }
+        }
+        return new ChunkResult(text, quoted, size - quoted);
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Separa una línea CSV; admite campos entre comillas dobles con comas y
+     * comillas duplicadas, pero no saltos de línea dentro de un campo
+     */
+    static String[] splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields.toArray(new String[0]);
+    }
+
+    static StringBuilder appendField(StringBuilder text, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return text.append(value);
+        }
+        return text.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    /**
+     * Posición de cada columna en el encabezado, o -1 si no figura
+     */
+    private static final class Columns {
+
+        final int reference;
+        final int dateOfBirth;
+        final int zipCode;
+        final int year;
+        final int make;
+        final int model;
+        final int coverage;
+        final int duration;
+
+        Columns(String[] header) {
+            Map<String, Integer> positions = new HashMap<>();
+            for (int i = 0; i < header.length; i++) {
+                positions.putIfAbsent(normalize(header[i]), i);
+            }
+            reference = positions.getOrDefault(normalize(REFERENCE), -1);
+            zipCode = positions.getOrDefault(normalize(ZIP_CODE), -1);
+            make = positions.getOrDefault(normalize(MAKE), -1);
+            model = positions.getOrDefault(normalize(MODEL), -1);
+            dateOfBirth = required(positions, DATE_OF_BIRTH);
+            year = required(positions, YEAR);
+            coverage = required(positions, COVERAGE);
+            duration = required(positions, DURATION);
+        }
+
+        private static int required(Map<String, Integer> positions, String name) {
+            Integer position = positions.get(normalize(name));
+            if (position == null) {
+                throw new IllegalArgumentException("Falta la columna " + name + " en el archivo de prospectos");
+            }
+            return position;
+        }
+
+        String value(String[] fields, int position) {
+            return position >= 0 && position < fields.length ? fields[position] : "";
+        }
+    }
+
+    /**
+     * Salida formateada de un bloque, a la espera de su turno para escribirse
+     */
+    private static final class ChunkResult {
+
+        private final CharSequence text;
+        private final int quoted;
+        private final int rejected;
+
+        ChunkResult(CharSequence text, int quoted, int rejected) {
+            this.text = text;
+            this.quoted = quoted;
+            this.rejected = rejected;
+        }
+
+        void writeTo(Writer writer) {
+            try {
+                writer.append(text);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Resumen de una cotización masiva
+     */
+    public static final class BulkQuoteResult {
+
+        private final String rulesVersion;
+        private final long rowCount;
+        private final long quotedCount;
+        private final long rejectedCount;
+        private final long elapsedNanos;
+
+        BulkQuoteResult(String rulesVersion, long rowCount, long quotedCount, long rejectedCount, long elapsedNanos) {
+            this.rulesVersion = rulesVersion;
+            this.rowCount = rowCount;
+            this.quotedCount = quotedCount;
+            this.rejectedCount = rejectedCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** @return versión de las reglas aplicadas */
+        public String getRulesVersion() {
+            return rulesVersion;
+        }
+
+        /** @return filas leídas, sin contar el encabezado ni las líneas vacías */
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        /** @return filas cotizadas */
+        public long getQuotedCount() {
+            return quotedCount;
+        }
+
+        /** @return filas rechazadas por datos inválidos */
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        /** @return tiempo total en nanosegundos */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /** @return filas procesadas por segundo */
+        public double getRowsPerSecond() {
+            return elapsedNanos > 0 ? rowCount * 1_000_000_000.0 / elapsedNanos : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d filas: %d cotizadas, %d rechazadas con reglas %s en %d ms (%.0f filas/s)",
+                rowCount, quotedCount, rejectedCount, rulesVersion, elapsedNanos / 1_000_000, getRowsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.Coverage;
+import com.insurancecorp.insurecar.model.Money;
+import java.util.List;
+
+/**
+ * Cotización de un cliente y un vehículo contra varias coberturas.
+ * La prima de la cobertura {@code i} está en la posición {@code i}, en el
+ * mismo orden en que se recibieron las coberturas.
+ */
+public final class BundleQuote {
+
+    private final List<Coverage> coverages;
+    private final long[] premiumCents;
+    private final String rulesVersion;
+
+    BundleQuote(List<Coverage> coverages, long[] premiumCents, String rulesVersion) {
+        this.coverages = coverages;
+        this.premiumCents = premiumCents;
+        this.rulesVersion = rulesVersion;
+    }
+
+    /** @return cantidad de coberturas cotizadas */
+    public int size() {
+        return premiumCents.length;
+    }
+
+    /**
+     * @param index posición de la cobertura
+     * @return cobertura cotizada
+     */
+    public Coverage getCoverage(int index) {
+        return coverages.get(index);
+    }
+
+    /**
+     * @param index posición de la cobertura
+     * @return prima en centavos
+     */
+    public long getPremiumCents(int index) {
+        return premiumCents[index];
+    }
+
+    /**
+     * @param index posición de la cobertura
+     * @return prima en unidades monetarias
+     */
+    public double getPremium(int index) {
+        return Money.toAmount(premiumCents[index]);
+    }
+
+    /** @return versión de las reglas de tarificación usadas */
+    public String getRulesVersion() {
+        return rulesVersion;
+    }
+}
@@ -0,0 +1,108 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.Coverage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.openxava.jpa.XPersistence;
+
+/**
+ * Catálogo en memoria de las coberturas activas.
+ *
+ * Las coberturas se cargan con una única consulta y se conservan hasta que
+ * alguna cobertura cambia (ver {@link CoverageChangeListener}); las
+ * cotizaciones de paquete las leen sin volver a la base de datos.
+ *
+ * El catálogo guarda copias desconectadas de las entidades, así ningún hilo
+ * comparte una entidad administrada por otro EntityManager. Cada invalidación
+ * avanza una generación; una carga que empezó antes de la última
+ * invalidación se devuelve a quien la pidió pero no queda guardada, de modo
+ * que una lectura concurrente con un cambio no conserva el estado anterior.
+ */
+public class CoverageCatalog {
+
+    private static final CoverageCatalog shared = new CoverageCatalog(CoverageCatalog::queryActiveCoverages);
+
+    private final Supplier<List<Coverage>> loader;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Loaded loaded;
+
+    /**
+     * Crea un catálogo
+     * @param loader carga las coberturas activas cuando el catálogo está vacío
+     */
+    public CoverageCatalog(Supplier<List<Coverage>> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Catálogo compartido por todo el proceso, usado por {@link InsuranceService}
+     * @return catálogo compartido
+     */
+    public static CoverageCatalog shared() {
+        return shared;
+    }
+
+    /**
+     * Obtiene las coberturas activas, cargándolas si es necesario
+     * @return lista inmutable de copias desconectadas de las coberturas activas
+     */
+    public List<Coverage> getActiveCoverages() {
+        Loaded current = loaded;
+        long expected = generation.get();
+        if (current != null && current.generation == expected) {
+            return current.coverages;
+        }
+        List<Coverage> copies = new ArrayList<>();
+        for (Coverage coverage : loader.get()) {
+            copies.add(detachedCopy(coverage));
+        }
+        Loaded fresh = new Loaded(expected, Collections.unmodifiableList(copies));
+        if (generation.get() == expected) {
+            loaded = fresh;
+        }
+        return fresh.coverages;
+    }
+
+    /**
+     * Descarta las coberturas cargadas; la próxima lectura vuelve a consultarlas
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    private static Coverage detachedCopy(Coverage coverage) {
+        Coverage copy = new Coverage();
+        copy.setId(coverage.getId());
+        copy.setName(coverage.getName());
+        copy.setDescription(coverage.getDescription());
+        copy.setBasePremiumCents(coverage.getBasePremiumCents());
+        copy.setIsActive(coverage.getIsActive());
+        copy.setCreatedAt(coverage.getCreatedAt());
+        copy.setUpdatedAt(coverage.getUpdatedAt());
+        return copy;
+    }
+
+    private static List<Coverage> queryActiveCoverages() {
+        return XPersistence.getManager()
+            .createQuery("from Coverage c where c.isActive = true order by c.id", Coverage.class)
+            .setHint("org.hibernate.cacheable", true)
+            .getResultList();
+    }
+
+    /**
+     * Coberturas cargadas en una generación
+     */
+    private static final class Loaded {
+
+        final long generation;
+        final List<Coverage> coverages;
+
+        Loaded(long generation, List<Coverage> coverages) {
+            this.generation = generation;
+            this.coverages = coverages;
+        }
+    }
+}
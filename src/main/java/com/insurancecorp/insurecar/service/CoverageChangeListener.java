@@ -0,0 +1,23 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.Coverage;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Listener JPA de {@link Coverage} que mantiene coherente el catálogo de
+ * coberturas activas cuando se crea una cobertura o cambian su prima base o
+ * su estado. Se invalida recién al confirmar la transacción (ver
+ * {@link AfterCommit}), para que una lectura concurrente no vuelva a cargar
+ * el estado anterior al cambio.
+ */
+public class CoverageChangeListener {
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void coverageChanged(Coverage coverage) {
+        AfterCommit.run(() -> CoverageCatalog.shared().invalidate());
+    }
+}
@@ -0,0 +1,289 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Recalcula la prima de renovación de las pólizas de una cobertura cuando
+ * cambia su prima base.
+ *
+ * Solo se leen las pólizas de la cobertura, a través del índice
+ * IDX_POLICY_COVERAGE (coverage_id, id), en bloques ordenados por id: cada
+ * bloque continúa desde el último id del anterior, sin OFFSET ni recorrer la
+ * tabla completa. Las primas de cada bloque se escriben con una actualización
+ * JDBC por lotes y se confirman en su propia transacción, de modo que solo se
+ * bloquean las filas del bloque en curso y por poco tiempo. La prima vigente de
+ * las pólizas no cambia; la nueva prima se aplica al renovarlas.
+ */
+public class CoverageRepricingJob {
+
+    /**
+     * Recibe el avance de un recálculo después de cada bloque
+     */
+    public interface ProgressListener {
+        void onProgress(long coverageId, long repricedCount, long skippedCount, int chunkCount);
+    }
+
+    /** Nombre JNDI de la fuente de datos de la aplicación */
+    public static final String DATA_SOURCE_NAME = "java:comp/env/jdbc/insurecarDS";
+
+    static final int DEFAULT_CHUNK_SIZE = 500;
+
+    static final String SELECT_BASE_PREMIUM = "select basePremiumCents from Coverage where id = ?";
+
+    static final String SELECT_CHUNK =
+        "select p.id, p.startDate, p.endDate, c.dateOfBirth, c.zipCode, v.year, v.make, v.model, v.ratingSymbol"
+        + " from Policy p"
+        + " join Customer c on c.id = p.customer_id"
+        + " join Vehicle v on v.id = p.vehicle_id"
+        + " where p.coverage_id = ? and p.id > ? and p.endDate >= ?"
+        + " and (p.status is null or p.status <> 'CANCELLED')"
+        + " order by p.id";
+
+    // La versión avanza para que una póliza abierta antes del recálculo no lo pise al guardarse
+    static final String UPDATE_RENEWAL =
+        "update Policy set renewalPremiumCents = ?, renewalRatingVersion = ?, version = version + 1 where id = ?";
+
+    private static final Logger log = Logger.getLogger(CoverageRepricingJob.class.getName());
+
+    // Un solo hilo: los recálculos de cambios sucesivos se ejecutan en orden
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "insurecar-coverage-repricing");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DataSource dataSource;
+    private final InsuranceService insuranceService;
+    private final int chunkSize;
+
+    public CoverageRepricingJob(DataSource dataSource) {
+        this(dataSource, DEFAULT_CHUNK_SIZE);
+    }
+
+    public CoverageRepricingJob(DataSource dataSource, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de bloque debe ser mayor a 0");
+        }
+        this.dataSource = dataSource;
+        this.insuranceService = new InsuranceService();
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Crea un recálculo sobre la fuente de datos de la aplicación
+     * @return recálculo listo para usar
+     * @throws IllegalStateException si la fuente de datos no está disponible
+     */
+    public static CoverageRepricingJob forApplication() {
+        try {
+            return new CoverageRepricingJob((DataSource) new InitialContext().lookup(DATA_SOURCE_NAME));
+        } catch (NamingException e) {
+            throw new IllegalStateException("No se encontró la fuente de datos " + DATA_SOURCE_NAME, e);
+        }
+    }
+
+    /**
+     * Programa el recálculo de una cobertura en segundo plano, con la prima
+     * base confirmada al momento de ejecutarlo. Se llama después de confirmar
+     * el cambio de la cobertura (ver {@link CoverageRepricingListener}).
+     * @param coverageId identificador de la cobertura
+     * @return resultado del recálculo
+     */
+    public CompletableFuture<RepricingResult> schedule(long coverageId) {
+        CompletableFuture<RepricingResult> result = CompletableFuture.supplyAsync(() ->
+            reprice(coverageId, EvaluationContext.today(), (id, repriced, skipped, chunks) ->
+                log.fine(() -> "Cobertura " + id + ": " + repriced + " pólizas recalculadas en " + chunks + " bloques")),
+            executor);
+        result.whenComplete((done, e) -> {
+            if (e != null) {
+                log.log(Level.WARNING, "No se pudo recalcular la cobertura " + coverageId, e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Recalcula la prima de renovación de todas las pólizas vigentes de una
+     * cobertura con la prima base confirmada y las reglas vigentes
+     * @param coverageId identificador de la cobertura
+     * @param context fecha de evaluación de todo el recálculo
+     * @param listener destino del avance, o null
+     * @return resumen del recálculo
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public RepricingResult reprice(long coverageId, EvaluationContext context, ProgressListener listener) {
+        long start = System.nanoTime();
+        RatingEngine engine = RatingRulesRegistry.current();
+        Long basePremiumCents = readBasePremiumCents(coverageId);
+        if (basePremiumCents == null) {
+            return new RepricingResult(coverageId, engine.getVersion(), 0, 0, 0, System.nanoTime() - start);
+        }
+
+        // Entidades de trabajo reutilizadas en cada fila para tarificar igual que InsuranceService
+        Coverage coverage = new Coverage();
+        coverage.setBasePremiumCents(basePremiumCents);
+        Customer customer = new Customer();
+        Vehicle vehicle = new Vehicle();
+        Policy policy = new Policy();
+
+        long[] ids = new long[chunkSize];
+        long[] premiums = new long[chunkSize];
+        long repriced = 0;
+        long skipped = 0;
+        int chunks = 0;
+        long lastId = 0;
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement select = connection.prepareStatement(SELECT_CHUNK);
+                 PreparedStatement update = connection.prepareStatement(UPDATE_RENEWAL)) {
+                select.setMaxRows(chunkSize);
+                select.setFetchSize(chunkSize);
+                while (true) {
+                    int rows = 0;
+                    int read = 0;
+                    select.setLong(1, coverageId);
+                    select.setLong(2, lastId);
+                    select.setObject(3, context.getAsOf());
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            read++;
+                            lastId = rs.getLong(1);
+                            policy.setStartDate(rs.getObject(2, LocalDate.class));
+                            policy.setEndDate(rs.getObject(3, LocalDate.class));
+                            customer.setDateOfBirth(rs.getObject(4, LocalDate.class));
+                            customer.setZipCode(rs.getString(5));
+                            vehicle.setYear(rs.getString(6));
+                            vehicle.setMake(rs.getString(7));
+                            vehicle.setModel(rs.getString(8));
+                            int symbol = rs.getInt(9);
+                            vehicle.setRatingSymbol(rs.wasNull() ? null : symbol);
+
+                            int months = policy.getDurationInMonths();
+                            if (customer.getDateOfBirth() == null || months <= 0) {
+                                skipped++;
+                                continue;
+                            }
+                            ids[rows] = lastId;
+                            premiums[rows] = insuranceService.calculatePremiumCents(engine, customer, vehicle, coverage,
+                                months, context);
+                            rows++;
+                        }
+                    }
+                    if (read == 0) {
+                        break;
+                    }
+                    for (int i = 0; i < rows; i++) {
+                        update.setLong(1, premiums[i]);
+                        update.setString(2, engine.getVersion());
+                        update.setLong(3, ids[i]);
+                        update.addBatch();
+                    }
+                    if (rows > 0) {
+                        update.executeBatch();
+                    }
+                    connection.commit();
+                    repriced += rows;
+                    chunks++;
+                    if (listener != null) {
+                        listener.onProgress(coverageId, repriced, skipped, chunks);
+                    }
+                    if (read < chunkSize) {
+                        break;
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al recalcular las pólizas de la cobertura " + coverageId, e);
+        }
+        return new RepricingResult(coverageId, engine.getVersion(), repriced, skipped, chunks, System.nanoTime() - start);
+    }
+
+    private Long readBasePremiumCents(long coverageId) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement select = connection.prepareStatement(SELECT_BASE_PREMIUM)) {
+            select.setLong(1, coverageId);
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al leer la cobertura " + coverageId, e);
+        }
+    }
+
+    /**
+     * Resumen de un recálculo
+     */
+    public static final class RepricingResult {
+
+        private final long coverageId;
+        private final String rulesVersion;
+        private final long repricedCount;
+        private final long skippedCount;
+        private final int chunkCount;
+        private final long elapsedNanos;
+
+        RepricingResult(long coverageId, String rulesVersion, long repricedCount, long skippedCount, int chunkCount,
+                        long elapsedNanos) {
+            this.coverageId = coverageId;
+            this.rulesVersion = rulesVersion;
+            this.repricedCount = repricedCount;
+            this.skippedCount = skippedCount;
+            this.chunkCount = chunkCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** @return identificador de la cobertura */
+        public long getCoverageId() {
+            return coverageId;
+        }
+
+        /** @return versión de las reglas aplicadas */
+        public String getRulesVersion() {
+            return rulesVersion;
+        }
+
+        /** @return pólizas con prima de renovación recalculada */
+        public long getRepricedCount() {
+            return repricedCount;
+        }
+
+        /** @return pólizas omitidas por datos incompletos */
+        public long getSkippedCount() {
+            return skippedCount;
+        }
+
+        /** @return bloques procesados */
+        public int getChunkCount() {
+            return chunkCount;
+        }
+
+        /** @return tiempo total en nanosegundos */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Cobertura %d: %d pólizas recalculadas, %d omitidas en %d bloques con reglas %s en %d ms",
+                coverageId, repricedCount, skippedCount, chunkCount, rulesVersion, elapsedNanos / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.Coverage;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.persistence.PostUpdate;
+
+/**
+ * Listener JPA de {@link Coverage} que programa el recálculo de las primas de
+ * renovación de sus pólizas cuando cambia la prima base (ver
+ * {@link CoverageRepricingJob}). El recálculo se programa al confirmar la
+ * transacción (ver {@link AfterCommit}): antes leería la prima base anterior,
+ * y si el cambio se revierte no hay nada que recalcular.
+ */
+public class CoverageRepricingListener {
+
+    private static final Logger log = Logger.getLogger(CoverageRepricingListener.class.getName());
+
+    @PostUpdate
+    public void basePremiumChanged(Coverage coverage) {
+        if (!coverage.isBasePremiumChanged()) {
+            return;
+        }
+        long coverageId = coverage.getId();
+        AfterCommit.run(() -> schedule(coverageId));
+    }
+
+    private static void schedule(long coverageId) {
+        try {
+            CoverageRepricingJob.forApplication().schedule(coverageId);
+        } catch (IllegalStateException e) {
+            // Guardar la cobertura no debe fallar porque no se pudo programar el recálculo
+            log.log(Level.WARNING, "No se pudo programar el recálculo de la cobertura " + coverageId, e);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Mantiene al día la columna de elegibilidad de clientes y vehículos.
+ *
+ * Las entidades calculan la elegibilidad al guardarse, pero la de un cliente
+ * cambia sola al cumplir 18 años. {@link #refresh(LocalDate)} recalcula solo
+ * los clientes no elegibles nacidos hasta la fecha en que se cumplen 18 años,
+ * a través del índice IDX_CUSTOMER_ELIGIBLE_BIRTH (eligible, dateOfBirth); si
+ * una ejecución diaria se pierde, la siguiente también los alcanza.
+ * {@link #backfill()} completa en bloques por id las filas guardadas antes de
+ * que existiera la columna.
+ */
+public class EligibilityRefreshJob {
+
+    static final int DEFAULT_CHUNK_SIZE = 500;
+
+    static final String SELECT_TURNING_ADULT =
+        "select id, firstName, lastName, email, dateOfBirth from Customer"
+        + " where eligible = false and dateOfBirth <= ? and id > ?"
+        + " order by id";
+
+    static final String SELECT_CUSTOMER_BACKFILL =
+        "select id, firstName, lastName, email, dateOfBirth from Customer"
+        + " where eligible is null and id > ?"
+        + " order by id";
+
+    static final String SELECT_VEHICLE_BACKFILL =
+        "select id, vin, make, model, year, owner_id from Vehicle"
+        + " where eligible is null and id > ?"
+        + " order by id";
+
+    static final String UPDATE_CUSTOMER = "update Customer set eligible = ? where id = ?";
+
+    static final String UPDATE_VEHICLE = "update Vehicle set eligible = ? where id = ?";
+
+    private static final Logger log = Logger.getLogger(EligibilityRefreshJob.class.getName());
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "insurecar-eligibility-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DataSource dataSource;
+    private final int chunkSize;
+
+    public EligibilityRefreshJob(DataSource dataSource) {
+        this(dataSource, DEFAULT_CHUNK_SIZE);
+    }
+
+    public EligibilityRefreshJob(DataSource dataSource, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de bloque debe ser mayor a 0");
+        }
+        this.dataSource = dataSource;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Crea una actualización sobre la fuente de datos de la aplicación
+     * @return actualización lista para usar
+     * @throws IllegalStateException si la fuente de datos no está disponible
+     */
+    public static EligibilityRefreshJob forApplication() {
+        try {
+            return new EligibilityRefreshJob((DataSource) new InitialContext().lookup(CoverageRepricingJob.DATA_SOURCE_NAME));
+        } catch (NamingException e) {
+            throw new IllegalStateException("No se encontró la fuente de datos " + CoverageRepricingJob.DATA_SOURCE_NAME, e);
+        }
+    }
+
+    /**
+     * Programa la actualización en segundo plano: completa las filas sin
+     * elegibilidad al iniciar y actualiza los clientes cada día a medianoche
+     * @return tarea programada, para cancelarla
+     */
+    public ScheduledFuture<?> scheduleDaily() {
+        scheduler.execute(() -> run(this::backfill));
+        long untilMidnight = Duration.between(LocalDateTime.now(), LocalDate.now().plusDays(1).atStartOfDay()).toMillis();
+        return scheduler.scheduleAtFixedRate(() -> run(() -> refresh(LocalDate.now())),
+            untilMidnight, TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    private static void run(LongSupplier task) {
+        try {
+            long updated = task.getAsLong();
+            log.fine(() -> updated + " registros con elegibilidad actualizada");
+        } catch (RuntimeException e) {
+            // Se registra y no se propaga, para que la ejecución del día siguiente no se cancele
+            log.log(Level.WARNING, "No se pudo actualizar la elegibilidad", e);
+        }
+    }
+
+    /**
+     * Vuelve elegibles a los clientes que cumplieron 18 años hasta una fecha
+     * @param day fecha de evaluación
+     * @return clientes que pasaron a ser elegibles
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public long refresh(LocalDate day) {
+        EvaluationContext context = EvaluationContext.of(day);
+        // En años no bisiestos, los nacidos un 29 de febrero quedan incluidos desde el 1 de marzo
+        LocalDate bornBy = day.minusYears(18);
+        try (Connection connection = dataSource.getConnection()) {
+            return updateCustomers(connection, SELECT_TURNING_ADULT, bornBy, context);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al actualizar la elegibilidad de los clientes al " + day, e);
+        }
+    }
+
+    /**
+     * Calcula la elegibilidad de los clientes y vehículos que aún no la tienen
+     * @return registros actualizados
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public long backfill() {
+        try (Connection connection = dataSource.getConnection()) {
+            return updateCustomers(connection, SELECT_CUSTOMER_BACKFILL, null, EvaluationContext.today())
+                + updateVehicles(connection);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al completar la elegibilidad de clientes y vehículos", e);
+        }
+    }
+
+    private long updateCustomers(Connection connection, String sql, LocalDate bornBy, EvaluationContext context)
+            throws SQLException {
+        // Entidad de trabajo reutilizada para evaluar con la misma regla que al guardar
+        Customer customer = new Customer();
+        return update(connection, sql, UPDATE_CUSTOMER, bornBy, rs -> {
+            customer.setFirstName(rs.getString(2));
+            customer.setLastName(rs.getString(3));
+            customer.setEmail(rs.getString(4));
+            customer.setDateOfBirth(rs.getObject(5, LocalDate.class));
+            return customer.isEligibleForInsurance(context);
+        });
+    }
+
+    private long updateVehicles(Connection connection) throws SQLException {
+        Vehicle vehicle = new Vehicle();
+        Customer owner = new Customer();
+        return update(connection, SELECT_VEHICLE_BACKFILL, UPDATE_VEHICLE, null, rs -> {
+            vehicle.setVin(rs.getString(2));
+            vehicle.setMake(rs.getString(3));
+            vehicle.setModel(rs.getString(4));
+            vehicle.setYear(rs.getString(5));
+            rs.getLong(6);
+            vehicle.setOwner(rs.wasNull() ? null : owner);
+            return vehicle.isEligibleForInsurance();
+        });
+    }
+
+    /**
+     * Evalúa las filas en bloques por id y guarda cada bloque con una
+     * actualización por lotes en su propia transacción
+     */
+    private long update(Connection connection, String selectSql, String updateSql, LocalDate bornBy,
+                        RowEvaluator evaluator) throws SQLException {
+        long[] ids = new long[chunkSize];
+        boolean[] flags = new boolean[chunkSize];
+        long updated = 0;
+        long lastId = 0;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement select = connection.prepareStatement(selectSql);
+             PreparedStatement update = connection.prepareStatement(updateSql)) {
+            select.setMaxRows(chunkSize);
+            select.setFetchSize(chunkSize);
+            while (true) {
+                int read = 0;
+                int parameter = 1;
+                if (bornBy != null) {
+                    select.setObject(parameter++, bornBy);
+                }
+                select.setLong(parameter, lastId);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        lastId = rs.getLong(1);
+                        ids[read] = lastId;
+                        flags[read] = evaluator.isEligible(rs);
+                        read++;
+                    }
+                }
+                if (read == 0) {
+                    break;
+                }
+                int rows = 0;
+                for (int i = 0; i < read; i++) {
+                    // Los que siguen sin ser elegibles en refresh ya tienen false; solo el backfill los escribe
+                    if (flags[i] || bornBy == null) {
+                        update.setBoolean(1, flags[i]);
+                        update.setLong(2, ids[i]);
+                        update.addBatch();
+                        rows++;
+                    }
+                }
+                if (rows > 0) {
+                    update.executeBatch();
+                }
+                connection.commit();
+                updated += rows;
+                if (read < chunkSize) {
+                    break;
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return updated;
+    }
+
+    private interface RowEvaluator {
+        boolean isEligible(ResultSet rs) throws SQLException;
+    }
+}
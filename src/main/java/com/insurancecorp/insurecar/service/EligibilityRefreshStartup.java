@@ -0,0 +1,35 @@
+package com.insurancecorp.insurecar.service;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Programa la actualización diaria de elegibilidad al iniciar la aplicación
+ * y la cancela al detenerla
+ */
+public class EligibilityRefreshStartup implements ServletContextListener {
+
+    private static final Logger log = Logger.getLogger(EligibilityRefreshStartup.class.getName());
+
+    private ScheduledFuture<?> daily;
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        try {
+            daily = EligibilityRefreshJob.forApplication().scheduleDaily();
+        } catch (IllegalStateException e) {
+            // Sin fuente de datos la aplicación arranca igual; las entidades calculan la elegibilidad al guardarse
+            log.log(Level.WARNING, "No se programó la actualización de elegibilidad", e);
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        if (daily != null) {
+            daily.cancel(false);
+        }
+    }
+}
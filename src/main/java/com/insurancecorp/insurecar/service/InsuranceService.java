@@ -1,15 +1,58 @@
 package com.insurancecorp.insurecar.service;
 
 import com.insurancecorp.insurecar.model.*;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.List;
-import java.util.ArrayList;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import javax.persistence.LockModeType;
+import org.openxava.jpa.XPersistence;
 
 /**
  * Servicio para manejar la lógica de negocio del sistema de seguros
  */
 public class InsuranceService {
     
+    /** Secuencia de la base de datos que numera las pólizas, creada por {@link SchemaMigrations} */
+    static final String POLICY_NUMBER_SEQUENCE = "POLICY_NUMBER_SEQ";
+
+    /** Mayor número que admite el formato POL-XXXXXX */
+    static final long MAX_POLICY_NUMBER = 999_999;
+
+    static final String NEXT_POLICY_NUMBER = "call next value for " + POLICY_NUMBER_SEQUENCE;
+
+    private final CoverageCatalog coverageCatalog = CoverageCatalog.shared();
+    private final TerritoryTable territoryTable = TerritoryTable.shared();
+    private final VehicleSymbolTable vehicleSymbolTable = VehicleSymbolTable.shared();
+    private final LongSupplier policyNumbers;
+    private final Consumer<Policy> paymentLock;
+
+    public InsuranceService() {
+        this(InsuranceService::nextPolicyNumber);
+    }
+
+    /**
+     * Crea el servicio con otra fuente de números de póliza
+     * @param policyNumbers devuelve un número distinto en cada llamada
+     */
+    InsuranceService(LongSupplier policyNumbers) {
+        this(policyNumbers, InsuranceService::lockForPayment);
+    }
+
+    /**
+     * Crea el servicio con otra fuente de números de póliza y otro bloqueo de
+     * pólizas guardadas al procesar pagos
+     * @param policyNumbers devuelve un número distinto en cada llamada
+     * @param paymentLock bloquea la póliza hasta el fin de la transacción y relee sus totales
+     */
+    InsuranceService(LongSupplier policyNumbers, Consumer<Policy> paymentLock) {
+        this.policyNumbers = policyNumbers;
+        this.paymentLock = paymentLock;
+    }
+    
     /**
      * Calcula la prima de seguro basada en varios factores
      * @param customer Cliente
@@ -19,37 +62,152 @@ public class InsuranceService {
      * @return prima calculada
      */
     public double calculatePremium(Customer customer, Vehicle vehicle, Coverage coverage, int durationInMonths) {
-        if (customer == null || vehicle == null || coverage == null || durationInMonths <= 0) {
-            return 0.0;
-        }
-        
-        double basePremium = coverage.getBasePremium() != null ? coverage.getBasePremium() : 0.0;
-        double finalPremium = basePremium;
-        
-        // Factor por edad del conductor
-        int customerAge = customer.getAge();
-        if (customerAge < 25) {
-            finalPremium *= 1.5; // 50% más para conductores jóvenes
-        } else if (customerAge < 30) {
-            finalPremium *= 1.3; // 30% más para conductores menores de 30
-        } else if (customerAge > 65) {
-            finalPremium *= 1.2; // 20% más para conductores mayores
-        }
-        
-        // Factor por antigüedad del vehículo
-        int vehicleAge = vehicle.getVehicleAge();
-        if (vehicleAge > 10) {
-            finalPremium *= 1.4; // 40% más para vehículos antiguos
-        } else if (vehicleAge > 5) {
-            finalPremium *= 1.2; // 20% más para vehículos de más de 5 años
+        return Money.toAmount(calculatePremiumCents(customer, vehicle, coverage, durationInMonths));
+    }
+    
+    /**
+     * Calcula la prima de seguro en centavos
+     * @param customer Cliente
+     * @param vehicle Vehículo
+     * @param coverage Cobertura
+     * @param durationInMonths Duración en meses
+     * @return prima calculada en centavos
+     */
+    public long calculatePremiumCents(Customer customer, Vehicle vehicle, Coverage coverage, int durationInMonths) {
+        return calculatePremiumCents(customer, vehicle, coverage, durationInMonths, EvaluationContext.today());
+    }
+    
+    /**
+     * Calcula la prima de seguro en centavos en una fecha de evaluación
+     * @param customer Cliente
+     * @param vehicle Vehículo
+     * @param coverage Cobertura
+     * @param durationInMonths Duración en meses
+     * @param context contexto de evaluación
+     * @return prima calculada en centavos
+     */
+    public long calculatePremiumCents(Customer customer, Vehicle vehicle, Coverage coverage, int durationInMonths,
+                                      EvaluationContext context) {
+        return calculatePremiumCents(RatingRulesRegistry.current(), customer, vehicle, coverage, durationInMonths, context);
+    }
+    
+    /**
+     * Cotiza una prima y registra la versión de las reglas que la calculó
+     * @param customer Cliente
+     * @param vehicle Vehículo
+     * @param coverage Cobertura
+     * @param durationInMonths Duración en meses
+     * @return cotización con la prima y la versión de las reglas
+     */
+    public PremiumQuote quote(Customer customer, Vehicle vehicle, Coverage coverage, int durationInMonths) {
+        return quote(customer, vehicle, coverage, durationInMonths, EvaluationContext.today());
+    }
+    
+    /**
+     * Cotiza una prima en una fecha de evaluación y registra la versión de las reglas que la calculó
+     * @param customer Cliente
+     * @param vehicle Vehículo
+     * @param coverage Cobertura
+     * @param durationInMonths Duración en meses
+     * @param context contexto de evaluación
+     * @return cotización con la prima y la versión de las reglas
+     */
+    public PremiumQuote quote(Customer customer, Vehicle vehicle, Coverage coverage, int durationInMonths,
+                              EvaluationContext context) {
+        // Se toma una sola versión de las reglas para toda la cotización
+        RatingEngine engine = RatingRulesRegistry.current();
+        return new PremiumQuote(calculatePremiumCents(engine, customer, vehicle, coverage, durationInMonths, context),
+            engine.getVersion());
+    }
+    
+    /**
+     * Cotiza un cliente y un vehículo contra todas las coberturas activas
+     * @param customer Cliente
+     * @param vehicle Vehículo
+     * @param durationInMonths Duración en meses
+     * @return prima de cada cobertura activa
+     */
+    public BundleQuote quoteBundle(Customer customer, Vehicle vehicle, int durationInMonths) {
+        return quoteBundle(customer, vehicle, durationInMonths, coverageCatalog.getActiveCoverages(), EvaluationContext.today());
+    }
+    
+    /**
+     * Cotiza un cliente y un vehículo contra varias coberturas en una sola pasada.
+     * Los factores de conductor, vehículo, duración, territorio y símbolo se resuelven una sola vez
+     * y se aplican a la prima base de cada cobertura.
+     * @param customer Cliente
+     * @param vehicle Vehículo
+     * @param durationInMonths Duración en meses
+     * @param coverages Coberturas a cotizar
+     * @param context contexto de evaluación
+     * @return prima de cada cobertura, en el mismo orden
+     */
+    public BundleQuote quoteBundle(Customer customer, Vehicle vehicle, int durationInMonths, List<Coverage> coverages,
+                                   EvaluationContext context) {
+        RatingEngine engine = RatingRulesRegistry.current();
+        long[] premiums = new long[coverages.size()];
+        if (customer != null && vehicle != null && durationInMonths > 0) {
+            double factor = engine.factor(customer.getAge(context), vehicle.getVehicleAge(context), durationInMonths,
+                territoryTable.territoryOf(customer.getZipCode()), vehicleSymbolTable.symbolOf(vehicle));
+            for (int i = 0; i < premiums.length; i++) {
+                premiums[i] = Money.multiply(coverages.get(i).getBasePremiumCents(), factor);
+            }
         }
-        
-        // Factor por duración
-        if (durationInMonths >= 12) {
-            finalPremium *= 0.9; // 10% de descuento para pólizas anuales
+        return new BundleQuote(coverages, premiums, engine.getVersion());
+    }
+    
+    /**
+     * Calcula la prima en centavos con una versión concreta de las reglas.
+     * No se guarda en caché: resolver la prima son unas pocas lecturas de
+     * tablas; lo que domina una cotización es calcular las edades, el
+     * territorio y el símbolo, que cualquier clave de caché necesitaría igual.
+     */
+    long calculatePremiumCents(RatingEngine engine, Customer customer, Vehicle vehicle, Coverage coverage, int durationInMonths,
+                               EvaluationContext context) {
+        if (customer == null || vehicle == null || coverage == null || durationInMonths <= 0) {
+            return 0;
         }
         
-        return Math.round(finalPremium * 100.0) / 100.0; // Redondear a 2 decimales
+        // Los factores por edad, antigüedad, duración, territorio y símbolo se resuelven por tabla
+        return engine.rate(coverage.getBasePremiumCents(), customer.getAge(context), vehicle.getVehicleAge(context), durationInMonths,
+            territoryTable.territoryOf(customer.getZipCode()), vehicleSymbolTable.symbolOf(vehicle));
+    }
+    
+    /**
+     * Retarifica una cartera completa en paralelo y asigna la nueva prima a cada póliza.
+     * Toda la cartera se tarifica con la versión de las reglas vigente al empezar.
+     * @param policies flujo de pólizas a retarificar
+     * @return resumen con cantidades y rendimiento
+     */
+    public PortfolioRerater.RerateResult reratePortfolio(Stream<Policy> policies) {
+        return reratePortfolio(policies, EvaluationContext.today());
+    }
+    
+    /**
+     * Retarifica una cartera completa en paralelo en una fecha de evaluación fija
+     * @param policies flujo de pólizas a retarificar
+     * @param context contexto de evaluación de todo el lote
+     * @return resumen con cantidades y rendimiento
+     */
+    public PortfolioRerater.RerateResult reratePortfolio(Stream<Policy> policies, EvaluationContext context) {
+        RatingEngine engine = RatingRulesRegistry.current();
+        String version = engine.getVersion();
+        return new PortfolioRerater(this).rerate(engine, context, policies, (policy, premiumCents) -> {
+            policy.setPremiumCents(premiumCents);
+            policy.setRatingVersion(version);
+        });
+    }
+    
+    /**
+     * Cotiza un archivo CSV de prospectos contra las coberturas activas y escribe
+     * las cotizaciones en otro archivo, en el mismo orden y sin cargarlo en memoria
+     * @param prospects archivo CSV de prospectos
+     * @param quotes archivo CSV de cotizaciones; se reemplaza si existe
+     * @return resumen con cantidades y rendimiento
+     * @throws IOException si no se pueden leer o escribir los archivos
+     */
+    public BulkQuoteProcessor.BulkQuoteResult quoteFile(Path prospects, Path quotes) throws IOException {
+        return new BulkQuoteProcessor(this).process(prospects, quotes);
     }
     
     /**
@@ -58,60 +216,118 @@ public class InsuranceService {
      * @return lista de errores de validación
      */
     public List<String> validatePolicy(Policy policy) {
-        List<String> errors = new ArrayList<>();
-        
+        return validatePolicy(policy, EvaluationContext.today());
+    }
+    
+    /**
+     * Valida si una póliza puede ser creada en una fecha de evaluación
+     * @param policy Póliza a validar
+     * @param context contexto de evaluación
+     * @return lista de errores de validación
+     */
+    public List<String> validatePolicy(Policy policy, EvaluationContext context) {
+        return checkPolicy(policy, context).getMessages();
+    }
+    
+    /**
+     * Verifica las reglas de creación de una póliza sin armar mensajes
+     * @param policy Póliza a validar
+     * @return reglas violadas, o {@link PolicyValidation#VALID}
+     */
+    public PolicyValidation checkPolicy(Policy policy) {
+        return checkPolicy(policy, EvaluationContext.today());
+    }
+    
+    /**
+     * Verifica las reglas de creación de una póliza sin armar mensajes.
+     * Si la póliza es válida no se crea ningún objeto; los mensajes se
+     * resuelven solo si se piden al resultado.
+     * @param policy Póliza a validar
+     * @param context contexto de evaluación
+     * @return reglas violadas, o {@link PolicyValidation#VALID}
+     */
+    public PolicyValidation checkPolicy(Policy policy, EvaluationContext context) {
+        return PolicyValidation.of(violations(policy, context));
+    }
+    
+    /**
+     * Valida un lote grande de pólizas en paralelo con las reglas de {@link #checkPolicy}
+     * y las restricciones de Bean Validation
+     * @param policies flujo de pólizas a validar
+     * @param mode detenerse en la primera inválida o informar todas
+     * @return pólizas inválidas en el orden de la entrada; el flujo debe cerrarse
+     */
+    public Stream<BulkPolicyValidator.PolicyIssue> validatePolicies(Stream<Policy> policies,
+                                                                     BulkPolicyValidator.Mode mode) {
+        return new BulkPolicyValidator(this).validate(policies, mode);
+    }
+
+    /**
+     * Máscara de las reglas que viola una póliza, una por bit de {@link PolicyRule}
+     */
+    int violations(Policy policy, EvaluationContext context) {
         if (policy == null) {
-            errors.add("La póliza no puede ser nula");
-            return errors;
+            return PolicyRule.POLICY_REQUIRED.bit();
         }
+        int violations = 0;
         
         // Validar cliente
         if (policy.getCustomer() == null) {
-            errors.add("El cliente es obligatorio");
-        } else if (!policy.getCustomer().isEligibleForInsurance()) {
-            errors.add("El cliente no es elegible para seguro");
+            violations |= PolicyRule.CUSTOMER_REQUIRED.bit();
+        } else if (!policy.getCustomer().isEligibleForInsurance(context)) {
+            violations |= PolicyRule.CUSTOMER_NOT_ELIGIBLE.bit();
         }
         
         // Validar vehículo
         if (policy.getVehicle() == null) {
-            errors.add("El vehículo es obligatorio");
+            violations |= PolicyRule.VEHICLE_REQUIRED.bit();
         } else if (!policy.getVehicle().isEligibleForInsurance()) {
-            errors.add("El vehículo no es elegible para seguro");
+            violations |= PolicyRule.VEHICLE_NOT_ELIGIBLE.bit();
         }
         
         // Validar cobertura
         if (policy.getCoverage() == null) {
-            errors.add("La cobertura es obligatoria");
+            violations |= PolicyRule.COVERAGE_REQUIRED.bit();
         } else if (!policy.getCoverage().getIsActive()) {
-            errors.add("La cobertura no está activa");
+            violations |= PolicyRule.COVERAGE_INACTIVE.bit();
         }
         
         // Validar fechas
         if (policy.getStartDate() == null) {
-            errors.add("La fecha de inicio es obligatoria");
+            violations |= PolicyRule.START_DATE_REQUIRED.bit();
         }
         if (policy.getEndDate() == null) {
-            errors.add("La fecha de fin es obligatoria");
+            violations |= PolicyRule.END_DATE_REQUIRED.bit();
         }
         if (policy.getStartDate() != null && policy.getEndDate() != null) {
             if (policy.getStartDate().isAfter(policy.getEndDate())) {
-                errors.add("La fecha de inicio no puede ser posterior a la fecha de fin");
+                violations |= PolicyRule.START_AFTER_END.bit();
             }
-            if (policy.getStartDate().isBefore(LocalDate.now())) {
-                errors.add("La fecha de inicio no puede ser en el pasado");
+            if (context.isPast(policy.getStartDate())) {
+                violations |= PolicyRule.START_DATE_IN_PAST.bit();
             }
         }
         
         // Validar prima
-        if (policy.getPremium() == null || policy.getPremium() <= 0) {
-            errors.add("La prima debe ser mayor a 0");
+        if (policy.getPremiumCents() <= 0) {
+            violations |= PolicyRule.PREMIUM_NOT_POSITIVE.bit();
         }
         
-        return errors;
+        return violations;
     }
     
     /**
-     * Procesa un pago y actualiza el estado de la póliza
+     * Procesa un pago y actualiza el estado de la póliza.
+     * Si la póliza está guardada, se bloquea su fila hasta el fin de la
+     * transacción y se releen sus totales antes de verificar el saldo: un pago
+     * completado desde otro servidor no se pasa por alto, y el guardado no
+     * falla por una versión vieja de la póliza. Los cambios de la póliza sin
+     * guardar se descartan al releerla. Una póliza sin guardar no la comparten
+     * otras transacciones y se verifica tal como está.
+     * El pago se guarda con la transacción JPA y no pasa por el
+     * {@link PaymentJournal diario de pagos}, que solo cubre los pagos de
+     * {@link PaymentPoster}; la reconstrucción desde el diario lo suma desde
+     * su fila como a los pagos cargados a mano.
      * @param payment Pago a procesar
      * @return true si el pago fue procesado exitosamente
      */
@@ -123,25 +339,30 @@ public class InsuranceService {
         Policy policy = payment.getPolicy();
         
         // Validar monto del pago
-        if (payment.getAmount() == null || payment.getAmount() <= 0) {
+        if (payment.getAmountCents() <= 0) {
             payment.setStatus("failed");
             return false;
         }
         
+        if (policy.getId() != null) {
+            paymentLock.accept(policy);
+        }
+        return completePayment(payment, policy);
+    }
+
+    private static boolean completePayment(Payment payment, Policy policy) {
         // Verificar que no se exceda el monto de la póliza
-        double remainingAmount = policy.getRemainingAmount();
-        if (payment.getAmount() > remainingAmount) {
+        if (payment.getAmountCents() > policy.getRemainingCents()) {
             payment.setStatus("failed");
             return false;
         }
         
         // Procesar el pago
-        payment.setStatus("completed");
+        payment.setStatus(Payment.COMPLETED);
         payment.setPaymentDate(LocalDate.now());
         
         // Actualizar estado de la póliza
         policy.updateStatusByPayments();
-        
         return true;
     }
     
@@ -171,12 +392,23 @@ public class InsuranceService {
      * @return nueva póliza renovada
      */
     public Policy renewPolicy(Policy policy, LocalDate newEndDate) {
-        if (policy == null || newEndDate == null || newEndDate.isBefore(LocalDate.now())) {
+        return renewPolicy(policy, newEndDate, EvaluationContext.today());
+    }
+    
+    /**
+     * Renueva una póliza en una fecha de evaluación
+     * @param policy Póliza a renovar
+     * @param newEndDate Nueva fecha de fin
+     * @param context contexto de evaluación
+     * @return nueva póliza renovada
+     */
+    public Policy renewPolicy(Policy policy, LocalDate newEndDate, EvaluationContext context) {
+        if (policy == null || newEndDate == null || context.isPast(newEndDate)) {
             return null;
         }
         
         // Solo se pueden renovar pólizas activas
-        if (!policy.isActive()) {
+        if (!policy.isActive(context)) {
             return null;
         }
         
@@ -186,7 +418,14 @@ public class InsuranceService {
         renewedPolicy.setCoverage(policy.getCoverage());
         renewedPolicy.setStartDate(policy.getEndDate().plusDays(1));
         renewedPolicy.setEndDate(newEndDate);
-        renewedPolicy.setPremium(policy.getPremium());
+        // Si la cobertura cambió desde la emisión se usa la prima de renovación ya recalculada
+        if (policy.getRenewalPremiumCents() != null) {
+            renewedPolicy.setPremiumCents(policy.getRenewalPremiumCents());
+            renewedPolicy.setRatingVersion(policy.getRenewalRatingVersion());
+        } else {
+            renewedPolicy.setPremiumCents(policy.getPremiumCents());
+            renewedPolicy.setRatingVersion(policy.getRatingVersion());
+        }
         renewedPolicy.setPolicyNumber(generatePolicyNumber());
         
         return renewedPolicy;
@@ -195,8 +434,31 @@ public class InsuranceService {
     /**
      * Genera un número de póliza único
      * @return número de póliza
+     * @throws IllegalStateException si se agotaron los números del formato POL-XXXXXX
      */
     private String generatePolicyNumber() {
-        return "POL-" + String.format("%06d", (int)(Math.random() * 999999));
+        long number = policyNumbers.getAsLong();
+        if (number < 1 || number > MAX_POLICY_NUMBER) {
+            throw new IllegalStateException("Número de póliza fuera del formato POL-XXXXXX: " + number);
+        }
+        return String.format("POL-%06d", number);
+    }
+
+    /**
+     * Toma el siguiente valor de la secuencia de números de póliza en la
+     * transacción en curso; a diferencia de un número al azar, nunca repite
+     * uno ya emitido
+     */
+    private static long nextPolicyNumber() {
+        return ((Number) XPersistence.getManager().createNativeQuery(NEXT_POLICY_NUMBER).getSingleResult()).longValue();
+    }
+
+    /**
+     * Relee la póliza con select ... for update en la transacción en curso;
+     * otro pago de la misma póliza, desde cualquier servidor, espera a que
+     * esta transacción termine
+     */
+    private static void lockForPayment(Policy policy) {
+        XPersistence.getManager().refresh(policy, LockModeType.PESSIMISTIC_WRITE);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,579 @@
+package com.insurancecorp.insurecar.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Diario de pagos de solo agregado, escrito sobre un archivo mapeado en memoria.
+ *
+ * Cada pago registrado se agrega primero al diario; las filas de Payment y
+ * los totales y el estado de Policy son una proyección que
+ * {@link PaymentJournalProjector} puede reconstruir repitiendo el diario. El
+ * archivo se divide en regiones de tamaño fijo que se mapean a medida que se
+ * necesitan, así que escribir un registro es copiar bytes a memoria. Los
+ * registros llevan un número de secuencia consecutivo y un CRC-32C; al abrir
+ * el archivo se recorren hasta el primero incompleto o dañado, que marca el
+ * final de lo escrito antes de una caída.
+ *
+ * {@link #sync(long)} hace durable lo agregado con una confirmación en grupo:
+ * el primer hilo que llega fuerza a disco todo lo agregado hasta ese momento
+ * y los que esperaban encuentran su registro ya confirmado.
+ *
+ * Cada servidor que registra pagos escribe su propio diario, identificado
+ * por una instancia ({@value #JOURNAL_INSTANCE_PROPERTY}); las filas de
+ * Payment guardan la instancia junto con la secuencia, que solo es única
+ * dentro de su diario. La secuencia sale solo del archivo, así que el diario
+ * de la aplicación exige una ruta absoluta configurada y
+ * {@link PaymentJournalProjector#verify(PaymentJournal)} rechaza un archivo
+ * que quedó atrás de lo que la base ya tiene de esa instancia.
+ *
+ * El diario cubre solo los pagos registrados con {@link PaymentPoster}. Los
+ * que se guardan por JPA, como los de
+ * {@link InsuranceService#processPayment(com.insurancecorp.insurecar.model.Payment)}
+ * o los cargados desde la interfaz, y los importados del banco no pasan por
+ * él: sus filas no llevan instancia ni secuencia (Payment no deja escribirlas
+ * por JPA) y la proyección los toma tal como están en la base.
+ *
+ * Un pago cuya transacción no llega a confirmarse se anula con
+ * {@link #abort(long, long)}: el diario es la fuente de verdad, así que la
+ * anulación también se agrega y la proyección no aplica ese pago.
+ *
+ * Formato de un registro: largo de los datos (int), secuencia (long), datos
+ * (id de póliza, monto en centavos, día epoch del pago, medio y referencia
+ * como UTF-8 con su largo en un byte) y CRC-32C de la secuencia y los datos.
+ * Una anulación guarda en el monto la secuencia anulada con signo negativo.
+ * Un largo 0 marca el final; {@value #END_OF_REGION} indica que el resto de
+ * la región quedó sin usar.
+ */
+public class PaymentJournal implements Closeable {
+
+    /** Propiedad de sistema con la ruta del diario de la aplicación */
+    public static final String JOURNAL_FILE_PROPERTY = "insurecar.paymentJournal";
+
+    /** Propiedad de sistema con la instancia del diario de este servidor */
+    public static final String JOURNAL_INSTANCE_PROPERTY = "insurecar.paymentJournalInstance";
+
+    static final String DEFAULT_INSTANCE = "default";
+
+    static final int MAX_INSTANCE_LENGTH = 64;
+
+    static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+    static final int END_OF_REGION = -1;
+
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+    private static final int FIXED_DATA_SIZE = 2 * Long.BYTES + Integer.BYTES + 2;
+    private static final int MAX_TEXT_LENGTH = 255;
+    private static final int MAX_RECORD_SIZE = HEADER_SIZE + FIXED_DATA_SIZE + 2 * MAX_TEXT_LENGTH + Integer.BYTES;
+
+    private static volatile PaymentJournal shared;
+
+    private final Path file;
+    private final String instance;
+    private final FileChannel channel;
+    private final int regionSize;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    // Protegidos por el monitor del diario
+    private MappedByteBuffer current;
+    private long lastSequence;
+
+    private volatile long durableSequence;
+
+    /**
+     * Abre el diario de la instancia {@value #DEFAULT_INSTANCE}
+     * @see #PaymentJournal(Path, String)
+     */
+    public PaymentJournal(Path file) throws IOException {
+        this(file, DEFAULT_INSTANCE);
+    }
+
+    /**
+     * Abre un diario, creándolo si no existe, y ubica el final de lo escrito
+     * @param file archivo del diario
+     * @param instance instancia del diario, distinta en cada servidor que registra pagos
+     * @throws IOException si no se puede abrir o mapear el archivo
+     */
+    public PaymentJournal(Path file, String instance) throws IOException {
+        this(file, instance, DEFAULT_REGION_SIZE);
+    }
+
+    PaymentJournal(Path file, int regionSize) throws IOException {
+        this(file, DEFAULT_INSTANCE, regionSize);
+    }
+
+    PaymentJournal(Path file, String instance, int regionSize) throws IOException {
+        if (regionSize < MAX_RECORD_SIZE + Integer.BYTES) {
+            throw new IllegalArgumentException("La región debe tener al menos " + (MAX_RECORD_SIZE + Integer.BYTES) + " bytes");
+        }
+        if (instance == null || instance.trim().isEmpty() || instance.length() > MAX_INSTANCE_LENGTH) {
+            throw new IllegalArgumentException("La instancia del diario debe tener entre 1 y " + MAX_INSTANCE_LENGTH
+                + " caracteres");
+        }
+        this.file = file;
+        this.instance = instance;
+        this.regionSize = regionSize;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Diario compartido por la aplicación, en la ruta absoluta de la propiedad
+     * {@value #JOURNAL_FILE_PROPERTY}, con la instancia de
+     * {@link #configuredInstance()}. No hay ruta por omisión: una relativa
+     * depende del directorio de trabajo y reabrirla desde otro empezaría la
+     * secuencia de nuevo.
+     * @return diario abierto
+     * @throws IllegalStateException si la ruta falta o es relativa, o si no se puede abrir
+     */
+    public static PaymentJournal shared() {
+        PaymentJournal journal = shared;
+        if (journal == null) {
+            synchronized (PaymentJournal.class) {
+                journal = shared;
+                if (journal == null) {
+                    Path path = configuredFile();
+                    try {
+                        journal = new PaymentJournal(path, configuredInstance());
+                    } catch (IOException e) {
+                        throw new IllegalStateException("No se pudo abrir el diario de pagos " + path, e);
+                    }
+                    shared = journal;
+                }
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Ruta del diario de la aplicación, de la propiedad {@value #JOURNAL_FILE_PROPERTY}
+     * @return ruta absoluta configurada
+     * @throws IllegalStateException si la propiedad falta o la ruta es relativa
+     */
+    static Path configuredFile() {
+        String configured = System.getProperty(JOURNAL_FILE_PROPERTY);
+        if (configured == null || configured.trim().isEmpty()) {
+            throw new IllegalStateException("Falta la propiedad " + JOURNAL_FILE_PROPERTY
+                + " con la ruta absoluta del diario de pagos");
+        }
+        Path path = Paths.get(configured.trim());
+        if (!path.isAbsolute()) {
+            throw new IllegalStateException("La ruta del diario de pagos debe ser absoluta: " + configured.trim());
+        }
+        return path;
+    }
+
+    /**
+     * Instancia del diario de este servidor, de la propiedad
+     * {@value #JOURNAL_INSTANCE_PROPERTY} o {@value #DEFAULT_INSTANCE}
+     * @return instancia configurada
+     */
+    public static String configuredInstance() {
+        String configured = System.getProperty(JOURNAL_INSTANCE_PROPERTY);
+        return configured != null && !configured.trim().isEmpty() ? configured.trim() : DEFAULT_INSTANCE;
+    }
+
+    /**
+     * Recorre los registros existentes y deja la escritura al final del último válido
+     */
+    private void recover() throws IOException {
+        long regionCount = Math.max(1, (channel.size() + regionSize - 1) / regionSize);
+        Scan scan = new Scan(0);
+        boolean closed = true;
+        for (int index = 0; index < regionCount; index++) {
+            MappedByteBuffer region = map(index);
+            regions.add(region);
+            current = region;
+            if (!scan.region(region.duplicate(), null)) {
+                closed = false;
+                // Todo lo que sigue es una escritura incompleta o nunca ocurrió: se borra
+                int tail = scan.position;
+                ByteBuffer rest = region.duplicate();
+                rest.position(tail);
+                while (rest.hasRemaining()) {
+                    rest.put((byte) 0);
+                }
+                current.position(tail);
+                for (int stale = index + 1; stale < regionCount; stale++) {
+                    MappedByteBuffer staleRegion = map(stale);
+                    while (staleRegion.hasRemaining()) {
+                        staleRegion.put((byte) 0);
+                    }
+                    staleRegion.force();
+                }
+                region.force();
+                break;
+            }
+        }
+        if (closed) {
+            // La caída ocurrió justo después de cerrar la última región
+            current = map(regions.size());
+            regions.add(current);
+        }
+        lastSequence = scan.sequence;
+        durableSequence = lastSequence;
+    }
+
+    private MappedByteBuffer map(int index) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, (long) index * regionSize, regionSize);
+    }
+
+    /** @return archivo del diario */
+    public Path getFile() {
+        return file;
+    }
+
+    /** @return instancia del diario */
+    public String getInstance() {
+        return instance;
+    }
+
+    /** @return secuencia del último registro agregado, o 0 si el diario está vacío */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /** @return secuencia del último registro forzado a disco */
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    /**
+     * Agrega un pago y espera a que sea durable
+     * @return secuencia del registro
+     * @see #append(long, long, LocalDate, String, String)
+     */
+    public long post(long policyId, long amountCents, LocalDate paymentDate, String method, String reference) {
+        long sequence = append(policyId, amountCents, paymentDate, method, reference);
+        sync(sequence);
+        return sequence;
+    }
+
+    /**
+     * Agrega un pago sin esperar a que sea durable
+     * @param policyId id de la póliza
+     * @param amountCents monto en centavos
+     * @param paymentDate fecha del pago
+     * @param method medio de pago, o null
+     * @param reference referencia externa, o null
+     * @return secuencia del registro
+     * @throws IllegalArgumentException si el monto es negativo o el medio o la referencia superan 255 bytes
+     * @throws UncheckedIOException si no se puede ampliar el archivo
+     */
+    public long append(long policyId, long amountCents, LocalDate paymentDate, String method, String reference) {
+        if (amountCents < 0) {
+            throw new IllegalArgumentException("El monto no puede ser negativo");
+        }
+        return write(policyId, amountCents, paymentDate, text(method, "medio de pago"), text(reference, "referencia"));
+    }
+
+    /**
+     * Anula un pago agregado cuya transacción no se confirmó y espera a que la
+     * anulación sea durable
+     * @param sequence secuencia del pago anulado
+     * @param policyId id de la póliza del pago
+     * @return secuencia de la anulación
+     * @throws IllegalArgumentException si la secuencia no corresponde a un registro agregado
+     */
+    public long abort(long sequence, long policyId) {
+        if (sequence <= 0 || sequence > getLastSequence()) {
+            throw new IllegalArgumentException("No hay un registro con la secuencia " + sequence);
+        }
+        long abort = write(policyId, -sequence, LocalDate.now(), new byte[0], new byte[0]);
+        sync(abort);
+        return abort;
+    }
+
+    private long write(long policyId, long amountCents, LocalDate paymentDate, byte[] methodBytes,
+                       byte[] referenceBytes) {
+        int dataLength = FIXED_DATA_SIZE + methodBytes.length + referenceBytes.length;
+        synchronized (this) {
+            if (current.remaining() < HEADER_SIZE + dataLength + Integer.BYTES + Integer.BYTES) {
+                nextRegion();
+            }
+            long sequence = lastSequence + 1;
+            int start = current.position();
+            current.putInt(0); // el largo se escribe al final, para que un registro a medias no parezca completo
+            current.putLong(sequence);
+            current.putLong(policyId);
+            current.putLong(amountCents);
+            current.putInt((int) paymentDate.toEpochDay());
+            current.put((byte) methodBytes.length).put(methodBytes);
+            current.put((byte) referenceBytes.length).put(referenceBytes);
+            CRC32C crc = new CRC32C();
+            ByteBuffer checked = current.duplicate();
+            checked.position(start + Integer.BYTES).limit(start + HEADER_SIZE + dataLength);
+            crc.update(checked);
+            current.putInt((int) crc.getValue());
+            current.putInt(start, dataLength);
+            lastSequence = sequence;
+            return sequence;
+        }
+    }
+
+    private static byte[] text(String value, String name) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("El " + name + " supera " + MAX_TEXT_LENGTH + " bytes");
+        }
+        return bytes;
+    }
+
+    /**
+     * Cierra la región en curso y mapea la siguiente; la anterior se fuerza a
+     * disco ahora, así {@link #sync(long)} solo fuerza la región en curso
+     */
+    private void nextRegion() {
+        current.putInt(END_OF_REGION);
+        current.force();
+        try {
+            current = map(regions.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo ampliar el diario de pagos " + file, e);
+        }
+        regions.add(current);
+    }
+
+    /**
+     * Espera a que un registro sea durable, forzando a disco en grupo todo lo agregado
+     * @param sequence secuencia del registro
+     */
+    public void sync(long sequence) {
+        if (durableSequence >= sequence) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (durableSequence >= sequence) {
+                return; // otro hilo forzó este registro junto con los suyos
+            }
+            MappedByteBuffer region;
+            long appended;
+            synchronized (this) {
+                region = current;
+                appended = lastSequence;
+            }
+            region.force();
+            durableSequence = appended;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Repite los registros posteriores a una secuencia, en orden.
+     * El registro entregado se reutiliza; no se debe conservar entre llamadas.
+     * @param afterSequence secuencia del último registro ya proyectado, o 0 para todos
+     * @param visitor destino de cada registro
+     * @return cantidad de registros entregados
+     */
+    public long replay(long afterSequence, Consumer<JournalRecord> visitor) {
+        List<ByteBuffer> snapshot = new ArrayList<>();
+        long until;
+        synchronized (this) {
+            for (MappedByteBuffer region : regions) {
+                snapshot.add(region.duplicate());
+            }
+            until = lastSequence;
+        }
+        Scan scan = new Scan(afterSequence);
+        JournalRecord record = new JournalRecord(visitor, until);
+        for (ByteBuffer region : snapshot) {
+            region.clear();
+            if (!scan.region(region, record)) {
+                break;
+            }
+        }
+        return record.delivered;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (current != null) {
+                current.force();
+                durableSequence = lastSequence;
+            }
+        }
+        channel.close();
+        synchronized (PaymentJournal.class) {
+            if (shared == this) {
+                shared = null;
+            }
+        }
+    }
+
+    /**
+     * Recorrido secuencial de registros que verifica largo, secuencia y CRC
+     */
+    private static final class Scan {
+
+        long sequence;
+        int position;
+        private final long skipUntil;
+        private final CRC32C crc = new CRC32C();
+
+        Scan(long skipUntil) {
+            this.skipUntil = skipUntil;
+        }
+
+        /**
+         * Recorre una región
+         * @param visitor registro que recibe los datos, o null para solo validar
+         * @return true si la región termina con la marca de fin de región
+         */
+        boolean region(ByteBuffer region, JournalRecord visitor) {
+            position = 0;
+            while (region.remaining() >= Integer.BYTES) {
+                int start = region.position();
+                position = start;
+                int dataLength = region.getInt();
+                if (dataLength == END_OF_REGION) {
+                    return true;
+                }
+                if (dataLength < FIXED_DATA_SIZE || dataLength > MAX_RECORD_SIZE
+                        || region.remaining() < Long.BYTES + dataLength + Integer.BYTES) {
+                    return false;
+                }
+                long recordSequence = region.getLong();
+                if (recordSequence != sequence + 1) {
+                    return false;
+                }
+                ByteBuffer checked = region.duplicate();
+                checked.position(start + Integer.BYTES).limit(start + HEADER_SIZE + dataLength);
+                crc.reset();
+                crc.update(checked);
+                int expected = region.getInt(start + HEADER_SIZE + dataLength);
+                if ((int) crc.getValue() != expected) {
+                    return false;
+                }
+                if (visitor != null && recordSequence > skipUntil) {
+                    if (!visitor.read(recordSequence, region, start + HEADER_SIZE)) {
+                        return false;
+                    }
+                }
+                sequence = recordSequence;
+                region.position(start + HEADER_SIZE + dataLength + Integer.BYTES);
+            }
+            position = region.position();
+            return false;
+        }
+    }
+
+    /**
+     * Pago o anulación leídos del diario. El medio y la referencia se
+     * decodifican solo si se piden.
+     */
+    public static final class JournalRecord {
+
+        private long sequence;
+        private long policyId;
+        private long amountCents;
+        private int paymentEpochDay;
+        private ByteBuffer region;
+        private int methodOffset;
+        private final Consumer<JournalRecord> visitor;
+        private final long until;
+        private long delivered;
+
+        private JournalRecord(Consumer<JournalRecord> visitor, long until) {
+            this.visitor = visitor;
+            this.until = until;
+        }
+
+        /**
+         * Lee los datos de un registro ya validado y lo entrega
+         * @return false si el registro es posterior al recorrido
+         */
+        boolean read(long sequence, ByteBuffer region, int dataOffset) {
+            if (sequence > until) {
+                return false;
+            }
+            this.sequence = sequence;
+            this.region = region;
+            policyId = region.getLong(dataOffset);
+            amountCents = region.getLong(dataOffset + Long.BYTES);
+            paymentEpochDay = region.getInt(dataOffset + 2 * Long.BYTES);
+            methodOffset = dataOffset + 2 * Long.BYTES + Integer.BYTES;
+            visitor.accept(this);
+            delivered++;
+            return true;
+        }
+
+        /** @return secuencia del registro */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /** @return id de la póliza */
+        public long getPolicyId() {
+            return policyId;
+        }
+
+        /** @return monto en centavos, o 0 si es una anulación */
+        public long getAmountCents() {
+            return Math.max(0, amountCents);
+        }
+
+        /** @return true si el registro anula un pago anterior */
+        public boolean isAbort() {
+            return amountCents < 0;
+        }
+
+        /** @return secuencia del pago anulado, o 0 si no es una anulación */
+        public long getAbortedSequence() {
+            return Math.max(0, -amountCents);
+        }
+
+        /** @return fecha del pago */
+        public LocalDate getPaymentDate() {
+            return LocalDate.ofEpochDay(paymentEpochDay);
+        }
+
+        /** @return medio de pago, o null si no tiene */
+        public String getMethod() {
+            return decode(methodOffset);
+        }
+
+        /** @return referencia externa, o null si no tiene */
+        public String getReference() {
+            return decode(methodOffset + 1 + (region.get(methodOffset) & 0xFF));
+        }
+
+        private String decode(int offset) {
+            int length = region.get(offset) & 0xFF;
+            if (length == 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = region.get(offset + 1 + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
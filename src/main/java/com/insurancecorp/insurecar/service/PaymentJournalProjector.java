@@ -0,0 +1,661 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Proyecta el {@link PaymentJournal diario de pagos} sobre las filas de
+ * Payment y los totales y el estado de Policy.
+ *
+ * {@link #catchUp(PaymentJournal)} aplica los registros del diario que no
+ * tienen fila, por ejemplo si el servidor cayó entre escribir el diario y
+ * confirmar la transacción: inserta los pagos por lotes y actualiza una vez
+ * por bloque cada póliza tocada, bloqueándolas en orden de id. El diario
+ * manda: un pago anulado no se aplica, y si su transacción llegó a
+ * confirmarse igual, su fila pasa a fallida y se descuenta de la póliza.
+ * Cada pago se vuelve a verificar contra el saldo al aplicarlo; el que lo
+ * supera queda como fallido. Lo ya recorrido se guarda por instancia en
+ * PaymentJournalProgress, en la misma transacción que cada bloque.
+ * {@link #rebuild(PaymentJournal)} además recalcula los totales y el estado
+ * de todas las pólizas sumando el diario completo en memoria y los pagos
+ * completados que no salieron de ese diario (cargados a mano, importados o
+ * registrados por otro servidor). Del diario no se suman los pagos cuya fila
+ * ya no está completada: los rechazados al aplicarse y los que se marcaron
+ * como fallidos o revertidos después. Las pólizas se bloquean por bloques en
+ * orden de id y lo que sale de la base se suma bajo el bloqueo, así que un
+ * pago registrado mientras corre no se pierde.
+ *
+ * Cada servidor proyecta solo su diario: las filas se buscan por la
+ * instancia del diario y la secuencia, que se repite entre servidores.
+ *
+ * La secuencia del diario sale solo de su archivo. Si el archivo se perdió,
+ * se rotó o se abrió otro, numeraría desde un valor que la base ya usó:
+ * cada pago chocaría con UK_PAYMENT_JOURNAL_ENTRY y lo recorrido taparía los
+ * registros nuevos. {@link #verify(PaymentJournal)} compara el final del
+ * diario con la mayor secuencia de la instancia en Payment y con lo
+ * recorrido, y rechaza el diario si la base va más adelante; catchUp hace la
+ * misma verificación antes de aplicar nada.
+ */
+public class PaymentJournalProjector {
+
+    static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    static final String CREATE_PROGRESS =
+        "create table PaymentJournalProgress (journalInstance varchar(" + PaymentJournal.MAX_INSTANCE_LENGTH + ")"
+        + " not null primary key, projectedSequence bigint not null)";
+
+    static final String SELECT_PROGRESS =
+        "select projectedSequence from PaymentJournalProgress where journalInstance = ?";
+
+    static final String UPDATE_PROGRESS =
+        "update PaymentJournalProgress set projectedSequence = ? where journalInstance = ?";
+
+    static final String INSERT_PROGRESS =
+        "insert into PaymentJournalProgress (projectedSequence, journalInstance) values (?, ?)";
+
+    static final String SELECT_LAST_SEQUENCE =
+        "select max(journalSequence) from Payment where journalInstance = ?";
+
+    static final String SELECT_PROJECTED =
+        "select journalSequence from Payment where journalInstance = ? and journalSequence between ? and ?";
+
+    static final String INSERT_PAYMENT =
+        "insert into Payment (policy_id, amountCents, paymentDate, method, status, bankReference, journalInstance,"
+        + " journalSequence, createdAt, updatedAt) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    static final String SELECT_ABORTED =
+        "select id, policy_id, amountCents from Payment where journalInstance = ? and journalSequence = ?"
+        + " and status = '" + Payment.COMPLETED + "'";
+
+    static final String FAIL_PAYMENT =
+        "update Payment set status = '" + Payment.FAILED + "', updatedAt = ? where id = ?";
+
+    static final String UPDATE_POLICY =
+        "update Policy set totalPaidCents = ?, completedPaymentCount = ?, status = ?, version = version + 1"
+        + " where id = ?";
+
+    static final String SELECT_POLICY_IDS =
+        "select id from Policy where id > ? order by id";
+
+    private static final String JOURNALED = "journalInstance = ? and journalSequence <= ?";
+
+    private static final String NOT_COMPLETED = "(status is null or status <> '" + Payment.COMPLETED + "')";
+
+    private static final String OTHER = "status = '" + Payment.COMPLETED + "'"
+        + " and (journalInstance is null or journalInstance <> ? or journalSequence > ?)";
+
+    /**
+     * Por póliza: filas de este diario hasta la secuencia recorrida, monto de
+     * las completadas y pagos completados que no salen de lo recorrido
+     */
+    static String selectChunkTotals(int count) {
+        return "select policy_id,"
+            + " sum(case when " + JOURNALED + " then 1 else 0 end),"
+            + " sum(case when " + JOURNALED + " and not " + NOT_COMPLETED + " then amountCents else 0 end),"
+            + " sum(case when " + OTHER + " then 1 else 0 end),"
+            + " sum(case when " + OTHER + " then amountCents else 0 end)"
+            + " from Payment where policy_id in (" + parameters(count) + ") group by policy_id";
+    }
+
+    /**
+     * Filas de este diario hasta la secuencia recorrida que no están
+     * completadas: anuladas, rechazadas al aplicarse o revertidas después
+     */
+    static String selectChunkNotCompleted(int count) {
+        return "select policy_id, journalSequence, amountCents from Payment where " + JOURNALED + " and "
+            + NOT_COMPLETED + " and policy_id in (" + parameters(count) + ")";
+    }
+
+    private static String parameters(int count) {
+        StringBuilder parameters = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            parameters.append(i == 0 ? "?" : ", ?");
+        }
+        return parameters.toString();
+    }
+
+    private static final Logger log = Logger.getLogger(PaymentJournalProjector.class.getName());
+
+    private final DataSource dataSource;
+    private final int chunkSize;
+
+    public PaymentJournalProjector(DataSource dataSource) {
+        this(dataSource, DEFAULT_CHUNK_SIZE);
+    }
+
+    public PaymentJournalProjector(DataSource dataSource, int chunkSize) {
+        if (chunkSize <= 0 || chunkSize > UniquenessChecker.MAX_IN_PARAMETERS) {
+            throw new IllegalArgumentException("El tamaño de bloque debe estar entre 1 y "
+                + UniquenessChecker.MAX_IN_PARAMETERS);
+        }
+        this.dataSource = dataSource;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Crea una proyección sobre la fuente de datos de la aplicación
+     * @return proyección lista para usar
+     * @throws IllegalStateException si la fuente de datos no está disponible
+     */
+    public static PaymentJournalProjector forApplication() {
+        try {
+            return new PaymentJournalProjector((DataSource) new InitialContext().lookup(CoverageRepricingJob.DATA_SOURCE_NAME));
+        } catch (NamingException e) {
+            throw new IllegalStateException("No se encontró la fuente de datos " + CoverageRepricingJob.DATA_SOURCE_NAME, e);
+        }
+    }
+
+    /**
+     * Aplica los registros del diario que todavía no tienen fila en Payment y
+     * revierte los pagos anulados que llegaron a confirmarse
+     * @param journal diario de pagos
+     * @return cantidad de pagos aplicados
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public long catchUp(PaymentJournal journal) {
+        String instance = journal.getInstance();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                checkNotBehind(connection, journal);
+                long after = projectedSequence(connection, instance);
+                Set<Long> aborted = new HashSet<>();
+                journal.replay(after, record -> {
+                    if (record.isAbort()) {
+                        aborted.add(record.getAbortedSequence());
+                    }
+                });
+                compensate(connection, instance, aborted);
+
+                Chunk chunk = new Chunk(chunkSize, after);
+                long[] applied = new long[1];
+                journal.replay(after, record -> {
+                    chunk.add(record, aborted);
+                    if (chunk.size == chunkSize) {
+                        applied[0] += project(connection, instance, chunk);
+                    }
+                });
+                applied[0] += project(connection, instance, chunk);
+                return applied[0];
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al aplicar el diario de pagos " + journal.getFile(), e);
+        }
+    }
+
+    /**
+     * Verifica que el diario no haya quedado atrás de la base, antes de
+     * registrar pagos con él
+     * @param journal diario de pagos
+     * @throws IllegalStateException si la base tiene filas o progreso de la
+     *         instancia posteriores al final del diario, o si falla el acceso
+     *         a la base de datos
+     */
+    public void verify(PaymentJournal journal) {
+        try (Connection connection = dataSource.getConnection()) {
+            checkNotBehind(connection, journal);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al verificar el diario de pagos " + journal.getFile(), e);
+        }
+    }
+
+    private static void checkNotBehind(Connection connection, PaymentJournal journal) throws SQLException {
+        long known = projectedSequence(connection, journal.getInstance());
+        try (PreparedStatement select = connection.prepareStatement(SELECT_LAST_SEQUENCE)) {
+            select.setString(1, journal.getInstance());
+            try (ResultSet rs = select.executeQuery()) {
+                if (rs.next()) {
+                    known = Math.max(known, rs.getLong(1));
+                }
+            }
+        }
+        if (known > journal.getLastSequence()) {
+            throw new IllegalStateException("El diario " + journal.getFile() + " de la instancia " + journal.getInstance()
+                + " termina en la secuencia " + journal.getLastSequence() + " pero la base ya llega a la " + known
+                + "; se debe restaurar el archivo del diario");
+        }
+    }
+
+    private static long projectedSequence(Connection connection, String instance) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(SELECT_PROGRESS)) {
+            select.setString(1, instance);
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private static void saveProgress(Connection connection, String instance, long sequence) throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_PROGRESS)) {
+            update.setLong(1, sequence);
+            update.setString(2, instance);
+            if (update.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_PROGRESS)) {
+            insert.setLong(1, sequence);
+            insert.setString(2, instance);
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Pasa a fallidos los pagos anulados en el diario cuya transacción llegó a
+     * confirmarse, por ejemplo si la confirmación falló después de
+     * escribirse, y los descuenta de sus pólizas
+     */
+    private static void compensate(Connection connection, String instance, Set<Long> aborted) throws SQLException {
+        if (aborted.isEmpty()) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        try (PreparedStatement select = connection.prepareStatement(SELECT_ABORTED);
+             PreparedStatement fail = connection.prepareStatement(FAIL_PAYMENT)) {
+            for (long sequence : aborted) {
+                select.setString(1, instance);
+                select.setLong(2, sequence);
+                long paymentId;
+                long policyId;
+                long amountCents;
+                try (ResultSet rs = select.executeQuery()) {
+                    if (!rs.next()) {
+                        continue; // la transacción se revirtió, como se esperaba
+                    }
+                    paymentId = rs.getLong(1);
+                    policyId = rs.getLong(2);
+                    amountCents = rs.getLong(3);
+                }
+                fail.setObject(1, today);
+                fail.setLong(2, paymentId);
+                fail.executeUpdate();
+                Map<Long, PolicyTotals> policies = lockPolicies(connection, Collections.singleton(policyId));
+                PolicyTotals policy = policies.get(policyId);
+                if (policy != null) {
+                    policy.add(-amountCents, -1);
+                    updatePolicies(connection, policies.values());
+                }
+                log.warning("Se revirtió el pago " + paymentId + " (secuencia " + sequence + " del diario " + instance
+                    + "), anulado en el diario después de confirmarse");
+            }
+        }
+        connection.commit();
+    }
+
+    /**
+     * Aplica un bloque de registros, verificando cada pago contra el saldo de
+     * su póliza, y lo confirma junto con lo recorrido
+     * @return cantidad de pagos aplicados
+     */
+    private static int project(Connection connection, String instance, Chunk chunk) {
+        try {
+            int applied = 0;
+            Set<Long> projected = new HashSet<>();
+            Set<Long> policyIds = new HashSet<>();
+            if (chunk.size > 0) {
+                try (PreparedStatement select = connection.prepareStatement(SELECT_PROJECTED)) {
+                    select.setString(1, instance);
+                    select.setLong(2, chunk.sequences[0]);
+                    select.setLong(3, chunk.sequences[chunk.size - 1]);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            projected.add(rs.getLong(1));
+                        }
+                    }
+                }
+                for (int i = 0; i < chunk.size; i++) {
+                    if (!projected.contains(chunk.sequences[i])) {
+                        policyIds.add(chunk.policyIds[i]);
+                    }
+                }
+            }
+            if (!policyIds.isEmpty()) {
+                Map<Long, PolicyTotals> policies = lockPolicies(connection, policyIds);
+                LocalDate today = LocalDate.now();
+                int inserted = 0;
+                try (PreparedStatement insert = connection.prepareStatement(INSERT_PAYMENT)) {
+                    for (int i = 0; i < chunk.size; i++) {
+                        if (projected.contains(chunk.sequences[i])) {
+                            continue;
+                        }
+                        PolicyTotals policy = policies.get(chunk.policyIds[i]);
+                        if (policy == null) {
+                            log.warning("No se aplicó la secuencia " + chunk.sequences[i] + " del diario " + instance
+                                + ": la póliza " + chunk.policyIds[i] + " no existe");
+                            continue;
+                        }
+                        boolean accepted = chunk.amounts[i] <= policy.remainingCents();
+                        if (accepted) {
+                            policy.add(chunk.amounts[i], 1);
+                            applied++;
+                        } else {
+                            log.warning("La secuencia " + chunk.sequences[i] + " del diario " + instance
+                                + " supera el saldo de la póliza " + chunk.policyIds[i] + "; se guarda como fallida");
+                        }
+                        insert.setLong(1, chunk.policyIds[i]);
+                        insert.setLong(2, chunk.amounts[i]);
+                        insert.setObject(3, chunk.dates[i]);
+                        insert.setString(4, chunk.methods[i]);
+                        insert.setString(5, accepted ? Payment.COMPLETED : Payment.FAILED);
+                        insert.setString(6, chunk.references[i]);
+                        insert.setString(7, instance);
+                        insert.setLong(8, chunk.sequences[i]);
+                        insert.setObject(9, today);
+                        insert.setObject(10, today);
+                        insert.addBatch();
+                        inserted++;
+                    }
+                    if (inserted > 0) {
+                        insert.executeBatch();
+                    }
+                }
+                updatePolicies(connection, policies.values());
+            }
+            if (chunk.lastSequence > chunk.savedSequence) {
+                saveProgress(connection, instance, chunk.lastSequence);
+                chunk.savedSequence = chunk.lastSequence;
+            }
+            connection.commit();
+            chunk.size = 0;
+            return applied;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al aplicar el bloque del diario hasta la secuencia "
+                + chunk.lastSequence, e);
+        }
+    }
+
+    /**
+     * Bloquea las pólizas en orden de id, igual que el resto de los registros de pagos
+     * @return pólizas encontradas por id
+     */
+    private static Map<Long, PolicyTotals> lockPolicies(Connection connection, Set<Long> ids) throws SQLException {
+        Map<Long, PolicyTotals> policies = new TreeMap<>();
+        if (ids.isEmpty()) {
+            return policies;
+        }
+        try (PreparedStatement select = connection.prepareStatement(
+                BankReconciliationImporter.selectPoliciesForUpdate(ids.size()))) {
+            int index = 1;
+            for (Long id : new TreeSet<>(ids)) {
+                select.setLong(index++, id);
+            }
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    policies.put(rs.getLong(1),
+                        new PolicyTotals(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getInt(4), rs.getString(5)));
+                }
+            }
+        }
+        return policies;
+    }
+
+    private static void updatePolicies(Connection connection, Collection<PolicyTotals> policies) throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_POLICY)) {
+            int pending = 0;
+            for (PolicyTotals policy : policies) {
+                if (policy.changed) {
+                    addUpdate(update, policy.id, policy.premiumCents, policy.paidCents, policy.count, policy.status);
+                    pending++;
+                }
+            }
+            if (pending > 0) {
+                update.executeBatch();
+            }
+        }
+    }
+
+    private static void addUpdate(PreparedStatement update, long id, long premiumCents, long paidCents, int count,
+                                  String status) throws SQLException {
+        if (!PolicyStatus.CANCELLED.name().equals(status)) {
+            status = Policy.statusForPayments(paidCents, premiumCents).name();
+        }
+        update.setLong(1, paidCents);
+        update.setInt(2, count);
+        update.setString(3, status);
+        update.setLong(4, id);
+        update.addBatch();
+    }
+
+    /**
+     * Aplica lo pendiente del diario y recalcula los totales y el estado de
+     * todas las pólizas desde el diario y los pagos que no salieron de él,
+     * incluidos los de los diarios de otros servidores. Los pagos del diario
+     * anulados o cuya fila ya no está completada no se suman.
+     * Las pólizas se bloquean de a un bloque, en orden de id; las filas de
+     * Payment se suman bajo el bloqueo y solo se actualizan las pólizas
+     * cuyos valores cambian.
+     * @param journal diario de pagos
+     * @return cantidad de pólizas corregidas
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public int rebuild(PaymentJournal journal) {
+        catchUp(journal);
+        String instance = journal.getInstance();
+        // Los registros posteriores se cuentan por su fila, como los pagos sin diario
+        long until = journal.getLastSequence();
+        Set<Long> aborted = new HashSet<>();
+        journal.replay(0, record -> {
+            if (record.isAbort()) {
+                aborted.add(record.getAbortedSequence());
+            }
+        });
+        // Por póliza: monto y cantidad de pagos del diario sin anular
+        Map<Long, long[]> totals = new HashMap<>();
+        journal.replay(0, record -> {
+            if (record.getSequence() > until || record.isAbort() || aborted.contains(record.getSequence())) {
+                return;
+            }
+            long[] total = totals.computeIfAbsent(record.getPolicyId(), id -> new long[2]);
+            total[0] += record.getAmountCents();
+            total[1]++;
+        });
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                int corrected = 0;
+                long lastId = 0;
+                try (PreparedStatement select = connection.prepareStatement(SELECT_POLICY_IDS)) {
+                    select.setMaxRows(chunkSize);
+                    while (true) {
+                        TreeSet<Long> ids = new TreeSet<>();
+                        select.setLong(1, lastId);
+                        try (ResultSet rs = select.executeQuery()) {
+                            while (rs.next()) {
+                                ids.add(rs.getLong(1));
+                            }
+                        }
+                        if (!ids.isEmpty()) {
+                            lastId = ids.last();
+                            Map<Long, PolicyTotals> policies = lockPolicies(connection, ids);
+                            corrected += sumUnderLock(connection, instance, until, aborted, policies, totals);
+                            updatePolicies(connection, policies.values());
+                        }
+                        connection.commit();
+                        if (ids.size() < chunkSize) {
+                            return corrected;
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al reconstruir los totales desde el diario " + journal.getFile(), e);
+        }
+    }
+
+    /**
+     * Calcula los totales de las pólizas bloqueadas: los pagos del diario
+     * menos los que ya no están completados, más los completados que no
+     * salieron de lo recorrido
+     * @return cantidad de pólizas que difieren, marcadas como cambiadas
+     */
+    private static int sumUnderLock(Connection connection, String instance, long until, Set<Long> aborted,
+                                    Map<Long, PolicyTotals> policies, Map<Long, long[]> journalTotals)
+            throws SQLException {
+        if (policies.isEmpty()) {
+            return 0;
+        }
+        // Por póliza: filas del diario, centavos completados, filas y centavos de otros pagos completados
+        Map<Long, long[]> rows = new HashMap<>();
+        try (PreparedStatement select = connection.prepareStatement(selectChunkTotals(policies.size()))) {
+            int index = 1;
+            for (int i = 0; i < 4; i++) {
+                select.setString(index++, instance);
+                select.setLong(index++, until);
+            }
+            for (Long id : policies.keySet()) {
+                select.setLong(index++, id);
+            }
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    rows.put(rs.getLong(1), new long[] {rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5)});
+                }
+            }
+        }
+        // Por póliza: filas no completadas, filas anuladas, y filas y centavos no completados sin anular
+        Map<Long, long[]> notCompleted = new HashMap<>();
+        try (PreparedStatement select = connection.prepareStatement(selectChunkNotCompleted(policies.size()))) {
+            select.setString(1, instance);
+            select.setLong(2, until);
+            int index = 3;
+            for (Long id : policies.keySet()) {
+                select.setLong(index++, id);
+            }
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    long[] rejected = notCompleted.computeIfAbsent(rs.getLong(1), id -> new long[4]);
+                    rejected[0]++;
+                    if (aborted.contains(rs.getLong(2))) {
+                        rejected[1]++;
+                    } else {
+                        rejected[2]++;
+                        rejected[3] += rs.getLong(3);
+                    }
+                }
+            }
+        }
+        int changed = 0;
+        for (PolicyTotals policy : policies.values()) {
+            long[] journal = journalTotals.getOrDefault(policy.id, new long[2]);
+            long[] row = rows.getOrDefault(policy.id, new long[4]);
+            long[] rejected = notCompleted.getOrDefault(policy.id, new long[4]);
+            long paidCents;
+            long count;
+            if (row[0] - rejected[1] >= journal[1]) {
+                paidCents = journal[0] - rejected[3] + row[3];
+                count = journal[1] - rejected[2] + row[2];
+            } else {
+                // Un pago del diario sin fila: su transacción se revirtió y la anulación todavía no se agregó
+                log.warning("La póliza " + policy.id + " tiene pagos del diario " + instance
+                    + " sin fila; se suman solo sus filas completadas");
+                paidCents = row[1] + row[3];
+                count = row[0] - rejected[0] + row[2];
+            }
+            String rebuilt = PolicyStatus.CANCELLED.name().equals(policy.status) ? policy.status
+                : Policy.statusForPayments(paidCents, policy.premiumCents).name();
+            if (policy.paidCents != paidCents || policy.count != count || !rebuilt.equals(policy.status)) {
+                policy.paidCents = paidCents;
+                policy.count = (int) count;
+                policy.changed = true;
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Totales de una póliza bloqueada mientras se aplica un bloque
+     */
+    private static final class PolicyTotals {
+
+        final long id;
+        final long premiumCents;
+        final String status;
+        long paidCents;
+        int count;
+        boolean changed;
+
+        PolicyTotals(long id, long premiumCents, long paidCents, int count, String status) {
+            this.id = id;
+            this.premiumCents = premiumCents;
+            this.paidCents = paidCents;
+            this.count = count;
+            this.status = status;
+        }
+
+        long remainingCents() {
+            return Math.max(0, premiumCents - paidCents);
+        }
+
+        void add(long amountCents, int payments) {
+            paidCents += amountCents;
+            count += payments;
+            changed = true;
+        }
+    }
+
+    /**
+     * Pagos del diario pendientes de aplicar, sin las anulaciones ni los
+     * pagos anulados. Se copian porque el diario reutiliza el registro que
+     * entrega.
+     */
+    private static final class Chunk {
+
+        final long[] sequences;
+        final long[] policyIds;
+        final long[] amounts;
+        final LocalDate[] dates;
+        final String[] methods;
+        final String[] references;
+        int size;
+        long lastSequence;  // último registro recorrido, aplicado o no
+        long savedSequence; // último registro guardado en PaymentJournalProgress
+
+        Chunk(int capacity, long after) {
+            sequences = new long[capacity];
+            policyIds = new long[capacity];
+            amounts = new long[capacity];
+            dates = new LocalDate[capacity];
+            methods = new String[capacity];
+            references = new String[capacity];
+            lastSequence = after;
+            savedSequence = after;
+        }
+
+        void add(PaymentJournal.JournalRecord record, Set<Long> aborted) {
+            lastSequence = record.getSequence();
+            if (record.isAbort() || aborted.contains(record.getSequence())) {
+                return;
+            }
+            sequences[size] = record.getSequence();
+            policyIds[size] = record.getPolicyId();
+            amounts[size] = record.getAmountCents();
+            dates[size] = record.getPaymentDate();
+            methods[size] = record.getMethod();
+            references[size] = record.getReference();
+            size++;
+        }
+    }
+}
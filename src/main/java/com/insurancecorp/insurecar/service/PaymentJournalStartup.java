@@ -0,0 +1,58 @@
+package com.insurancecorp.insurecar.service;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Abre y verifica el diario de pagos al iniciar la aplicación, aplica lo
+ * pendiente y cierra el diario al detenerla. Si el diario no se puede abrir
+ * o quedó atrás de la base, la aplicación no inicia: registrar pagos con él
+ * repetiría secuencias ya usadas.
+ */
+public class PaymentJournalStartup implements ServletContextListener {
+
+    private static final Logger log = Logger.getLogger(PaymentJournalStartup.class.getName());
+
+    private PaymentJournal journal;
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        PaymentJournal opened = PaymentJournal.shared();
+        PaymentJournalProjector projector;
+        try {
+            projector = PaymentJournalProjector.forApplication();
+            projector.verify(opened);
+        } catch (IllegalStateException e) {
+            close(opened);
+            throw e;
+        }
+        journal = opened;
+        try {
+            long applied = projector.catchUp(journal);
+            if (applied > 0) {
+                log.info("Se aplicaron " + applied + " pagos pendientes del diario " + journal.getFile());
+            }
+        } catch (IllegalStateException e) {
+            // Los pagos pendientes se aplican en el próximo inicio; los registrados desde ahora siguen en el diario
+            log.log(Level.WARNING, "No se aplicó el diario de pagos", e);
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        if (journal != null) {
+            close(journal);
+        }
+    }
+
+    private static void close(PaymentJournal journal) {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "No se cerró el diario de pagos", e);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Registra pagos completados sin pagar de más una póliza, aun con pagos
+ * concurrentes desde varios hilos o varios servidores.
+ *
+ * Cada intento lee el saldo y la versión de la póliza, verifica el monto y
+ * actualiza los totales solo si la versión no cambió (la misma columna que
+ * usa {@code @Version} en Policy); si otro pago se adelantó, se reintenta con
+ * el saldo nuevo, hasta {@value #DEFAULT_MAX_ATTEMPTS} veces. Dentro del
+ * proceso, los pagos de una misma póliza se serializan con
+ * {@link PolicyLockStripes}, de modo que los reintentos solo ocurren entre
+ * servidores y no se encadenan bajo carga.
+ *
+ * Con un {@link PaymentJournal diario}, cada pago aceptado se agrega al
+ * diario dentro de la transacción y se espera a que sea durable antes de
+ * confirmarla; la fila de Payment guarda la instancia del diario y la
+ * secuencia del registro, así cada servidor escribe su propio diario. Si la
+ * inserción o la confirmación fallan, el pago se anula en el diario; si el
+ * servidor cae antes de confirmar, {@link PaymentJournalProjector} aplica el
+ * pago desde el diario al ponerse al día. Los pagos rechazados no se escriben.
+ */
+public class PaymentPoster {
+
+    /**
+     * Resultado de un registro
+     */
+    public enum Outcome {
+        /** Pago registrado y sumado a la póliza */
+        POSTED,
+        /** Monto no positivo */
+        INVALID_AMOUNT,
+        /** El monto supera el saldo de la póliza */
+        EXCEEDS_REMAINING,
+        /** La póliza no existe o está cancelada */
+        POLICY_NOT_PAYABLE,
+        /** La póliza cambió en todos los intentos; se puede volver a intentar más tarde */
+        CONFLICT
+    }
+
+    static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    private static final long BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    static final String SELECT_POLICY =
+        "select premiumCents, totalPaidCents, completedPaymentCount, status, version from Policy where id = ?";
+
+    static final String UPDATE_POLICY =
+        "update Policy set totalPaidCents = ?, completedPaymentCount = ?, status = ?, version = version + 1"
+        + " where id = ? and version = ?";
+
+    static final String INSERT_PAYMENT =
+        "insert into Payment (policy_id, amountCents, paymentDate, method, status, journalInstance, journalSequence,"
+        + " createdAt, updatedAt) values (?, ?, ?, ?, '" + Payment.COMPLETED + "', ?, ?, ?, ?)";
+
+    private final DataSource dataSource;
+    private final PolicyLockStripes locks;
+    private final int maxAttempts;
+    private final PaymentJournal journal;
+
+    public PaymentPoster(DataSource dataSource) {
+        this(dataSource, (PaymentJournal) null);
+    }
+
+    /**
+     * @param dataSource fuente de datos
+     * @param journal diario donde se escribe cada pago antes de confirmarlo, o null para no usar diario
+     */
+    public PaymentPoster(DataSource dataSource, PaymentJournal journal) {
+        this(dataSource, PolicyLockStripes.shared(), DEFAULT_MAX_ATTEMPTS, journal);
+    }
+
+    PaymentPoster(DataSource dataSource, PolicyLockStripes locks, int maxAttempts) {
+        this(dataSource, locks, maxAttempts, null);
+    }
+
+    PaymentPoster(DataSource dataSource, PolicyLockStripes locks, int maxAttempts, PaymentJournal journal) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("La cantidad de intentos debe ser mayor a 0");
+        }
+        this.dataSource = dataSource;
+        this.locks = locks;
+        this.maxAttempts = maxAttempts;
+        this.journal = journal;
+    }
+
+    /**
+     * Crea un registro de pagos sobre la fuente de datos y el diario de la aplicación
+     * @return registro listo para usar
+     * @throws IllegalStateException si la fuente de datos o el diario no están disponibles
+     */
+    public static PaymentPoster forApplication() {
+        try {
+            return new PaymentPoster((DataSource) new InitialContext().lookup(CoverageRepricingJob.DATA_SOURCE_NAME),
+                PaymentJournal.shared());
+        } catch (NamingException e) {
+            throw new IllegalStateException("No se encontró la fuente de datos " + CoverageRepricingJob.DATA_SOURCE_NAME, e);
+        }
+    }
+
+    /**
+     * Registra un pago completado
+     * @param policyId id de la póliza
+     * @param amountCents monto en centavos
+     * @param method medio de pago
+     * @return resultado del registro
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public PostingResult post(long policyId, long amountCents, String method) {
+        if (amountCents <= 0) {
+            return new PostingResult(Outcome.INVALID_AMOUNT, null, 0, 0);
+        }
+        ReentrantLock lock = locks.forPolicy(policyId);
+        lock.lock();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (int attempt = 1; ; attempt++) {
+                    PostingResult result = attempt(connection, policyId, amountCents, method, attempt);
+                    if (result != null) {
+                        try {
+                            if (result.journalSequence > 0) {
+                                journal.sync(result.journalSequence); // confirmación en grupo con los demás hilos
+                            }
+                            connection.commit();
+                        } catch (SQLException | RuntimeException e) {
+                            abort(result.journalSequence, policyId, e);
+                            throw e;
+                        }
+                        return result;
+                    }
+                    connection.rollback();
+                    if (attempt == maxAttempts) {
+                        return new PostingResult(Outcome.CONFLICT, null, attempt, 0);
+                    }
+                    // Espera aleatoria creciente para que los servidores en conflicto no reintenten a la vez
+                    LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(BACKOFF_NANOS * attempt));
+                }
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al registrar el pago de la póliza " + policyId, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Intenta registrar el pago con la versión leída
+     * @return resultado, o null si otra transacción cambió la póliza
+     */
+    private PostingResult attempt(Connection connection, long policyId, long amountCents, String method, int attempt)
+            throws SQLException {
+        long premiumCents;
+        long totalPaidCents;
+        int paymentCount;
+        long version;
+        try (PreparedStatement select = connection.prepareStatement(SELECT_POLICY)) {
+            select.setLong(1, policyId);
+            try (ResultSet rs = select.executeQuery()) {
+                if (!rs.next() || PolicyStatus.CANCELLED.name().equals(rs.getString(4))) {
+                    return new PostingResult(Outcome.POLICY_NOT_PAYABLE, null, attempt, 0);
+                }
+                premiumCents = rs.getLong(1);
+                totalPaidCents = rs.getLong(2);
+                paymentCount = rs.getInt(3);
+                version = rs.getLong(5);
+            }
+        }
+        long remainingCents = Math.max(0, premiumCents - totalPaidCents);
+        if (amountCents > remainingCents) {
+            return new PostingResult(Outcome.EXCEEDS_REMAINING, null, attempt, remainingCents);
+        }
+
+        long paidCents = totalPaidCents + amountCents;
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_POLICY)) {
+            update.setLong(1, paidCents);
+            update.setInt(2, paymentCount + 1);
+            update.setString(3, Policy.statusForPayments(paidCents, premiumCents).name());
+            update.setLong(4, policyId);
+            update.setLong(5, version);
+            if (update.executeUpdate() == 0) {
+                return null;
+            }
+        }
+
+        LocalDate today = LocalDate.now();
+        long sequence = journal != null ? journal.append(policyId, amountCents, today, method, null) : 0;
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_PAYMENT, Statement.RETURN_GENERATED_KEYS)) {
+            insert.setLong(1, policyId);
+            insert.setLong(2, amountCents);
+            insert.setObject(3, today);
+            insert.setString(4, method);
+            insert.setString(5, sequence > 0 ? journal.getInstance() : null);
+            insert.setObject(6, sequence > 0 ? sequence : null);
+            insert.setObject(7, today);
+            insert.setObject(8, today);
+            insert.executeUpdate();
+            try (ResultSet keys = insert.getGeneratedKeys()) {
+                Long paymentId = keys.next() ? keys.getLong(1) : null;
+                PostingResult result = new PostingResult(Outcome.POSTED, paymentId, attempt, premiumCents - paidCents);
+                result.journalSequence = sequence;
+                return result;
+            }
+        } catch (SQLException | RuntimeException e) {
+            abort(sequence, policyId, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Anula en el diario un pago cuya transacción se revierte, para que la
+     * proyección no lo aplique al ponerse al día
+     */
+    private void abort(long sequence, long policyId, Exception cause) {
+        if (sequence > 0) {
+            try {
+                journal.abort(sequence, policyId);
+            } catch (RuntimeException e) {
+                // Sin la anulación, la proyección aplica el pago si todavía entra en el saldo
+                cause.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * Resultado de registrar un pago
+     */
+    public static final class PostingResult {
+
+        private final Outcome outcome;
+        private final Long paymentId;
+        private final int attempts;
+        private final long remainingCents;
+        private long journalSequence;
+
+        PostingResult(Outcome outcome, Long paymentId, int attempts, long remainingCents) {
+            this.outcome = outcome;
+            this.paymentId = paymentId;
+            this.attempts = attempts;
+            this.remainingCents = remainingCents;
+        }
+
+        /** @return resultado */
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        /** @return true si el pago quedó registrado */
+        public boolean isPosted() {
+            return outcome == Outcome.POSTED;
+        }
+
+        /** @return id del pago registrado, o null si no se registró */
+        public Long getPaymentId() {
+            return paymentId;
+        }
+
+        /** @return intentos realizados */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /** @return saldo de la póliza después del registro, en centavos */
+        public long getRemainingCents() {
+            return remainingCents;
+        }
+
+        /** @return secuencia del pago en el diario, o 0 si no se escribió en un diario */
+        public long getJournalSequence() {
+            return journalSequence;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s en %d intentos, saldo %d centavos", outcome, attempts, remainingCents);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Total pagado de las pólizas calculado por la base de datos.
+ *
+ * Suma los pagos completados con el índice IDX_PAYMENT_POLICY_STATUS_AMOUNT
+ * (policy_id, status, amountCents), que contiene todas las columnas de la
+ * consulta: la suma se resuelve leyendo solo el índice, sin cargar la
+ * colección de pagos de cada póliza. Para pantallas de lista y procesos de
+ * cobranza, {@link #paidCents(Collection)} resuelve miles de pólizas con una
+ * consulta agrupada por cada {@value UniquenessChecker#MAX_IN_PARAMETERS} ids.
+ */
+public class PaymentTotals {
+
+    static final String SELECT_PAID =
+        "select coalesce(sum(amountCents), 0) from Payment where policy_id = ? and status = '" + Payment.COMPLETED + "'";
+
+    private final DataSource dataSource;
+
+    public PaymentTotals(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Crea una consulta sobre la fuente de datos de la aplicación
+     * @return consulta lista para usar
+     * @throws IllegalStateException si la fuente de datos no está disponible
+     */
+    public static PaymentTotals forApplication() {
+        try {
+            return new PaymentTotals((DataSource) new InitialContext().lookup(CoverageRepricingJob.DATA_SOURCE_NAME));
+        } catch (NamingException e) {
+            throw new IllegalStateException("No se encontró la fuente de datos " + CoverageRepricingJob.DATA_SOURCE_NAME, e);
+        }
+    }
+
+    static String selectPaidIn(int count) {
+        StringBuilder sql = new StringBuilder("select policy_id, sum(amountCents) from Payment where status = '")
+            .append(Payment.COMPLETED).append("' and policy_id in (");
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(") group by policy_id").toString();
+    }
+
+    /**
+     * Suma los pagos completados de una póliza
+     * @param policyId id de la póliza
+     * @return total pagado en centavos; 0 si no tiene pagos completados
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public long paidCents(long policyId) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement select = connection.prepareStatement(SELECT_PAID)) {
+            select.setLong(1, policyId);
+            try (ResultSet rs = select.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al sumar los pagos de la póliza " + policyId, e);
+        }
+    }
+
+    /**
+     * Suma los pagos completados de varias pólizas
+     * @param policyIds ids de las pólizas; los repetidos y nulos se ignoran
+     * @return total pagado en centavos por id de póliza, con 0 para las que no tienen pagos completados
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public Map<Long, Long> paidCents(Collection<Long> policyIds) {
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(policyIds));
+        ids.remove(null);
+        Map<Long, Long> totals = new HashMap<>(ids.size() * 4 / 3 + 1);
+        for (Long id : ids) {
+            totals.put(id, 0L);
+        }
+        if (ids.isEmpty()) {
+            return totals;
+        }
+        int chunk = UniquenessChecker.MAX_IN_PARAMETERS;
+        try (Connection connection = dataSource.getConnection()) {
+            PreparedStatement select = null;
+            try {
+                for (int from = 0; from < ids.size(); from += chunk) {
+                    int to = Math.min(ids.size(), from + chunk);
+                    // Los bloques completos comparten la misma sentencia; solo el último tiene otro tamaño
+                    if (select == null || to - from < chunk) {
+                        if (select != null) {
+                            select.close();
+                        }
+                        select = connection.prepareStatement(selectPaidIn(to - from));
+                    }
+                    for (int i = from; i < to; i++) {
+                        select.setLong(i - from + 1, ids.get(i));
+                    }
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            totals.put(rs.getLong(1), rs.getLong(2));
+                        }
+                    }
+                }
+            } finally {
+                if (select != null) {
+                    select.close();
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al sumar los pagos de " + ids.size() + " pólizas", e);
+        }
+        return totals;
+    }
+}
@@ -0,0 +1,205 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Verifica los totales de pagos guardados en cada póliza contra los pagos.
+ *
+ * Policy mantiene totalPaidCents y completedPaymentCount con la diferencia de
+ * cada pago al completarse, fallar o revertirse, sin recorrer la colección de
+ * pagos. Esta verificación recalcula los totales desde las filas de Payment
+ * en una sola consulta agrupada y devuelve solo las pólizas que no coinciden;
+ * {@link #repair(List)} las corrige.
+ */
+public class PaymentTotalsChecker {
+
+    static final String SELECT_MISMATCHES =
+        "select p.id, p.policyNumber, p.totalPaidCents, p.completedPaymentCount,"
+        + " coalesce(sum(pay.amountCents), 0), count(pay.id)"
+        + " from Policy p"
+        + " left join Payment pay on pay.policy_id = p.id and lower(pay.status) = 'completed'"
+        + " group by p.id, p.policyNumber, p.totalPaidCents, p.completedPaymentCount"
+        + " having p.totalPaidCents <> coalesce(sum(pay.amountCents), 0) or p.completedPaymentCount <> count(pay.id)"
+        + " order by p.id";
+
+    static final String SELECT_POLICY_FOR_UPDATE =
+        "select premiumCents, totalPaidCents, completedPaymentCount, status from Policy where id = ? for update";
+
+    static final String SELECT_PAYMENT_TOTALS =
+        "select coalesce(sum(amountCents), 0), count(*) from Payment where policy_id = ? and lower(status) = 'completed'";
+
+    static final String UPDATE_TOTALS =
+        "update Policy set totalPaidCents = ?, completedPaymentCount = ?, status = ?, version = version + 1 where id = ?";
+
+    private final DataSource dataSource;
+
+    public PaymentTotalsChecker(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Crea una verificación sobre la fuente de datos de la aplicación
+     * @return verificación lista para usar
+     * @throws IllegalStateException si la fuente de datos no está disponible
+     */
+    public static PaymentTotalsChecker forApplication() {
+        try {
+            return new PaymentTotalsChecker((DataSource) new InitialContext().lookup(CoverageRepricingJob.DATA_SOURCE_NAME));
+        } catch (NamingException e) {
+            throw new IllegalStateException("No se encontró la fuente de datos " + CoverageRepricingJob.DATA_SOURCE_NAME, e);
+        }
+    }
+
+    /**
+     * Busca las pólizas cuyos totales no coinciden con sus pagos completados
+     * @return diferencias ordenadas por id de póliza; vacía si todo coincide
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public List<Mismatch> check() {
+        List<Mismatch> mismatches = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement select = connection.prepareStatement(SELECT_MISMATCHES);
+             ResultSet rs = select.executeQuery()) {
+            while (rs.next()) {
+                mismatches.add(new Mismatch(rs.getLong(1), rs.getString(2), rs.getLong(3), rs.getInt(4),
+                    rs.getLong(5), rs.getInt(6)));
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al verificar los totales de pagos", e);
+        }
+        return mismatches;
+    }
+
+    /**
+     * Corrige los totales y el estado de las pólizas. Cada póliza se bloquea
+     * y sus totales se vuelven a sumar bajo el bloqueo, de modo que un pago
+     * registrado después de {@link #check()} no se pierde; la versión avanza
+     * como en el resto de los registros de pagos.
+     * @param mismatches diferencias encontradas por {@link #check()}
+     * @return pólizas corregidas
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public int repair(List<Mismatch> mismatches) {
+        if (mismatches.isEmpty()) {
+            return 0;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement lock = connection.prepareStatement(SELECT_POLICY_FOR_UPDATE);
+                 PreparedStatement totals = connection.prepareStatement(SELECT_PAYMENT_TOTALS);
+                 PreparedStatement update = connection.prepareStatement(UPDATE_TOTALS)) {
+                int repaired = 0;
+                // En orden de id, igual que el resto de los registros de pagos
+                for (long policyId : mismatches.stream().mapToLong(Mismatch::getPolicyId).sorted().distinct().toArray()) {
+                    long premiumCents;
+                    long storedPaidCents;
+                    int storedCount;
+                    String status;
+                    lock.setLong(1, policyId);
+                    try (ResultSet rs = lock.executeQuery()) {
+                        if (!rs.next()) {
+                            continue;
+                        }
+                        premiumCents = rs.getLong(1);
+                        storedPaidCents = rs.getLong(2);
+                        storedCount = rs.getInt(3);
+                        status = rs.getString(4);
+                    }
+                    long paidCents;
+                    int count;
+                    totals.setLong(1, policyId);
+                    try (ResultSet rs = totals.executeQuery()) {
+                        rs.next();
+                        paidCents = rs.getLong(1);
+                        count = rs.getInt(2);
+                    }
+                    String repairedStatus = PolicyStatus.CANCELLED.name().equals(status) ? status
+                        : Policy.statusForPayments(paidCents, premiumCents).name();
+                    if (paidCents == storedPaidCents && count == storedCount && repairedStatus.equals(status)) {
+                        continue; // otra transacción ya la dejó bien
+                    }
+                    update.setLong(1, paidCents);
+                    update.setInt(2, count);
+                    update.setString(3, repairedStatus);
+                    update.setLong(4, policyId);
+                    repaired += update.executeUpdate();
+                }
+                connection.commit();
+                return repaired;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al corregir los totales de pagos", e);
+        }
+    }
+
+    /**
+     * Póliza cuyos totales guardados no coinciden con sus pagos
+     */
+    public static final class Mismatch {
+
+        private final long policyId;
+        private final String policyNumber;
+        private final long storedPaidCents;
+        private final int storedPaymentCount;
+        private final long actualPaidCents;
+        private final int actualPaymentCount;
+
+        Mismatch(long policyId, String policyNumber, long storedPaidCents, int storedPaymentCount,
+                 long actualPaidCents, int actualPaymentCount) {
+            this.policyId = policyId;
+            this.policyNumber = policyNumber;
+            this.storedPaidCents = storedPaidCents;
+            this.storedPaymentCount = storedPaymentCount;
+            this.actualPaidCents = actualPaidCents;
+            this.actualPaymentCount = actualPaymentCount;
+        }
+
+        /** @return id de la póliza */
+        public long getPolicyId() {
+            return policyId;
+        }
+
+        /** @return número de la póliza */
+        public String getPolicyNumber() {
+            return policyNumber;
+        }
+
+        /** @return total pagado guardado en la póliza, en centavos */
+        public long getStoredPaidCents() {
+            return storedPaidCents;
+        }
+
+        /** @return cantidad de pagos completados guardada en la póliza */
+        public int getStoredPaymentCount() {
+            return storedPaymentCount;
+        }
+
+        /** @return suma de los pagos completados, en centavos */
+        public long getActualPaidCents() {
+            return actualPaidCents;
+        }
+
+        /** @return cantidad de pagos completados */
+        public int getActualPaymentCount() {
+            return actualPaymentCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Póliza %s: guardado %d centavos en %d pagos, según los pagos %d centavos en %d pagos",
+                policyNumber, storedPaidCents, storedPaymentCount, actualPaidCents, actualPaymentCount);
+        }
+    }
+}
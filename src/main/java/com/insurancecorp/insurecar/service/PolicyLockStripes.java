@@ -0,0 +1,58 @@
+package com.insurancecorp.insurecar.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Candados por póliza repartidos en una cantidad fija de franjas.
+ *
+ * Los pagos de una misma póliza siempre caen en la misma franja y se
+ * registran de a uno dentro del proceso, así que no compiten por la versión
+ * de la póliza ni reintentan entre sí; pólizas distintas casi siempre usan
+ * franjas distintas y se registran en paralelo. La memoria es fija, sin un
+ * candado por póliza que haya que crear o liberar.
+ */
+final class PolicyLockStripes {
+
+    private static final PolicyLockStripes shared =
+        new PolicyLockStripes(Runtime.getRuntime().availableProcessors() * 8);
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    /**
+     * Crea las franjas
+     * @param stripes cantidad mínima de franjas; se redondea a una potencia de 2
+     */
+    PolicyLockStripes(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Franjas compartidas por todo el proceso
+     * @return franjas compartidas
+     */
+    static PolicyLockStripes shared() {
+        return shared;
+    }
+
+    /**
+     * Obtiene el candado de una póliza
+     * @param policyId id de la póliza
+     * @return candado de su franja
+     */
+    ReentrantLock forPolicy(long policyId) {
+        // Mezcla los bits del id para repartir uniformemente ids consecutivos
+        long hash = policyId * 0x9E3779B97F4A7C15L;
+        return locks[(int) (hash >>> 32) & mask];
+    }
+
+    /** @return cantidad de franjas */
+    int size() {
+        return locks.length;
+    }
+}
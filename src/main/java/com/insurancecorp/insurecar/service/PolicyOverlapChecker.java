@@ -0,0 +1,289 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Detecta pólizas no canceladas del mismo vehículo con vigencias superpuestas.
+ *
+ * Al crear o renovar una póliza, {@link #findOverlaps(Policy)} busca sus
+ * superposiciones con una consulta por rango sobre el índice
+ * IDX_POLICY_VEHICLE_DATES (vehicle_id, startDate, endDate), que solo lee las
+ * pólizas del vehículo. {@link #sweep(Consumer)} revisa toda la cartera en una
+ * sola pasada ordenada por vehículo y fecha de inicio: por cada vehículo
+ * mantiene las pólizas aún vigentes ordenadas por fecha de fin, de modo que
+ * cada póliza se compara solo con las que se superponen con ella. Las
+ * vigencias incluyen ambos extremos.
+ *
+ * Al guardar, {@link #lockAndFindOverlaps(Connection, Policy)} bloquea antes
+ * la fila del vehículo en la transacción, así dos pólizas superpuestas del
+ * mismo vehículo guardadas a la vez se verifican una después de la otra.
+ */
+public class PolicyOverlapChecker {
+
+    static final String SELECT_OVERLAPS =
+        "select id, policyNumber, startDate, endDate from Policy"
+        + " where vehicle_id = ? and startDate <= ? and endDate >= ?"
+        + " and (status is null or status <> 'CANCELLED') and id <> ?"
+        + " order by startDate";
+
+    static final String LOCK_VEHICLE = "select id from Vehicle where id = ? for update";
+
+    static final String SELECT_SWEEP =
+        "select id, vehicle_id, policyNumber, startDate, endDate from Policy"
+        + " where vehicle_id is not null and startDate is not null and endDate is not null"
+        + " and (status is null or status <> 'CANCELLED')"
+        + " order by vehicle_id, startDate";
+
+    private static final int SWEEP_FETCH_SIZE = 1000;
+
+    private final DataSource dataSource;
+
+    public PolicyOverlapChecker(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Crea una verificación sobre la fuente de datos de la aplicación
+     * @return verificación lista para usar
+     * @throws IllegalStateException si la fuente de datos no está disponible
+     */
+    public static PolicyOverlapChecker forApplication() {
+        try {
+            return new PolicyOverlapChecker((DataSource) new InitialContext().lookup(CoverageRepricingJob.DATA_SOURCE_NAME));
+        } catch (NamingException e) {
+            throw new IllegalStateException("No se encontró la fuente de datos " + CoverageRepricingJob.DATA_SOURCE_NAME, e);
+        }
+    }
+
+    /**
+     * Busca las pólizas guardadas del mismo vehículo que se superponen con una póliza
+     * @param policy póliza nueva o renovada
+     * @return superposiciones ordenadas por fecha de inicio; vacía si la póliza
+     *         no tiene vehículo guardado o fechas, o si está cancelada
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public List<Overlap> findOverlaps(Policy policy) {
+        try (Connection connection = dataSource.getConnection()) {
+            return findOverlaps(connection, policy);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al buscar superposiciones de la póliza " + policy.getPolicyNumber(), e);
+        }
+    }
+
+    /**
+     * Busca las superposiciones de una póliza con una conexión dada, por
+     * ejemplo la de la transacción que la guarda, que ve también las pólizas
+     * insertadas en ella
+     * @param connection conexión a usar; no se cierra
+     * @param policy póliza nueva o renovada
+     * @return superposiciones ordenadas por fecha de inicio
+     */
+    static List<Overlap> findOverlaps(Connection connection, Policy policy) throws SQLException {
+        List<Overlap> overlaps = new ArrayList<>();
+        if (policy.getVehicle() == null || policy.getVehicle().getId() == null || policy.getStartDate() == null
+                || policy.getEndDate() == null || policy.getStatus() == PolicyStatus.CANCELLED) {
+            return overlaps;
+        }
+        long policyId = policy.getId() != null ? policy.getId() : -1;
+        try (PreparedStatement select = connection.prepareStatement(SELECT_OVERLAPS)) {
+            select.setLong(1, policy.getVehicle().getId());
+            select.setObject(2, policy.getEndDate());
+            select.setObject(3, policy.getStartDate());
+            select.setLong(4, policyId);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    overlaps.add(new Overlap(policy.getVehicle().getId(), policyId, policy.getPolicyNumber(),
+                        rs.getLong(1), rs.getString(2),
+                        max(policy.getStartDate(), rs.getObject(3, LocalDate.class)),
+                        min(policy.getEndDate(), rs.getObject(4, LocalDate.class))));
+                }
+            }
+        }
+        return overlaps;
+    }
+
+    /**
+     * Bloquea el vehículo de una póliza y busca sus superposiciones con la
+     * conexión de la transacción que la guarda. El bloqueo dura hasta el fin
+     * de la transacción: otra que guarde una póliza del mismo vehículo espera
+     * y después ve la primera.
+     * @param connection conexión de la transacción; no se cierra
+     * @param policy póliza nueva o renovada
+     * @return superposiciones ordenadas por fecha de inicio
+     */
+    static List<Overlap> lockAndFindOverlaps(Connection connection, Policy policy) throws SQLException {
+        if (policy.getVehicle() != null && policy.getVehicle().getId() != null && policy.getStartDate() != null
+                && policy.getEndDate() != null && policy.getStatus() != PolicyStatus.CANCELLED) {
+            try (PreparedStatement lock = connection.prepareStatement(LOCK_VEHICLE)) {
+                lock.setLong(1, policy.getVehicle().getId());
+                lock.executeQuery().close();
+            }
+        }
+        return findOverlaps(connection, policy);
+    }
+
+    /**
+     * Revisa toda la cartera y entrega cada par de pólizas superpuestas
+     * @param sink destino de las superposiciones, en orden de vehículo
+     * @return cantidad de superposiciones encontradas
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public long sweep(Consumer<Overlap> sink) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement select = connection.prepareStatement(SELECT_SWEEP)) {
+            select.setFetchSize(SWEEP_FETCH_SIZE);
+            try (ResultSet rs = select.executeQuery()) {
+                Sweep sweep = new Sweep(sink);
+                while (rs.next()) {
+                    sweep.add(rs.getLong(2), rs.getLong(1), rs.getString(3), rs.getObject(4, LocalDate.class),
+                        rs.getObject(5, LocalDate.class));
+                }
+                return sweep.count;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al revisar las superposiciones de la cartera", e);
+        }
+    }
+
+    /**
+     * Revisa toda la cartera
+     * @return todas las superposiciones, en orden de vehículo
+     */
+    public List<Overlap> sweep() {
+        List<Overlap> overlaps = new ArrayList<>();
+        sweep(overlaps::add);
+        return overlaps;
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    /**
+     * Barrido de pólizas ordenadas por vehículo y fecha de inicio
+     */
+    static final class Sweep {
+
+        private final Consumer<Overlap> sink;
+        /** Pólizas del vehículo en curso que aún pueden superponerse, por fecha de fin */
+        private final PriorityQueue<Interval> active = new PriorityQueue<>(Comparator.comparing(interval -> interval.end));
+        private long vehicleId = Long.MIN_VALUE;
+        long count;
+
+        Sweep(Consumer<Overlap> sink) {
+            this.sink = sink;
+        }
+
+        void add(long vehicleId, long policyId, String policyNumber, LocalDate start, LocalDate end) {
+            if (vehicleId != this.vehicleId) {
+                active.clear();
+                this.vehicleId = vehicleId;
+            }
+            while (!active.isEmpty() && active.peek().end.isBefore(start)) {
+                active.poll();
+            }
+            for (Interval other : active) {
+                sink.accept(new Overlap(vehicleId, other.policyId, other.policyNumber, policyId, policyNumber,
+                    start, min(end, other.end)));
+                count++;
+            }
+            active.add(new Interval(policyId, policyNumber, end));
+        }
+    }
+
+    private static final class Interval {
+
+        final long policyId;
+        final String policyNumber;
+        final LocalDate end;
+
+        Interval(long policyId, String policyNumber, LocalDate end) {
+            this.policyId = policyId;
+            this.policyNumber = policyNumber;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Par de pólizas del mismo vehículo con vigencias superpuestas
+     */
+    public static final class Overlap {
+
+        private final long vehicleId;
+        private final long policyId;
+        private final String policyNumber;
+        private final long otherPolicyId;
+        private final String otherPolicyNumber;
+        private final LocalDate from;
+        private final LocalDate to;
+
+        Overlap(long vehicleId, long policyId, String policyNumber, long otherPolicyId, String otherPolicyNumber,
+                LocalDate from, LocalDate to) {
+            this.vehicleId = vehicleId;
+            this.policyId = policyId;
+            this.policyNumber = policyNumber;
+            this.otherPolicyId = otherPolicyId;
+            this.otherPolicyNumber = otherPolicyNumber;
+            this.from = from;
+            this.to = to;
+        }
+
+        /** @return id del vehículo */
+        public long getVehicleId() {
+            return vehicleId;
+        }
+
+        /** @return id de la primera póliza, o -1 si aún no está guardada */
+        public long getPolicyId() {
+            return policyId;
+        }
+
+        /** @return número de la primera póliza */
+        public String getPolicyNumber() {
+            return policyNumber;
+        }
+
+        /** @return id de la póliza con la que se superpone */
+        public long getOtherPolicyId() {
+            return otherPolicyId;
+        }
+
+        /** @return número de la póliza con la que se superpone */
+        public String getOtherPolicyNumber() {
+            return otherPolicyNumber;
+        }
+
+        /** @return primer día superpuesto */
+        public LocalDate getFrom() {
+            return from;
+        }
+
+        /** @return último día superpuesto */
+        public LocalDate getTo() {
+            return to;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Vehículo %d: las pólizas %s y %s se superponen del %s al %s", vehicleId,
+                policyNumber, otherPolicyNumber, from, to);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.Policy;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.validation.ValidationException;
+import org.hibernate.Session;
+import org.openxava.jpa.XPersistence;
+
+/**
+ * Listener JPA de {@link Policy} que impide guardar una póliza nueva o
+ * renovada cuya vigencia se superpone con otra póliza del mismo vehículo
+ * (ver {@link PolicyOverlapChecker}).
+ *
+ * Al modificar una póliza solo se verifica si cambió su vehículo, su vigencia
+ * o su cancelación, de modo que registrar un pago no falla por
+ * superposiciones anteriores a la verificación. La consulta usa la conexión
+ * de la transacción en curso: ve las pólizas insertadas en la misma
+ * transacción y no espera los bloqueos que esa transacción tiene tomados.
+ * Antes de consultar bloquea la fila del vehículo hasta el fin de la
+ * transacción, de modo que dos pólizas del mismo vehículo guardadas a la vez
+ * no pasan ambas la verificación.
+ */
+public class PolicyOverlapListener {
+
+    static volatile Function<Policy, List<PolicyOverlapChecker.Overlap>> finder = PolicyOverlapListener::findInTransaction;
+
+    @PrePersist
+    public void rejectOverlapsOnCreate(Policy policy) {
+        reject(policy);
+    }
+
+    @PreUpdate
+    public void rejectOverlapsOnChange(Policy policy) {
+        if (policy.isTermChanged()) {
+            reject(policy);
+        }
+    }
+
+    private static void reject(Policy policy) {
+        List<PolicyOverlapChecker.Overlap> overlaps = finder.apply(policy);
+        if (!overlaps.isEmpty()) {
+            throw new ValidationException("La vigencia se superpone con las pólizas "
+                + overlaps.stream().map(PolicyOverlapChecker.Overlap::getOtherPolicyNumber).collect(Collectors.joining(", "))
+                + " del mismo vehículo");
+        }
+    }
+
+    private static List<PolicyOverlapChecker.Overlap> findInTransaction(Policy policy) {
+        return XPersistence.getManager().unwrap(Session.class)
+            .doReturningWork(connection -> PolicyOverlapChecker.lockAndFindOverlaps(connection, policy));
+    }
+}
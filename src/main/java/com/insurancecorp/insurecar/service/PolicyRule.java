@@ -0,0 +1,43 @@
+package com.insurancecorp.insurecar.service;
+
+/**
+ * Reglas que verifica {@link InsuranceService#checkPolicy}.
+ * Cada regla ocupa un bit de {@link PolicyValidation}; su mensaje se busca por
+ * clave en el recurso i18n/insurecar-messages.
+ */
+public enum PolicyRule {
+
+    POLICY_REQUIRED("policy_required"),
+    CUSTOMER_REQUIRED("policy_customer_required"),
+    CUSTOMER_NOT_ELIGIBLE("policy_customer_not_eligible"),
+    VEHICLE_REQUIRED("policy_vehicle_required"),
+    VEHICLE_NOT_ELIGIBLE("policy_vehicle_not_eligible"),
+    COVERAGE_REQUIRED("policy_coverage_required"),
+    COVERAGE_INACTIVE("policy_coverage_inactive"),
+    START_DATE_REQUIRED("policy_start_date_required"),
+    END_DATE_REQUIRED("policy_end_date_required"),
+    START_AFTER_END("policy_start_after_end"),
+    START_DATE_IN_PAST("policy_start_date_in_past"),
+    PREMIUM_NOT_POSITIVE("policy_premium_not_positive");
+
+    /** Copia única de values(), para recorrer las reglas sin crear arreglos */
+    static final PolicyRule[] ALL = values();
+
+    private final String messageKey;
+    private final int bit;
+
+    PolicyRule(String messageKey) {
+        this.messageKey = messageKey;
+        this.bit = 1 << ordinal();
+    }
+
+    /** @return clave del mensaje en el recurso de mensajes */
+    public String getMessageKey() {
+        return messageKey;
+    }
+
+    /** @return bit de la regla en la máscara de violaciones */
+    public int bit() {
+        return bit;
+    }
+}
@@ -0,0 +1,122 @@
+package com.insurancecorp.insurecar.service;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * Resultado de validar una póliza: una máscara con un bit por cada
+ * {@link PolicyRule} violada.
+ *
+ * Una póliza válida se representa con la instancia compartida {@link #VALID},
+ * así que validar sin errores no crea objetos. Los mensajes solo se resuelven
+ * cuando se piden, en el idioma indicado, desde el recurso
+ * {@value #MESSAGES_BUNDLE}; el español es el idioma base.
+ */
+public final class PolicyValidation {
+
+    /** Recurso con los mensajes de cada regla */
+    public static final String MESSAGES_BUNDLE = "i18n.insurecar-messages";
+
+    /** Idioma de los mensajes de {@link #getMessages()} */
+    public static final Locale DEFAULT_LOCALE = new Locale("es");
+
+    /** Resultado de una póliza sin violaciones */
+    public static final PolicyValidation VALID = new PolicyValidation(0);
+
+    private static final ResourceBundle.Control NO_FALLBACK =
+        ResourceBundle.Control.getNoFallbackControl(ResourceBundle.Control.FORMAT_PROPERTIES);
+
+    private final int mask;
+
+    private PolicyValidation(int mask) {
+        this.mask = mask;
+    }
+
+    /**
+     * Obtiene el resultado de una máscara de violaciones
+     * @param mask bits de las reglas violadas
+     * @return {@link #VALID} si no hay violaciones
+     */
+    public static PolicyValidation of(int mask) {
+        return mask == 0 ? VALID : new PolicyValidation(mask);
+    }
+
+    /** @return true si no se violó ninguna regla */
+    public boolean isValid() {
+        return mask == 0;
+    }
+
+    /** @return bits de las reglas violadas */
+    public int getMask() {
+        return mask;
+    }
+
+    /**
+     * @param rule regla
+     * @return true si la póliza viola la regla
+     */
+    public boolean violates(PolicyRule rule) {
+        return (mask & rule.bit()) != 0;
+    }
+
+    /** @return cantidad de reglas violadas */
+    public int getViolationCount() {
+        return Integer.bitCount(mask);
+    }
+
+    /** @return reglas violadas */
+    public EnumSet<PolicyRule> getViolations() {
+        EnumSet<PolicyRule> violations = EnumSet.noneOf(PolicyRule.class);
+        for (PolicyRule rule : PolicyRule.ALL) {
+            if (violates(rule)) {
+                violations.add(rule);
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * Obtiene los mensajes de las reglas violadas en español
+     * @return lista modificable de mensajes, en el orden de las reglas
+     */
+    public List<String> getMessages() {
+        return getMessages(DEFAULT_LOCALE);
+    }
+
+    /**
+     * Obtiene los mensajes de las reglas violadas en un idioma
+     * @param locale idioma; si no hay traducción se usa el español
+     * @return lista modificable de mensajes, en el orden de las reglas
+     */
+    public List<String> getMessages(Locale locale) {
+        List<String> messages = new ArrayList<>(getViolationCount());
+        if (mask == 0) {
+            return messages;
+        }
+        ResourceBundle bundle = ResourceBundle.getBundle(MESSAGES_BUNDLE, locale, NO_FALLBACK);
+        for (PolicyRule rule : PolicyRule.ALL) {
+            if (violates(rule)) {
+                messages.add(bundle.getString(rule.getMessageKey()));
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PolicyValidation && ((PolicyValidation) other).mask == mask;
+    }
+
+    @Override
+    public int hashCode() {
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        return isValid() ? "Póliza válida" : "Póliza inválida: " + getViolations();
+    }
+}
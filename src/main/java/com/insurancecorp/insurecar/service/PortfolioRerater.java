@@ -0,0 +1,244 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Retarifica una cartera completa de pólizas en paralelo.
+ *
+ * La entrada se consume como flujo en bloques de tamaño fijo: el hilo que
+ * llama lee un bloque, lo entrega al pool fork/join y sigue leyendo. La
+ * cantidad de bloques en vuelo está acotada, de modo que la memoria usada no
+ * depende del tamaño de la cartera.
+ */
+public class PortfolioRerater {
+
+    /**
+     * Recibe la nueva prima, en centavos, de cada póliza retarificada.
+     * Se invoca desde varios hilos a la vez.
+     */
+    public interface PremiumSink {
+        void accept(Policy policy, long premiumCents);
+    }
+
+    static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    /** Por debajo de este tamaño un bloque se procesa sin dividirlo más */
+    private static final int SPLIT_THRESHOLD = 128;
+
+    private final InsuranceService insuranceService;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public PortfolioRerater(InsuranceService insuranceService) {
+        this(insuranceService, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public PortfolioRerater(InsuranceService insuranceService, ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de bloque debe ser mayor a 0");
+        }
+        this.insuranceService = insuranceService;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Retarifica todas las pólizas del flujo con la versión vigente de las reglas
+     * @param policies pólizas a retarificar; el flujo se consume y se cierra
+     * @param sink destino de las nuevas primas
+     * @return resumen con cantidades y rendimiento
+     */
+    public RerateResult rerate(Stream<Policy> policies, PremiumSink sink) {
+        return rerate(RatingRulesRegistry.current(), EvaluationContext.today(), policies, sink);
+    }
+
+    /**
+     * Retarifica todas las pólizas del flujo con una versión concreta de las reglas
+     * @param engine reglas a aplicar a toda la cartera
+     * @param context fecha de evaluación de toda la cartera
+     * @param policies pólizas a retarificar; el flujo se consume y se cierra
+     * @param sink destino de las nuevas primas
+     * @return resumen con cantidades y rendimiento
+     */
+    public RerateResult rerate(RatingEngine engine, EvaluationContext context, Stream<Policy> policies, PremiumSink sink) {
+        long start = System.nanoTime();
+        LongAdder rated = new LongAdder();
+        LongAdder skipped = new LongAdder();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        int maxInFlight = Math.max(2, pool.getParallelism() * 2);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        try (Stream<Policy> input = policies) {
+            Iterator<Policy> iterator = input.iterator();
+            while (iterator.hasNext() && failure.get() == null) {
+                Policy[] chunk = new Policy[chunkSize];
+                int size = 0;
+                while (size < chunkSize && iterator.hasNext()) {
+                    chunk[size++] = iterator.next();
+                }
+                inFlight.acquireUninterruptibly();
+                try {
+                    pool.execute(new ChunkTask(engine, context, chunk, 0, size, sink, rated, skipped, failure, inFlight));
+                } catch (RuntimeException | Error e) {
+                    // El bloque no llegó al pool: su permiso no lo libera ninguna tarea
+                    inFlight.release();
+                    throw e;
+                }
+            }
+        } finally {
+            // Esperar a que terminen todos los bloques entregados
+            inFlight.acquireUninterruptibly(maxInFlight);
+        }
+
+        Throwable error = failure.get();
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        }
+        return new RerateResult(engine.getVersion(), rated.sum(), skipped.sum(), System.nanoTime() - start);
+    }
+
+    private void rateOne(RatingEngine engine, EvaluationContext context, Policy policy, PremiumSink sink, LongAdder rated, LongAdder skipped) {
+        int months = policy.getDurationInMonths();
+        if (policy.getCustomer() == null || policy.getVehicle() == null || policy.getCoverage() == null || months <= 0) {
+            skipped.increment();
+            return;
+        }
+        long premiumCents = insuranceService.calculatePremiumCents(engine, policy.getCustomer(), policy.getVehicle(),
+            policy.getCoverage(), months, context);
+        sink.accept(policy, premiumCents);
+        rated.increment();
+    }
+
+    /**
+     * Tarea fork/join sobre un rango de un bloque
+     */
+    private class ChunkTask extends RecursiveAction {
+
+        private final RatingEngine engine;
+        private final EvaluationContext context;
+        private final Policy[] chunk;
+        private final int from;
+        private final int to;
+        private final PremiumSink sink;
+        private final LongAdder rated;
+        private final LongAdder skipped;
+        private final AtomicReference<Throwable> failure;
+        private final Semaphore inFlight;
+
+        ChunkTask(RatingEngine engine, EvaluationContext context, Policy[] chunk, int from, int to, PremiumSink sink,
+                  LongAdder rated, LongAdder skipped, AtomicReference<Throwable> failure, Semaphore inFlight) {
+            this.engine = engine;
+            this.context = context;
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+            this.sink = sink;
+            this.rated = rated;
+            this.skipped = skipped;
+            this.failure = failure;
+            this.inFlight = inFlight;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                rateRange(from, to);
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                inFlight.release();
+            }
+        }
+
+        private void rateRange(int lo, int hi) {
+            if (hi - lo <= SPLIT_THRESHOLD) {
+                for (int i = lo; i < hi; i++) {
+                    rateOne(engine, context, chunk[i], sink, rated, skipped);
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new RangeTask(this, lo, mid), new RangeTask(this, mid, hi));
+        }
+    }
+
+    /**
+     * Subdivisión de un bloque; no libera permisos, eso lo hace el bloque raíz
+     */
+    private static class RangeTask extends RecursiveAction {
+
+        private final ChunkTask root;
+        private final int from;
+        private final int to;
+
+        RangeTask(ChunkTask root, int from, int to) {
+            this.root = root;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            root.rateRange(from, to);
+        }
+    }
+
+    /**
+     * Resumen de una retarificación
+     */
+    public static final class RerateResult {
+
+        private final String rulesVersion;
+        private final long ratedCount;
+        private final long skippedCount;
+        private final long elapsedNanos;
+
+        RerateResult(String rulesVersion, long ratedCount, long skippedCount, long elapsedNanos) {
+            this.rulesVersion = rulesVersion;
+            this.ratedCount = ratedCount;
+            this.skippedCount = skippedCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** @return versión de las reglas aplicadas */
+        public String getRulesVersion() {
+            return rulesVersion;
+        }
+
+        /** @return pólizas retarificadas */
+        public long getRatedCount() {
+            return ratedCount;
+        }
+
+        /** @return pólizas omitidas por datos incompletos */
+        public long getSkippedCount() {
+            return skippedCount;
+        }
+
+        /** @return tiempo total en nanosegundos */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /** @return pólizas procesadas por segundo */
+        public double getPoliciesPerSecond() {
+            long total = ratedCount + skippedCount;
+            return elapsedNanos > 0 ? total * 1_000_000_000.0 / elapsedNanos : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d retarificadas, %d omitidas con reglas %s en %d ms (%.0f pólizas/s)",
+                ratedCount, skippedCount, rulesVersion, elapsedNanos / 1_000_000, getPoliciesPerSecond());
+        }
+    }
+}
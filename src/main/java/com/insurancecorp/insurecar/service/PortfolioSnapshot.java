@@ -0,0 +1,167 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Fotografía compacta de la cartera activa para simulaciones de tarifas.
+ *
+ * Al capturarla se resuelven una sola vez todos los datos de tarificación de
+ * cada póliza (prima base, edad del conductor, antigüedad del vehículo,
+ * duración, territorio y símbolo) y se guardan en arreglos primitivos, junto
+ * con el segmento de la póliza. Después se puede tarificar la cartera completa
+ * con cualquier versión de las reglas sin volver a tocar entidades ni la base
+ * de datos (ver {@link PremiumSimulator}). La fotografía es inmutable y se
+ * puede compartir entre hilos.
+ */
+public final class PortfolioSnapshot {
+
+    private final EvaluationContext context;
+    private final long[] basePremiumCents;
+    private final int[] driverAges;
+    private final int[] vehicleAges;
+    private final int[] durations;
+    private final int[] territories;
+    private final int[] vehicleSymbols;
+    private final int[] segments;
+    private final String[] segmentNames;
+
+    private PortfolioSnapshot(EvaluationContext context, long[] basePremiumCents, int[] driverAges, int[] vehicleAges,
+                              int[] durations, int[] territories, int[] vehicleSymbols, int[] segments, String[] segmentNames) {
+        this.context = context;
+        this.basePremiumCents = basePremiumCents;
+        this.driverAges = driverAges;
+        this.vehicleAges = vehicleAges;
+        this.durations = durations;
+        this.territories = territories;
+        this.vehicleSymbols = vehicleSymbols;
+        this.segments = segments;
+        this.segmentNames = segmentNames;
+    }
+
+    /**
+     * Captura las pólizas activas segmentadas por cobertura
+     * @param policies pólizas de la cartera; el flujo se consume y se cierra
+     * @param context fecha de evaluación de toda la captura
+     * @return fotografía de las pólizas activas y tarificables
+     */
+    public static PortfolioSnapshot capture(Stream<Policy> policies, EvaluationContext context) {
+        return capture(policies, context, policy -> policy.getCoverage().getName());
+    }
+
+    /**
+     * Captura las pólizas activas con un criterio de segmentación propio.
+     * Se omiten las pólizas inactivas en la fecha de evaluación y las que no
+     * tienen cliente, vehículo, cobertura o duración.
+     * @param policies pólizas de la cartera; el flujo se consume y se cierra
+     * @param context fecha de evaluación de toda la captura
+     * @param segmenter nombre del segmento de cada póliza
+     * @return fotografía de las pólizas activas y tarificables
+     */
+    public static PortfolioSnapshot capture(Stream<Policy> policies, EvaluationContext context,
+                                            Function<Policy, String> segmenter) {
+        TerritoryTable territoryTable = TerritoryTable.shared();
+        VehicleSymbolTable vehicleSymbolTable = VehicleSymbolTable.shared();
+        Map<String, Integer> segmentIds = new HashMap<>();
+        List<String> segmentNames = new ArrayList<>();
+
+        int capacity = 1024;
+        long[] base = new long[capacity];
+        int[] driverAges = new int[capacity];
+        int[] vehicleAges = new int[capacity];
+        int[] durations = new int[capacity];
+        int[] territories = new int[capacity];
+        int[] vehicleSymbols = new int[capacity];
+        int[] segments = new int[capacity];
+        int size = 0;
+
+        try (Stream<Policy> stream = policies) {
+            Iterator<Policy> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                Policy policy = iterator.next();
+                int months = policy.getDurationInMonths();
+                if (policy.getCustomer() == null || policy.getVehicle() == null || policy.getCoverage() == null
+                        || months <= 0 || !policy.isActive(context)) {
+                    continue;
+                }
+                if (size == capacity) {
+                    capacity *= 2;
+                    base = Arrays.copyOf(base, capacity);
+                    driverAges = Arrays.copyOf(driverAges, capacity);
+                    vehicleAges = Arrays.copyOf(vehicleAges, capacity);
+                    durations = Arrays.copyOf(durations, capacity);
+                    territories = Arrays.copyOf(territories, capacity);
+                    vehicleSymbols = Arrays.copyOf(vehicleSymbols, capacity);
+                    segments = Arrays.copyOf(segments, capacity);
+                }
+                base[size] = policy.getCoverage().getBasePremiumCents();
+                driverAges[size] = policy.getCustomer().getAge(context);
+                vehicleAges[size] = policy.getVehicle().getVehicleAge(context);
+                durations[size] = months;
+                territories[size] = territoryTable.territoryOf(policy.getCustomer().getZipCode());
+                vehicleSymbols[size] = vehicleSymbolTable.symbolOf(policy.getVehicle());
+                segments[size] = segmentIds.computeIfAbsent(String.valueOf(segmenter.apply(policy)), name -> {
+                    segmentNames.add(name);
+                    return segmentNames.size() - 1;
+                });
+                size++;
+            }
+        }
+        return new PortfolioSnapshot(context, Arrays.copyOf(base, size), Arrays.copyOf(driverAges, size),
+            Arrays.copyOf(vehicleAges, size), Arrays.copyOf(durations, size), Arrays.copyOf(territories, size),
+            Arrays.copyOf(vehicleSymbols, size), Arrays.copyOf(segments, size), segmentNames.toArray(new String[0]));
+    }
+
+    /** @return fecha de evaluación de la captura */
+    public EvaluationContext getContext() {
+        return context;
+    }
+
+    /** @return cantidad de pólizas capturadas */
+    public int size() {
+        return basePremiumCents.length;
+    }
+
+    /** @return cantidad de segmentos distintos */
+    public int getSegmentCount() {
+        return segmentNames.length;
+    }
+
+    /**
+     * Obtiene el nombre de un segmento
+     * @param segment índice del segmento
+     * @return nombre del segmento
+     */
+    public String getSegmentName(int segment) {
+        return segmentNames[segment];
+    }
+
+    /**
+     * Obtiene la memoria ocupada por los arreglos de la fotografía
+     * @return tamaño aproximado en bytes
+     */
+    public long getFootprintBytes() {
+        return size() * (8L + 4L * 6);
+    }
+
+    /**
+     * Tarifica un rango de la cartera y acumula la prima de cada segmento
+     * @param engine versión de las reglas
+     * @param from primera fila, inclusiva
+     * @param to última fila, exclusiva
+     * @param totals prima acumulada por segmento, en centavos
+     */
+    void premiumBySegment(RatingEngine engine, int from, int to, long[] totals) {
+        for (int i = from; i < to; i++) {
+            totals[segments[i]] += engine.rate(basePremiumCents[i], driverAges[i], vehicleAges[i], durations[i],
+                territories[i], vehicleSymbols[i]);
+        }
+    }
+}
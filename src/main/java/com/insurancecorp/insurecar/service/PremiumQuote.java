@@ -0,0 +1,37 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.Money;
+
+/**
+ * Resultado de una cotización: la prima y la versión de las reglas que la calculó
+ */
+public final class PremiumQuote {
+
+    private final long premiumCents;
+    private final String rulesVersion;
+
+    PremiumQuote(long premiumCents, String rulesVersion) {
+        this.premiumCents = premiumCents;
+        this.rulesVersion = rulesVersion;
+    }
+
+    /** @return prima en centavos */
+    public long getPremiumCents() {
+        return premiumCents;
+    }
+
+    /** @return prima en unidades monetarias */
+    public double getPremium() {
+        return Money.toAmount(premiumCents);
+    }
+
+    /** @return versión de las reglas de tarificación usadas */
+    public String getRulesVersion() {
+        return rulesVersion;
+    }
+
+    @Override
+    public String toString() {
+        return Money.format(premiumCents) + " (reglas " + rulesVersion + ")";
+    }
+}
@@ -0,0 +1,229 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.Money;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Simulador de cambios de tarifa sobre la cartera activa.
+ *
+ * Tarifica una {@link PortfolioSnapshot} con las reglas vigentes y con una o
+ * varias versiones candidatas (por ejemplo, con otro recargo para menores de
+ * 25) y devuelve la diferencia de prima emitida por segmento. Todas las
+ * versiones se evalúan en paralelo sobre la misma fotografía; cada una recorre
+ * arreglos primitivos sin tocar entidades, por lo que una cartera de un millón
+ * de pólizas se simula en fracciones de segundo por versión.
+ */
+public class PremiumSimulator {
+
+    /** Por debajo de esta cantidad de filas un rango se tarifica sin dividirlo más */
+    private static final int SPLIT_THRESHOLD = 8192;
+
+    private final PortfolioSnapshot snapshot;
+    private final ForkJoinPool pool;
+
+    public PremiumSimulator(PortfolioSnapshot snapshot) {
+        this(snapshot, ForkJoinPool.commonPool());
+    }
+
+    public PremiumSimulator(PortfolioSnapshot snapshot, ForkJoinPool pool) {
+        this.snapshot = snapshot;
+        this.pool = pool;
+    }
+
+    /**
+     * Simula una versión candidata contra las reglas vigentes
+     * @param candidate reglas candidatas
+     * @return diferencias de prima por segmento
+     */
+    public SimulationResult simulate(RatingEngine candidate) {
+        return simulate(RatingRulesRegistry.current(), List.of(candidate)).get(0);
+    }
+
+    /**
+     * Simula varias versiones candidatas contra una versión de referencia
+     * @param baseline reglas de referencia, normalmente las vigentes
+     * @param candidates reglas candidatas
+     * @return diferencias de prima por segmento de cada candidata, en el mismo orden
+     */
+    public List<SimulationResult> simulate(RatingEngine baseline, List<RatingEngine> candidates) {
+        long start = System.nanoTime();
+        ForkJoinTask<long[]> baselineTask = pool.submit(new SegmentTask(baseline, 0, snapshot.size()));
+        List<ForkJoinTask<long[]>> candidateTasks = new ArrayList<>(candidates.size());
+        for (RatingEngine candidate : candidates) {
+            candidateTasks.add(pool.submit(new SegmentTask(candidate, 0, snapshot.size())));
+        }
+
+        long[] baselineTotals = baselineTask.join();
+        List<SimulationResult> results = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            results.add(new SimulationResult(snapshot, baseline.getVersion(), candidates.get(i).getVersion(),
+                baselineTotals, candidateTasks.get(i).join(), System.nanoTime() - start));
+        }
+        return results;
+    }
+
+    /**
+     * Tarea fork/join que acumula la prima por segmento de un rango de la cartera
+     */
+    private class SegmentTask extends RecursiveTask<long[]> {
+
+        private final RatingEngine engine;
+        private final int from;
+        private final int to;
+
+        SegmentTask(RatingEngine engine, int from, int to) {
+            this.engine = engine;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                long[] totals = new long[snapshot.getSegmentCount()];
+                snapshot.premiumBySegment(engine, from, to, totals);
+                return totals;
+            }
+            int mid = (from + to) >>> 1;
+            SegmentTask right = new SegmentTask(engine, mid, to);
+            right.fork();
+            long[] totals = new SegmentTask(engine, from, mid).compute();
+            long[] rightTotals = right.join();
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] += rightTotals[i];
+            }
+            return totals;
+        }
+    }
+
+    /**
+     * Resultado de simular una versión candidata
+     */
+    public static final class SimulationResult {
+
+        private final PortfolioSnapshot snapshot;
+        private final String baselineVersion;
+        private final String candidateVersion;
+        private final long[] baselineCents;
+        private final long[] candidateCents;
+        private final long elapsedNanos;
+
+        SimulationResult(PortfolioSnapshot snapshot, String baselineVersion, String candidateVersion,
+                         long[] baselineCents, long[] candidateCents, long elapsedNanos) {
+            this.snapshot = snapshot;
+            this.baselineVersion = baselineVersion;
+            this.candidateVersion = candidateVersion;
+            this.baselineCents = baselineCents;
+            this.candidateCents = candidateCents;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** @return versión de las reglas de referencia */
+        public String getBaselineVersion() {
+            return baselineVersion;
+        }
+
+        /** @return versión de las reglas candidatas */
+        public String getCandidateVersion() {
+            return candidateVersion;
+        }
+
+        /** @return cantidad de segmentos */
+        public int getSegmentCount() {
+            return baselineCents.length;
+        }
+
+        /**
+         * @param segment índice del segmento
+         * @return nombre del segmento
+         */
+        public String getSegmentName(int segment) {
+            return snapshot.getSegmentName(segment);
+        }
+
+        /**
+         * @param segment índice del segmento
+         * @return prima del segmento con las reglas de referencia, en centavos
+         */
+        public long getBaselineCents(int segment) {
+            return baselineCents[segment];
+        }
+
+        /**
+         * @param segment índice del segmento
+         * @return prima del segmento con las reglas candidatas, en centavos
+         */
+        public long getCandidateCents(int segment) {
+            return candidateCents[segment];
+        }
+
+        /**
+         * @param segment índice del segmento
+         * @return diferencia de prima del segmento, en centavos
+         */
+        public long getDeltaCents(int segment) {
+            return candidateCents[segment] - baselineCents[segment];
+        }
+
+        /**
+         * @param segment índice del segmento
+         * @return diferencia de prima del segmento en porcentaje
+         */
+        public double getDeltaPercent(int segment) {
+            return percent(getDeltaCents(segment), baselineCents[segment]);
+        }
+
+        /** @return prima total con las reglas de referencia, en centavos */
+        public long getTotalBaselineCents() {
+            return sum(baselineCents);
+        }
+
+        /** @return prima total con las reglas candidatas, en centavos */
+        public long getTotalCandidateCents() {
+            return sum(candidateCents);
+        }
+
+        /** @return diferencia de prima total, en centavos */
+        public long getTotalDeltaCents() {
+            return getTotalCandidateCents() - getTotalBaselineCents();
+        }
+
+        /** @return diferencia de prima total en porcentaje */
+        public double getTotalDeltaPercent() {
+            return percent(getTotalDeltaCents(), getTotalBaselineCents());
+        }
+
+        /** @return tiempo desde el inicio de la simulación hasta este resultado, en nanosegundos */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        private static long sum(long[] values) {
+            long total = 0;
+            for (long value : values) {
+                total += value;
+            }
+            return total;
+        }
+
+        private static double percent(long delta, long base) {
+            return base != 0 ? delta * 100.0 / base : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(String.format("Reglas %s contra %s sobre %d pólizas: %s (%+.2f%%)",
+                candidateVersion, baselineVersion, snapshot.size(), Money.format(getTotalDeltaCents()),
+                getTotalDeltaPercent()));
+            for (int i = 0; i < getSegmentCount(); i++) {
+                text.append(String.format("%n  %s: %s (%+.2f%%)", getSegmentName(i), Money.format(getDeltaCents(i)),
+                    getDeltaPercent(i)));
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.Money;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Motor de tarificación basado en tablas de factores precalculadas.
+ *
+ * Las bandas de edad del conductor, antigüedad del vehículo y duración se
+ * compilan una sola vez en arreglos primitivos indexados directamente por el
+ * valor (edad en años, antigüedad en años, duración en meses). Los factores
+ * por territorio y por símbolo de vehículo se indexan por el número que
+ * resuelven {@link TerritoryTable} y {@link VehicleSymbolTable}. Una
+ * cotización se reduce a cinco lecturas de arreglo y una multiplicación, sin
+ * ramas por banda ni asignación de objetos.
+ *
+ * Cada instancia es una versión compilada de un conjunto de reglas (ver
+ * {@link RatingRulesRegistry}); es inmutable y se puede compartir entre hilos.
+ */
+public final class RatingEngine {
+
+    /** Edad máxima representada en la tabla; edades mayores usan el último factor */
+    static final int MAX_DRIVER_AGE = 120;
+
+    /** Antigüedad máxima representada en la tabla; valores mayores usan el último factor */
+    static final int MAX_VEHICLE_AGE = 40;
+
+    /** Duración máxima representada en la tabla; duraciones mayores usan el último factor */
+    static final int MAX_DURATION_MONTHS = 12;
+
+    /** Número de territorio máximo admitido en las reglas */
+    static final int MAX_TERRITORY = 1023;
+
+    /** Símbolo de vehículo máximo admitido en las reglas */
+    static final int MAX_VEHICLE_SYMBOL = 1023;
+
+    private final String version;
+    private final double[] driverAgeFactors;
+    private final double[] vehicleAgeFactors;
+    private final double[] durationFactors;
+    private final double[] territoryFactors;
+    private final double[] vehicleSymbolFactors;
+
+    // Índice de banda por valor; bandas contiguas con el mismo factor comparten índice
+    private final byte[] driverAgeBands;
+    private final byte[] vehicleAgeBands;
+    private final byte[] durationBands;
+
+    private RatingEngine(String version, double[] driverAgeFactors, double[] vehicleAgeFactors, double[] durationFactors,
+                         double[] territoryFactors, double[] vehicleSymbolFactors) {
+        this.version = version;
+        this.driverAgeFactors = driverAgeFactors;
+        this.vehicleAgeFactors = vehicleAgeFactors;
+        this.durationFactors = durationFactors;
+        this.territoryFactors = territoryFactors;
+        this.vehicleSymbolFactors = vehicleSymbolFactors;
+        this.driverAgeBands = bands(driverAgeFactors);
+        this.vehicleAgeBands = bands(vehicleAgeFactors);
+        this.durationBands = bands(durationFactors);
+    }
+
+    /**
+     * Compila un conjunto de reglas de tarificación.
+     * Cada regla es una lista de bandas "desde:factor" separadas por comas,
+     * por ejemplo {@code driverAge.bands=0:1.5, 25:1.3, 30:1.0, 66:1.2}.
+     * Las reglas opcionales territory.factors y vehicleSymbol.factors asignan
+     * un factor a cada territorio y a cada símbolo de vehículo con pares
+     * "número:factor"; si no se indican, todos usan 1.0.
+     * @param rules propiedades con version, driverAge.bands, vehicleAge.bands, duration.bands
+     *              y opcionalmente territory.factors y vehicleSymbol.factors
+     * @return motor compilado
+     * @throws IllegalArgumentException si falta una regla o tiene formato inválido
+     */
+    public static RatingEngine fromProperties(Properties rules) {
+        String version = rules.getProperty("version", "").trim();
+        if (version.isEmpty()) {
+            throw new IllegalArgumentException("Las reglas de tarificación deben indicar una versión");
+        }
+        return new RatingEngine(version,
+            parseBands(rules, "driverAge.bands", MAX_DRIVER_AGE),
+            parseBands(rules, "vehicleAge.bands", MAX_VEHICLE_AGE),
+            parseBands(rules, "duration.bands", MAX_DURATION_MONTHS),
+            parseFactors(rules, "territory.factors", MAX_TERRITORY),
+            parseFactors(rules, "vehicleSymbol.factors", MAX_VEHICLE_SYMBOL));
+    }
+
+    /**
+     * Obtiene la versión de las reglas compiladas en este motor
+     * @return versión de las reglas
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Calcula la prima en el territorio y con el símbolo de vehículo por defecto
+     * @param basePremiumCents prima base de la cobertura en centavos
+     * @param driverAge edad del conductor en años
+     * @param vehicleAge antigüedad del vehículo en años
+     * @param durationInMonths duración en meses (mayor a 0)
+     * @return prima en centavos, redondeada al centavo más cercano
+     */
+    public long rate(long basePremiumCents, int driverAge, int vehicleAge, int durationInMonths) {
+        return rate(basePremiumCents, driverAge, vehicleAge, durationInMonths,
+            TerritoryTable.DEFAULT_TERRITORY, VehicleSymbolTable.DEFAULT_SYMBOL);
+    }
+
+    /**
+     * Calcula la prima a partir de los factores ya resueltos de la cotización
+     * @param basePremiumCents prima base de la cobertura en centavos
+     * @param driverAge edad del conductor en años
+     * @param vehicleAge antigüedad del vehículo en años
+     * @param durationInMonths duración en meses (mayor a 0)
+     * @param territory territorio del cliente
+     * @param vehicleSymbol símbolo de tarificación del vehículo
+     * @return prima en centavos, redondeada al centavo más cercano
+     */
+    public long rate(long basePremiumCents, int driverAge, int vehicleAge, int durationInMonths, int territory,
+                     int vehicleSymbol) {
+        return Money.multiply(basePremiumCents, factor(driverAge, vehicleAge, durationInMonths, territory, vehicleSymbol));
+    }
+
+    /**
+     * Factor combinado de una cotización en el territorio y con el símbolo de vehículo por defecto
+     * @param driverAge edad del conductor en años
+     * @param vehicleAge antigüedad del vehículo en años
+     * @param durationInMonths duración en meses
+     * @return factor multiplicativo combinado
+     */
+    public double factor(int driverAge, int vehicleAge, int durationInMonths) {
+        return factor(driverAge, vehicleAge, durationInMonths,
+            TerritoryTable.DEFAULT_TERRITORY, VehicleSymbolTable.DEFAULT_SYMBOL);
+    }
+
+    /**
+     * Factor combinado de una cotización, independiente de la cobertura.
+     * Aplicarlo con {@link Money#multiply(long, double)} a la prima base de
+     * cualquier cobertura da la misma prima que {@link #rate(long, int, int, int, int, int)}.
+     * @param driverAge edad del conductor en años
+     * @param vehicleAge antigüedad del vehículo en años
+     * @param durationInMonths duración en meses
+     * @param territory territorio del cliente
+     * @param vehicleSymbol símbolo de tarificación del vehículo
+     * @return factor multiplicativo combinado
+     */
+    public double factor(int driverAge, int vehicleAge, int durationInMonths, int territory, int vehicleSymbol) {
+        return driverAgeFactors[clamp(driverAge, MAX_DRIVER_AGE)]
+            * vehicleAgeFactors[clamp(vehicleAge, MAX_VEHICLE_AGE)]
+            * durationFactors[clamp(durationInMonths, MAX_DURATION_MONTHS)]
+            * territoryFactors[index(territory, territoryFactors)]
+            * vehicleSymbolFactors[index(vehicleSymbol, vehicleSymbolFactors)];
+    }
+
+    /**
+     * Calcula las primas de un lote completo.
+     * Equivale a llamar a {@link #rate(long, int, int, int, int, int)} por fila, pero
+     * recorre los arreglos del lote en dos pasadas: primero resuelve el factor
+     * combinado de cada fila por tabla y luego aplica todos los factores en un
+     * bucle aritmético sin accesos indirectos. Las filas con duración menor o
+     * igual a 0 quedan con prima 0, igual que en {@link InsuranceService#calculatePremium}.
+     * @param batch lote a tarificar; las primas se escriben en el mismo lote
+     */
+    public void rate(PremiumBatch batch) {
+        int size = batch.size();
+        long[] base = batch.basePremiumCents();
+        int[] driverAges = batch.driverAges();
+        int[] vehicleAges = batch.vehicleAges();
+        int[] durations = batch.durations();
+        int[] territories = batch.territories();
+        int[] vehicleSymbols = batch.vehicleSymbols();
+        double[] factors = batch.factors();
+        long[] premiums = batch.premiumCents();
+
+        // Primera pasada: lecturas de tabla
+        for (int i = 0; i < size; i++) {
+            factors[i] = durations[i] > 0
+                ? factor(driverAges[i], vehicleAges[i], durations[i], territories[i], vehicleSymbols[i]) : 0.0;
+        }
+        // Segunda pasada: aritmética sobre arreglos contiguos
+        for (int i = 0; i < size; i++) {
+            premiums[i] = Math.round(base[i] * factors[i]);
+        }
+    }
+
+    /**
+     * Identifica la celda de tarificación de una cotización: la combinación de
+     * bandas de edad del conductor, antigüedad del vehículo y duración, el
+     * territorio y el símbolo del vehículo. Dos cotizaciones de la misma
+     * cobertura en la misma celda tienen la misma prima.
+     * @param driverAge edad del conductor en años
+     * @param vehicleAge antigüedad del vehículo en años
+     * @param durationInMonths duración en meses
+     * @param territory territorio del cliente
+     * @param vehicleSymbol símbolo de tarificación del vehículo
+     * @return identificador de la celda, único dentro de este motor
+     */
+    public long ratingCell(int driverAge, int vehicleAge, int durationInMonths, int territory, int vehicleSymbol) {
+        return (long) index(vehicleSymbol, vehicleSymbolFactors) << 48
+            | (long) driverAgeBands[clamp(driverAge, MAX_DRIVER_AGE)] << 40
+            | (long) vehicleAgeBands[clamp(vehicleAge, MAX_VEHICLE_AGE)] << 32
+            | (long) durationBands[clamp(durationInMonths, MAX_DURATION_MONTHS)] << 24
+            | index(territory, territoryFactors);
+    }
+
+    /**
+     * Factor aplicado por la edad del conductor
+     * @param driverAge edad en años
+     * @return factor multiplicativo
+     */
+    public double driverAgeFactor(int driverAge) {
+        return driverAgeFactors[clamp(driverAge, MAX_DRIVER_AGE)];
+    }
+
+    /**
+     * Factor aplicado por la antigüedad del vehículo
+     * @param vehicleAge antigüedad en años
+     * @return factor multiplicativo
+     */
+    public double vehicleAgeFactor(int vehicleAge) {
+        return vehicleAgeFactors[clamp(vehicleAge, MAX_VEHICLE_AGE)];
+    }
+
+    /**
+     * Factor aplicado por la duración de la póliza
+     * @param durationInMonths duración en meses
+     * @return factor multiplicativo
+     */
+    public double durationFactor(int durationInMonths) {
+        return durationFactors[clamp(durationInMonths, MAX_DURATION_MONTHS)];
+    }
+
+    /**
+     * Factor aplicado por el territorio del cliente
+     * @param territory territorio; los territorios sin factor usan el del territorio por defecto
+     * @return factor multiplicativo
+     */
+    public double territoryFactor(int territory) {
+        return territoryFactors[index(territory, territoryFactors)];
+    }
+
+    /**
+     * Factor aplicado por el símbolo de tarificación del vehículo
+     * @param vehicleSymbol símbolo; los símbolos sin factor usan el del símbolo por defecto
+     * @return factor multiplicativo
+     */
+    public double vehicleSymbolFactor(int vehicleSymbol) {
+        return vehicleSymbolFactors[index(vehicleSymbol, vehicleSymbolFactors)];
+    }
+
+    /**
+     * Índice de un número en una tabla de factores por número; fuera de la tabla se usa el 0
+     */
+    private static int index(int value, double[] factors) {
+        return value > 0 && value < factors.length ? value : 0;
+    }
+
+    /**
+     * Acota un valor al rango [0, max] sin ramas condicionales explícitas
+     */
+    private static int clamp(int value, int max) {
+        return Math.min(Math.max(value, 0), max);
+    }
+
+    private static double[] parseBands(Properties rules, String name, int max) {
+        String value = rules.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Falta la regla de tarificación " + name);
+        }
+        String[] bands = value.split(",");
+        int[] lowerBounds = new int[bands.length];
+        double[] factors = new double[bands.length];
+        for (int i = 0; i < bands.length; i++) {
+            String[] band = bands[i].trim().split(":");
+            try {
+                if (band.length != 2) {
+                    throw new NumberFormatException(bands[i]);
+                }
+                lowerBounds[i] = Integer.parseInt(band[0].trim());
+                factors[i] = Double.parseDouble(band[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Banda inválida en " + name + ": " + bands[i].trim(), e);
+            }
+            if (!(factors[i] > 0) || Double.isInfinite(factors[i])) {
+                throw new IllegalArgumentException("El factor debe ser positivo en " + name + ": " + bands[i].trim());
+            }
+        }
+        return table(max, lowerBounds, factors);
+    }
+
+    private static double[] parseFactors(Properties rules, String name, int max) {
+        String value = rules.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return new double[] {1.0};
+        }
+        String[] pairs = value.split(",");
+        int[] values = new int[pairs.length];
+        double[] factors = new double[pairs.length];
+        int last = 0;
+        for (int i = 0; i < pairs.length; i++) {
+            String[] pair = pairs[i].trim().split(":");
+            try {
+                if (pair.length != 2) {
+                    throw new NumberFormatException(pairs[i]);
+                }
+                values[i] = Integer.parseInt(pair[0].trim());
+                factors[i] = Double.parseDouble(pair[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Par inválido en " + name + ": " + pairs[i].trim(), e);
+            }
+            if (values[i] < 0 || values[i] > max) {
+                throw new IllegalArgumentException("El número debe estar entre 0 y " + max + " en " + name
+                    + ": " + pairs[i].trim());
+            }
+            if (!(factors[i] > 0) || Double.isInfinite(factors[i])) {
+                throw new IllegalArgumentException("El factor debe ser positivo en " + name + ": " + pairs[i].trim());
+            }
+            last = Math.max(last, values[i]);
+        }
+        double[] table = new double[last + 1];
+        Arrays.fill(table, Double.NaN);
+        for (int i = 0; i < pairs.length; i++) {
+            table[values[i]] = factors[i];
+        }
+        if (Double.isNaN(table[0])) {
+            throw new IllegalArgumentException("Falta el factor por defecto (0) en " + name);
+        }
+        // Los números sin factor propio usan el del 0
+        for (int i = 1; i < table.length; i++) {
+            if (Double.isNaN(table[i])) {
+                table[i] = table[0];
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Numera las bandas de una tabla de factores, empezando en 0
+     */
+    private static byte[] bands(double[] factors) {
+        byte[] bands = new byte[factors.length];
+        byte band = 0;
+        for (int i = 1; i < factors.length; i++) {
+            if (factors[i] != factors[i - 1]) {
+                band++;
+            }
+            bands[i] = band;
+        }
+        return bands;
+    }
+
+    /**
+     * Compila una lista de bandas en una tabla indexada por valor
+     * @param max último índice de la tabla
+     * @param lowerBounds límite inferior (inclusivo) de cada banda, en orden ascendente y empezando en 0
+     * @param factors factor de cada banda
+     * @return tabla de factores de tamaño max + 1
+     */
+    static double[] table(int max, int[] lowerBounds, double[] factors) {
+        if (lowerBounds.length == 0 || lowerBounds.length != factors.length || lowerBounds[0] != 0) {
+            throw new IllegalArgumentException("Las bandas deben empezar en 0 y tener un factor cada una");
+        }
+        double[] table = new double[max + 1];
+        for (int band = 0; band < lowerBounds.length; band++) {
+            if (band > 0 && lowerBounds[band] <= lowerBounds[band - 1]) {
+                throw new IllegalArgumentException("Los límites de las bandas deben ser ascendentes");
+            }
+            int from = Math.min(lowerBounds[band], max + 1);
+            int to = band + 1 < lowerBounds.length ? Math.min(lowerBounds[band + 1], max + 1) : max + 1;
+            Arrays.fill(table, from, to, factors[band]);
+        }
+        return table;
+    }
+}
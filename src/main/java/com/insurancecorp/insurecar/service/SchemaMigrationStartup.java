@@ -0,0 +1,30 @@
+package com.insurancecorp.insurecar.service;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Aplica las migraciones de datos pendientes al iniciar la aplicación. Se
+ * declara primero en web.xml para que termine antes que los demás inicios y
+ * que el primer acceso por JPA.
+ */
+public class SchemaMigrationStartup implements ServletContextListener {
+
+    private static final Logger log = Logger.getLogger(SchemaMigrationStartup.class.getName());
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        try {
+            SchemaMigrations.forApplication().migrate();
+        } catch (IllegalStateException e) {
+            // Se reintenta en el próximo inicio; las migraciones ya aplicadas quedan registradas
+            log.log(Level.SEVERE, "No se aplicaron las migraciones de datos", e);
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+    }
+}
@@ -0,0 +1,453 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Migraciones de datos que la actualización automática del esquema no hace.
+ *
+ * La aplicación genera el esquema en modo "update", que agrega tablas y
+ * columnas nuevas pero no copia datos ni elimina columnas. Cada migración
+ * completa lo que falta para que las filas existentes se lean con las
+ * entidades actuales; se ejecutan en orden al iniciar la aplicación (ver
+ * {@link SchemaMigrationStartup}), antes del primer acceso por JPA, y cada
+ * una queda registrada en la tabla SchemaMigration para no repetirse. Una
+ * migración que todavía no puede aplicarse no se registra y se vuelve a
+ * intentar en el próximo inicio. Sobre una base nueva no hay nada que migrar
+ * y todas se registran sin cambios.
+ */
+public class SchemaMigrations {
+
+    /**
+     * Paso de una migración, ejecutado dentro de una transacción
+     */
+    interface Step {
+        /** @return false si la migración no pudo aplicarse todavía */
+        boolean apply(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Migración identificada
+     */
+    static final class Migration {
+
+        final String id;
+        final Step step;
+
+        Migration(String id, Step step) {
+            this.id = id;
+            this.step = step;
+        }
+    }
+
+    static final String HISTORY_TABLE = "SchemaMigration";
+
+    static final String CREATE_HISTORY =
+        "create table SchemaMigration (id varchar(100) not null primary key, appliedAt timestamp)";
+
+    static final String SELECT_APPLIED = "select id from SchemaMigration";
+
+    static final String INSERT_APPLIED = "insert into SchemaMigration (id, appliedAt) values (?, ?)";
+
+    static final int CHUNK_SIZE = 1000;
+
+    private static final Logger log = Logger.getLogger(SchemaMigrations.class.getName());
+
+    /** Migraciones en el orden en que se aplican */
+    static final List<Migration> MIGRATIONS = Arrays.asList(
+        new Migration("money-cents", SchemaMigrations::moneyCents),
+        new Migration("policy-number-sequence", SchemaMigrations::policyNumberSequence),
+        new Migration("unique-keys", SchemaMigrations::uniqueKeys),
+        new Migration("payment-totals", SchemaMigrations::paymentTotals),
+        new Migration("payment-status-lowercase", SchemaMigrations::paymentStatusLowercase),
+        new Migration("policy-version", SchemaMigrations::policyVersion),
+        new Migration("payment-journal-instance", SchemaMigrations::paymentJournalInstance),
+        new Migration("payment-journal-progress", SchemaMigrations::paymentJournalProgress)
+    );
+
+    /** Valores repetidos que se detallan por clave en el informe */
+    static final int MAX_REPORTED_DUPLICATES = 100;
+
+    static final String UPDATE_PAYMENT_TOTALS =
+        "update Policy set"
+        + " totalPaidCents = (select coalesce(sum(pay.amountCents), 0) from Payment pay"
+        + " where pay.policy_id = Policy.id and lower(pay.status) = 'completed'),"
+        + " completedPaymentCount = (select count(*) from Payment pay"
+        + " where pay.policy_id = Policy.id and lower(pay.status) = 'completed')";
+
+    static final String UPDATE_PAYMENT_STATUS =
+        "update Payment set status = lower(trim(status)) where status <> lower(trim(status))";
+
+    static final String UPDATE_JOURNAL_INSTANCE =
+        "update Payment set journalInstance = ? where journalSequence is not null and journalInstance is null";
+
+    static final String SELECT_CONSTRAINT =
+        "select count(*) from INFORMATION_SCHEMA.TABLE_CONSTRAINTS where upper(CONSTRAINT_NAME) = ?";
+
+    private final DataSource dataSource;
+    private final List<Migration> migrations;
+
+    public SchemaMigrations(DataSource dataSource) {
+        this(dataSource, MIGRATIONS);
+    }
+
+    SchemaMigrations(DataSource dataSource, List<Migration> migrations) {
+        this.dataSource = dataSource;
+        this.migrations = migrations;
+    }
+
+    /**
+     * Crea las migraciones sobre la fuente de datos de la aplicación
+     * @return migraciones listas para aplicar
+     * @throws IllegalStateException si la fuente de datos no está disponible
+     */
+    public static SchemaMigrations forApplication() {
+        try {
+            return new SchemaMigrations((DataSource) new InitialContext().lookup(CoverageRepricingJob.DATA_SOURCE_NAME));
+        } catch (NamingException e) {
+            throw new IllegalStateException("No se encontró la fuente de datos " + CoverageRepricingJob.DATA_SOURCE_NAME, e);
+        }
+    }
+
+    /**
+     * Aplica las migraciones pendientes, cada una en su propia transacción
+     * @return identificadores de las migraciones aplicadas en esta llamada
+     * @throws IllegalStateException si falla una migración; las anteriores quedan aplicadas
+     */
+    public List<String> migrate() {
+        List<String> applied = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            Set<String> done = appliedIds(connection);
+            connection.setAutoCommit(false);
+            for (Migration migration : migrations) {
+                if (done.contains(migration.id)) {
+                    continue;
+                }
+                try {
+                    if (!migration.step.apply(connection)) {
+                        connection.rollback();
+                        log.warning("La migración " + migration.id + " no pudo aplicarse; se reintentará en el próximo inicio");
+                        continue;
+                    }
+                    try (PreparedStatement insert = connection.prepareStatement(INSERT_APPLIED)) {
+                        insert.setString(1, migration.id);
+                        insert.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+                        insert.executeUpdate();
+                    }
+                    connection.commit();
+                    applied.add(migration.id);
+                    log.info("Migración aplicada: " + migration.id);
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    throw new IllegalStateException("Error en la migración " + migration.id, e);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al aplicar las migraciones", e);
+        }
+        return applied;
+    }
+
+    private static Set<String> appliedIds(Connection connection) throws SQLException {
+        Set<String> ids = new HashSet<>();
+        if (!tableExists(connection, HISTORY_TABLE)) {
+            try (Statement ddl = connection.createStatement()) {
+                ddl.execute(CREATE_HISTORY);
+            }
+            return ids;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(SELECT_APPLIED)) {
+            while (rs.next()) {
+                ids.add(rs.getString(1));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Pasa la prima de la póliza, el monto del pago y la prima base de la
+     * cobertura de importes decimales a centavos, con el mismo redondeo que
+     * {@link Money#ofAmount(double)}, y elimina las columnas decimales
+     */
+    static boolean moneyCents(Connection connection) throws SQLException {
+        toCents(connection, "Policy", "premium", "premiumCents");
+        toCents(connection, "Payment", "amount", "amountCents");
+        toCents(connection, "Coverage", "basePremium", "basePremiumCents");
+        return true;
+    }
+
+    private static void toCents(Connection connection, String table, String amountColumn, String centsColumn)
+            throws SQLException {
+        if (!tableExists(connection, table)) {
+            return;
+        }
+        addColumn(connection, table, centsColumn, "bigint default 0 not null");
+        Set<String> columns = columns(connection, table);
+        if (columns.contains(amountColumn.toUpperCase(Locale.ROOT))) {
+            String select = "select id, " + amountColumn + " from " + table + " where " + amountColumn + " is not null";
+            String update = "update " + table + " set " + centsColumn + " = ? where id = ?";
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(select);
+                 PreparedStatement batch = connection.prepareStatement(update)) {
+                int pending = 0;
+                while (rs.next()) {
+                    batch.setLong(1, Money.ofAmount(rs.getDouble(2)));
+                    batch.setLong(2, rs.getLong(1));
+                    batch.addBatch();
+                    if (++pending == CHUNK_SIZE) {
+                        batch.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    batch.executeBatch();
+                }
+            }
+            try (Statement ddl = connection.createStatement()) {
+                ddl.execute("alter table " + table + " drop column " + amountColumn);
+            }
+        }
+        fillNulls(connection, table, centsColumn, "0");
+    }
+
+    /**
+     * Crea la secuencia de números de póliza, a continuación del mayor número
+     * POL-XXXXXX ya emitido al azar
+     */
+    static boolean policyNumberSequence(Connection connection) throws SQLException {
+        long last = 0;
+        if (tableExists(connection, "Policy")) {
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("select policyNumber from Policy where policyNumber like 'POL-%'")) {
+                while (rs.next()) {
+                    try {
+                        last = Math.max(last, Long.parseLong(rs.getString(1).substring(4)));
+                    } catch (NumberFormatException e) {
+                        // No sigue el formato; no puede coincidir con un número de la secuencia
+                    }
+                }
+            }
+        }
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("create sequence " + InsuranceService.POLICY_NUMBER_SEQUENCE + " start with " + (last + 1));
+        }
+        return true;
+    }
+
+    /**
+     * Completa los totales de pagos de las pólizas existentes a partir de sus
+     * pagos completados, con el mismo cálculo que {@link PaymentTotalsChecker}
+     */
+    static boolean paymentTotals(Connection connection) throws SQLException {
+        if (!tableExists(connection, "Policy")) {
+            return true;
+        }
+        addColumn(connection, "Policy", "totalPaidCents", "bigint default 0 not null");
+        addColumn(connection, "Policy", "completedPaymentCount", "integer default 0 not null");
+        fillNulls(connection, "Policy", "totalPaidCents", "0");
+        fillNulls(connection, "Policy", "completedPaymentCount", "0");
+        if (tableExists(connection, "Payment")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(UPDATE_PAYMENT_TOTALS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Pasa a minúsculas y sin espacios el estado de los pagos guardados antes
+     * de que {@link Payment#setStatus(String)} lo normalizara, para que las
+     * consultas por estado usen el índice con el valor exacto
+     */
+    static boolean paymentStatusLowercase(Connection connection) throws SQLException {
+        if (tableExists(connection, "Payment")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(UPDATE_PAYMENT_STATUS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Inicia en 0 la versión de las pólizas guardadas antes de que
+     * {@link Policy} la tuviera: con la versión nula, la primera
+     * modificación de cada una de ellas fallaba al compararla
+     */
+    static boolean policyVersion(Connection connection) throws SQLException {
+        if (tableExists(connection, "Policy")) {
+            addColumn(connection, "Policy", "version", "bigint default 0 not null");
+            fillNulls(connection, "Policy", "version", "0");
+        }
+        return true;
+    }
+
+    /**
+     * Asigna a los pagos registrados con diario antes de que las filas
+     * guardaran la instancia la del diario de este servidor, y quita la
+     * restricción única por secuencia sola, que impedía que dos servidores
+     * registraran con sus propios diarios. Hasta entonces solo podía haber
+     * un servidor registrando con diario, así que esas filas son suyas.
+     */
+    static boolean paymentJournalInstance(Connection connection) throws SQLException {
+        if (!tableExists(connection, "Payment") || !columns(connection, "Payment").contains("JOURNALSEQUENCE")) {
+            return true;
+        }
+        addColumn(connection, "Payment", "journalInstance", "varchar(" + PaymentJournal.MAX_INSTANCE_LENGTH + ")");
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_JOURNAL_INSTANCE)) {
+            update.setString(1, PaymentJournal.configuredInstance());
+            update.executeUpdate();
+        }
+        if (constraintExists(connection, "UK_PAYMENT_JOURNAL_SEQUENCE")) {
+            try (Statement ddl = connection.createStatement()) {
+                ddl.execute("alter table Payment drop constraint UK_PAYMENT_JOURNAL_SEQUENCE");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Crea la tabla donde {@link PaymentJournalProjector} guarda hasta qué
+     * secuencia recorrió el diario de cada instancia. No es una entidad, así
+     * que la actualización del esquema no la crea.
+     */
+    static boolean paymentJournalProgress(Connection connection) throws SQLException {
+        if (!tableExists(connection, "PaymentJournalProgress")) {
+            try (Statement ddl = connection.createStatement()) {
+                ddl.execute(PaymentJournalProjector.CREATE_PROGRESS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Crea las restricciones únicas de VIN, número de póliza y email que
+     * falten. La actualización del esquema no puede crearlas si ya hay valores
+     * repetidos y solo lo deja en su log; aquí se informa cada valor repetido
+     * con los ids de sus filas y la migración queda pendiente hasta que se
+     * corrijan.
+     */
+    static boolean uniqueKeys(Connection connection) throws SQLException {
+        boolean complete = true;
+        for (UniquenessChecker.UniqueKey key : UniquenessChecker.UniqueKey.values()) {
+            if (!tableExists(connection, key.getTable()) || constraintExists(connection, key.getConstraint())) {
+                continue;
+            }
+            Map<String, List<Long>> duplicates = duplicates(connection, key);
+            if (!duplicates.isEmpty()) {
+                log.warning("No se creó " + key.getConstraint() + ": hay " + duplicates.size() + " valores de "
+                    + key.getDescription() + " repetidos en " + key.getTable() + " (valor=ids): " + duplicates);
+                complete = false;
+                continue;
+            }
+            try (Statement ddl = connection.createStatement()) {
+                ddl.execute("alter table " + key.getTable() + " add constraint " + key.getConstraint()
+                    + " unique (" + key.getColumn() + ")");
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * @return hasta {@value #MAX_REPORTED_DUPLICATES} valores repetidos de una clave, con los ids de sus filas
+     */
+    static Map<String, List<Long>> duplicates(Connection connection, UniquenessChecker.UniqueKey key)
+            throws SQLException {
+        String column = key.getColumn();
+        String sql = "select " + column + ", id from " + key.getTable() + " where " + column + " in (select " + column
+            + " from " + key.getTable() + " where " + column + " is not null group by " + column
+            + " having count(*) > 1) order by " + column + ", id";
+        Map<String, List<Long>> duplicates = new LinkedHashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            while (rs.next()) {
+                String value = rs.getString(1);
+                if (!duplicates.containsKey(value) && duplicates.size() == MAX_REPORTED_DUPLICATES) {
+                    break;
+                }
+                duplicates.computeIfAbsent(value, v -> new ArrayList<>()).add(rs.getLong(2));
+            }
+        }
+        return duplicates;
+    }
+
+    static boolean constraintExists(Connection connection, String constraint) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(SELECT_CONSTRAINT)) {
+            select.setString(1, constraint.toUpperCase(Locale.ROOT));
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next() && rs.getLong(1) > 0;
+            }
+        }
+    }
+
+    /**
+     * Agrega una columna si no existe
+     * @return true si se agregó
+     */
+    static boolean addColumn(Connection connection, String table, String column, String definition)
+            throws SQLException {
+        if (columns(connection, table).contains(column.toUpperCase(Locale.ROOT))) {
+            return false;
+        }
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("alter table " + table + " add column " + column + " " + definition);
+        }
+        return true;
+    }
+
+    /**
+     * Completa los nulos de una columna, por ejemplo si la actualización del
+     * esquema la agregó antes que la migración
+     */
+    static void fillNulls(Connection connection, String table, String column, String value) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("update " + table + " set " + column + " = " + value + " where " + column + " is null");
+        }
+    }
+
+    static boolean tableExists(Connection connection, String table) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (String name : new String[] {table, table.toUpperCase(Locale.ROOT), table.toLowerCase(Locale.ROOT)}) {
+            try (ResultSet rs = metaData.getTables(null, null, name, new String[] {"TABLE"})) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return nombres de las columnas de una tabla, en mayúsculas
+     */
+    static Set<String> columns(Connection connection, String table) throws SQLException {
+        Set<String> names = new HashSet<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select * from " + table + " where 1 = 0")) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                names.add(metaData.getColumnName(i).toUpperCase(Locale.ROOT));
+            }
+        }
+        return names;
+    }
+}
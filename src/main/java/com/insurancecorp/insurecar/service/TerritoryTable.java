@@ -0,0 +1,210 @@
+package com.insurancecorp.insurecar.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Tabla de territorios de tarificación por código postal.
+ *
+ * La tabla se carga una sola vez al iniciar, del archivo indicado en la
+ * propiedad de sistema {@value #TERRITORIES_FILE_PROPERTY} o, si no está
+ * definida, del recurso {@value #DEFAULT_RESOURCE}. Cada línea asigna un
+ * territorio a un código postal ("codigo,territorio") o a un rango de códigos
+ * ("desde,hasta,territorio").
+ *
+ * Los rangos se guardan ordenados en tres arreglos primitivos paralelos
+ * (inicio, fin y territorio, 10 bytes por rango) y se resuelven por búsqueda
+ * binaria: una tabla de 40.000 códigos ocupa unos 400 KB y cada consulta
+ * hace a lo sumo 16 comparaciones, sin acceso a la base de datos ni creación
+ * de objetos. Los códigos que no figuran en la tabla usan el territorio
+ * {@value #DEFAULT_TERRITORY}.
+ */
+public final class TerritoryTable {
+
+    /** Propiedad de sistema con la ruta de un archivo de territorios externo */
+    public static final String TERRITORIES_FILE_PROPERTY = "insurecar.territories";
+
+    /** Territorios por defecto incluidos en la aplicación */
+    public static final String DEFAULT_RESOURCE = "/rating/territories.csv";
+
+    /** Territorio de los códigos postales ausentes o inválidos */
+    public static final int DEFAULT_TERRITORY = 0;
+
+    static final int MAX_ZIP = 99_999;
+
+    private static final TerritoryTable shared = load();
+
+    private final int[] rangeStarts;
+    private final int[] rangeEnds;
+    private final short[] territories;
+
+    private TerritoryTable(int[] rangeStarts, int[] rangeEnds, short[] territories) {
+        this.rangeStarts = rangeStarts;
+        this.rangeEnds = rangeEnds;
+        this.territories = territories;
+    }
+
+    /**
+     * Tabla compartida por todo el proceso, usada por {@link InsuranceService}
+     * @return tabla cargada al iniciar
+     */
+    public static TerritoryTable shared() {
+        return shared;
+    }
+
+    /**
+     * Lee una tabla de territorios.
+     * Las líneas vacías y las que empiezan con # se ignoran.
+     * @param reader contenido con una asignación por línea
+     * @return tabla compilada
+     * @throws IOException si no se puede leer el contenido
+     * @throws IllegalArgumentException si una línea es inválida o dos rangos se superponen
+     */
+    public static TerritoryTable parse(Reader reader) throws IOException {
+        // Cada rango se empaqueta en un long (inicio, fin, territorio) para ordenar sin objetos
+        long[] packed = new long[1024];
+        int size = 0;
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            int from;
+            int to;
+            int territory;
+            try {
+                if (fields.length == 2) {
+                    from = to = Integer.parseInt(fields[0].trim());
+                } else if (fields.length == 3) {
+                    from = Integer.parseInt(fields[0].trim());
+                    to = Integer.parseInt(fields[1].trim());
+                } else {
+                    throw new NumberFormatException(line);
+                }
+                territory = Integer.parseInt(fields[fields.length - 1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Línea " + lineNumber + " inválida en la tabla de territorios: " + line, e);
+            }
+            if (from < 0 || to > MAX_ZIP || from > to) {
+                throw new IllegalArgumentException("Rango de códigos postales inválido en la línea " + lineNumber + ": " + line);
+            }
+            if (territory < 0 || territory > RatingEngine.MAX_TERRITORY) {
+                throw new IllegalArgumentException("Territorio inválido en la línea " + lineNumber + ": " + line);
+            }
+            if (size == packed.length) {
+                packed = Arrays.copyOf(packed, size * 2);
+            }
+            packed[size++] = (long) from << 40 | (long) to << 16 | territory;
+        }
+        Arrays.sort(packed, 0, size);
+
+        int[] rangeStarts = new int[size];
+        int[] rangeEnds = new int[size];
+        short[] territories = new short[size];
+        for (int i = 0; i < size; i++) {
+            rangeStarts[i] = (int) (packed[i] >>> 40);
+            rangeEnds[i] = (int) (packed[i] >>> 16) & 0xFFFFFF;
+            territories[i] = (short) (packed[i] & 0xFFFF);
+            if (i > 0 && rangeStarts[i] <= rangeEnds[i - 1]) {
+                throw new IllegalArgumentException("Los rangos de códigos postales se superponen en " + rangeStarts[i]);
+            }
+        }
+        return new TerritoryTable(rangeStarts, rangeEnds, territories);
+    }
+
+    /**
+     * Resuelve el territorio de un código postal con formato 12345 o 12345-6789
+     * @param zipCode código postal
+     * @return territorio, o {@value #DEFAULT_TERRITORY} si el código es nulo, inválido o no figura en la tabla
+     */
+    public int territoryOf(String zipCode) {
+        if (zipCode == null || zipCode.length() < 5) {
+            return DEFAULT_TERRITORY;
+        }
+        // Solo los primeros cinco dígitos, sin crear subcadenas
+        int zip = 0;
+        for (int i = 0; i < 5; i++) {
+            int digit = zipCode.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return DEFAULT_TERRITORY;
+            }
+            zip = zip * 10 + digit;
+        }
+        return territoryOf(zip);
+    }
+
+    /**
+     * Resuelve el territorio de un código postal numérico
+     * @param zip código postal de cinco dígitos
+     * @return territorio, o {@value #DEFAULT_TERRITORY} si no figura en la tabla
+     */
+    public int territoryOf(int zip) {
+        int lo = 0;
+        int hi = rangeStarts.length - 1;
+        // Busca el último rango que empieza en o antes del código
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (rangeStarts[mid] <= zip) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return hi >= 0 && zip <= rangeEnds[hi] ? territories[hi] : DEFAULT_TERRITORY;
+    }
+
+    /**
+     * Obtiene la cantidad de rangos de la tabla
+     * @return cantidad de rangos
+     */
+    public int size() {
+        return rangeStarts.length;
+    }
+
+    /**
+     * Obtiene la memoria ocupada por los arreglos de la tabla
+     * @return tamaño aproximado en bytes
+     */
+    public long getFootprintBytes() {
+        return 4L * rangeStarts.length + 4L * rangeEnds.length + 2L * territories.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rangos de códigos postales, %.1f KB", size(), getFootprintBytes() / 1024.0);
+    }
+
+    /**
+     * Carga la tabla de su ubicación configurada
+     * @return tabla compilada
+     */
+    static TerritoryTable load() {
+        String territoriesFile = System.getProperty(TERRITORIES_FILE_PROPERTY);
+        boolean external = territoriesFile != null && !territoriesFile.trim().isEmpty();
+        String source = external ? territoriesFile.trim() : DEFAULT_RESOURCE;
+        try (InputStream in = external
+                ? Files.newInputStream(Paths.get(source))
+                : TerritoryTable.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("No se encontró el recurso de territorios " + DEFAULT_RESOURCE);
+            }
+            return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudieron leer los territorios de " + source, e);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Territorios inválidos en " + source + ": " + e.getMessage(), e);
+        }
+    }
+}
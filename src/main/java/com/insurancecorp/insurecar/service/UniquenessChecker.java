@@ -0,0 +1,223 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Verificación previa de unicidad para importaciones.
+ *
+ * Las claves únicas (VIN del vehículo, número de póliza y email del cliente)
+ * están respaldadas por índices únicos; esta verificación permite rechazar
+ * las filas en conflicto antes de insertar y con el detalle de cada una. Un
+ * bloque de importación se resuelve con una sola consulta IN por tipo de
+ * clave (partida cada {@value #MAX_IN_PARAMETERS} valores), en lugar de una
+ * consulta por fila, y detecta también las claves repetidas dentro del mismo
+ * bloque.
+ */
+public class UniquenessChecker {
+
+    /**
+     * Clave única verificada, con la tabla y la columna de su índice
+     */
+    public enum UniqueKey {
+        VEHICLE_VIN("Vehicle", "vin", "UK_VEHICLE_VIN", "VIN"),
+        POLICY_NUMBER("Policy", "policyNumber", "UK_POLICY_NUMBER", "número de póliza"),
+        CUSTOMER_EMAIL("Customer", "email", "UK_CUSTOMER_EMAIL", "email");
+
+        private final String table;
+        private final String column;
+        private final String constraint;
+        private final String description;
+
+        UniqueKey(String table, String column, String constraint, String description) {
+            this.table = table;
+            this.column = column;
+            this.constraint = constraint;
+            this.description = description;
+        }
+
+        /** @return descripción de la clave para los mensajes */
+        public String getDescription() {
+            return description;
+        }
+
+        String getTable() {
+            return table;
+        }
+
+        String getColumn() {
+            return column;
+        }
+
+        /** @return nombre de la restricción única declarada en la entidad */
+        String getConstraint() {
+            return constraint;
+        }
+
+        String selectIn(int count) {
+            StringBuilder sql = new StringBuilder("select id, ").append(column).append(" from ").append(table)
+                .append(" where ").append(column).append(" in (");
+            for (int i = 0; i < count; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            return sql.append(')').toString();
+        }
+    }
+
+    /** Máxima cantidad de valores por consulta IN */
+    static final int MAX_IN_PARAMETERS = 1000;
+
+    private final DataSource dataSource;
+
+    public UniquenessChecker(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Crea una verificación sobre la fuente de datos de la aplicación
+     * @return verificación lista para usar
+     * @throws IllegalStateException si la fuente de datos no está disponible
+     */
+    public static UniquenessChecker forApplication() {
+        try {
+            return new UniquenessChecker((DataSource) new InitialContext().lookup(CoverageRepricingJob.DATA_SOURCE_NAME));
+        } catch (NamingException e) {
+            throw new IllegalStateException("No se encontró la fuente de datos " + CoverageRepricingJob.DATA_SOURCE_NAME, e);
+        }
+    }
+
+    /**
+     * Verifica las claves únicas de un bloque de importación.
+     * Las filas sin clave se ignoran (las rechaza Bean Validation); una
+     * entidad que ya tiene id no entra en conflicto con su propia fila.
+     * @param customers clientes del bloque
+     * @param vehicles vehículos del bloque
+     * @param policies pólizas del bloque
+     * @return conflictos ordenados por tipo de clave y fila; vacía si no hay
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public List<Conflict> check(List<Customer> customers, List<Vehicle> vehicles, List<Policy> policies) {
+        List<Conflict> conflicts = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            check(connection, UniqueKey.VEHICLE_VIN, vehicles, Vehicle::getVin, Vehicle::getId, conflicts);
+            check(connection, UniqueKey.POLICY_NUMBER, policies, Policy::getPolicyNumber, Policy::getId, conflicts);
+            check(connection, UniqueKey.CUSTOMER_EMAIL, customers, Customer::getEmail, Customer::getId, conflicts);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al verificar la unicidad del bloque de importación", e);
+        }
+        conflicts.sort(Comparator.comparing(Conflict::getKey).thenComparingInt(Conflict::getRow));
+        return conflicts;
+    }
+
+    private <T> void check(Connection connection, UniqueKey key, List<T> rows, Function<T, String> value,
+                           Function<T, Long> id, List<Conflict> conflicts) throws SQLException {
+        if (rows == null || rows.isEmpty()) {
+            return;
+        }
+        // Primera fila de cada clave; las siguientes son repetidas dentro del bloque
+        Map<String, Integer> firstRows = new HashMap<>();
+        for (int row = 0; row < rows.size(); row++) {
+            String keyValue = rows.get(row) != null ? value.apply(rows.get(row)) : null;
+            if (keyValue == null || keyValue.isEmpty()) {
+                continue;
+            }
+            Integer first = firstRows.putIfAbsent(keyValue, row);
+            if (first != null) {
+                conflicts.add(new Conflict(key, keyValue, row, null, first));
+            }
+        }
+        if (firstRows.isEmpty()) {
+            return;
+        }
+
+        Map<String, Long> existing = findExisting(connection, key, new ArrayList<>(firstRows.keySet()));
+        for (Map.Entry<String, Long> match : existing.entrySet()) {
+            int row = firstRows.get(match.getKey());
+            if (!match.getValue().equals(id.apply(rows.get(row)))) {
+                conflicts.add(new Conflict(key, match.getKey(), row, match.getValue(), -1));
+            }
+        }
+    }
+
+    private Map<String, Long> findExisting(Connection connection, UniqueKey key, List<String> values) throws SQLException {
+        Map<String, Long> existing = new HashMap<>();
+        for (int from = 0; from < values.size(); from += MAX_IN_PARAMETERS) {
+            int to = Math.min(values.size(), from + MAX_IN_PARAMETERS);
+            try (PreparedStatement select = connection.prepareStatement(key.selectIn(to - from))) {
+                for (int i = from; i < to; i++) {
+                    select.setString(i - from + 1, values.get(i));
+                }
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        existing.put(rs.getString(2), rs.getLong(1));
+                    }
+                }
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Fila de un bloque de importación cuya clave única ya existe o está repetida
+     */
+    public static final class Conflict {
+
+        private final UniqueKey key;
+        private final String value;
+        private final int row;
+        private final Long existingId;
+        private final int duplicateOfRow;
+
+        Conflict(UniqueKey key, String value, int row, Long existingId, int duplicateOfRow) {
+            this.key = key;
+            this.value = value;
+            this.row = row;
+            this.existingId = existingId;
+            this.duplicateOfRow = duplicateOfRow;
+        }
+
+        /** @return clave en conflicto */
+        public UniqueKey getKey() {
+            return key;
+        }
+
+        /** @return valor repetido */
+        public String getValue() {
+            return value;
+        }
+
+        /** @return posición de la fila en su lista del bloque, desde 0 */
+        public int getRow() {
+            return row;
+        }
+
+        /** @return id del registro guardado con la misma clave, o null si la repetición es dentro del bloque */
+        public Long getExistingId() {
+            return existingId;
+        }
+
+        /** @return fila anterior del bloque con la misma clave, o -1 si el conflicto es con un registro guardado */
+        public int getDuplicateOfRow() {
+            return duplicateOfRow;
+        }
+
+        @Override
+        public String toString() {
+            return existingId != null
+                ? String.format("Fila %d: el %s %s ya existe (id %d)", row, key.getDescription(), value, existingId)
+                : String.format("Fila %d: el %s %s se repite en la fila %d", row, key.getDescription(), value, duplicateOfRow);
+        }
+    }
+}
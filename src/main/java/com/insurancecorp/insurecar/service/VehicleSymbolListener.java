@@ -0,0 +1,18 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.Vehicle;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+
+/**
+ * Listener JPA de {@link Vehicle} que guarda el símbolo de tarificación de su
+ * marca y modelo, para que la retarificación no tenga que resolverlo por fila
+ */
+public class VehicleSymbolListener {
+
+    @PrePersist
+    @PreUpdate
+    public void assignSymbol(Vehicle vehicle) {
+        VehicleSymbolTable.shared().assign(vehicle);
+    }
+}
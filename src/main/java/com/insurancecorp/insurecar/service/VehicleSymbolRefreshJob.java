@@ -0,0 +1,128 @@
+package com.insurancecorp.insurecar.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Vuelve a resolver el símbolo de tarificación guardado en los vehículos.
+ *
+ * {@link VehicleSymbolListener} guarda el símbolo al persistir o modificar un
+ * vehículo, con la tabla cargada en ese momento. Cuando la tabla de símbolos
+ * cambia (se carga al iniciar, ver {@link VehicleSymbolTable}), los vehículos
+ * ya guardados conservan el símbolo anterior; {@link #refresh()} los recorre
+ * en bloques por id y corrige los que no coinciden con la tabla vigente.
+ */
+public class VehicleSymbolRefreshJob {
+
+    static final int DEFAULT_CHUNK_SIZE = 500;
+
+    static final String SELECT_VEHICLES =
+        "select id, make, model, ratingSymbol from Vehicle where id > ? order by id";
+
+    // La marca y el modelo en la condición evitan pisar un cambio guardado mientras se recorría el bloque
+    static final String UPDATE_SYMBOL =
+        "update Vehicle set ratingSymbol = ? where id = ? and make = ? and model = ?";
+
+    private final DataSource dataSource;
+    private final VehicleSymbolTable symbols;
+    private final int chunkSize;
+
+    public VehicleSymbolRefreshJob(DataSource dataSource) {
+        this(dataSource, VehicleSymbolTable.shared(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public VehicleSymbolRefreshJob(DataSource dataSource, VehicleSymbolTable symbols, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("El tamaño de bloque debe ser mayor a 0");
+        }
+        this.dataSource = dataSource;
+        this.symbols = symbols;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Crea una actualización sobre la fuente de datos de la aplicación y la tabla compartida
+     * @return actualización lista para usar
+     * @throws IllegalStateException si la fuente de datos no está disponible
+     */
+    public static VehicleSymbolRefreshJob forApplication() {
+        try {
+            return new VehicleSymbolRefreshJob((DataSource) new InitialContext().lookup(CoverageRepricingJob.DATA_SOURCE_NAME));
+        } catch (NamingException e) {
+            throw new IllegalStateException("No se encontró la fuente de datos " + CoverageRepricingJob.DATA_SOURCE_NAME, e);
+        }
+    }
+
+    /**
+     * Guarda en cada vehículo el símbolo que le corresponde según la tabla,
+     * cada bloque en su propia transacción
+     * @return vehículos cuyo símbolo cambió
+     * @throws IllegalStateException si falla el acceso a la base de datos
+     */
+    public long refresh() {
+        long[] ids = new long[chunkSize];
+        String[] makes = new String[chunkSize];
+        String[] models = new String[chunkSize];
+        int[] resolved = new int[chunkSize];
+        long updated = 0;
+        long lastId = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement select = connection.prepareStatement(SELECT_VEHICLES);
+                 PreparedStatement update = connection.prepareStatement(UPDATE_SYMBOL)) {
+                select.setMaxRows(chunkSize);
+                select.setFetchSize(chunkSize);
+                while (true) {
+                    int read = 0;
+                    int stale = 0;
+                    select.setLong(1, lastId);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            read++;
+                            lastId = rs.getLong(1);
+                            String make = rs.getString(2);
+                            String model = rs.getString(3);
+                            int stored = rs.getInt(4);
+                            boolean missing = rs.wasNull();
+                            int symbol = symbols.symbolOf(make, model);
+                            if (make != null && model != null && (missing || stored != symbol)) {
+                                ids[stale] = lastId;
+                                makes[stale] = make;
+                                models[stale] = model;
+                                resolved[stale] = symbol;
+                                stale++;
+                            }
+                        }
+                    }
+                    for (int i = 0; i < stale; i++) {
+                        update.setInt(1, resolved[i]);
+                        update.setLong(2, ids[i]);
+                        update.setString(3, makes[i]);
+                        update.setString(4, models[i]);
+                        update.addBatch();
+                    }
+                    if (stale > 0) {
+                        for (int count : update.executeBatch()) {
+                            updated += Math.max(count, 0);
+                        }
+                    }
+                    connection.commit();
+                    if (read < chunkSize) {
+                        break;
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error al actualizar los símbolos de tarificación de los vehículos", e);
+        }
+        return updated;
+    }
+}
@@ -0,0 +1,55 @@
+package com.insurancecorp.insurecar.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Actualiza en segundo plano los símbolos de tarificación de los vehículos
+ * guardados al iniciar la aplicación, que es cuando se carga la tabla de
+ * símbolos
+ */
+public class VehicleSymbolRefreshStartup implements ServletContextListener {
+
+    private static final Logger log = Logger.getLogger(VehicleSymbolRefreshStartup.class.getName());
+
+    private ExecutorService executor;
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        VehicleSymbolRefreshJob job;
+        try {
+            job = VehicleSymbolRefreshJob.forApplication();
+        } catch (IllegalStateException e) {
+            // Sin fuente de datos la aplicación arranca igual; los vehículos toman el símbolo al guardarse
+            log.log(Level.WARNING, "No se programó la actualización de símbolos de vehículos", e);
+            return;
+        }
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "insurecar-vehicle-symbols");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(() -> {
+            try {
+                long updated = job.refresh();
+                if (updated > 0) {
+                    log.info("Se actualizó el símbolo de tarificación de " + updated + " vehículos");
+                }
+            } catch (IllegalStateException e) {
+                // Se reintenta en el próximo inicio; hasta entonces se tarifica con el símbolo guardado
+                log.log(Level.WARNING, "No se actualizaron los símbolos de vehículos", e);
+            }
+        });
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.Vehicle;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tabla de símbolos de tarificación por marca y modelo de vehículo.
+ *
+ * La tabla se carga una sola vez al iniciar, del archivo indicado en la
+ * propiedad de sistema {@value #SYMBOLS_FILE_PROPERTY} o, si no está
+ * definida, del recurso {@value #DEFAULT_RESOURCE}. Cada línea asigna un
+ * símbolo a una marca y modelo ("marca,modelo,simbolo"); el modelo
+ * {@value #ANY_MODEL} asigna el símbolo a todos los modelos de la marca que
+ * no figuran por separado. Las combinaciones desconocidas usan el símbolo
+ * {@value #DEFAULT_SYMBOL}.
+ *
+ * Al cargar, marcas y modelos se internan en identificadores enteros densos y
+ * los símbolos se guardan en un mapa de claves enteras sin objetos. El símbolo
+ * resuelto se guarda en {@link Vehicle#getRatingSymbol()} al persistir el
+ * vehículo (ver {@link VehicleSymbolListener}), de modo que la retarificación
+ * masiva lee un entero por fila en lugar de buscar cadenas. Si la tabla
+ * cambió, al iniciar {@link VehicleSymbolRefreshJob} corrige el símbolo de
+ * los vehículos ya guardados.
+ */
+public final class VehicleSymbolTable {
+
+    /** Propiedad de sistema con la ruta de un archivo de símbolos externo */
+    public static final String SYMBOLS_FILE_PROPERTY = "insurecar.vehicleSymbols";
+
+    /** Símbolos por defecto incluidos en la aplicación */
+    public static final String DEFAULT_RESOURCE = "/rating/vehicle-symbols.csv";
+
+    /** Símbolo de las combinaciones de marca y modelo desconocidas */
+    public static final int DEFAULT_SYMBOL = 0;
+
+    /** Modelo comodín que representa a todos los modelos de una marca */
+    public static final String ANY_MODEL = "*";
+
+    /** Identificador de una marca o modelo que no figura en la tabla */
+    public static final int UNKNOWN = -1;
+
+    private static final int ANY_MODEL_ID = 0;
+    private static final int MAX_ID = 0x7FFF;
+
+    private static final VehicleSymbolTable shared = load();
+
+    private final Map<String, Integer> makeIds;
+    private final Map<String, Integer> modelIds;
+    private final IntIntMap symbols;
+
+    private VehicleSymbolTable(Map<String, Integer> makeIds, Map<String, Integer> modelIds, IntIntMap symbols) {
+        this.makeIds = makeIds;
+        this.modelIds = modelIds;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Tabla compartida por todo el proceso, usada por {@link InsuranceService}
+     * @return tabla cargada al iniciar
+     */
+    public static VehicleSymbolTable shared() {
+        return shared;
+    }
+
+    /**
+     * Lee una tabla de símbolos.
+     * Las líneas vacías y las que empiezan con # se ignoran; marcas y modelos
+     * no distinguen mayúsculas.
+     * @param reader contenido con una asignación por línea
+     * @return tabla compilada
+     * @throws IOException si no se puede leer el contenido
+     * @throws IllegalArgumentException si una línea es inválida o está repetida
+     */
+    public static VehicleSymbolTable parse(Reader reader) throws IOException {
+        Map<String, Integer> makeIds = new HashMap<>();
+        Map<String, Integer> modelIds = new HashMap<>();
+        modelIds.put(ANY_MODEL, ANY_MODEL_ID);
+        int[] keys = new int[256];
+        int[] values = new int[256];
+        int[] lineNumbers = new int[256];
+        int size = 0;
+
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length != 3 || normalize(fields[0]).isEmpty() || normalize(fields[1]).isEmpty()) {
+                throw new IllegalArgumentException("Línea " + lineNumber + " inválida en la tabla de símbolos: " + line);
+            }
+            int symbol;
+            try {
+                symbol = Integer.parseInt(fields[2].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Símbolo inválido en la línea " + lineNumber + ": " + line, e);
+            }
+            if (symbol < 0 || symbol > RatingEngine.MAX_VEHICLE_SYMBOL) {
+                throw new IllegalArgumentException("Símbolo fuera de rango en la línea " + lineNumber + ": " + line);
+            }
+            int makeId = intern(makeIds, normalize(fields[0]));
+            int modelId = intern(modelIds, normalize(fields[1]));
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                lineNumbers = Arrays.copyOf(lineNumbers, size * 2);
+            }
+            keys[size] = key(makeId, modelId);
+            values[size] = symbol;
+            lineNumbers[size] = lineNumber;
+            size++;
+        }
+
+        IntIntMap symbols = new IntIntMap(size);
+        for (int i = 0; i < size; i++) {
+            if (!symbols.put(keys[i], values[i])) {
+                throw new IllegalArgumentException("Marca y modelo repetidos en la línea " + lineNumbers[i]);
+            }
+        }
+        return new VehicleSymbolTable(makeIds, modelIds, symbols);
+    }
+
+    /**
+     * Obtiene el identificador interno de una marca
+     * @param make marca
+     * @return identificador, o {@value #UNKNOWN} si la marca no figura en la tabla
+     */
+    public int makeId(String make) {
+        return make == null ? UNKNOWN : makeIds.getOrDefault(normalize(make), UNKNOWN);
+    }
+
+    /**
+     * Obtiene el identificador interno de un modelo
+     * @param model modelo
+     * @return identificador, o {@value #UNKNOWN} si el modelo no figura en la tabla
+     */
+    public int modelId(String model) {
+        return model == null ? UNKNOWN : modelIds.getOrDefault(normalize(model), UNKNOWN);
+    }
+
+    /**
+     * Resuelve el símbolo de identificadores ya internados, sin buscar cadenas
+     * @param makeId identificador de la marca
+     * @param modelId identificador del modelo
+     * @return símbolo del modelo, o el de la marca, o {@value #DEFAULT_SYMBOL}
+     */
+    public int symbolOf(int makeId, int modelId) {
+        if (makeId < 0) {
+            return DEFAULT_SYMBOL;
+        }
+        if (modelId > ANY_MODEL_ID) {
+            int symbol = symbols.get(key(makeId, modelId));
+            if (symbol >= 0) {
+                return symbol;
+            }
+        }
+        int symbol = symbols.get(key(makeId, ANY_MODEL_ID));
+        return symbol >= 0 ? symbol : DEFAULT_SYMBOL;
+    }
+
+    /**
+     * Resuelve el símbolo de una marca y modelo
+     * @param make marca
+     * @param model modelo
+     * @return símbolo del modelo, o el de la marca, o {@value #DEFAULT_SYMBOL}
+     */
+    public int symbolOf(String make, String model) {
+        return symbolOf(makeId(make), modelId(model));
+    }
+
+    /**
+     * Obtiene el símbolo de un vehículo: el guardado en el vehículo o, si aún
+     * no tiene, el que resulta de su marca y modelo
+     * @param vehicle vehículo
+     * @return símbolo de tarificación
+     */
+    public int symbolOf(Vehicle vehicle) {
+        Integer symbol = vehicle.getRatingSymbol();
+        return symbol != null ? symbol : symbolOf(vehicle.getMake(), vehicle.getModel());
+    }
+
+    /**
+     * Asigna a un vehículo el símbolo que corresponde a su marca y modelo.
+     * Se usa al persistir y modificar vehículos; los ya guardados los
+     * actualiza {@link VehicleSymbolRefreshJob}.
+     * @param vehicle vehículo
+     * @return true si el símbolo cambió
+     */
+    public boolean assign(Vehicle vehicle) {
+        int symbol = symbolOf(vehicle.getMake(), vehicle.getModel());
+        if (vehicle.getRatingSymbol() != null && vehicle.getRatingSymbol() == symbol) {
+            return false;
+        }
+        vehicle.setRatingSymbol(symbol);
+        return true;
+    }
+
+    /** @return cantidad de asignaciones de la tabla */
+    public int size() {
+        return symbols.size();
+    }
+
+    /** @return cantidad de marcas distintas */
+    public int getMakeCount() {
+        return makeIds.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d símbolos de vehículo, %d marcas, %d modelos", size(), makeIds.size(), modelIds.size() - 1);
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Asigna a un valor el siguiente identificador denso si aún no tiene uno
+     */
+    private static int intern(Map<String, Integer> ids, String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = ids.size();
+            if (id > MAX_ID) {
+                throw new IllegalArgumentException("Demasiados valores distintos en la tabla de símbolos");
+            }
+            ids.put(value, id);
+        }
+        return id;
+    }
+
+    private static int key(int makeId, int modelId) {
+        return makeId << 16 | modelId;
+    }
+
+    /**
+     * Carga la tabla de su ubicación configurada
+     * @return tabla compilada
+     */
+    static VehicleSymbolTable load() {
+        String symbolsFile = System.getProperty(SYMBOLS_FILE_PROPERTY);
+        boolean external = symbolsFile != null && !symbolsFile.trim().isEmpty();
+        String source = external ? symbolsFile.trim() : DEFAULT_RESOURCE;
+        try (InputStream in = external
+                ? Files.newInputStream(Paths.get(source))
+                : VehicleSymbolTable.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("No se encontró el recurso de símbolos " + DEFAULT_RESOURCE);
+            }
+            return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudieron leer los símbolos de " + source, e);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Símbolos inválidos en " + source + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Mapa de enteros a enteros no negativos con direccionamiento abierto
+     */
+    private static final class IntIntMap {
+
+        private static final int EMPTY = -1;
+
+        private final int[] keys;
+        private final int[] values;
+        private final int mask;
+        private int size;
+
+        IntIntMap(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+            keys = new int[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+            Arrays.fill(keys, EMPTY);
+        }
+
+        boolean put(int key, int value) {
+            int slot = slot(key);
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+            return true;
+        }
+
+        int get(int key) {
+            int slot = slot(key);
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return EMPTY;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private int slot(int key) {
+            int hash = key * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.insurancecorp.insurecar;
+
+/**
+ * Categoría JUnit de las pruebas de rendimiento: miden tiempos o recorren
+ * volúmenes grandes, así que no corren con {@code mvn test} sino con el
+ * perfil performance ({@code mvn test -Pperformance}).
+ */
+public interface PerformanceTests {
+}
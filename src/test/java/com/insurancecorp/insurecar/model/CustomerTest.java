@@ -165,4 +165,14 @@ public class CustomerTest {
         assertNotNull("La fecha de actualización no debe ser nula", customer.getUpdatedAt());
         assertNotEquals("La fecha de actualización debe cambiar", originalDate, customer.getUpdatedAt());
     }
-} 
\ No newline at end of file
+    
+    @Test
+    public void testOnCreateAndUpdate_Eligible() {
+        // Prueba que la elegibilidad se guarda al crear y se recalcula al actualizar
+        customer.onCreate();
+        assertEquals("Cliente válido debe quedar elegible", Boolean.TRUE, customer.getEligible());
+        customer.setDateOfBirth(LocalDate.now().minusYears(17));
+        customer.onUpdate();
+        assertEquals("Cliente menor de edad no debe quedar elegible", Boolean.FALSE, customer.getEligible());
+    }
+}
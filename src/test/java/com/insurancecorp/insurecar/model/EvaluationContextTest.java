@@ -0,0 +1,71 @@
+package com.insurancecorp.insurecar.model;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.time.LocalDate;
+import java.time.Period;
+
+/**
+ * Pruebas de caja blanca para EvaluationContext
+ */
+public class EvaluationContextTest {
+
+    @Test
+    public void testYearsSince_MatchesPeriod() {
+        // Prueba que el cálculo entero coincide con Period en fechas pasadas y futuras
+        LocalDate[] asOfDates = {
+            LocalDate.of(2024, 2, 29), LocalDate.of(2025, 2, 28), LocalDate.of(2025, 3, 1),
+            LocalDate.of(2025, 12, 31), LocalDate.of(2026, 1, 1), LocalDate.of(2026, 10, 17)
+        };
+        for (LocalDate asOf : asOfDates) {
+            EvaluationContext context = EvaluationContext.of(asOf);
+            for (LocalDate date = asOf.minusYears(3).minusDays(5); date.isBefore(asOf.plusYears(3)); date = date.plusDays(1)) {
+                assertEquals("Años entre " + date + " y " + asOf,
+                    Period.between(date, asOf).getYears(), context.yearsSince(date));
+            }
+        }
+    }
+
+    @Test
+    public void testYearsSince_LeapDayBirthday() {
+        // Prueba un nacimiento el 29 de febrero en un año no bisiesto
+        LocalDate birth = LocalDate.of(2008, 2, 29);
+        assertEquals("El 28 de febrero aún no cumple", 17, EvaluationContext.of(LocalDate.of(2026, 2, 28)).yearsSince(birth));
+        assertEquals("El 1 de marzo ya cumple", 18, EvaluationContext.of(LocalDate.of(2026, 3, 1)).yearsSince(birth));
+    }
+
+    @Test
+    public void testIsPastAndIsFuture() {
+        // Prueba las comparaciones con la fecha de evaluación
+        EvaluationContext context = EvaluationContext.of(LocalDate.of(2026, 1, 1));
+        assertTrue("El día anterior es pasado", context.isPast(LocalDate.of(2025, 12, 31)));
+        assertFalse("El mismo día no es pasado", context.isPast(LocalDate.of(2026, 1, 1)));
+        assertFalse("El mismo día no es futuro", context.isFuture(LocalDate.of(2026, 1, 1)));
+        assertTrue("El día siguiente es futuro", context.isFuture(LocalDate.of(2026, 1, 2)));
+    }
+
+    @Test
+    public void testFixedDate_DeterministicEntities() {
+        // Prueba que las entidades usan la fecha del contexto y no la del reloj
+        EvaluationContext context = EvaluationContext.of(LocalDate.of(2030, 6, 1));
+        Customer customer = new Customer();
+        customer.setDateOfBirth(LocalDate.of(2012, 6, 2));
+        Vehicle vehicle = new Vehicle();
+        vehicle.setYear("2020");
+        Policy policy = new Policy();
+        policy.setStartDate(LocalDate.of(2030, 1, 1));
+        policy.setEndDate(LocalDate.of(2030, 5, 31));
+
+        assertEquals("La edad debe calcularse en la fecha del contexto", 17, customer.getAge(context));
+        assertFalse("El cliente aún no es mayor de edad", customer.isAdult(context));
+        assertEquals("La antigüedad debe calcularse en el año del contexto", 10, vehicle.getVehicleAge(context));
+        assertTrue("La póliza debe estar vencida en la fecha del contexto", policy.isExpired(context));
+        assertFalse("La póliza no debe estar activa en la fecha del contexto", policy.isActive(context));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOf_NullDate() {
+        // Prueba que la fecha de evaluación es obligatoria
+        EvaluationContext.of(null);
+    }
+}
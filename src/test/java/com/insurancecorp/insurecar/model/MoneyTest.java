@@ -0,0 +1,63 @@
+package com.insurancecorp.insurecar.model;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de caja blanca para Money
+ */
+public class MoneyTest {
+
+    @Test
+    public void testOfAmount_RoundsToCent() {
+        // Prueba la conversión a centavos con redondeo
+        assertEquals("Debe convertir a centavos", 123456L, Money.ofAmount(1234.56));
+        assertEquals("Debe redondear al centavo más cercano", 33333L, Money.ofAmount(333.333));
+        assertEquals("Debe compensar la representación binaria", 33333L, Money.ofAmount(333.33));
+    }
+
+    @Test
+    public void testOfAmount_Null() {
+        // Prueba la conversión de un importe nulo
+        assertEquals("Un importe nulo equivale a 0", 0L, Money.ofAmount((Double) null));
+    }
+
+    @Test
+    public void testToAmount() {
+        // Prueba la conversión a unidades monetarias
+        assertEquals("Debe convertir a unidades", 1234.56, Money.toAmount(123456L), 0.0);
+    }
+
+    @Test
+    public void testAdd_ExactSum() {
+        // Prueba que las sumas son exactas
+        long total = 0;
+        for (int i = 0; i < 10; i++) {
+            total = Money.add(total, Money.ofAmount(0.1));
+        }
+        assertEquals("La suma de diez pagos de 0.10 debe ser 1.00 exacto", 100L, total);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testAdd_Overflow() {
+        // Prueba que el desbordamiento se detecta
+        Money.add(Long.MAX_VALUE, 1);
+    }
+
+    @Test
+    public void testMultiply_RoundsHalfUp() {
+        // Prueba el redondeo al aplicar factores
+        assertEquals("Debe redondear hacia arriba en la mitad", 50000L, Money.multiply(33333L, 1.5));
+        assertEquals("Debe aplicar el descuento", 90000L, Money.multiply(100000L, 0.9));
+    }
+
+    @Test
+    public void testFormat() {
+        // Prueba el formato con dos decimales
+        assertEquals("1234.50", Money.format(123450L));
+        assertEquals("0.05", Money.format(5L));
+        assertEquals("-0.05", Money.format(-5L));
+        assertEquals("-92233720368547758.08", Money.format(Long.MIN_VALUE));
+        assertEquals("92233720368547758.07", Money.format(Long.MAX_VALUE));
+    }
+}
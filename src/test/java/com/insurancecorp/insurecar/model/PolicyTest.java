@@ -243,6 +243,26 @@ public class PolicyTest {
         assertEquals("El monto restante debe ser igual a la prima", 1000.0, remaining, 0.01);
     }
     
+    @Test
+    public void testGetRemainingAmount_RemovedPayment() {
+        // Prueba que al eliminar un pago completado se descuenta de los totales y del estado
+        Payment kept = new Payment();
+        kept.setAmount(300.0);
+        kept.setStatus("completed");
+        kept.setPolicy(policy);
+        Payment removed = new Payment();
+        removed.setAmount(700.0);
+        removed.setStatus("completed");
+        removed.setPolicy(policy);
+        policy.updateStatusByPayments();
+        assertEquals(PolicyStatus.PAID, policy.getStatus());
+
+        removed.onRemove();
+        assertEquals("El monto restante debe volver a incluir el pago eliminado", 700.0, policy.getRemainingAmount(), 0.01);
+        assertEquals(1, policy.getCompletedPaymentCount());
+        assertEquals(PolicyStatus.PARTIALLY_PAID, policy.getStatus());
+    }
+    
     @Test
     public void testGetRemainingAmount_NullPremium() {
         // Prueba con prima nula
@@ -339,4 +359,97 @@ public class PolicyTest {
         assertNotNull("La fecha de actualización no debe ser nula", policy.getUpdatedAt());
         assertNotEquals("La fecha de actualización debe cambiar", originalDate, policy.getUpdatedAt());
     }
-} 
\ No newline at end of file
+    
+    @Test
+    public void testPaymentTotals_Incremental() {
+        // Prueba que los totales siguen a cada pago al completarse, fallar o revertirse sin leer la colección
+        policy.setPayments(null);
+        Payment first = new Payment();
+        first.setPolicy(policy);
+        first.setAmount(300.0);
+        first.setStatus("pending");
+        assertEquals("Un pago pendiente no cuenta", 0, policy.getTotalPaidCents());
+
+        first.setStatus("completed");
+        Payment second = new Payment();
+        second.setAmount(200.0);
+        second.setStatus("completed");
+        second.setPolicy(policy);
+        assertEquals("Debe sumar los pagos completados", 50000, policy.getTotalPaidCents());
+        assertEquals("Debe contar los pagos completados", 2, policy.getCompletedPaymentCount());
+
+        second.setAmount(250.0);
+        assertEquals("Debe aplicar solo la diferencia del monto", 55000, policy.getTotalPaidCents());
+
+        first.setStatus("reversed");
+        assertEquals("Un pago revertido deja de contar", 25000, policy.getTotalPaidCents());
+        assertEquals(1, policy.getCompletedPaymentCount());
+        policy.updateStatusByPayments();
+        assertEquals(PolicyStatus.PARTIALLY_PAID, policy.getStatus());
+        assertNull("No debe cargar la colección de pagos", policy.getPayments());
+    }
+    
+    @Test
+    public void testPaymentTotals_MovedToAnotherPolicy() {
+        // Prueba que un pago asignado a otra póliza se descuenta de la anterior
+        Policy other = new Policy();
+        Payment payment = new Payment();
+        payment.setAmount(100.0);
+        payment.setStatus("completed");
+        payment.setPolicy(policy);
+        payment.setPolicy(other);
+        assertEquals("La póliza anterior no debe conservar el pago", 0, policy.getTotalPaidCents());
+        assertEquals(10000, other.getTotalPaidCents());
+        assertEquals(1, other.getCompletedPaymentCount());
+    }
+    
+    @Test
+    public void testSetPayments_RebuildsTotals() {
+        // Prueba que asignar la colección recalcula los totales sin contar dos veces
+        Payment payment = new Payment();
+        payment.setAmount(400.0);
+        payment.setStatus("completed");
+        payment.setPolicy(policy);
+        List<Payment> payments = new ArrayList<>();
+        payments.add(payment);
+        policy.setPayments(payments);
+        policy.setPayments(payments);
+        assertEquals(40000, policy.getTotalPaidCents());
+        assertEquals(1, policy.getCompletedPaymentCount());
+        assertEquals("El pago debe quedar asociado a la póliza", policy, payment.getPolicy());
+    }
+    
+    @Test
+    public void testPaymentStatus_Normalized() {
+        // Prueba que el estado se guarda en minúsculas y sigue contando como completado
+        Payment payment = new Payment();
+        payment.setAmount(100.0);
+        payment.setStatus(" Completed ");
+        payment.setPolicy(policy);
+        assertEquals(Payment.COMPLETED, payment.getStatus());
+        assertEquals(10000, policy.getTotalPaidCents());
+    }
+
+    @Test
+    public void testIsTermChanged() {
+        // Prueba que solo el vehículo, la vigencia y la cancelación cuentan como cambio de vigencia
+        vehicle.setId(7L);
+        assertTrue("Una póliza sin guardar se considera cambiada", policy.isTermChanged());
+        policy.rememberTerm();
+        assertFalse(policy.isTermChanged());
+
+        policy.setStatus(PolicyStatus.PAID);
+        policy.setPremium(1200.0);
+        assertFalse("Los pagos y la prima no cambian la vigencia", policy.isTermChanged());
+        policy.setEndDate(policy.getEndDate().plusMonths(6));
+        assertTrue("Debe detectar el cambio de fecha de fin", policy.isTermChanged());
+        policy.rememberTerm();
+        policy.setStatus(PolicyStatus.CANCELLED);
+        assertTrue("Debe detectar la cancelación", policy.isTermChanged());
+        policy.rememberTerm();
+        Vehicle other = new Vehicle();
+        other.setId(8L);
+        policy.setVehicle(other);
+        assertTrue("Debe detectar el cambio de vehículo", policy.isTermChanged());
+    }
+}
@@ -197,4 +197,25 @@ public class VehicleTest {
         assertNotNull("La fecha de actualización no debe ser nula", vehicle.getUpdatedAt());
         assertNotEquals("La fecha de actualización debe cambiar", originalDate, vehicle.getUpdatedAt());
     }
-} 
\ No newline at end of file
+    
+    @Test
+    public void testSetMakeAndModel_ClearRatingSymbol() {
+        // Prueba que cambiar la marca o el modelo descarta el símbolo guardado
+        vehicle.setRatingSymbol(3);
+        vehicle.setModel("Corolla");
+        assertNull("Cambiar el modelo debe descartar el símbolo", vehicle.getRatingSymbol());
+        vehicle.setRatingSymbol(3);
+        vehicle.setMake("Honda");
+        assertNull("Cambiar la marca debe descartar el símbolo", vehicle.getRatingSymbol());
+    }
+    
+    @Test
+    public void testOnCreateAndUpdate_Eligible() {
+        // Prueba que la elegibilidad se guarda al crear y se recalcula al actualizar
+        vehicle.onCreate();
+        assertEquals("Vehículo válido debe quedar elegible", Boolean.TRUE, vehicle.getEligible());
+        vehicle.setOwner(null);
+        vehicle.onUpdate();
+        assertEquals("Vehículo sin propietario no debe quedar elegible", Boolean.FALSE, vehicle.getEligible());
+    }
+}
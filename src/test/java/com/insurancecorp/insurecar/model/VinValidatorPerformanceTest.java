@@ -0,0 +1,40 @@
+package com.insurancecorp.insurecar.model;
+
+import com.insurancecorp.insurecar.PerformanceTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+/**
+ * Prueba de rendimiento de VinValidator contra la expresión regular anterior.
+ * Se ejecuta con el perfil performance: {@code mvn test -Pperformance}
+ */
+@Category(PerformanceTests.class)
+public class VinValidatorPerformanceTest {
+
+    static final String[] VINS = {"1HGBH41JXMN109186", "1A1B2C3D4E5F6G7H8", "1HGBH41JXMN10918O", "WVWZZZ1JZXW000001"};
+
+    @Test
+    public void testIsValid_FasterThanPattern() {
+        // Prueba de volumen: el validador da el mismo resultado que la expresión regular y no es más lento
+        int rounds = 2_000_000;
+        long patternNanos = Long.MAX_VALUE;
+        long validatorNanos = Long.MAX_VALUE;
+        int matches = 0;
+        for (int repeat = 0; repeat < 3; repeat++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                matches += VinValidatorTest.LEGACY_PATTERN.matcher(VINS[i & 3]).matches() ? 1 : 0;
+            }
+            patternNanos = Math.min(patternNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                matches -= VinValidator.isValid(VINS[i & 3], false) ? 1 : 0;
+            }
+            validatorNanos = Math.min(validatorNanos, System.nanoTime() - start);
+        }
+        assertEquals("Deben aceptar los mismos VIN", 0, matches);
+        assertTrue("Expresión regular " + patternNanos / rounds + " ns, validador " + validatorNanos / rounds + " ns",
+            validatorNanos <= patternNanos);
+    }
+}
@@ -0,0 +1,120 @@
+package com.insurancecorp.insurecar.model;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+
+/**
+ * Pruebas de caja blanca para VinValidator
+ */
+public class VinValidatorTest {
+
+    static final Pattern LEGACY_PATTERN = Pattern.compile("^[A-HJ-NPR-Z0-9]{17}$");
+
+    @Test
+    public void testIsValid_CheckDigit() {
+        // Prueba VIN con dígito verificador numérico y X
+        assertTrue("Dígito verificador X", VinValidator.isValid("1HGBH41JXMN109186"));
+        assertTrue("Dígito verificador X", VinValidator.isValid("1M8GDM9AXKP042788"));
+        assertTrue("Dígito verificador numérico", VinValidator.isValid("11111111111111111"));
+    }
+
+    @Test
+    public void testIsValid_WrongCheckDigit() {
+        // Prueba que un dígito verificador incorrecto se rechaza salvo que no se verifique
+        assertFalse("Debe rechazar el dígito incorrecto", VinValidator.isValid("1HGBH41J1MN109186"));
+        assertTrue("Sin verificación solo importa el juego de caracteres",
+            VinValidator.isValid("1HGBH41J1MN109186", false));
+    }
+
+    @Test
+    public void testIsValid_InvalidCharacters() {
+        // Prueba que se rechazan I, O, Q, minúsculas y caracteres fuera de la tabla
+        assertFalse("Debe rechazar la I", VinValidator.isValid("1HGBH41JXMN10918I", false));
+        assertFalse("Debe rechazar la O", VinValidator.isValid("1HGBH41JXMN10918O", false));
+        assertFalse("Debe rechazar la Q", VinValidator.isValid("1HGBH41JXMN10918Q", false));
+        assertFalse("Debe rechazar minúsculas", VinValidator.isValid("1hgbh41jxmn109186", false));
+        assertFalse("Debe rechazar símbolos", VinValidator.isValid("1HGBH41JXMN10918-", false));
+        assertFalse("Debe rechazar caracteres no ASCII", VinValidator.isValid("1HGBH41JXMN10918Ñ", false));
+    }
+
+    @Test
+    public void testIsValid_Length() {
+        // Prueba que la longitud debe ser exactamente 17
+        assertFalse("Debe rechazar nulo", VinValidator.isValid(null));
+        assertFalse("Debe rechazar vacío", VinValidator.isValid(""));
+        assertFalse("Debe rechazar 16 caracteres", VinValidator.isValid("1HGBH41JXMN10918"));
+        assertFalse("Debe rechazar 18 caracteres", VinValidator.isValid("1HGBH41JXMN1091866"));
+    }
+
+    @Test
+    public void testIsValid_SameCharacterSetAsPattern() {
+        // Prueba que sin dígito verificador acepta exactamente lo mismo que la expresión regular anterior
+        StringBuilder vin = new StringBuilder("1HGBH41JXMN10918 ");
+        for (char c = 0; c < 256; c++) {
+            vin.setCharAt(16, c);
+            assertEquals("Carácter " + (int) c, LEGACY_PATTERN.matcher(vin).matches(), VinValidator.isValid(vin, false));
+        }
+    }
+
+    @Test
+    public void testVehicleConstraint() {
+        // Prueba que la restricción @Vin del vehículo acepta VIN sin dígito verificador, como los ya guardados
+        Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+        Vehicle vehicle = new Vehicle();
+        vehicle.setVin("1A1B2C3D4E5F6G7H8");
+        assertTrue("Debe aceptar el VIN de los datos iniciales", validator.validateProperty(vehicle, "vin").isEmpty());
+        vehicle.setVin("1HGBH41J1MN109186");
+        assertTrue("No verifica el dígito por defecto", validator.validateProperty(vehicle, "vin").isEmpty());
+        vehicle.setVin("1HGBH41JXMN10918O");
+        Set<ConstraintViolation<Vehicle>> violations = validator.validateProperty(vehicle, "vin");
+        assertEquals("Debe rechazar la O", 1, violations.size());
+    }
+
+    private static int checkDigitViolations(Validator validator, Vehicle vehicle) {
+        return validator.validateProperty(vehicle, "vinCheckDigitValid").size();
+    }
+
+    @Test
+    public void testVehicleCheckDigit_NewOrChangedNorthAmerican() {
+        // Prueba que el vehículo verifica el dígito solo en VIN de Norteamérica nuevos o cambiados
+        Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+        Vehicle vehicle = new Vehicle();
+        vehicle.setVin("1HGBH41JXMN109186");
+        assertEquals("Un VIN nuevo correcto se acepta", 0, checkDigitViolations(validator, vehicle));
+        vehicle.setVin("1HGBH41J1MN109186");
+        assertEquals("Un VIN nuevo de Norteamérica con dígito incorrecto se rechaza", 1,
+            checkDigitViolations(validator, vehicle));
+        vehicle.setVin("WVWZZZ1JZXW000001");
+        assertEquals("Un VIN de otra región no se verifica", 0, checkDigitViolations(validator, vehicle));
+
+        vehicle.setVin("1A1B2C3D4E5F6G7H8");
+        vehicle.rememberVin(); // como si se hubiera leído de la base de datos
+        assertEquals("Un VIN guardado sin cambios se acepta", 0, checkDigitViolations(validator, vehicle));
+        vehicle.setVin("1A1B2C3D4E5F6G7H9");
+        assertEquals("Un VIN cambiado se verifica", 1, checkDigitViolations(validator, vehicle));
+    }
+
+    @Test
+    public void testIsNorthAmerican() {
+        // Prueba que solo los fabricantes del 1 al 5 son de Norteamérica
+        assertTrue(VinValidator.isNorthAmerican("1HGBH41JXMN109186"));
+        assertTrue(VinValidator.isNorthAmerican("5YJSA1E26HF000001"));
+        assertFalse(VinValidator.isNorthAmerican("6FPAAAJGCM9A00001"));
+        assertFalse(VinValidator.isNorthAmerican("WVWZZZ1JZXW000001"));
+        assertFalse(VinValidator.isNorthAmerican(""));
+        assertFalse(VinValidator.isNorthAmerican(null));
+    }
+
+    @Test
+    public void testIsValid_SameAsPatternForSamples() {
+        // Prueba que el validador da el mismo resultado que la expresión regular con VIN de distintas regiones
+        for (String vin : VinValidatorPerformanceTest.VINS) {
+            assertEquals(vin, LEGACY_PATTERN.matcher(vin).matches(), VinValidator.isValid(vin, false));
+        }
+    }
+}
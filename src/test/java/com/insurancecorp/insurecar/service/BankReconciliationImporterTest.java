@@ -0,0 +1,213 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Pruebas de caja blanca para BankReconciliationImporter sobre una base H2 en memoria
+ */
+public class BankReconciliationImporterTest {
+
+    private static final String INSERT_POLICY = "insert into Policy (id, policyNumber, premiumCents, totalPaidCents,"
+        + " completedPaymentCount, status, version) values ";
+
+    private TestDatabase database;
+    private JdbcDataSource dataSource;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        database = TestDatabase.create("reconciliation");
+        dataSource = database.getDataSource();
+        connection = database.getConnection();
+        database.execute(INSERT_POLICY + "(1, 'POL-000001', 100000, 0, 0, 'UNPAID', 0),"
+                + " (2, 'POL-000002', 50000, 20000, 1, 'PARTIALLY_PAID', 3),"
+                + " (3, 'POL-000003', 80000, 0, 0, 'CANCELLED', 0)",
+            "insert into Payment (policy_id, amountCents, status, bankReference)"
+                + " values (2, 20000, 'completed', 'TRX-OLD')");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    private long[] policyRow(long id) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "select totalPaidCents, completedPaymentCount, version from Policy where id = ?")) {
+            select.setLong(1, id);
+            try (ResultSet rs = select.executeQuery()) {
+                rs.next();
+                return new long[] {rs.getLong(1), rs.getLong(2), rs.getLong(3)};
+            }
+        }
+    }
+
+    private String status(long id) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select status from Policy where id = " + id)) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    @Test
+    public void testImport() throws IOException, SQLException {
+        // Prueba que se informan las líneas asociadas, sin póliza, duplicadas e inválidas
+        String file = "date,Reference,POLICYNUMBER,amount,method\n"
+            + "2025-03-01,TRX-1,POL-000001,400.00,\n"
+            + "2025-03-01,TRX-2,pol-000001,600,card\n"
+            + "2025-03-01,TRX-3,POL-999999,10.00,\n"
+            + "\n"
+            + "2025-03-02,TRX-1,POL-000001,400.00,\n"
+            + "2025-03-02,TRX-OLD,POL-000002,200.00,\n"
+            + "2025-03-02,TRX-4,POL-000002,1.005,\n"
+            + "2025-03-02,TRX-5,POL-000002,\"1,5\",\n"
+            + "31/03/2025,TRX-6,POL-000002,10.00,\n"
+            + ",TRX-7,POL-000002,300.00,\n"
+            + "2025-03-03,TRX-8,POL-000003,50.00,\n";
+        StringWriter report = new StringWriter();
+        BankReconciliationImporter.ReconciliationResult result =
+            new BankReconciliationImporter(dataSource, 4).importFile(new StringReader(file), report);
+
+        assertEquals("Deben asociarse cuatro líneas", 4, result.getMatchedCount());
+        assertEquals(100000 + 30000 + 5000, result.getMatchedCents());
+        assertEquals(1, result.getUnmatchedCount());
+        assertEquals(2, result.getDuplicateCount());
+        assertEquals(3, result.getInvalidCount());
+        assertEquals("Diez líneas en bloques de cuatro", 3, result.getChunkCount());
+
+        String[] lines = report.toString().split("\n");
+        assertEquals(BankReconciliationImporter.REPORT_HEADER, lines[0]);
+        assertEquals("2,TRX-1,POL-000001,400.00,MATCHED,", lines[1]);
+        assertEquals("4,TRX-3,POL-999999,10.00,UNMATCHED,No existe la póliza", lines[3]);
+        assertEquals("6,TRX-1,POL-000001,400.00,DUPLICATE,Repite la línea 2", lines[4]);
+        assertEquals("7,TRX-OLD,POL-000002,200.00,DUPLICATE,Ya importada", lines[5]);
+        assertEquals("8,TRX-4,POL-000002,1.005,INVALID,Monto inválido", lines[6]);
+        assertEquals("9,TRX-5,POL-000002,\"1,5\",INVALID,Monto inválido", lines[7]);
+        assertEquals("10,TRX-6,POL-000002,10.00,INVALID,Fecha inválida", lines[8]);
+        assertEquals("Una línea por cada línea no vacía", 11, lines.length);
+
+        assertArrayEquals("La póliza 1 se actualiza una vez en su bloque", new long[] {100000, 2, 1}, policyRow(1));
+        assertEquals(PolicyStatus.PAID.name(), status(1));
+        assertArrayEquals(new long[] {50000, 2, 4}, policyRow(2));
+        assertEquals(PolicyStatus.PAID.name(), status(2));
+        assertEquals("Una póliza cancelada conserva su estado", PolicyStatus.CANCELLED.name(), status(3));
+
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select method, paymentDate, status from Payment"
+                 + " where bankReference = 'TRX-1'")) {
+            rs.next();
+            assertEquals(BankReconciliationImporter.DEFAULT_METHOD, rs.getString(1));
+            assertEquals("2025-03-01", rs.getString(2));
+            assertEquals(Payment.COMPLETED, rs.getString(3));
+        }
+    }
+
+    @Test
+    public void testImport_SameFileTwice() throws IOException {
+        // Prueba que volver a importar el mismo archivo solo informa duplicados
+        String file = "reference,policyNumber,amount\nTRX-1,POL-000001,100.00\nTRX-2,POL-000001,50.00\n";
+        BankReconciliationImporter importer = new BankReconciliationImporter(dataSource);
+        assertEquals(2, importer.importFile(new StringReader(file), new StringWriter()).getMatchedCount());
+        BankReconciliationImporter.ReconciliationResult again =
+            importer.importFile(new StringReader(file), new StringWriter());
+        assertEquals(0, again.getMatchedCount());
+        assertEquals(2, again.getDuplicateCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testImport_MissingColumn() throws IOException {
+        // Prueba que falta la columna obligatoria del monto
+        new BankReconciliationImporter(dataSource).importFile(new StringReader("reference,policyNumber\n"),
+            new StringWriter());
+    }
+
+    @Test
+    public void testImport_LargeFileStreams() throws IOException, SQLException {
+        // Prueba un archivo grande leído como flujo, sin armarlo en memoria
+        int policies = 500;
+        int lines = 60_000;
+        try (PreparedStatement insert = connection.prepareStatement(
+                INSERT_POLICY + "(?, ?, 1000000000, 0, 0, 'UNPAID', 0)")) {
+            for (int id = 100; id < 100 + policies; id++) {
+                insert.setLong(1, id);
+                insert.setString(2, String.format("POL-%06d", id));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        Reader file = new Reader() {
+            private int line = -1;
+            private String pending = "";
+            private int position;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                if (position == pending.length()) {
+                    if (line == lines) {
+                        return -1;
+                    }
+                    pending = line < 0 ? "reference,policyNumber,amount\n"
+                        : String.format("B-%d,POL-%06d,%d.%02d%n", line, 100 + line % policies, 1 + line % 90, line % 100);
+                    position = 0;
+                    line++;
+                }
+                int count = Math.min(length, pending.length() - position);
+                pending.getChars(position, position + count, buffer, offset);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        long[] reported = new long[1];
+        Writer report = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                for (int i = offset; i < offset + length; i++) {
+                    if (buffer[i] == '\n') {
+                        reported[0]++;
+                    }
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        BankReconciliationImporter.ReconciliationResult result =
+            new BankReconciliationImporter(dataSource).importFile(file, report);
+        assertEquals("Todas las líneas deben asociarse", lines, result.getMatchedCount());
+        assertEquals("Una línea de reporte por línea más el encabezado", lines + 1, reported[0]);
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select sum(totalPaidCents), sum(completedPaymentCount),"
+                 + " max(version) from Policy where id >= 100")) {
+            rs.next();
+            assertEquals("Los totales deben sumar lo importado", result.getMatchedCents(), rs.getLong(1));
+            assertEquals(lines, rs.getLong(2));
+            assertEquals("Cada póliza se actualiza una vez por bloque", result.getChunkCount(), rs.getLong(3));
+        }
+    }
+}
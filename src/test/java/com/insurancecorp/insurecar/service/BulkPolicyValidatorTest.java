@@ -0,0 +1,133 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import javax.validation.Validation;
+
+/**
+ * Pruebas de caja blanca para BulkPolicyValidator
+ */
+public class BulkPolicyValidatorTest {
+
+    private static final EvaluationContext CONTEXT = EvaluationContext.today(); // las restricciones de fechas usan el reloj
+
+    private BulkPolicyValidator validator;
+    private Coverage coverage;
+
+    @Before
+    public void setUp() {
+        validator = new BulkPolicyValidator(new InsuranceService(),
+            Validation.buildDefaultValidatorFactory().getValidator(), new ForkJoinPool(4), 64);
+        coverage = new Coverage();
+        coverage.setName("Cobertura Básica");
+        coverage.setBasePremium(500.0);
+        coverage.setIsActive(true);
+    }
+
+    /**
+     * Póliza válida salvo las posiciones múltiplo de 100 (sin cliente) y de 250 (placa inválida)
+     */
+    private Policy newPolicy(int index) {
+        Customer customer = new Customer();
+        customer.setFirstName("Cliente");
+        customer.setLastName("Prueba");
+        customer.setEmail("cliente" + index + "@email.com");
+        customer.setDateOfBirth(LocalDate.of(1980, 1, 1).plusDays(index % 5000));
+        customer.setAddress("Calle Principal 123");
+        customer.setCity("Ciudad");
+        customer.setState("Estado");
+        customer.setZipCode("12345");
+
+        Vehicle vehicle = new Vehicle();
+        vehicle.setVin("1HGBH41JXMN109186");
+        vehicle.setMake("Honda");
+        vehicle.setModel("Civic");
+        vehicle.setYear("2020");
+        vehicle.setLicensePlate(index % 250 == 0 ? "abc-1" : "ABC123");
+        vehicle.setOwner(customer);
+
+        Policy policy = new Policy();
+        policy.setCustomer(index % 100 == 0 ? null : customer);
+        policy.setVehicle(vehicle);
+        policy.setCoverage(coverage);
+        policy.setPolicyNumber(String.format("POL-%06d", index));
+        policy.setStartDate(CONTEXT.getAsOf());
+        policy.setEndDate(CONTEXT.getAsOf().plusYears(1));
+        policy.setPremium(600.0);
+        return policy;
+    }
+
+    @Test
+    public void testFullReport_AllIssuesInOrder() {
+        // Prueba que se informan todas las pólizas inválidas, en orden y con sus violaciones
+        List<BulkPolicyValidator.PolicyIssue> issues;
+        try (Stream<BulkPolicyValidator.PolicyIssue> stream = validator.validate(
+                IntStream.range(1, 10_001).mapToObj(this::newPolicy), BulkPolicyValidator.Mode.FULL_REPORT, CONTEXT)) {
+            issues = stream.collect(Collectors.toList());
+        }
+
+        long expected = IntStream.range(1, 10_001).filter(i -> i % 100 == 0 || i % 250 == 0).count();
+        assertEquals("Deben informarse todas las pólizas inválidas", expected, issues.size());
+        for (int i = 1; i < issues.size(); i++) {
+            assertTrue("Deben salir en el orden de la entrada", issues.get(i - 1).getIndex() < issues.get(i).getIndex());
+        }
+        BulkPolicyValidator.PolicyIssue both = issues.stream().filter(issue -> issue.getIndex() == 499).findFirst().get();
+        assertTrue("Debe incluir la regla de negocio", both.getValidation().violates(PolicyRule.CUSTOMER_REQUIRED));
+        assertTrue("Debe incluir el mensaje de la restricción de la placa",
+            both.getMessages().contains("La placa debe tener entre 3 y 10 caracteres alfanuméricos"));
+        assertEquals("El mensaje del cliente no debe repetirse", 1,
+            both.getMessages().stream().filter("El cliente es obligatorio"::equals).count());
+    }
+
+    @Test
+    public void testFailFast_StopsAtFirstInvalid() {
+        // Prueba que el modo de corte devuelve solo la primera inválida y deja de leer la entrada
+        AtomicInteger read = new AtomicInteger();
+        AtomicBoolean closed = new AtomicBoolean();
+        Stream<Policy> policies = IntStream.range(1, 1_000_001)
+            .peek(i -> read.incrementAndGet())
+            .mapToObj(this::newPolicy)
+            .onClose(() -> closed.set(true));
+        List<BulkPolicyValidator.PolicyIssue> issues;
+        try (Stream<BulkPolicyValidator.PolicyIssue> stream = validator.validate(policies,
+                BulkPolicyValidator.Mode.FAIL_FAST, CONTEXT)) {
+            issues = stream.collect(Collectors.toList());
+        }
+
+        assertEquals("Debe devolver una sola póliza inválida", 1, issues.size());
+        assertEquals("Debe ser la primera inválida de la entrada", 99, issues.get(0).getIndex());
+        assertTrue("No debe leer todo el lote", read.get() < 10_000);
+        assertTrue("Debe cerrar la entrada", closed.get());
+    }
+
+    @Test
+    public void testValidBatch_NoIssues() {
+        // Prueba que un lote válido no produce resultados
+        try (Stream<BulkPolicyValidator.PolicyIssue> stream = validator.validate(
+                IntStream.range(1, 1000).filter(i -> i % 100 != 0 && i % 250 != 0).mapToObj(this::newPolicy),
+                BulkPolicyValidator.Mode.FULL_REPORT, CONTEXT)) {
+            assertEquals("No debe haber pólizas inválidas", 0, stream.count());
+        }
+    }
+
+    @Test
+    public void testNullPolicy() {
+        // Prueba que una póliza nula en el lote se informa sin interrumpir la validación
+        List<BulkPolicyValidator.PolicyIssue> issues = validator.validate(Stream.of(newPolicy(1), null, newPolicy(2)),
+            BulkPolicyValidator.Mode.FULL_REPORT, CONTEXT).collect(Collectors.toList());
+        assertEquals("Debe informar la póliza nula", 1, issues.size());
+        assertEquals("Debe indicar su posición", 1, issues.get(0).getIndex());
+        assertTrue("Debe violar la regla de póliza obligatoria",
+            issues.get(0).getValidation().violates(PolicyRule.POLICY_REQUIRED));
+    }
+}
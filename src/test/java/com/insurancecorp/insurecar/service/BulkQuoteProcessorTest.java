@@ -0,0 +1,223 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Pruebas de caja blanca para BulkQuoteProcessor
+ */
+public class BulkQuoteProcessorTest {
+
+    private static final EvaluationContext CONTEXT = EvaluationContext.of(LocalDate.of(2025, 6, 1));
+    private static final String HEADER = "reference,dateOfBirth,zipCode,year,make,model,coverage,durationMonths";
+
+    private InsuranceService insuranceService;
+    private Coverage basic;
+    private Coverage full;
+    private BulkQuoteProcessor processor;
+
+    @Before
+    public void setUp() {
+        insuranceService = new InsuranceService();
+        basic = new Coverage();
+        basic.setName("Básica");
+        basic.setBasePremium(500.0);
+        basic.setIsActive(true);
+        full = new Coverage();
+        full.setName("Amplia");
+        full.setBasePremium(1234.56);
+        full.setIsActive(true);
+        processor = new BulkQuoteProcessor(insuranceService, Arrays.asList(basic, full), new ForkJoinPool(4), 16);
+    }
+
+    private static String row(int i) {
+        return "P" + i + "," + CONTEXT.getAsOf().minusYears(18 + i % 60) + "," + (i % 3 == 0 ? "10001" : "30301") + ","
+            + (CONTEXT.getAsOfYear() - i % 15) + "," + (i % 4 == 0 ? "Porsche" : "Honda") + ",Civic,"
+            + (i % 2 == 0 ? "Básica" : "amplia") + "," + (1 + i % 24);
+    }
+
+    private long expectedPremium(int i) {
+        Customer customer = new Customer();
+        customer.setDateOfBirth(CONTEXT.getAsOf().minusYears(18 + i % 60));
+        customer.setZipCode(i % 3 == 0 ? "10001" : "30301");
+        Vehicle vehicle = new Vehicle();
+        vehicle.setYear(String.valueOf(CONTEXT.getAsOfYear() - i % 15));
+        vehicle.setMake(i % 4 == 0 ? "Porsche" : "Honda");
+        vehicle.setModel("Civic");
+        return insuranceService.calculatePremiumCents(customer, vehicle, i % 2 == 0 ? basic : full, 1 + i % 24, CONTEXT);
+    }
+
+    private static String expectedLine(int i, long premiumCents) {
+        return "P" + i + "," + (i % 2 == 0 ? "Básica" : "amplia") + "," + BigDecimal.valueOf(premiumCents, 2).toPlainString()
+            + "," + RatingRulesRegistry.current().getVersion() + ",";
+    }
+
+    private BulkQuoteProcessor.BulkQuoteResult process(String input, StringWriter output) throws IOException {
+        return processor.process(RatingRulesRegistry.current(), CONTEXT, new StringReader(input), output);
+    }
+
+    @Test
+    public void testProcess_PreservesOrder() throws IOException {
+        // Prueba que cada fila se cotiza como calculatePremium y sale en el orden de la entrada
+        StringBuilder input = new StringBuilder(HEADER).append('\n');
+        for (int i = 0; i < 1000; i++) {
+            input.append(row(i)).append('\n');
+        }
+        StringWriter output = new StringWriter();
+        BulkQuoteProcessor.BulkQuoteResult result = process(input.toString(), output);
+
+        String[] lines = output.toString().split("\n");
+        assertEquals("Debe escribir el encabezado", BulkQuoteProcessor.OUTPUT_HEADER, lines[0]);
+        assertEquals("Debe escribir una línea por fila", 1001, lines.length);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("Fila " + i, expectedLine(i, expectedPremium(i)), lines[i + 1]);
+        }
+        assertEquals("Deben leerse todas las filas", 1000, result.getRowCount());
+        assertEquals("Deben cotizarse todas las filas", 1000, result.getQuotedCount());
+        assertEquals("No debe rechazarse ninguna fila", 0, result.getRejectedCount());
+    }
+
+    @Test
+    public void testProcess_InvalidRowsRejected() throws IOException {
+        // Prueba que las filas inválidas se rechazan con su motivo sin detener el proceso
+        String input = HEADER + "\n"
+            + "A,1990-05-15,12345,2020,Honda,Civic,Desconocida,12\n"
+            + "B,15/05/1990,12345,2020,Honda,Civic,Básica,12\n"
+            + "C,1990-05-15,12345,2020,Honda,Civic,Básica,doce\n"
+            + "D,1990-05-15,12345,2020,Honda,Civic,Básica,0\n"
+            + "\n"
+            + row(2) + "\n";
+        StringWriter output = new StringWriter();
+        BulkQuoteProcessor.BulkQuoteResult result = process(input, output);
+
+        String[] lines = output.toString().split("\n");
+        assertEquals("A,Desconocida,,,Cobertura desconocida", lines[1]);
+        assertEquals("B,Básica,,,Fecha de nacimiento inválida", lines[2]);
+        assertEquals("C,Básica,,,Número inválido", lines[3]);
+        assertEquals("D,Básica,,,Duración inválida", lines[4]);
+        assertEquals("La fila válida debe cotizarse", expectedLine(2, expectedPremium(2)), lines[5]);
+        assertEquals("Deben rechazarse las filas inválidas", 4, result.getRejectedCount());
+        assertEquals("Las líneas vacías no cuentan como filas", 5, result.getRowCount());
+    }
+
+    @Test
+    public void testProcess_ColumnsByName() throws IOException {
+        // Prueba que las columnas se ubican por nombre y admiten comillas
+        String input = "Coverage,DurationMonths,Year,DateOfBirth,Make\n"
+            + "\"Amplia\",12,2020,1990-05-15,\"Honda, Motor\"\n";
+        StringWriter output = new StringWriter();
+        BulkQuoteProcessor.BulkQuoteResult result = process(input, output);
+
+        assertEquals("Debe cotizar la fila", 1, result.getQuotedCount());
+        assertTrue("Sin referencia se usa el número de fila", output.toString().split("\n")[1].startsWith("1,Amplia,"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProcess_MissingColumn() throws IOException {
+        // Prueba que falta una columna obligatoria
+        process("reference,dateOfBirth,year,coverage\nA,1990-05-15,2020,Básica\n", new StringWriter());
+    }
+
+    @Test
+    public void testSplitCsv() {
+        // Prueba la separación de campos con comillas
+        assertArrayEquals(new String[] {"a", "b, c", "d \"e\"", ""},
+            BulkQuoteProcessor.splitCsv("a, \"b, c\",\"d \"\"e\"\"\","));
+    }
+
+    @Test
+    public void testProcess_StreamsWithoutBufferingInput() throws IOException {
+        // Prueba que un archivo grande se procesa como flujo: la entrada se genera y la salida
+        // se verifica línea a línea sin guardar ninguna de las dos en memoria
+        int rows = 200_000;
+        Reader input = new GeneratedReader(rows);
+        VerifyingWriter output = new VerifyingWriter();
+        BulkQuoteProcessor large = new BulkQuoteProcessor(insuranceService, Arrays.asList(basic, full),
+            new ForkJoinPool(4), 512);
+        BulkQuoteProcessor.BulkQuoteResult result = large.process(RatingRulesRegistry.current(), CONTEXT, input, output);
+
+        assertEquals("Deben cotizarse todas las filas", rows, result.getQuotedCount());
+        assertEquals("Debe escribir una línea por fila más el encabezado", rows + 1, output.lines);
+        assertEquals("Las filas deben salir en orden", 0, output.outOfOrder);
+    }
+
+    /**
+     * Genera las filas a pedido, sin tener el archivo completo en memoria
+     */
+    private static final class GeneratedReader extends Reader {
+
+        private final int rows;
+        private int next = -1;
+        private String current = "";
+        private int position;
+
+        GeneratedReader(int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == current.length()) {
+                if (next == rows) {
+                    return -1;
+                }
+                current = (next < 0 ? HEADER : row(next)) + "\n";
+                next++;
+                position = 0;
+            }
+            int count = Math.min(length, current.length() - position);
+            current.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Verifica que cada línea de salida tenga la referencia esperada, sin guardarla
+     */
+    private static final class VerifyingWriter extends Writer {
+
+        private final StringBuilder line = new StringBuilder();
+        private int lines;
+        private int outOfOrder;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if (buffer[i] != '\n') {
+                    line.append(buffer[i]);
+                    continue;
+                }
+                String expected = lines == 0 ? "reference," : "P" + (lines - 1) + ",";
+                if (!line.toString().startsWith(expected)) {
+                    outOfOrder++;
+                }
+                lines++;
+                line.setLength(0);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
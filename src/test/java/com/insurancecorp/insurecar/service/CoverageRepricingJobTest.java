@@ -0,0 +1,218 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pruebas de caja blanca para CoverageRepricingJob sobre una base H2 en memoria
+ */
+public class CoverageRepricingJobTest {
+
+    private static final EvaluationContext CONTEXT = EvaluationContext.today(); // la misma fecha que usa schedule()
+    private TestDatabase database;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        database = TestDatabase.create("repricing");
+        connection = database.getConnection();
+        database.execute("insert into Coverage (id, name, basePremiumCents)"
+            + " values (1, 'Básica', 60000), (2, 'Amplia', 120000)");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    private void insertPolicies(int count) throws SQLException {
+        try (PreparedStatement customer = connection.prepareStatement(
+                 "insert into Customer (id, dateOfBirth, zipCode) values (?, ?, ?)");
+             PreparedStatement vehicle = connection.prepareStatement(
+                 "insert into Vehicle (id, make, model, year, ratingSymbol) values (?, ?, ?, ?, ?)");
+             PreparedStatement policy = connection.prepareStatement(
+                 "insert into Policy (id, customer_id, vehicle_id, coverage_id, startDate, endDate, status,"
+                 + " premiumCents, totalPaidCents, completedPaymentCount, version)"
+                 + " values (?, ?, ?, ?, ?, ?, ?, 50000, 0, 0, 0)")) {
+            for (int i = 1; i <= count; i++) {
+                customer.setLong(1, i);
+                customer.setObject(2, CONTEXT.getAsOf().minusYears(18 + i % 60));
+                customer.setString(3, i % 3 == 0 ? "10001" : "30301");
+                customer.addBatch();
+                vehicle.setLong(1, i);
+                vehicle.setString(2, i % 4 == 0 ? "Porsche" : "Honda");
+                vehicle.setString(3, "Civic");
+                vehicle.setString(4, String.valueOf(CONTEXT.getAsOfYear() - i % 15));
+                if (i % 5 == 0) {
+                    vehicle.setInt(5, 1);
+                } else {
+                    vehicle.setNull(5, java.sql.Types.INTEGER);
+                }
+                vehicle.addBatch();
+                policy.setLong(1, i);
+                policy.setLong(2, i);
+                policy.setLong(3, i);
+                policy.setLong(4, i % 2 == 0 ? 1 : 2);
+                policy.setObject(5, CONTEXT.getAsOf().minusMonths(i % 6));
+                policy.setObject(6, CONTEXT.getAsOf().minusMonths(i % 6).plusMonths(6 + i % 12));
+                policy.setString(7, "UNPAID");
+                policy.addBatch();
+            }
+            customer.executeBatch();
+            vehicle.executeBatch();
+            policy.executeBatch();
+        }
+    }
+
+    private Long renewalPremium(long policyId) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "select renewalPremiumCents from Policy where id = ?")) {
+            select.setLong(1, policyId);
+            try (ResultSet rs = select.executeQuery()) {
+                rs.next();
+                long value = rs.getLong(1);
+                return rs.wasNull() ? null : value;
+            }
+        }
+    }
+
+    /**
+     * Prima que calcularía InsuranceService con las mismas entidades
+     */
+    private long expectedPremium(int i, long basePremiumCents) {
+        Customer customer = new Customer();
+        customer.setDateOfBirth(CONTEXT.getAsOf().minusYears(18 + i % 60));
+        customer.setZipCode(i % 3 == 0 ? "10001" : "30301");
+        Vehicle vehicle = new Vehicle();
+        vehicle.setMake(i % 4 == 0 ? "Porsche" : "Honda");
+        vehicle.setModel("Civic");
+        vehicle.setYear(String.valueOf(CONTEXT.getAsOfYear() - i % 15));
+        if (i % 5 == 0) {
+            vehicle.setRatingSymbol(1);
+        }
+        Coverage coverage = new Coverage();
+        coverage.setBasePremiumCents(basePremiumCents);
+        return new InsuranceService().calculatePremiumCents(customer, vehicle, coverage, 6 + i % 12, CONTEXT);
+    }
+
+    @Test
+    public void testReprice_OnlyAffectedPolicies() throws SQLException {
+        // Prueba que solo se recalculan las pólizas de la cobertura, con la misma prima que InsuranceService
+        insertPolicies(200);
+        CoverageRepricingJob.RepricingResult result = new CoverageRepricingJob(database.getDataSource(), 30)
+            .reprice(1, CONTEXT, null);
+
+        assertEquals("Debe recalcular las 100 pólizas de la cobertura", 100, result.getRepricedCount());
+        assertEquals("Debe procesar en bloques", 4, result.getChunkCount());
+        for (int i = 1; i <= 200; i++) {
+            if (i % 2 == 0) {
+                assertEquals("Prima de renovación de la póliza " + i, Long.valueOf(expectedPremium(i, 60000)),
+                    renewalPremium(i));
+            } else {
+                assertNull("La póliza " + i + " de otra cobertura no debe cambiar", renewalPremium(i));
+            }
+        }
+    }
+
+    @Test
+    public void testReprice_SkipsCancelledAndExpired() throws SQLException {
+        // Prueba que no se recalculan pólizas canceladas ni vencidas
+        insertPolicies(10);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("update Policy set status = 'CANCELLED' where id = 2");
+            statement.execute("update Policy set endDate = dateadd(day, -1, current_date) where id = 4");
+        }
+        CoverageRepricingJob.RepricingResult result = new CoverageRepricingJob(database.getDataSource())
+            .reprice(1, CONTEXT, null);
+
+        assertEquals("Solo deben recalcularse las vigentes", 3, result.getRepricedCount());
+        assertNull("La póliza cancelada no debe cambiar", renewalPremium(2));
+        assertNull("La póliza vencida no debe cambiar", renewalPremium(4));
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select id, version from Policy where id in (2, 6) order by id")) {
+            assertTrue(rs.next());
+            assertEquals("La versión de una póliza sin recalcular no cambia", 0, rs.getLong(2));
+            assertTrue(rs.next());
+            assertEquals("La versión avanza con el recálculo", 1, rs.getLong(2));
+        }
+        assertNotNull("La póliza vigente debe recalcularse", renewalPremium(6));
+    }
+
+    @Test
+    public void testReprice_ReportsProgress() throws SQLException {
+        // Prueba que se informa el avance después de cada bloque
+        insertPolicies(100);
+        List<Long> progress = new ArrayList<>();
+        new CoverageRepricingJob(database.getDataSource(), 7).reprice(2, CONTEXT,
+            (coverageId, repriced, skipped, chunks) -> progress.add(repriced));
+
+        assertEquals("Debe informar un avance por bloque", 8, progress.size());
+        assertEquals("El primer bloque tiene 7 pólizas", Long.valueOf(7), progress.get(0));
+        assertEquals("El último avance debe cubrir toda la cobertura", Long.valueOf(50), progress.get(progress.size() - 1));
+    }
+
+    @Test
+    public void testReprice_UnknownCoverage() {
+        // Prueba que una cobertura inexistente no recalcula nada
+        CoverageRepricingJob.RepricingResult result = new CoverageRepricingJob(database.getDataSource())
+            .reprice(99, CONTEXT, null);
+        assertEquals("No debe recalcular pólizas", 0, result.getRepricedCount());
+    }
+
+    @Test
+    public void testSelectChunk_UsesCoverageIndex() throws SQLException {
+        // Prueba que la consulta por bloques usa el índice de coverage_id y no recorre la tabla
+        try (Statement statement = connection.createStatement();
+             ResultSet plan = statement.executeQuery("explain " + CoverageRepricingJob.SELECT_CHUNK
+                 .replaceFirst("\\?", "1").replaceFirst("\\?", "0").replaceFirst("\\?", "current_date"))) {
+            plan.next();
+            assertTrue("El plan debe usar el índice: " + plan.getString(1),
+                plan.getString(1).toUpperCase().contains("IDX_POLICY_COVERAGE"));
+        }
+    }
+
+    @Test
+    public void testSchedule_UsesCommittedBasePremium() throws Exception {
+        // Prueba que el recálculo programado lee la prima base confirmada al ejecutarse
+        insertPolicies(10);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("update Coverage set basePremiumCents = 75000 where id = 1");
+        }
+
+        CoverageRepricingJob.RepricingResult result = new CoverageRepricingJob(database.getDataSource()).schedule(1)
+            .get(5, TimeUnit.SECONDS);
+        assertEquals(5, result.getRepricedCount());
+        assertEquals("Debe usar la nueva prima base", Long.valueOf(expectedPremium(2, 75000)), renewalPremium(2));
+    }
+
+    @Test
+    public void testListener_SchedulesAfterCommit() {
+        // Prueba que el listener no programa nada hasta que se confirma el cambio, ni si la prima no cambió
+        Coverage coverage = new Coverage();
+        coverage.setId(1L);
+        List<Runnable> pending = new ArrayList<>();
+        AfterCommit.Registrar previous = AfterCommit.registrar;
+        AfterCommit.registrar = pending::add;
+        try {
+            new CoverageRepricingListener().basePremiumChanged(coverage);
+            assertTrue("Sin cambio de prima no se programa nada", pending.isEmpty());
+
+            coverage.setBasePremium(750.0);
+            new CoverageRepricingListener().basePremiumChanged(coverage);
+            assertEquals("Se programa al confirmar, no antes", 1, pending.size());
+        } finally {
+            AfterCommit.registrar = previous;
+        }
+    }
+}
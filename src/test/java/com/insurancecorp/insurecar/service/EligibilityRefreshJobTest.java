@@ -0,0 +1,119 @@
+package com.insurancecorp.insurecar.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+/**
+ * Pruebas de caja blanca para EligibilityRefreshJob sobre una base H2 en memoria
+ */
+public class EligibilityRefreshJobTest {
+
+    private TestDatabase database;
+    private Connection connection;
+    private EligibilityRefreshJob job;
+
+    @Before
+    public void setUp() throws SQLException {
+        database = TestDatabase.create("eligibility");
+        connection = database.getConnection();
+        job = new EligibilityRefreshJob(database.getDataSource(), 2);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    private void insertCustomer(long id, LocalDate dateOfBirth, Boolean eligible) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into Customer (id, firstName, lastName, email, dateOfBirth, state, eligible)"
+                    + " values (?, 'Ana', 'Ruiz', ?, ?, 'CA', ?)")) {
+            insert.setLong(1, id);
+            insert.setString(2, "cliente" + id + "@email.com");
+            insert.setObject(3, dateOfBirth);
+            insert.setObject(4, eligible);
+            insert.executeUpdate();
+        }
+    }
+
+    private Boolean eligible(String table, long id) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select eligible from " + table + " where id = " + id)) {
+            rs.next();
+            boolean eligible = rs.getBoolean(1);
+            return rs.wasNull() ? null : eligible;
+        }
+    }
+
+    @Test
+    public void testRefresh_CustomersTurning18() throws SQLException {
+        // Prueba que solo pasan a ser elegibles quienes ya cumplieron 18 años
+        LocalDate day = LocalDate.of(2026, 3, 1);
+        insertCustomer(1, LocalDate.of(2008, 3, 1), false);  // cumple 18 ese día
+        insertCustomer(2, LocalDate.of(2008, 2, 29), false); // 29 de febrero, cumple el 1 de marzo
+        insertCustomer(3, LocalDate.of(2008, 3, 2), false);  // cumple al día siguiente
+        insertCustomer(4, LocalDate.of(2007, 6, 15), false); // se perdió una ejecución anterior
+        insertCustomer(5, LocalDate.of(1990, 1, 1), true);
+
+        assertEquals("Deben pasar a ser elegibles tres clientes", 3, job.refresh(day));
+        assertEquals(Boolean.TRUE, eligible("Customer", 1));
+        assertEquals(Boolean.TRUE, eligible("Customer", 2));
+        assertEquals("Aún no cumple 18 años", Boolean.FALSE, eligible("Customer", 3));
+        assertEquals(Boolean.TRUE, eligible("Customer", 4));
+        assertEquals("Una segunda ejecución no debe cambiar nada", 0, job.refresh(day));
+    }
+
+    @Test
+    public void testRefresh_LeapDayNotYet18() throws SQLException {
+        // Prueba que el 28 de febrero de un año no bisiesto aún no cumple 18 quien nació un 29 de febrero
+        insertCustomer(1, LocalDate.of(2008, 2, 29), false);
+        assertEquals(0, job.refresh(LocalDate.of(2026, 2, 28)));
+        assertEquals(Boolean.FALSE, eligible("Customer", 1));
+    }
+
+    @Test
+    public void testBackfill() throws SQLException {
+        // Prueba que se completan clientes y vehículos sin elegibilidad
+        insertCustomer(1, LocalDate.of(1980, 5, 5), null);
+        insertCustomer(2, LocalDate.now().minusYears(10), null);
+        insertCustomer(3, LocalDate.of(1975, 1, 1), false);
+        database.execute("insert into Vehicle (id, vin, make, model, year, owner_id, eligible) values"
+            + " (10, '1HGBH41JXMN109186', 'Toyota', 'Camry', '2018', 1, null),"
+            + " (11, '1M8GDM9AXKP042788', 'Honda', 'Civic', '2020', null, null),"
+            + " (12, '11111111111111111', 'Ford', 'Focus', '2019', 2, null)");
+
+        assertEquals("Debe completar cinco registros", 5, job.backfill());
+        assertEquals(Boolean.TRUE, eligible("Customer", 1));
+        assertEquals("Un menor no es elegible", Boolean.FALSE, eligible("Customer", 2));
+        assertEquals("Las filas ya calculadas no se tocan", Boolean.FALSE, eligible("Customer", 3));
+        assertEquals(Boolean.TRUE, eligible("Vehicle", 10));
+        assertEquals("Un vehículo sin propietario no es elegible", Boolean.FALSE, eligible("Vehicle", 11));
+        assertEquals(Boolean.TRUE, eligible("Vehicle", 12));
+        assertEquals("Una segunda ejecución no debe cambiar nada", 0, job.backfill());
+    }
+
+    @Test
+    public void testQueries_UseIndexes() throws SQLException {
+        // Prueba que el filtro por estado y la actualización diaria usan sus índices
+        assertPlanUses("select id from Customer where state = 'CA' and eligible = true", "IDX_CUSTOMER_STATE_ELIGIBLE");
+        assertPlanUses(EligibilityRefreshJob.SELECT_TURNING_ADULT.replaceFirst("\\?", "current_date")
+            .replaceFirst("\\?", "0"), "IDX_CUSTOMER_ELIGIBLE_BIRTH");
+    }
+
+    private void assertPlanUses(String sql, String index) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet plan = statement.executeQuery("explain " + sql)) {
+            plan.next();
+            assertTrue("El plan debe usar " + index + ": " + plan.getString(1),
+                plan.getString(1).toUpperCase().contains(index));
+        }
+    }
+}
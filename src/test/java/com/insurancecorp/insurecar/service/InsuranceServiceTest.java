@@ -5,7 +5,11 @@ import org.junit.Test;
 import org.junit.Before;
 import static org.junit.Assert.*;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Pruebas de caja blanca para InsuranceService
@@ -21,7 +25,7 @@ public class InsuranceServiceTest {
     
     @Before
     public void setUp() {
-        insuranceService = new InsuranceService();
+        insuranceService = new InsuranceService(new AtomicLong()::incrementAndGet);
         
         // Configurar datos de prueba
         customer = new Customer();
@@ -121,6 +125,121 @@ public class InsuranceServiceTest {
                   premium < (monthlyPremium * 12));
     }
     
+    @Test
+    public void testCalculatePremium_Territory() {
+        // Prueba que el código postal aplica el factor de su territorio
+        EvaluationContext context = EvaluationContext.of(LocalDate.of(2025, 6, 1));
+        RatingEngine engine = RatingRulesRegistry.current();
+        long suburban = insuranceService.calculatePremiumCents(customer, vehicle, coverage, 12, context);
+        customer.setZipCode("10001-1234");
+        long urban = insuranceService.calculatePremiumCents(customer, vehicle, coverage, 12, context);
+        assertEquals("Debe aplicar el factor del territorio urbano denso",
+            Money.multiply(suburban, engine.territoryFactor(1)), urban);
+        customer.setZipCode(null);
+        assertEquals("Sin código postal debe usar el territorio por defecto", suburban,
+            insuranceService.calculatePremiumCents(customer, vehicle, coverage, 12, context));
+    }
+    
+    @Test
+    public void testCalculatePremium_VehicleSymbol() {
+        // Prueba que la marca y el modelo aplican el factor de su símbolo
+        EvaluationContext context = EvaluationContext.of(LocalDate.of(2025, 6, 1));
+        RatingEngine engine = RatingRulesRegistry.current();
+        long standard = insuranceService.calculatePremiumCents(customer, vehicle, coverage, 12, context);
+        vehicle.setMake("Porsche");
+        vehicle.setModel("911");
+        assertEquals("Debe aplicar el factor del símbolo deportivo",
+            Money.multiply(standard, engine.vehicleSymbolFactor(4)),
+            insuranceService.calculatePremiumCents(customer, vehicle, coverage, 12, context));
+        vehicle.setMake("Marca Desconocida");
+        assertEquals("Una marca desconocida debe usar el símbolo por defecto", standard,
+            insuranceService.calculatePremiumCents(customer, vehicle, coverage, 12, context));
+        vehicle.setRatingSymbol(1);
+        assertEquals("Debe usar el símbolo guardado en el vehículo",
+            Money.multiply(standard, engine.vehicleSymbolFactor(1)),
+            insuranceService.calculatePremiumCents(customer, vehicle, coverage, 12, context));
+    }
+    
+    // ========== PRUEBAS PARA quoteBundle ==========
+    
+    @Test
+    public void testQuoteBundle_MatchesIndividualQuotes() {
+        // Prueba que el paquete da la misma prima que cotizar cada cobertura
+        Coverage premiumCoverage = new Coverage();
+        premiumCoverage.setName("Cobertura Completa");
+        premiumCoverage.setBasePremium(1234.56);
+        premiumCoverage.setIsActive(true);
+        customer.setDateOfBirth(LocalDate.now().minusYears(22));
+        
+        BundleQuote bundle = insuranceService.quoteBundle(customer, vehicle, 12,
+            Arrays.asList(coverage, premiumCoverage), EvaluationContext.today());
+        
+        assertEquals("Debe cotizar todas las coberturas", 2, bundle.size());
+        assertEquals("La prima básica debe coincidir",
+                    insuranceService.calculatePremium(customer, vehicle, coverage, 12), bundle.getPremium(0), 0.0);
+        assertEquals("La prima completa debe coincidir",
+                    insuranceService.calculatePremium(customer, vehicle, premiumCoverage, 12), bundle.getPremium(1), 0.0);
+        assertSame("Debe conservar el orden de las coberturas", premiumCoverage, bundle.getCoverage(1));
+        assertNotNull("Debe registrar la versión de las reglas", bundle.getRulesVersion());
+    }
+    
+    @Test
+    public void testQuoteBundle_NullCustomer() {
+        // Prueba que sin cliente todas las primas son 0
+        BundleQuote bundle = insuranceService.quoteBundle(null, vehicle, 12,
+            Arrays.asList(coverage), EvaluationContext.today());
+        assertEquals("La prima debe ser 0 sin cliente", 0L, bundle.getPremiumCents(0));
+    }
+    
+    @Test
+    public void testCoverageCatalog_LoadsOnce() {
+        // Prueba que el catálogo consulta una sola vez hasta que se invalida
+        AtomicInteger loads = new AtomicInteger();
+        CoverageCatalog catalog = new CoverageCatalog(() -> {
+            loads.incrementAndGet();
+            return Arrays.asList(coverage);
+        });
+        
+        catalog.getActiveCoverages();
+        catalog.getActiveCoverages();
+        assertEquals("Debe cargar una sola vez", 1, loads.get());
+        
+        catalog.invalidate();
+        assertEquals("Debe volver a devolver las coberturas", 1, catalog.getActiveCoverages().size());
+        assertEquals("Debe recargar después de invalidar", 2, loads.get());
+    }
+    
+    @Test
+    public void testCoverageCatalog_DetachedCopies() {
+        // Prueba que el catálogo entrega copias de las coberturas y no las entidades cargadas
+        coverage.setId(7L);
+        CoverageCatalog catalog = new CoverageCatalog(() -> Arrays.asList(coverage));
+        Coverage copy = catalog.getActiveCoverages().get(0);
+        assertNotSame("No debe compartir la entidad cargada", coverage, copy);
+        assertEquals(coverage.getId(), copy.getId());
+        assertEquals(coverage.getBasePremiumCents(), copy.getBasePremiumCents());
+        assertEquals(coverage.getName(), copy.getName());
+    }
+    
+    @Test
+    public void testCoverageCatalog_InvalidatedDuringLoad() {
+        // Prueba que una carga que se cruza con una invalidación no queda guardada
+        AtomicInteger loads = new AtomicInteger();
+        CoverageCatalog[] catalog = new CoverageCatalog[1];
+        catalog[0] = new CoverageCatalog(() -> {
+            if (loads.incrementAndGet() == 1) {
+                catalog[0].invalidate(); // el cambio se confirma mientras se lee el estado anterior
+            }
+            return Arrays.asList(coverage);
+        });
+        
+        catalog[0].getActiveCoverages();
+        catalog[0].getActiveCoverages();
+        assertEquals("La carga cruzada con la invalidación debe repetirse", 2, loads.get());
+        catalog[0].getActiveCoverages();
+        assertEquals("La segunda carga sí queda guardada", 2, loads.get());
+    }
+    
     // ========== PRUEBAS PARA validatePolicy ==========
     
     @Test
@@ -277,6 +396,32 @@ public class InsuranceServiceTest {
         assertEquals("El estado debe ser failed", "failed", payment.getStatus());
     }
     
+    @Test
+    public void testProcessPayment_SavedPolicyReread() {
+        // Prueba que el saldo de una póliza guardada se verifica con sus totales releídos
+        List<Policy> locked = new ArrayList<>();
+        InsuranceService service = new InsuranceService(new AtomicLong()::incrementAndGet, saved -> {
+            locked.add(saved);
+            Payment other = new Payment(); // completado desde otro servidor
+            other.setAmount(400.0);
+            other.setStatus(Payment.COMPLETED);
+            other.setPolicy(saved);
+        });
+        Payment unsaved = new Payment();
+        unsaved.setPolicy(policy);
+        unsaved.setAmount(100.0);
+        assertTrue(service.processPayment(unsaved));
+        assertTrue("Una póliza sin guardar no se bloquea", locked.isEmpty());
+
+        policy.setId(7L);
+        Payment payment = new Payment();
+        payment.setPolicy(policy);
+        payment.setAmount(300.0);
+        assertFalse("El pago supera el saldo releído", service.processPayment(payment));
+        assertEquals("El estado debe ser failed", "failed", payment.getStatus());
+        assertEquals(Arrays.asList(policy), locked);
+    }
+    
     // ========== PRUEBAS PARA cancelPolicy ==========
     
     @Test
@@ -317,6 +462,32 @@ public class InsuranceServiceTest {
         assertEquals("Debe tener la nueva fecha de fin", newEndDate, renewedPolicy.getEndDate());
     }
     
+    @Test
+    public void testRenewPolicy_SequentialNumbers() {
+        // Prueba que cada renovación toma el siguiente número de la secuencia
+        assertEquals("POL-000001", insuranceService.renewPolicy(policy, LocalDate.now().plusYears(2)).getPolicyNumber());
+        assertEquals("POL-000002", insuranceService.renewPolicy(policy, LocalDate.now().plusYears(2)).getPolicyNumber());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRenewPolicy_NumbersExhausted() {
+        // Prueba que un número fuera del formato POL-XXXXXX no se trunca ni se repite
+        new InsuranceService(() -> InsuranceService.MAX_POLICY_NUMBER + 1).renewPolicy(policy, LocalDate.now().plusYears(2));
+    }
+
+    @Test
+    public void testRenewPolicy_RepricedPolicy() {
+        // Prueba que la renovación usa la prima recalculada tras un cambio de cobertura
+        policy.setPremiumCents(50000);
+        policy.setRatingVersion("2025.2");
+        policy.setRenewalPremiumCents(62500L);
+        policy.setRenewalRatingVersion("2025.3");
+        Policy renewedPolicy = insuranceService.renewPolicy(policy, LocalDate.now().plusYears(2));
+
+        assertEquals("Debe usar la prima de renovación", 62500L, renewedPolicy.getPremiumCents());
+        assertEquals("Debe usar la versión de la prima de renovación", "2025.3", renewedPolicy.getRatingVersion());
+    }
+
     @Test
     public void testRenewPolicy_NullPolicy() {
         // Prueba con póliza nula
@@ -0,0 +1,276 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pruebas de caja blanca para PaymentJournalProjector sobre una base H2 en memoria
+ */
+public class PaymentJournalProjectorTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestDatabase database;
+    private JdbcDataSource dataSource;
+    private Connection connection;
+    private PaymentJournal journal;
+
+    @Before
+    public void setUp() throws SQLException, IOException {
+        database = TestDatabase.create("journal");
+        dataSource = database.getDataSource();
+        connection = database.getConnection();
+        database.execute("insert into Policy (id, premiumCents, totalPaidCents, completedPaymentCount, status, version)"
+            + " values (1, 100000, 0, 0, 'UNPAID', 0), (2, 50000, 0, 0, 'UNPAID', 0),"
+            + " (3, 80000, 0, 0, 'CANCELLED', 0)");
+        journal = new PaymentJournal(folder.getRoot().toPath().resolve("payments.dat"), 4096);
+    }
+
+    @After
+    public void tearDown() throws SQLException, IOException {
+        journal.close();
+        database.close();
+    }
+
+    private long[] policyRow(long id) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "select totalPaidCents, completedPaymentCount, version from Policy where id = ?")) {
+            select.setLong(1, id);
+            try (ResultSet rs = select.executeQuery()) {
+                rs.next();
+                return new long[] {rs.getLong(1), rs.getLong(2), rs.getLong(3)};
+            }
+        }
+    }
+
+    private String status(long id) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select status from Policy where id = " + id)) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    @Test
+    public void testCatchUp() throws SQLException {
+        // Prueba que se insertan los pagos del diario sin fila, incluso huecos anteriores a la última secuencia
+        journal.append(1, 40_000, DAY, "card", null);
+        journal.append(2, 50_000, DAY, "cash", "TRX-1");
+        journal.append(1, 60_000, DAY, "card", null);
+        journal.append(3, 10_000, DAY, "card", null);
+        try (Statement statement = connection.createStatement()) {
+            // La secuencia 3 se confirmó; la 1, la 2 y la 4 quedaron solo en el diario
+            statement.execute("insert into Payment (policy_id, amountCents, status, journalInstance, journalSequence)"
+                + " values (1, 60000, 'completed', 'default', 3)");
+            statement.execute("update Policy set totalPaidCents = 60000, completedPaymentCount = 1,"
+                + " status = 'PARTIALLY_PAID', version = 1 where id = 1");
+        }
+
+        PaymentJournalProjector projector = new PaymentJournalProjector(dataSource, 2);
+        assertEquals("Se aplican los tres pagos pendientes", 3, projector.catchUp(journal));
+        assertArrayEquals(new long[] {100_000, 2, 2}, policyRow(1));
+        assertEquals(PolicyStatus.PAID.name(), status(1));
+        assertArrayEquals(new long[] {50_000, 1, 1}, policyRow(2));
+        assertEquals(PolicyStatus.PAID.name(), status(2));
+        assertEquals("Una póliza cancelada conserva su estado", PolicyStatus.CANCELLED.name(), status(3));
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select method, bankReference, paymentDate from Payment"
+                 + " where journalSequence = 2")) {
+            rs.next();
+            assertEquals("cash", rs.getString(1));
+            assertEquals("TRX-1", rs.getString(2));
+            assertEquals("2025-03-01", rs.getString(3));
+        }
+
+        assertEquals("Una segunda pasada no aplica nada", 0, projector.catchUp(journal));
+        assertArrayEquals(new long[] {100_000, 2, 2}, policyRow(1));
+    }
+
+    @Test
+    public void testCatchUp_JournalBehindDatabase() throws SQLException {
+        // Prueba que un diario que quedó atrás de las filas o del progreso de su instancia se rechaza
+        journal.append(1, 10_000, DAY, "card", null);
+        PaymentJournalProjector projector = new PaymentJournalProjector(dataSource, 2);
+        projector.verify(journal);
+        try (Statement statement = connection.createStatement()) {
+            // Otro archivo de la misma instancia ya llegó a la secuencia 5
+            statement.execute("insert into Payment (policy_id, amountCents, status, journalInstance, journalSequence)"
+                + " values (2, 20000, 'completed', 'default', 5)");
+        }
+        assertRejected(projector);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("delete from Payment");
+            statement.execute("insert into PaymentJournalProgress (journalInstance, projectedSequence)"
+                + " values ('default', 3)");
+        }
+        assertRejected(projector);
+        assertArrayEquals("No se aplica nada con un diario atrasado", new long[] {0, 0, 0}, policyRow(1));
+    }
+
+    private void assertRejected(PaymentJournalProjector projector) {
+        try {
+            projector.verify(journal);
+            fail("La verificación debe rechazar el diario atrasado");
+        } catch (IllegalStateException e) {
+            // esperado
+        }
+        try {
+            projector.catchUp(journal);
+            fail("La aplicación debe rechazar el diario atrasado");
+        } catch (IllegalStateException e) {
+            // esperado
+        }
+    }
+
+    @Test
+    public void testCatchUp_OtherServerSequences() throws SQLException {
+        // Prueba que las filas del diario de otro servidor no ocultan los registros pendientes de este
+        journal.append(1, 40_000, DAY, "card", null);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("insert into Payment (policy_id, amountCents, status, journalInstance, journalSequence)"
+                + " values (2, 20000, 'completed', 'server-b', 1)");
+            statement.execute("update Policy set totalPaidCents = 20000, completedPaymentCount = 1,"
+                + " status = 'PARTIALLY_PAID', version = 1 where id = 2");
+        }
+
+        PaymentJournalProjector projector = new PaymentJournalProjector(dataSource, 2);
+        assertEquals("La misma secuencia de otro diario no cuenta como aplicada", 1, projector.catchUp(journal));
+        assertArrayEquals(new long[] {40_000, 1, 1}, policyRow(1));
+        assertEquals("El pago del otro servidor se conserva al reconstruir", 0, projector.rebuild(journal));
+        assertArrayEquals(new long[] {20_000, 1, 1}, policyRow(2));
+    }
+
+    @Test
+    public void testCatchUp_AbortedPayments() throws SQLException {
+        // Prueba que un pago anulado no se aplica y, si su transacción llegó a confirmarse, se revierte
+        journal.append(1, 40_000, DAY, "card", null);
+        journal.append(2, 20_000, DAY, "card", null);
+        journal.abort(1, 1);
+        journal.abort(2, 2);
+        try (Statement statement = connection.createStatement()) {
+            // La secuencia 2 se confirmó aunque la confirmación informó un error
+            statement.execute("insert into Payment (policy_id, amountCents, status, journalInstance, journalSequence)"
+                + " values (2, 20000, 'completed', 'default', 2)");
+            statement.execute("update Policy set totalPaidCents = 20000, completedPaymentCount = 1,"
+                + " status = 'PARTIALLY_PAID', version = 1 where id = 2");
+        }
+
+        PaymentJournalProjector projector = new PaymentJournalProjector(dataSource, 2);
+        assertEquals("No se aplica ningún pago anulado", 0, projector.catchUp(journal));
+        assertArrayEquals(new long[] {0, 0, 0}, policyRow(1));
+        assertArrayEquals("El pago confirmado se descuenta", new long[] {0, 0, 2}, policyRow(2));
+        assertEquals(PolicyStatus.UNPAID.name(), status(2));
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select status from Payment where journalSequence = 2")) {
+            rs.next();
+            assertEquals(Payment.FAILED, rs.getString(1));
+        }
+        assertEquals(0, projector.rebuild(journal));
+    }
+
+    @Test
+    public void testCatchUp_ExceedsRemaining() throws SQLException {
+        // Prueba que un pago del diario que supera el saldo al aplicarse queda como fallido
+        journal.append(2, 30_000, DAY, "card", null);
+        journal.append(2, 30_000, DAY, "card", null);
+
+        assertEquals(1, new PaymentJournalProjector(dataSource).catchUp(journal));
+        assertArrayEquals(new long[] {30_000, 1, 1}, policyRow(2));
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select status from Payment where journalSequence = 2")) {
+            rs.next();
+            assertEquals(Payment.FAILED, rs.getString(1));
+        }
+        assertEquals("El pago rechazado no se suma al reconstruir", 0,
+            new PaymentJournalProjector(dataSource).rebuild(journal));
+    }
+
+    @Test
+    public void testRebuild_ReversedPayments() throws SQLException {
+        // Prueba que un pago del diario marcado después como fallido no se vuelve a sumar
+        journal.append(1, 30_000, DAY, "card", null);
+        journal.append(1, 20_000, DAY, "card", null);
+        PaymentJournalProjector projector = new PaymentJournalProjector(dataSource);
+        projector.catchUp(journal);
+        try (Statement statement = connection.createStatement()) {
+            // Lo mismo que hace Payment.setStatus al revertir el pago desde la aplicación
+            statement.execute("update Payment set status = 'failed' where journalSequence = 1");
+            statement.execute("update Policy set totalPaidCents = 20000, completedPaymentCount = 1,"
+                + " version = version + 1 where id = 1");
+        }
+
+        assertEquals("No hay nada que corregir", 0, projector.rebuild(journal));
+        assertArrayEquals(new long[] {20_000, 1, 2}, policyRow(1));
+        assertEquals(PolicyStatus.PARTIALLY_PAID.name(), status(1));
+    }
+
+    @Test
+    public void testRebuild() throws SQLException {
+        // Prueba que los totales y el estado se reconstruyen desde el diario y los pagos cargados sin diario
+        journal.append(1, 30_000, DAY, "card", null);
+        journal.append(2, 50_000, DAY, "card", null);
+        PaymentJournalProjector projector = new PaymentJournalProjector(dataSource, 2);
+        projector.catchUp(journal);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("insert into Payment (policy_id, amountCents, status) values (1, 5000, 'completed')");
+            statement.execute("insert into Payment (policy_id, amountCents, status) values (1, 9000, 'failed')");
+            statement.execute("update Policy set totalPaidCents = 999, completedPaymentCount = 9, status = 'PAID'"
+                + " where id = 1");
+        }
+
+        assertEquals("Solo se corrige la póliza dañada", 1, projector.rebuild(journal));
+        assertArrayEquals(new long[] {35_000, 2, 2}, policyRow(1));
+        assertEquals(PolicyStatus.PARTIALLY_PAID.name(), status(1));
+        assertArrayEquals(new long[] {50_000, 1, 1}, policyRow(2));
+        assertEquals(0, projector.rebuild(journal));
+    }
+
+    @Test
+    public void testRebuild_WaitsForConcurrentPayment() throws Exception {
+        // Prueba que un pago confirmado mientras corre la reconstrucción no se pisa
+        journal.append(1, 30_000, DAY, "card", null);
+        PaymentJournalProjector projector = new PaymentJournalProjector(dataSource, 2);
+        projector.catchUp(journal);
+        try (Connection other = dataSource.getConnection()) {
+            other.setAutoCommit(false);
+            try (Statement statement = other.createStatement()) {
+                // Un pago importado en curso: tiene la póliza bloqueada y sus totales ya sumados
+                statement.executeQuery("select id from Policy where id = 1 for update").close();
+                statement.execute("insert into Payment (policy_id, amountCents, status) values (1, 5000, 'completed')");
+                statement.execute("update Policy set totalPaidCents = 35000, completedPaymentCount = 2,"
+                    + " version = version + 1 where id = 1");
+            }
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<Integer> rebuilt = executor.submit(() -> projector.rebuild(journal));
+                Thread.sleep(200);
+                assertFalse("La reconstrucción debe esperar el bloqueo de la póliza", rebuilt.isDone());
+                other.commit();
+                assertEquals("Los totales ya incluyen el pago", 0, (int) rebuilt.get(10, TimeUnit.SECONDS));
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        assertArrayEquals(new long[] {35_000, 2, 2}, policyRow(1));
+    }
+}
@@ -0,0 +1,258 @@
+package com.insurancecorp.insurecar.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Pruebas de caja blanca para PaymentJournal
+ */
+public class PaymentJournalTest {
+
+    // Datos fijos (22 bytes) más "card" sin referencia, con largo, secuencia y CRC
+    private static final int CARD_RECORD_SIZE = 4 + 8 + 22 + 4 + 4;
+
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file() {
+        return folder.getRoot().toPath().resolve("payments.dat");
+    }
+
+    private static List<String> replay(PaymentJournal journal, long afterSequence) {
+        List<String> records = new ArrayList<>();
+        journal.replay(afterSequence, record -> records.add(record.getSequence() + ":" + record.getPolicyId() + ":"
+            + record.getAmountCents() + ":" + record.getPaymentDate() + ":" + record.getMethod() + ":"
+            + record.getReference()));
+        return records;
+    }
+
+    @Test
+    public void testAppendAndReplay() throws IOException {
+        // Prueba que los registros se repiten en orden con sus datos, desde cualquier secuencia
+        try (PaymentJournal journal = new PaymentJournal(file(), 4096)) {
+            assertEquals(0, journal.getLastSequence());
+            assertEquals(1, journal.append(7, 12_345, DAY, "card", null));
+            assertEquals(2, journal.append(8, 500, DAY.plusDays(1), null, "TRX-Año"));
+            assertEquals(3, journal.post(7, 1, DAY, "transfer", "R"));
+            assertEquals("post espera a que el registro sea durable", 3, journal.getDurableSequence());
+
+            assertEquals(List.of("1:7:12345:2025-03-01:card:null", "2:8:500:2025-03-02:null:TRX-Año",
+                "3:7:1:2025-03-01:transfer:R"), replay(journal, 0));
+            assertEquals(List.of("3:7:1:2025-03-01:transfer:R"), replay(journal, 2));
+            assertTrue(replay(journal, 3).isEmpty());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAppend_LongReference() throws IOException {
+        // Prueba que una referencia de más de 255 bytes se rechaza
+        try (PaymentJournal journal = new PaymentJournal(file(), 4096)) {
+            journal.append(1, 100, DAY, "card", String.join("", Collections.nCopies(256, "x")));
+        }
+    }
+
+    @Test
+    public void testAbort() throws IOException {
+        // Prueba que la anulación se agrega durable, indica la secuencia anulada y no suma monto
+        try (PaymentJournal journal = new PaymentJournal(file(), 4096)) {
+            journal.append(7, 12_345, DAY, "card", null);
+            assertEquals(2, journal.abort(1, 7));
+            assertEquals("La anulación debe ser durable al volver", 2, journal.getDurableSequence());
+            List<String> records = new ArrayList<>();
+            journal.replay(0, record -> records.add(record.getSequence() + ":" + record.isAbort() + ":"
+                + record.getAbortedSequence() + ":" + record.getPolicyId() + ":" + record.getAmountCents()));
+            assertEquals(List.of("1:false:0:7:12345", "2:true:1:7:0"), records);
+            try {
+                journal.abort(3, 7);
+                fail("No se puede anular un registro que no existe");
+            } catch (IllegalArgumentException e) {
+                // esperado
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAppend_NegativeAmount() throws IOException {
+        // Prueba que un monto negativo se rechaza, porque marca las anulaciones
+        try (PaymentJournal journal = new PaymentJournal(file(), 4096)) {
+            journal.append(1, -100, DAY, "card", null);
+        }
+    }
+
+    @Test
+    public void testConfiguredFile_RequiresAbsolutePath() {
+        // Prueba que el diario de la aplicación exige una ruta absoluta configurada
+        String previous = System.getProperty(PaymentJournal.JOURNAL_FILE_PROPERTY);
+        try {
+            System.clearProperty(PaymentJournal.JOURNAL_FILE_PROPERTY);
+            assertConfiguredFileRejected();
+            System.setProperty(PaymentJournal.JOURNAL_FILE_PROPERTY, "data/payment-journal.dat");
+            assertConfiguredFileRejected();
+            System.setProperty(PaymentJournal.JOURNAL_FILE_PROPERTY, file().toString());
+            assertEquals(file(), PaymentJournal.configuredFile());
+        } finally {
+            if (previous == null) {
+                System.clearProperty(PaymentJournal.JOURNAL_FILE_PROPERTY);
+            } else {
+                System.setProperty(PaymentJournal.JOURNAL_FILE_PROPERTY, previous);
+            }
+        }
+    }
+
+    private static void assertConfiguredFileRejected() {
+        try {
+            PaymentJournal.configuredFile();
+            fail("Una ruta faltante o relativa debe rechazarse");
+        } catch (IllegalStateException e) {
+            // esperado
+        }
+    }
+
+    @Test
+    public void testReopen_ResumesSequence() throws IOException {
+        // Prueba que al reabrir el diario se continúa la secuencia después del último registro
+        try (PaymentJournal journal = new PaymentJournal(file(), 4096)) {
+            journal.append(1, 100, DAY, "card", null);
+            journal.append(2, 200, DAY, "card", null);
+        }
+        try (PaymentJournal journal = new PaymentJournal(file(), 4096)) {
+            assertEquals(2, journal.getLastSequence());
+            assertEquals(2, journal.getDurableSequence());
+            assertEquals(3, journal.append(3, 300, DAY, "card", null));
+            assertEquals(3, replay(journal, 0).size());
+        }
+    }
+
+    @Test
+    public void testReopen_TornTailTruncated() throws IOException {
+        // Prueba que un registro dañado y lo que le sigue se descartan, y se escribe desde ahí
+        try (PaymentJournal journal = new PaymentJournal(file(), 4096)) {
+            for (int i = 1; i <= 4; i++) {
+                journal.append(i, i * 100, DAY, "card", null);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.WRITE)) {
+            // Cambia el monto del tercer registro sin actualizar su CRC
+            channel.write(ByteBuffer.wrap(new byte[] {0x7F}), 2 * CARD_RECORD_SIZE + 4 + 8 + 8 + 3);
+        }
+        try (PaymentJournal journal = new PaymentJournal(file(), 4096)) {
+            assertEquals("Solo quedan los registros anteriores al dañado", 2, journal.getLastSequence());
+            assertEquals(3, journal.append(9, 900, DAY, "card", null));
+        }
+        try (PaymentJournal journal = new PaymentJournal(file(), 4096)) {
+            assertEquals(List.of("1:1:100:2025-03-01:card:null", "2:2:200:2025-03-01:card:null",
+                "3:9:900:2025-03-01:card:null"), replay(journal, 0));
+        }
+    }
+
+    @Test
+    public void testRegionRotation() throws IOException {
+        // Prueba que el diario pasa a una nueva región al llenarse y se recorre entero al reabrirlo
+        int regionSize = 1024;
+        int records = 100;
+        try (PaymentJournal journal = new PaymentJournal(file(), regionSize)) {
+            for (int i = 1; i <= records; i++) {
+                journal.append(i, i, DAY, "card", null);
+            }
+        }
+        int perRegion = (regionSize - 4) / CARD_RECORD_SIZE;
+        assertEquals("El archivo crece de a una región", ((records + perRegion - 1) / perRegion) * (long) regionSize,
+            Files.size(file()));
+        try (PaymentJournal journal = new PaymentJournal(file(), regionSize)) {
+            assertEquals(records, journal.getLastSequence());
+            long[] expected = {0};
+            assertEquals(records, journal.replay(0, record -> {
+                expected[0]++;
+                assertEquals(expected[0], record.getSequence());
+                assertEquals(expected[0], record.getAmountCents());
+            }));
+        }
+    }
+
+    @Test
+    public void testConcurrentPosts() throws Exception {
+        // Prueba que los pagos de muchos hilos reciben secuencias consecutivas y todos quedan durables
+        int threads = 8;
+        int postsPerThread = 2000;
+        try (PaymentJournal journal = new PaymentJournal(file(), 64 * 1024)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Callable<List<Long>>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long policyId = t;
+                tasks.add(() -> {
+                    List<Long> sequences = new ArrayList<>();
+                    for (int i = 0; i < postsPerThread; i++) {
+                        long sequence = journal.post(policyId, i, DAY, "card", null);
+                        assertTrue("El registro debe ser durable al volver", journal.getDurableSequence() >= sequence);
+                        sequences.add(sequence);
+                    }
+                    return sequences;
+                });
+            }
+            List<Long> sequences = new ArrayList<>();
+            try {
+                for (Future<List<Long>> future : executor.invokeAll(tasks)) {
+                    sequences.addAll(future.get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+            Collections.sort(sequences);
+            for (int i = 0; i < sequences.size(); i++) {
+                assertEquals("Las secuencias deben ser consecutivas", i + 1, (long) sequences.get(i));
+            }
+            long[] perPolicy = new long[threads];
+            journal.replay(0, record -> perPolicy[(int) record.getPolicyId()]++);
+            for (long count : perPolicy) {
+                assertEquals(postsPerThread, count);
+            }
+        }
+    }
+
+    @Test
+    public void testReplay_Throughput() throws IOException {
+        // Prueba de volumen: repetir millones de pagos y sumarlos por póliza toma segundos
+        int records = 2_000_000;
+        int policies = 50_000;
+        try (PaymentJournal journal = new PaymentJournal(file())) {
+            for (int i = 0; i < records; i++) {
+                journal.append(i % policies, 100 + i % 1000, DAY, "card", null);
+            }
+        }
+        try (PaymentJournal journal = new PaymentJournal(file())) {
+            long[] paidCents = new long[policies];
+            long start = System.nanoTime();
+            long replayed = journal.replay(0, record -> paidCents[(int) record.getPolicyId()] += record.getAmountCents());
+            long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            assertEquals(records, replayed);
+            long total = 0;
+            for (long cents : paidCents) {
+                total += cents;
+            }
+            long expected = 0;
+            for (int i = 0; i < records; i++) {
+                expected += 100 + i % 1000;
+            }
+            assertEquals("La suma debe coincidir (" + records * 1000L / elapsedMillis + " registros/s)", expected, total);
+            assertTrue("Repetir " + records + " pagos tomó " + elapsedMillis + " ms", elapsedMillis < 20_000);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.PerformanceTests;
+import com.insurancecorp.insurecar.model.*;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+/**
+ * Pruebas de caja blanca para PaymentPoster sobre una base H2 en memoria
+ */
+public class PaymentPosterTest {
+
+    /** Propiedad de sistema con el mínimo de pagos por segundo de la prueba de rendimiento */
+    static final String MIN_POSTS_PER_SECOND_PROPERTY = "insurecar.minPostsPerSecond";
+
+    static final long DEFAULT_MIN_POSTS_PER_SECOND = 2000;
+
+    private static final int POLICIES = 20;
+    private static final long PREMIUM_CENTS = 300_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestDatabase database;
+    private JdbcConnectionPool dataSource;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        database = TestDatabase.create("posting");
+        dataSource = JdbcConnectionPool.create(database.getDataSource());
+        dataSource.setMaxConnections(64);
+        connection = database.getConnection();
+        for (int id = 1; id <= POLICIES; id++) {
+            database.execute("insert into Policy (id, premiumCents, totalPaidCents, completedPaymentCount, status,"
+                + " version) values (" + id + ", " + PREMIUM_CENTS + ", 0, 0, 'UNPAID', 0)");
+        }
+        database.execute("update Policy set status = 'CANCELLED' where id = " + POLICIES);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        dataSource.dispose();
+        database.close();
+    }
+
+    private long[] policyRow(long id) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "select totalPaidCents, completedPaymentCount, version from Policy where id = ?")) {
+            select.setLong(1, id);
+            try (ResultSet rs = select.executeQuery()) {
+                rs.next();
+                return new long[] {rs.getLong(1), rs.getLong(2), rs.getLong(3)};
+            }
+        }
+    }
+
+    @Test
+    public void testPost() throws SQLException {
+        // Prueba el registro de un pago y el rechazo de montos que superan el saldo
+        PaymentPoster poster = new PaymentPoster(dataSource);
+        PaymentPoster.PostingResult posted = poster.post(1, 260_000, "card");
+        assertTrue("El pago debe registrarse", posted.isPosted());
+        assertNotNull("Debe devolver el id del pago", posted.getPaymentId());
+        assertEquals("Debe informar el saldo", 40_000, posted.getRemainingCents());
+
+        PaymentPoster.PostingResult exceeded = poster.post(1, 40_001, "card");
+        assertEquals(PaymentPoster.Outcome.EXCEEDS_REMAINING, exceeded.getOutcome());
+        assertTrue("El saldo exacto debe registrarse", poster.post(1, 40_000, "card").isPosted());
+
+        assertArrayEquals("Totales y versión de la póliza", new long[] {300_000, 2, 2}, policyRow(1));
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select status from Policy where id = 1")) {
+            rs.next();
+            assertEquals(PolicyStatus.PAID.name(), rs.getString(1));
+        }
+        assertEquals(PaymentPoster.Outcome.INVALID_AMOUNT, poster.post(2, 0, "card").getOutcome());
+        assertEquals(PaymentPoster.Outcome.POLICY_NOT_PAYABLE, poster.post(POLICIES, 100, "card").getOutcome());
+        assertEquals(PaymentPoster.Outcome.POLICY_NOT_PAYABLE, poster.post(999, 100, "card").getOutcome());
+    }
+
+    @Test
+    public void testPost_Journaled() throws IOException, SQLException {
+        // Prueba que cada pago aceptado queda en el diario con su secuencia y los rechazados no se escriben
+        try (PaymentJournal journal = new PaymentJournal(folder.getRoot().toPath().resolve("payments.dat"))) {
+            PaymentPoster poster = new PaymentPoster(dataSource, journal);
+            PaymentPoster.PostingResult first = poster.post(1, 100_000, "card");
+            assertEquals(PaymentPoster.Outcome.EXCEEDS_REMAINING, poster.post(1, 250_000, "card").getOutcome());
+            PaymentPoster.PostingResult second = poster.post(2, 50_000, "cash");
+            assertEquals(1, first.getJournalSequence());
+            assertEquals("El rechazo no consume secuencia", 2, second.getJournalSequence());
+            assertEquals("Los pagos deben ser durables al registrarse", 2, journal.getDurableSequence());
+
+            List<String> replayed = new ArrayList<>();
+            journal.replay(0, record -> replayed.add(record.getPolicyId() + ":" + record.getAmountCents()
+                + ":" + record.getMethod()));
+            assertEquals(List.of("1:100000:card", "2:50000:cash"), replayed);
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("select journalSequence from Payment where id = "
+                     + second.getPaymentId())) {
+                rs.next();
+                assertEquals(2, rs.getLong(1));
+            }
+            assertEquals("Todo lo del diario ya está proyectado", 0, new PaymentJournalProjector(dataSource).catchUp(journal));
+        }
+    }
+
+    @Test
+    public void testPost_JournalPerServer() throws IOException, SQLException {
+        // Prueba que dos servidores registran con sus propios diarios aunque repitan secuencias
+        try (PaymentJournal first = new PaymentJournal(folder.getRoot().toPath().resolve("a.dat"), "server-a");
+             PaymentJournal second = new PaymentJournal(folder.getRoot().toPath().resolve("b.dat"), "server-b")) {
+            assertEquals(1, new PaymentPoster(dataSource, first).post(1, 10_000, "card").getJournalSequence());
+            assertEquals(1, new PaymentPoster(dataSource, second).post(1, 20_000, "card").getJournalSequence());
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("select journalInstance from Payment order by journalInstance")) {
+                assertTrue(rs.next());
+                assertEquals("server-a", rs.getString(1));
+                assertTrue(rs.next());
+                assertEquals("server-b", rs.getString(1));
+            }
+            PaymentJournalProjector projector = new PaymentJournalProjector(dataSource);
+            assertEquals("Cada servidor ve su pago ya proyectado", 0, projector.catchUp(first) + projector.catchUp(second));
+            assertArrayEquals(new long[] {30_000, 2, 2}, policyRow(1));
+        }
+    }
+
+    @Test
+    public void testPost_FailedCommitAborted() throws IOException, SQLException {
+        // Prueba que si la confirmación falla el pago se anula en el diario y la proyección no lo aplica
+        DataSource failing = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+            new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+                Object result = method.invoke(dataSource, args);
+                if (!(result instanceof Connection)) {
+                    return result;
+                }
+                Connection target = (Connection) result;
+                return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                    (connectionProxy, connectionMethod, connectionArgs) -> {
+                        if (connectionMethod.getName().equals("commit")) {
+                            throw new SQLException("Conexión perdida");
+                        }
+                        return connectionMethod.invoke(target, connectionArgs);
+                    });
+            });
+
+        try (PaymentJournal journal = new PaymentJournal(folder.getRoot().toPath().resolve("payments.dat"))) {
+            try {
+                new PaymentPoster(failing, journal).post(1, 100_000, "card");
+                fail("El pago no debe registrarse");
+            } catch (IllegalStateException e) {
+                // esperado
+            }
+            List<String> replayed = new ArrayList<>();
+            journal.replay(0, record -> replayed.add(record.getSequence() + ":" + record.getAbortedSequence()));
+            assertEquals("El pago queda anulado en el diario", List.of("1:0", "2:1"), replayed);
+            assertEquals(0, new PaymentJournalProjector(dataSource).catchUp(journal));
+            assertArrayEquals(new long[] {0, 0, 0}, policyRow(1));
+        }
+    }
+
+    @Test
+    public void testPost_StaleVersionRetries() {
+        // Prueba que si otro servidor paga entre la lectura y la actualización se reintenta con el saldo nuevo
+        AtomicBoolean interfered = new AtomicBoolean();
+        DataSource racing = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+            new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+                Object result = method.invoke(dataSource, args);
+                if (!(result instanceof Connection)) {
+                    return result;
+                }
+                Connection target = (Connection) result;
+                return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                    (connectionProxy, connectionMethod, connectionArgs) -> {
+                        if (connectionMethod.getName().equals("prepareStatement")
+                                && PaymentPoster.UPDATE_POLICY.equals(connectionArgs[0])
+                                && interfered.compareAndSet(false, true)) {
+                            try (Statement statement = connection.createStatement()) {
+                                statement.execute("update Policy set totalPaidCents = 290000,"
+                                    + " completedPaymentCount = 1, version = version + 1 where id = 3");
+                            }
+                        }
+                        return connectionMethod.invoke(target, connectionArgs);
+                    });
+            });
+
+        PaymentPoster.PostingResult result = new PaymentPoster(racing, new PolicyLockStripes(1), 3)
+            .post(3, 20_000, "card");
+        assertEquals("El segundo intento debe ver el pago del otro servidor",
+            PaymentPoster.Outcome.EXCEEDS_REMAINING, result.getOutcome());
+        assertEquals("Debe haber reintentado", 2, result.getAttempts());
+        assertEquals(10_000, result.getRemainingCents());
+    }
+
+    @Test
+    public void testPost_ConcurrentNeverOverpays() throws Exception {
+        // Prueba de carga: muchos hilos y varios servidores pagan las mismas pólizas sin superar nunca la prima
+        postConcurrently(16, 1500);
+    }
+
+    @Test
+    @Category(PerformanceTests.class)
+    public void testPost_ConcurrentThroughput() throws Exception {
+        // Prueba de rendimiento: el registro concurrente sostiene miles de pagos por segundo sin pagar de más
+        long minimum = Long.getLong(MIN_POSTS_PER_SECOND_PROPERTY, DEFAULT_MIN_POSTS_PER_SECOND);
+        postConcurrently(16, 1500); // calentamiento
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("delete from Payment");
+            statement.execute("update Policy set totalPaidCents = 0, completedPaymentCount = 0, version = 0,"
+                + " status = 'UNPAID' where id < " + POLICIES);
+        }
+        long postsPerSecond = postConcurrently(16, 1500);
+        assertTrue(postsPerSecond + " pagos/s, se esperaban al menos " + minimum, postsPerSecond >= minimum);
+    }
+
+    /**
+     * Registra pagos desde varios hilos y tres servidores y verifica que
+     * ninguna póliza quede pagada de más
+     * @return pagos intentados por segundo
+     */
+    private long postConcurrently(int threads, int postsPerThread) throws Exception {
+        // Cada servidor tiene sus propias franjas; entre servidores solo protege la versión
+        PaymentPoster[] servers = {
+            new PaymentPoster(dataSource, new PolicyLockStripes(64), 10),
+            new PaymentPoster(dataSource, new PolicyLockStripes(64), 10),
+            new PaymentPoster(dataSource, new PolicyLockStripes(64), 10)
+        };
+        AtomicLong postedCents = new AtomicLong();
+        AtomicInteger posted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            PaymentPoster poster = servers[t % servers.length];
+            tasks.add(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < postsPerThread; i++) {
+                    long amount = 100 + random.nextInt(400);
+                    PaymentPoster.PostingResult result = poster.post(1 + random.nextInt(POLICIES - 1), amount, "card");
+                    if (result.isPosted()) {
+                        posted.incrementAndGet();
+                        postedCents.addAndGet(amount);
+                    } else if (result.getOutcome() == PaymentPoster.Outcome.CONFLICT) {
+                        conflicts.incrementAndGet();
+                    } else {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        long start = System.nanoTime();
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        long postsPerSecond = (long) threads * postsPerThread * 1_000_000_000L / Math.max(1, elapsedNanos);
+
+        assertTrue("Debe haber pagos rechazados por saldo", rejected.get() > 0);
+        long paidCents = 0;
+        int paymentCount = 0;
+        for (long id = 1; id < POLICIES; id++) {
+            long[] row = policyRow(id);
+            assertTrue("La póliza " + id + " no debe quedar con más pagos que la prima: " + row[0],
+                row[0] <= PREMIUM_CENTS);
+            assertEquals("La versión debe contar cada pago de la póliza " + id, row[1], row[2]);
+            paidCents += row[0];
+            paymentCount += row[1];
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select count(*), sum(amountCents) from Payment")) {
+            rs.next();
+            assertEquals("Cada pago registrado debe tener su fila", posted.get(), rs.getInt(1));
+            assertEquals("Las filas deben sumar lo registrado", postedCents.get(), rs.getLong(2));
+        }
+        assertEquals("Los totales deben coincidir con lo registrado (" + conflicts.get() + " conflictos)",
+            postedCents.get(), paidCents);
+        assertEquals(posted.get(), paymentCount);
+        return postsPerSecond;
+    }
+}
@@ -0,0 +1,80 @@
+package com.insurancecorp.insurecar.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Pruebas de caja blanca para PaymentTotalsChecker sobre una base H2 en memoria
+ */
+public class PaymentTotalsCheckerTest {
+
+    private TestDatabase database;
+    private Connection connection;
+    private PaymentTotalsChecker checker;
+
+    @Before
+    public void setUp() throws SQLException {
+        database = TestDatabase.create("payment-totals");
+        connection = database.getConnection();
+        database.execute(
+            "insert into Policy (id, policyNumber, premiumCents, totalPaidCents, completedPaymentCount, status, version)"
+                + " values (1, 'POL-000001', 50000, 50000, 2, 'PAID', 0),"
+                + " (2, 'POL-000002', 60000, 30000, 1, 'PARTIALLY_PAID', 0),"
+                + " (3, 'POL-000003', 60000, 0, 0, 'UNPAID', 0)",
+            "insert into Payment (id, policy_id, amountCents, status) values (10, 1, 20000, 'completed'),"
+                + " (11, 1, 30000, 'COMPLETED'), (12, 1, 99900, 'failed'), (20, 2, 10000, 'completed'),"
+                + " (21, 2, 20000, 'reversed')");
+        checker = new PaymentTotalsChecker(database.getDataSource());
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Test
+    public void testCheck() {
+        // Prueba que solo se informan las pólizas cuyos totales no coinciden con sus pagos completados
+        List<PaymentTotalsChecker.Mismatch> mismatches = checker.check();
+        assertEquals("Solo la póliza con un pago revertido debe diferir", 1, mismatches.size());
+        PaymentTotalsChecker.Mismatch mismatch = mismatches.get(0);
+        assertEquals(2, mismatch.getPolicyId());
+        assertEquals("Debe indicar el total guardado", 30000, mismatch.getStoredPaidCents());
+        assertEquals("Debe indicar el total según los pagos", 10000, mismatch.getActualPaidCents());
+        assertEquals("Debe indicar la cantidad según los pagos", 1, mismatch.getActualPaymentCount());
+    }
+
+    @Test
+    public void testRepair() {
+        // Prueba que la corrección deja los totales iguales a los pagos
+        assertEquals("Debe corregir una póliza", 1, checker.repair(checker.check()));
+        assertTrue("No deben quedar diferencias", checker.check().isEmpty());
+    }
+
+    @Test
+    public void testRepair_RecomputesUnderLock() throws SQLException {
+        // Prueba que un pago registrado entre la verificación y la corrección no se pierde
+        List<PaymentTotalsChecker.Mismatch> mismatches = checker.check();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("insert into Payment (id, policy_id, amountCents, status) values (22, 2, 50000, 'completed')");
+        }
+        assertEquals(1, checker.repair(mismatches));
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(
+                 "select totalPaidCents, completedPaymentCount, status, version from Policy where id = 2")) {
+            rs.next();
+            assertEquals("Debe incluir el pago nuevo", 60000, rs.getLong(1));
+            assertEquals(2, rs.getInt(2));
+            assertEquals("El estado debe seguir a los totales", "PAID", rs.getString(3));
+            assertEquals("La versión debe avanzar", 1, rs.getLong(4));
+        }
+        assertTrue(checker.check().isEmpty());
+    }
+}
@@ -0,0 +1,97 @@
+package com.insurancecorp.insurecar.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pruebas de caja blanca para PaymentTotals sobre una base H2 en memoria
+ */
+public class PaymentTotalsTest {
+
+    private TestDatabase database;
+    private Connection connection;
+    private PaymentTotals totals;
+
+    @Before
+    public void setUp() throws SQLException {
+        database = TestDatabase.create("payment-sums");
+        connection = database.getConnection();
+        totals = new PaymentTotals(database.getDataSource());
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    private void insert(long policyId, long amountCents, String status) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into Payment (policy_id, amountCents, status, method) values (?, ?, ?, 'card')")) {
+            insert.setLong(1, policyId);
+            insert.setLong(2, amountCents);
+            insert.setString(3, status);
+            insert.executeUpdate();
+        }
+    }
+
+    @Test
+    public void testPaidCents() throws SQLException {
+        // Prueba que solo se suman los pagos completados de la póliza
+        insert(1, 20000, "completed");
+        insert(1, 15050, "completed");
+        insert(1, 99900, "failed");
+        insert(2, 50000, "completed");
+        assertEquals(35050, totals.paidCents(1));
+        assertEquals("Una póliza sin pagos suma 0", 0, totals.paidCents(3));
+    }
+
+    @Test
+    public void testPaidCents_Bulk() throws SQLException {
+        // Prueba la suma de miles de pólizas, con más ids que el máximo por consulta
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 2500; id++) {
+            ids.add(id);
+            if (id % 2 == 0) {
+                insert(id, id * 100, "completed");
+                insert(id, 1, "completed");
+                insert(id, 7, "pending");
+            }
+        }
+        ids.add(2L);
+        ids.add(null);
+
+        Map<Long, Long> paid = totals.paidCents(ids);
+        assertEquals("Debe haber un total por id distinto", 2500, paid.size());
+        for (long id = 1; id <= 2500; id++) {
+            assertEquals("Total de la póliza " + id, id % 2 == 0 ? id * 100 + 1 : 0, (long) paid.get(id));
+        }
+        assertTrue("Sin ids no debe consultar", totals.paidCents(Arrays.asList()).isEmpty());
+    }
+
+    @Test
+    public void testQueries_UseCoveringIndex() throws SQLException {
+        // Prueba que las sumas se resuelven con el índice que cubre la consulta
+        assertPlanUses(PaymentTotals.SELECT_PAID.replace("?", "1"));
+        assertPlanUses(PaymentTotals.selectPaidIn(3).replace("?", "1"));
+    }
+
+    private void assertPlanUses(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet plan = statement.executeQuery("explain " + sql)) {
+            plan.next();
+            assertTrue("El plan debe usar el índice: " + plan.getString(1),
+                plan.getString(1).toUpperCase().contains("IDX_PAYMENT_POLICY_STATUS_AMOUNT"));
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.function.Function;
+import javax.sql.DataSource;
+import javax.validation.ValidationException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pruebas de caja blanca para PolicyOverlapChecker sobre una base H2 en memoria
+ */
+public class PolicyOverlapCheckerTest {
+
+    private static final LocalDate JAN_1 = LocalDate.of(2025, 1, 1);
+
+    private TestDatabase database;
+    private Connection connection;
+    private PolicyOverlapChecker checker;
+
+    @Before
+    public void setUp() throws SQLException {
+        database = TestDatabase.create("overlap");
+        connection = database.getConnection();
+        database.execute("insert into Vehicle (id) values (7)");
+        checker = new PolicyOverlapChecker(database.getDataSource());
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    private void insert(long id, long vehicleId, LocalDate start, LocalDate end, String status) throws SQLException {
+        insert(connection, id, vehicleId, start, end, status);
+    }
+
+    private static void insert(Connection connection, long id, long vehicleId, LocalDate start, LocalDate end,
+                               String status) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into Policy (id, vehicle_id, policyNumber, startDate, endDate, status, premiumCents,"
+                    + " totalPaidCents, completedPaymentCount, version) values (?, ?, ?, ?, ?, ?, 0, 0, 0, 0)")) {
+            insert.setLong(1, id);
+            insert.setLong(2, vehicleId);
+            insert.setString(3, String.format("POL-%06d", id));
+            insert.setObject(4, start);
+            insert.setObject(5, end);
+            insert.setString(6, status);
+            insert.executeUpdate();
+        }
+    }
+
+    private static Policy policy(Long id, long vehicleId, LocalDate start, LocalDate end) {
+        Vehicle vehicle = new Vehicle();
+        vehicle.setId(vehicleId);
+        Policy policy = new Policy();
+        policy.setId(id);
+        policy.setVehicle(vehicle);
+        policy.setPolicyNumber("POL-999999");
+        policy.setStartDate(start);
+        policy.setEndDate(end);
+        return policy;
+    }
+
+    @Test
+    public void testFindOverlaps() throws SQLException {
+        // Prueba que se detectan las superposiciones del mismo vehículo, incluidos los extremos
+        insert(1, 7, JAN_1, JAN_1.plusMonths(6).minusDays(1), "PAID");
+        insert(2, 7, JAN_1.plusMonths(6), JAN_1.plusYears(1).minusDays(1), "UNPAID");
+        insert(3, 7, JAN_1, JAN_1.plusYears(1), "CANCELLED");
+        insert(4, 8, JAN_1, JAN_1.plusYears(1), "PAID");
+
+        List<PolicyOverlapChecker.Overlap> overlaps = checker.findOverlaps(
+            policy(null, 7, JAN_1.plusMonths(5), JAN_1.plusMonths(6)));
+        assertEquals("Debe superponerse con las dos pólizas vigentes", 2, overlaps.size());
+        assertEquals("POL-000001", overlaps.get(0).getOtherPolicyNumber());
+        assertEquals("Debe indicar el primer día superpuesto", JAN_1.plusMonths(5), overlaps.get(0).getFrom());
+        assertEquals("Debe indicar el último día superpuesto", JAN_1.plusMonths(6).minusDays(1), overlaps.get(0).getTo());
+        assertEquals("El último día de una es el primero de la otra", JAN_1.plusMonths(6), overlaps.get(1).getFrom());
+
+        assertTrue("Una renovación contigua no se superpone", checker.findOverlaps(
+            policy(null, 7, JAN_1.plusYears(1), JAN_1.plusYears(2))).isEmpty());
+        assertTrue("Una póliza no se superpone consigo misma", checker.findOverlaps(
+            policy(4L, 8, JAN_1, JAN_1.plusYears(1))).isEmpty());
+        Policy cancelled = policy(null, 7, JAN_1, JAN_1.plusYears(1));
+        cancelled.setStatus(PolicyStatus.CANCELLED);
+        assertTrue("Una póliza cancelada no se verifica", checker.findOverlaps(cancelled).isEmpty());
+    }
+
+    @Test
+    public void testFindOverlaps_SameTransaction() throws SQLException {
+        // Prueba que con la conexión de la transacción se ven las pólizas insertadas en ella antes de confirmar
+        connection.setAutoCommit(false);
+        try {
+            insert(1, 7, JAN_1, JAN_1.plusYears(1), "UNPAID");
+            List<PolicyOverlapChecker.Overlap> overlaps = PolicyOverlapChecker.findOverlaps(connection,
+                policy(null, 7, JAN_1.plusMonths(3), JAN_1.plusMonths(9)));
+            assertEquals("Debe ver la póliza aún no confirmada", 1, overlaps.size());
+            assertEquals("POL-000001", overlaps.get(0).getOtherPolicyNumber());
+        } finally {
+            connection.rollback();
+        }
+    }
+
+    @Test
+    public void testLockAndFindOverlaps_Concurrent() throws Exception {
+        // Prueba que dos transacciones que guardan pólizas superpuestas del mismo vehículo no pasan ambas
+        DataSource dataSource = database.getDataSource();
+        try (Connection first = dataSource.getConnection(); Connection second = dataSource.getConnection()) {
+            first.setAutoCommit(false);
+            second.setAutoCommit(false);
+            assertTrue(PolicyOverlapChecker.lockAndFindOverlaps(first,
+                policy(null, 7, JAN_1, JAN_1.plusYears(1))).isEmpty());
+            insert(first, 1, 7, JAN_1, JAN_1.plusYears(1), "UNPAID");
+
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Policy overlapping = policy(null, 7, JAN_1.plusMonths(3), JAN_1.plusMonths(9));
+                Future<List<PolicyOverlapChecker.Overlap>> overlaps = executor.submit(() ->
+                    PolicyOverlapChecker.lockAndFindOverlaps(second, overlapping));
+                Thread.sleep(200);
+                assertFalse("La segunda debe esperar el bloqueo del vehículo", overlaps.isDone());
+                first.commit();
+                List<PolicyOverlapChecker.Overlap> found = overlaps.get(10, TimeUnit.SECONDS);
+                assertEquals("La segunda debe ver la póliza de la primera", 1, found.size());
+                assertEquals("POL-000001", found.get(0).getOtherPolicyNumber());
+            } finally {
+                second.rollback();
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void testListener_ChecksCreatedAndChangedTerms() {
+        // Prueba que el listener verifica al crear y al cambiar la vigencia, y rechaza las superposiciones
+        List<Policy> checked = new ArrayList<>();
+        Function<Policy, List<PolicyOverlapChecker.Overlap>> previous = PolicyOverlapListener.finder;
+        PolicyOverlapListener.finder = policy -> {
+            checked.add(policy);
+            List<PolicyOverlapChecker.Overlap> overlaps = new ArrayList<>();
+            overlaps.add(new PolicyOverlapChecker.Overlap(7, -1, policy.getPolicyNumber(), 1, "POL-000001",
+                policy.getStartDate(), policy.getEndDate()));
+            return overlaps;
+        };
+        try {
+            Policy policy = policy(null, 7, JAN_1, JAN_1.plusYears(1));
+            try {
+                new PolicyOverlapListener().rejectOverlapsOnCreate(policy);
+                fail("Debe rechazar la póliza superpuesta");
+            } catch (ValidationException e) {
+                assertTrue(e.getMessage().contains("POL-000001"));
+            }
+            try {
+                new PolicyOverlapListener().rejectOverlapsOnChange(policy);
+                fail("Una póliza sin vigencia guardada se verifica al modificarla");
+            } catch (ValidationException e) {
+                // esperado
+            }
+            assertEquals(2, checked.size());
+        } finally {
+            PolicyOverlapListener.finder = previous;
+        }
+    }
+
+    @Test
+    public void testFindOverlaps_UsesVehicleIndex() throws SQLException {
+        // Prueba que la consulta por rango usa el índice por vehículo y fechas
+        try (Statement statement = connection.createStatement();
+             ResultSet plan = statement.executeQuery("explain " + PolicyOverlapChecker.SELECT_OVERLAPS
+                 .replaceFirst("\\?", "7").replaceFirst("\\?", "current_date").replaceFirst("\\?", "current_date")
+                 .replaceFirst("\\?", "-1"))) {
+            plan.next();
+            assertTrue("El plan debe usar el índice: " + plan.getString(1),
+                plan.getString(1).toUpperCase().contains("IDX_POLICY_VEHICLE_DATES"));
+        }
+    }
+
+    @Test
+    public void testSweep_MatchesPairwiseComparison() throws SQLException {
+        // Prueba que el barrido encuentra exactamente los mismos pares que comparar todas las pólizas
+        Random random = new Random(42);
+        int count = 3000;
+        long[] vehicles = new long[count];
+        LocalDate[] starts = new LocalDate[count];
+        LocalDate[] ends = new LocalDate[count];
+        boolean[] cancelled = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            vehicles[i] = random.nextInt(600);
+            starts[i] = JAN_1.plusDays(random.nextInt(1500));
+            ends[i] = starts[i].plusDays(random.nextInt(400));
+            cancelled[i] = random.nextInt(10) == 0;
+            insert(i, vehicles[i], starts[i], ends[i], cancelled[i] ? "CANCELLED" : "PAID");
+        }
+
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                if (vehicles[i] == vehicles[j] && !cancelled[i] && !cancelled[j]
+                        && !starts[i].isAfter(ends[j]) && !starts[j].isAfter(ends[i])) {
+                    expected.add(Math.min(i, j) + "-" + Math.max(i, j));
+                }
+            }
+        }
+        Set<String> found = new HashSet<>();
+        long reported = checker.sweep(overlap -> found.add(Math.min(overlap.getPolicyId(), overlap.getOtherPolicyId())
+            + "-" + Math.max(overlap.getPolicyId(), overlap.getOtherPolicyId())));
+
+        assertFalse("Los datos deben tener superposiciones", expected.isEmpty());
+        assertEquals("Debe encontrar los mismos pares", expected, found);
+        assertEquals("No debe repetir pares", expected.size(), reported);
+    }
+}
@@ -0,0 +1,128 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Pruebas de caja blanca para PolicyValidation y InsuranceService.checkPolicy
+ */
+public class PolicyValidationTest {
+
+    private static final EvaluationContext CONTEXT = EvaluationContext.of(LocalDate.of(2025, 6, 1));
+
+    private InsuranceService insuranceService;
+    private Policy policy;
+
+    @Before
+    public void setUp() {
+        insuranceService = new InsuranceService();
+
+        Customer customer = new Customer();
+        customer.setFirstName("Juan");
+        customer.setLastName("Pérez");
+        customer.setEmail("juan.perez@email.com");
+        customer.setDateOfBirth(LocalDate.of(1990, 5, 15));
+
+        Vehicle vehicle = new Vehicle();
+        vehicle.setVin("1HGBH41JXMN109186");
+        vehicle.setMake("Honda");
+        vehicle.setModel("Civic");
+        vehicle.setYear("2020");
+        vehicle.setOwner(customer);
+
+        Coverage coverage = new Coverage();
+        coverage.setName("Cobertura Básica");
+        coverage.setBasePremium(500.0);
+        coverage.setIsActive(true);
+
+        policy = new Policy();
+        policy.setCustomer(customer);
+        policy.setVehicle(vehicle);
+        policy.setCoverage(coverage);
+        policy.setStartDate(CONTEXT.getAsOf());
+        policy.setEndDate(CONTEXT.getAsOf().plusYears(1));
+        policy.setPremium(600.0);
+    }
+
+    @Test
+    public void testCheckPolicy_ValidSharesInstance() {
+        // Prueba que una póliza válida devuelve la instancia compartida, sin crear objetos
+        PolicyValidation validation = insuranceService.checkPolicy(policy, CONTEXT);
+        assertSame("Debe devolver la instancia compartida", PolicyValidation.VALID, validation);
+        assertTrue("Debe ser válida", validation.isValid());
+        assertTrue("No debe tener mensajes", validation.getMessages().isEmpty());
+    }
+
+    @Test
+    public void testCheckPolicy_NullPolicy() {
+        // Prueba que una póliza nula solo viola la regla de póliza obligatoria
+        PolicyValidation validation = insuranceService.checkPolicy(null, CONTEXT);
+        assertEquals("Solo debe violar la regla de póliza obligatoria", EnumSet.of(PolicyRule.POLICY_REQUIRED),
+            validation.getViolations());
+    }
+
+    @Test
+    public void testCheckPolicy_SeveralViolations() {
+        // Prueba que cada regla violada marca su bit y los mensajes siguen el orden de las reglas
+        policy.setCoverage(null);
+        policy.setStartDate(CONTEXT.getAsOf().plusYears(2));
+        policy.setPremium(0.0);
+        PolicyValidation validation = insuranceService.checkPolicy(policy, CONTEXT);
+
+        assertEquals("Debe violar tres reglas", 3, validation.getViolationCount());
+        assertTrue("Debe violar la regla de cobertura", validation.violates(PolicyRule.COVERAGE_REQUIRED));
+        assertTrue("Debe violar la regla de fechas", validation.violates(PolicyRule.START_AFTER_END));
+        assertTrue("Debe violar la regla de prima", validation.violates(PolicyRule.PREMIUM_NOT_POSITIVE));
+        assertFalse("No debe violar la regla de cliente", validation.violates(PolicyRule.CUSTOMER_REQUIRED));
+        assertEquals(Arrays.asList("La cobertura es obligatoria",
+            "La fecha de inicio no puede ser posterior a la fecha de fin", "La prima debe ser mayor a 0"),
+            validation.getMessages());
+    }
+
+    @Test
+    public void testGetMessages_English() {
+        // Prueba que los mensajes se resuelven en el idioma pedido
+        policy.setVehicle(null);
+        List<String> messages = insuranceService.checkPolicy(policy, CONTEXT).getMessages(Locale.ENGLISH);
+        assertEquals(Arrays.asList("Vehicle is required"), messages);
+    }
+
+    @Test
+    public void testGetMessages_UnknownLocaleUsesSpanish() {
+        // Prueba que un idioma sin traducción usa el español, no el idioma del sistema
+        policy.setVehicle(null);
+        assertEquals(Arrays.asList("El vehículo es obligatorio"),
+            insuranceService.checkPolicy(policy, CONTEXT).getMessages(Locale.JAPANESE));
+    }
+
+    @Test
+    public void testEveryRuleHasMessages() {
+        // Prueba que cada regla tiene mensaje en todos los idiomas
+        int all = 0;
+        for (PolicyRule rule : PolicyRule.values()) {
+            all |= rule.bit();
+        }
+        PolicyValidation validation = PolicyValidation.of(all);
+        assertEquals("Debe haber un mensaje por regla", PolicyRule.values().length, validation.getMessages().size());
+        assertEquals("Debe haber un mensaje en inglés por regla", PolicyRule.values().length,
+            validation.getMessages(Locale.ENGLISH).size());
+    }
+
+    @Test
+    public void testValidatePolicy_MatchesCheckPolicy() {
+        // Prueba que el adaptador de lista devuelve los mismos mensajes que el resultado
+        policy.setCustomer(null);
+        policy.setEndDate(null);
+        assertEquals(insuranceService.checkPolicy(policy, CONTEXT).getMessages(),
+            insuranceService.validatePolicy(policy, CONTEXT));
+        assertEquals(Arrays.asList("El cliente es obligatorio", "La fecha de fin es obligatoria"),
+            insuranceService.validatePolicy(policy, CONTEXT));
+    }
+}
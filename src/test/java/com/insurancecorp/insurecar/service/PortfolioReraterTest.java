@@ -0,0 +1,126 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.*;
+import java.time.LocalDate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Pruebas de caja blanca para PortfolioRerater
+ */
+public class PortfolioReraterTest {
+
+    private InsuranceService insuranceService;
+    private Coverage coverage;
+
+    @Before
+    public void setUp() {
+        insuranceService = new InsuranceService();
+        coverage = new Coverage();
+        coverage.setName("Cobertura Básica");
+        coverage.setBasePremium(500.0);
+        coverage.setIsActive(true);
+    }
+
+    private Policy newPolicy(int index) {
+        Customer customer = new Customer();
+        customer.setFirstName("Cliente");
+        customer.setLastName("Prueba");
+        customer.setEmail("cliente" + index + "@email.com");
+        customer.setDateOfBirth(LocalDate.now().minusYears(18 + index % 60));
+
+        Vehicle vehicle = new Vehicle();
+        vehicle.setVin("1HGBH41JXMN109186");
+        vehicle.setMake("Honda");
+        vehicle.setModel("Civic");
+        vehicle.setYear(String.valueOf(LocalDate.now().getYear() - index % 15));
+        vehicle.setOwner(customer);
+
+        Policy policy = new Policy();
+        policy.setCustomer(customer);
+        policy.setVehicle(vehicle);
+        policy.setCoverage(coverage);
+        policy.setStartDate(LocalDate.now());
+        policy.setEndDate(LocalDate.now().plusMonths(1 + index % 24));
+        return policy;
+    }
+
+    @Test
+    public void testRerate_AllPoliciesRated() {
+        // Prueba que todas las pólizas reciben la misma prima que calculatePremium
+        PortfolioRerater rerater = new PortfolioRerater(insuranceService, new ForkJoinPool(4), 100);
+        AtomicInteger mismatches = new AtomicInteger();
+        PortfolioRerater.RerateResult result = rerater.rerate(
+            IntStream.range(0, 5000).mapToObj(this::newPolicy),
+            (policy, premiumCents) -> {
+                long expected = insuranceService.calculatePremiumCents(policy.getCustomer(), policy.getVehicle(),
+                    policy.getCoverage(), policy.getDurationInMonths());
+                if (expected != premiumCents) {
+                    mismatches.incrementAndGet();
+                }
+            });
+
+        assertEquals("Deben retarificarse todas las pólizas", 5000, result.getRatedCount());
+        assertEquals("No debe omitirse ninguna póliza", 0, result.getSkippedCount());
+        assertEquals("Las primas deben coincidir con calculatePremium", 0, mismatches.get());
+        assertTrue("El rendimiento debe ser positivo", result.getPoliciesPerSecond() > 0);
+    }
+
+    @Test
+    public void testRerate_IncompletePoliciesSkipped() {
+        // Prueba que las pólizas incompletas se omiten
+        Policy withoutCoverage = newPolicy(1);
+        withoutCoverage.setCoverage(null);
+        Policy withoutDates = newPolicy(2);
+        withoutDates.setEndDate(null);
+
+        PortfolioRerater.RerateResult result = new PortfolioRerater(insuranceService)
+            .rerate(Stream.of(newPolicy(0), withoutCoverage, withoutDates), (policy, premiumCents) -> { });
+
+        assertEquals("Debe retarificarse solo la póliza completa", 1, result.getRatedCount());
+        assertEquals("Deben omitirse las pólizas incompletas", 2, result.getSkippedCount());
+    }
+
+    @Test
+    public void testRerate_SinkFailurePropagated() {
+        // Prueba que un error en el destino se propaga al que llama
+        PortfolioRerater rerater = new PortfolioRerater(insuranceService);
+        try {
+            rerater.rerate(IntStream.range(0, 10).mapToObj(this::newPolicy), (policy, premiumCents) -> {
+                throw new IllegalStateException("fallo");
+            });
+            fail("Debe propagarse el error del destino");
+        } catch (IllegalStateException e) {
+            assertEquals("fallo", e.getMessage());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testRerate_RejectedChunkPropagated() {
+        // Prueba que si el pool rechaza un bloque el error se propaga sin quedar esperando su permiso
+        ForkJoinPool pool = new ForkJoinPool(2);
+        pool.shutdown();
+        try {
+            new PortfolioRerater(insuranceService, pool, 4)
+                .rerate(IntStream.range(0, 10).mapToObj(this::newPolicy), (policy, premiumCents) -> { });
+            fail("Debe propagarse el rechazo del pool");
+        } catch (RejectedExecutionException e) {
+            // esperado
+        }
+    }
+
+    @Test
+    public void testReratePortfolio_UpdatesPremium() {
+        // Prueba que el servicio asigna la nueva prima a cada póliza
+        Policy policy = newPolicy(3);
+        insuranceService.reratePortfolio(Stream.of(policy));
+        assertNotNull("La prima debe asignarse", policy.getPremium());
+        assertTrue("La prima debe ser mayor a 0", policy.getPremium() > 0);
+    }
+}
@@ -0,0 +1,86 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.PerformanceTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+import java.util.logging.Logger;
+
+/**
+ * Prueba de rendimiento de RatingEngine.rate(PremiumBatch) contra la tarificación
+ * fila por fila, con la pasada aritmética medida aparte. Es la medición que cita
+ * la documentación de PremiumBatch.
+ * Se ejecuta con el perfil performance: {@code mvn test -Pperformance -Dtest=PremiumBatchPerformanceTest}
+ */
+@Category(PerformanceTests.class)
+public class PremiumBatchPerformanceTest {
+
+    private static final Logger log = Logger.getLogger(PremiumBatchPerformanceTest.class.getName());
+
+    static final int ROWS = 4096;
+    static final int ROUNDS = 2000;
+
+    /**
+     * Crea un lote lleno con edades, antigüedades y duraciones variadas
+     * @param rows cantidad de filas
+     * @return lote sin tarificar
+     */
+    static PremiumBatch batch(int rows) {
+        PremiumBatch batch = new PremiumBatch(rows);
+        for (int i = 0; i < rows; i++) {
+            batch.add(20_000 + i * 37 % 90_000, 18 + (i & 63), i & 15, 1 + i % 12);
+        }
+        return batch;
+    }
+
+    /**
+     * Segunda pasada de RatingEngine.rate(PremiumBatch), sola
+     */
+    static void scalarPass(long[] base, double[] factors, long[] premiums, int size) {
+        for (int i = 0; i < size; i++) {
+            premiums[i] = Math.round(base[i] * factors[i]);
+        }
+    }
+
+    @Test
+    public void testRate_SameAsPerRow() {
+        // Prueba de volumen: el lote da las mismas primas que fila por fila; informa los tiempos de las tres variantes
+        RatingEngine engine = RatingRulesRegistry.load();
+        PremiumBatch batch = batch(ROWS);
+        long[] base = batch.basePremiumCents();
+        int[] driverAges = batch.driverAges();
+        int[] vehicleAges = batch.vehicleAges();
+        int[] durations = batch.durations();
+        long[] perRow = new long[ROWS];
+        long[] arithmetic = new long[ROWS];
+        long perRowNanos = Long.MAX_VALUE;
+        long batchNanos = Long.MAX_VALUE;
+        long arithmeticNanos = Long.MAX_VALUE;
+        for (int repeat = 0; repeat < 5; repeat++) {
+            long start = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = 0; i < ROWS; i++) {
+                    perRow[i] = engine.rate(base[i], driverAges[i], vehicleAges[i], durations[i]);
+                }
+            }
+            perRowNanos = Math.min(perRowNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                engine.rate(batch);
+            }
+            batchNanos = Math.min(batchNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                scalarPass(base, batch.factors(), arithmetic, ROWS);
+            }
+            arithmeticNanos = Math.min(arithmeticNanos, System.nanoTime() - start);
+        }
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals("Prima del lote en la fila " + i, perRow[i], batch.getPremiumCents(i));
+            assertEquals("Prima de la pasada aritmética en la fila " + i, perRow[i], arithmetic[i]);
+        }
+        double rows = (double) ROUNDS * ROWS;
+        log.info(String.format("Por fila %.1f ns, lote %.1f ns, pasada aritmética %.1f ns por fila",
+            perRowNanos / rows, batchNanos / rows, arithmeticNanos / rows));
+    }
+}
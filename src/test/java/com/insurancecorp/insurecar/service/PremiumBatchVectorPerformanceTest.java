@@ -0,0 +1,75 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.PerformanceTests;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+import java.util.logging.Logger;
+
+/**
+ * Prueba de rendimiento de la pasada aritmética de RatingEngine.rate(PremiumBatch)
+ * con jdk.incubator.vector contra la escalar de {@link PremiumBatchPerformanceTest}.
+ *
+ * Necesita JDK 17 o posterior: fuera del perfil vector-benchmark no se compila,
+ * porque el proyecto compila para Java 11.
+ * {@code mvn test -Pperformance,vector-benchmark -Dtest=PremiumBatchVectorPerformanceTest}
+ */
+@Category(PerformanceTests.class)
+public class PremiumBatchVectorPerformanceTest {
+
+    private static final Logger log = Logger.getLogger(PremiumBatchVectorPerformanceTest.class.getName());
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+    /**
+     * Pasada aritmética con vectores; las primas son positivas, así que
+     * truncar x + 0.5 equivale a Math.round
+     */
+    static void vectorPass(long[] base, double[] factors, long[] premiums, int size) {
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(size); i < bound; i += DOUBLES.length()) {
+            DoubleVector premium = ((DoubleVector) LongVector.fromArray(LONGS, base, i)
+                .convert(VectorOperators.L2D, 0))
+                .mul(DoubleVector.fromArray(DOUBLES, factors, i))
+                .add(0.5);
+            ((LongVector) premium.convert(VectorOperators.D2L, 0)).intoArray(premiums, i);
+        }
+        for (; i < size; i++) {
+            premiums[i] = Math.round(base[i] * factors[i]);
+        }
+    }
+
+    @Test
+    public void testVectorPass_SameAsScalar() {
+        // Prueba de volumen: la pasada vectorial da las mismas primas que la escalar; informa los tiempos de ambas
+        int rows = PremiumBatchPerformanceTest.ROWS;
+        int rounds = PremiumBatchPerformanceTest.ROUNDS;
+        PremiumBatch batch = PremiumBatchPerformanceTest.batch(rows);
+        RatingRulesRegistry.load().rate(batch);
+        long[] scalar = new long[rows];
+        long[] vector = new long[rows];
+        long scalarNanos = Long.MAX_VALUE;
+        long vectorNanos = Long.MAX_VALUE;
+        for (int repeat = 0; repeat < 5; repeat++) {
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                PremiumBatchPerformanceTest.scalarPass(batch.basePremiumCents(), batch.factors(), scalar, rows);
+            }
+            scalarNanos = Math.min(scalarNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                vectorPass(batch.basePremiumCents(), batch.factors(), vector, rows);
+            }
+            vectorNanos = Math.min(vectorNanos, System.nanoTime() - start);
+        }
+        assertArrayEquals("Las dos pasadas deben dar las mismas primas", scalar, vector);
+        double total = (double) rounds * rows;
+        log.info(String.format("Pasada escalar %.1f ns, vectorial %.1f ns por fila (%d carriles)",
+            scalarNanos / total, vectorNanos / total, DOUBLES.length()));
+    }
+}
@@ -0,0 +1,166 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.*;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Pruebas de caja blanca para PremiumSimulator y PortfolioSnapshot
+ */
+public class PremiumSimulatorTest {
+
+    private static final EvaluationContext CONTEXT = EvaluationContext.of(LocalDate.of(2025, 6, 1));
+
+    private InsuranceService insuranceService;
+    private Coverage basic;
+    private Coverage full;
+    private List<Policy> policies;
+
+    @Before
+    public void setUp() {
+        insuranceService = new InsuranceService();
+        basic = newCoverage("Cobertura Básica", 500.0);
+        full = newCoverage("Cobertura Amplia", 1200.0);
+        policies = Arrays.asList(IntStream.range(0, 20_000).mapToObj(this::newPolicy).toArray(Policy[]::new));
+    }
+
+    private static Coverage newCoverage(String name, double basePremium) {
+        Coverage coverage = new Coverage();
+        coverage.setName(name);
+        coverage.setBasePremium(basePremium);
+        coverage.setIsActive(true);
+        return coverage;
+    }
+
+    private Policy newPolicy(int index) {
+        Customer customer = new Customer();
+        customer.setDateOfBirth(CONTEXT.getAsOf().minusYears(18 + index % 60));
+        customer.setZipCode(index % 3 == 0 ? "10001" : "30301");
+
+        Vehicle vehicle = new Vehicle();
+        vehicle.setMake(index % 4 == 0 ? "Porsche" : "Honda");
+        vehicle.setModel("Civic");
+        vehicle.setYear(String.valueOf(CONTEXT.getAsOfYear() - index % 15));
+
+        Policy policy = new Policy();
+        policy.setCustomer(customer);
+        policy.setVehicle(vehicle);
+        policy.setCoverage(index % 2 == 0 ? basic : full);
+        policy.setStartDate(CONTEXT.getAsOf().minusMonths(index % 6));
+        policy.setEndDate(policy.getStartDate().plusMonths(6 + index % 12));
+        return policy;
+    }
+
+    private static RatingEngine rules(String version, String driverAgeBands) {
+        Properties rules = new Properties();
+        rules.setProperty("version", version);
+        rules.setProperty("driverAge.bands", driverAgeBands);
+        rules.setProperty("vehicleAge.bands", "0:1.0, 6:1.2, 11:1.4");
+        rules.setProperty("duration.bands", "0:1.0, 12:0.9");
+        rules.setProperty("territory.factors", "0:1.0, 1:1.25, 2:1.1, 3:1.0, 4:0.9");
+        rules.setProperty("vehicleSymbol.factors", "0:1.0, 1:0.9, 2:1.0, 3:1.1, 4:1.4");
+        return RatingEngine.fromProperties(rules);
+    }
+
+    @Test
+    public void testCapture_MatchesCalculatePremium() {
+        // Prueba que la fotografía tarifica igual que calculatePremium
+        RatingEngine engine = RatingRulesRegistry.current();
+        PortfolioSnapshot snapshot = PortfolioSnapshot.capture(policies.stream(), CONTEXT);
+        PremiumSimulator.SimulationResult result = new PremiumSimulator(snapshot)
+            .simulate(engine, Arrays.asList(engine)).get(0);
+
+        long basicTotal = 0;
+        long fullTotal = 0;
+        for (Policy policy : policies) {
+            long premium = insuranceService.calculatePremiumCents(policy.getCustomer(), policy.getVehicle(),
+                policy.getCoverage(), policy.getDurationInMonths(), CONTEXT);
+            if (policy.getCoverage() == basic) {
+                basicTotal += premium;
+            } else {
+                fullTotal += premium;
+            }
+        }
+        assertEquals("Debe capturar todas las pólizas activas", policies.size(), snapshot.size());
+        assertEquals("Debe haber un segmento por cobertura", 2, result.getSegmentCount());
+        assertEquals("Segmento en orden de aparición", "Cobertura Básica", result.getSegmentName(0));
+        assertEquals("Prima del segmento básico", basicTotal, result.getBaselineCents(0));
+        assertEquals("Prima del segmento amplio", fullTotal, result.getBaselineCents(1));
+        assertEquals("Las mismas reglas no deben cambiar la prima", 0L, result.getTotalDeltaCents());
+    }
+
+    @Test
+    public void testSimulate_UnderTwentyFiveLoading() {
+        // Prueba que cambiar el recargo de menores de 25 solo mueve la prima de esos conductores
+        RatingEngine baseline = rules("base", "0:1.5, 25:1.3, 30:1.0, 66:1.2");
+        RatingEngine candidate = rules("candidata", "0:1.8, 25:1.3, 30:1.0, 66:1.2");
+        PortfolioSnapshot snapshot = PortfolioSnapshot.capture(policies.stream(), CONTEXT);
+        PremiumSimulator.SimulationResult result = new PremiumSimulator(snapshot, new ForkJoinPool(4))
+            .simulate(baseline, Arrays.asList(candidate)).get(0);
+
+        long expectedDelta = 0;
+        for (Policy policy : policies) {
+            int age = policy.getCustomer().getAge(CONTEXT);
+            if (age < 25) {
+                int months = policy.getDurationInMonths();
+                int territory = TerritoryTable.shared().territoryOf(policy.getCustomer().getZipCode());
+                int symbol = VehicleSymbolTable.shared().symbolOf(policy.getVehicle());
+                long base = policy.getCoverage().getBasePremiumCents();
+                int vehicleAge = policy.getVehicle().getVehicleAge(CONTEXT);
+                expectedDelta += candidate.rate(base, age, vehicleAge, months, territory, symbol)
+                    - baseline.rate(base, age, vehicleAge, months, territory, symbol);
+            }
+        }
+        assertTrue("La prima debe subir", result.getTotalDeltaCents() > 0);
+        assertEquals("La diferencia debe venir solo de los menores de 25", expectedDelta, result.getTotalDeltaCents());
+        assertEquals("Las diferencias por segmento deben sumar el total", result.getTotalDeltaCents(),
+            result.getDeltaCents(0) + result.getDeltaCents(1));
+        assertEquals("Debe informar la versión candidata", "candidata", result.getCandidateVersion());
+    }
+
+    @Test
+    public void testSimulate_ManyCandidatesInOrder() {
+        // Prueba varias candidatas en paralelo, en el orden pedido
+        PortfolioSnapshot snapshot = PortfolioSnapshot.capture(policies.stream(), CONTEXT);
+        RatingEngine baseline = rules("base", "0:1.5, 25:1.3, 30:1.0, 66:1.2");
+        RatingEngine[] candidates = new RatingEngine[16];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = rules("v" + i, "0:" + (1.0 + i * 0.1) + ", 25:1.3, 30:1.0, 66:1.2");
+        }
+        List<PremiumSimulator.SimulationResult> results = new PremiumSimulator(snapshot)
+            .simulate(baseline, Arrays.asList(candidates));
+
+        assertEquals("Debe haber un resultado por candidata", candidates.length, results.size());
+        for (int i = 1; i < results.size(); i++) {
+            assertEquals("Los resultados deben conservar el orden", "v" + i, results.get(i).getCandidateVersion());
+            assertTrue("Un recargo mayor debe dar más prima",
+                results.get(i).getTotalDeltaCents() > results.get(i - 1).getTotalDeltaCents());
+        }
+        assertEquals("El recargo de la referencia no debe cambiar la prima", 0L, results.get(5).getTotalDeltaCents());
+    }
+
+    @Test
+    public void testCapture_SkipsInactiveAndIncomplete() {
+        // Prueba que la fotografía omite pólizas inactivas o incompletas
+        Policy cancelled = newPolicy(1);
+        cancelled.setStatus(PolicyStatus.CANCELLED);
+        Policy expired = newPolicy(2);
+        expired.setEndDate(CONTEXT.getAsOf().minusDays(1));
+        Policy withoutVehicle = newPolicy(3);
+        withoutVehicle.setVehicle(null);
+        PortfolioSnapshot snapshot = PortfolioSnapshot.capture(
+            Arrays.asList(cancelled, expired, withoutVehicle, newPolicy(4)).stream(), CONTEXT,
+            policy -> String.valueOf(TerritoryTable.shared().territoryOf(policy.getCustomer().getZipCode())));
+
+        assertEquals("Solo debe capturar la póliza activa", 1, snapshot.size());
+        assertEquals("Debe usar la segmentación indicada", "4", snapshot.getSegmentName(0));
+        assertEquals("Debe informar la memoria usada", 32L, snapshot.getFootprintBytes());
+    }
+}
@@ -0,0 +1,251 @@
+package com.insurancecorp.insurecar.service;
+
+import org.junit.Test;
+import org.junit.Before;
+import static org.junit.Assert.*;
+import java.util.Properties;
+
+/**
+ * Pruebas de caja blanca para RatingEngine
+ */
+public class RatingEngineTest {
+
+    private RatingEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = RatingRulesRegistry.load();
+    }
+
+    @Test
+    public void testDriverAgeFactor_Bands() {
+        // Prueba los límites de cada banda de edad
+        assertEquals("Menor de 25 debe pagar 50% más", 1.5, engine.driverAgeFactor(24), 0.0);
+        assertEquals("Entre 25 y 29 debe pagar 30% más", 1.3, engine.driverAgeFactor(25), 0.0);
+        assertEquals("Entre 25 y 29 debe pagar 30% más", 1.3, engine.driverAgeFactor(29), 0.0);
+        assertEquals("Entre 30 y 65 no tiene recargo", 1.0, engine.driverAgeFactor(30), 0.0);
+        assertEquals("Entre 30 y 65 no tiene recargo", 1.0, engine.driverAgeFactor(65), 0.0);
+        assertEquals("Mayor de 65 debe pagar 20% más", 1.2, engine.driverAgeFactor(66), 0.0);
+    }
+
+    @Test
+    public void testDriverAgeFactor_OutOfRange() {
+        // Prueba edades fuera de la tabla
+        assertEquals("Edad negativa debe usar la primera banda", 1.5, engine.driverAgeFactor(-3), 0.0);
+        assertEquals("Edad muy alta debe usar la última banda", 1.2, engine.driverAgeFactor(500), 0.0);
+    }
+
+    @Test
+    public void testVehicleAgeFactor_Bands() {
+        // Prueba los límites de cada banda de antigüedad
+        assertEquals("Vehículo de 5 años no tiene recargo", 1.0, engine.vehicleAgeFactor(5), 0.0);
+        assertEquals("Vehículo de 6 años debe pagar 20% más", 1.2, engine.vehicleAgeFactor(6), 0.0);
+        assertEquals("Vehículo de 10 años debe pagar 20% más", 1.2, engine.vehicleAgeFactor(10), 0.0);
+        assertEquals("Vehículo de 11 años debe pagar 40% más", 1.4, engine.vehicleAgeFactor(11), 0.0);
+        assertEquals("Antigüedad negativa no tiene recargo", 1.0, engine.vehicleAgeFactor(-1), 0.0);
+        assertEquals("Antigüedad muy alta debe usar la última banda", 1.4, engine.vehicleAgeFactor(2025), 0.0);
+    }
+
+    @Test
+    public void testDurationFactor_Bands() {
+        // Prueba el descuento por duración
+        assertEquals("Pólizas de 11 meses no tienen descuento", 1.0, engine.durationFactor(11), 0.0);
+        assertEquals("Pólizas de 12 meses tienen 10% de descuento", 0.9, engine.durationFactor(12), 0.0);
+        assertEquals("Pólizas de más de 12 meses tienen 10% de descuento", 0.9, engine.durationFactor(36), 0.0);
+    }
+
+    @Test
+    public void testTerritoryFactor() {
+        // Prueba los factores por territorio y el territorio por defecto
+        assertEquals("El territorio por defecto no tiene recargo", 1.0, engine.territoryFactor(0), 0.0);
+        assertEquals("El territorio urbano denso debe pagar 25% más", 1.25, engine.territoryFactor(1), 0.0);
+        assertEquals("El territorio rural debe tener 10% de descuento", 0.9, engine.territoryFactor(4), 0.0);
+        assertEquals("Un territorio desconocido debe usar el de por defecto", 1.0, engine.territoryFactor(999), 0.0);
+        assertEquals("Un territorio negativo debe usar el de por defecto", 1.0, engine.territoryFactor(-1), 0.0);
+        assertEquals("La prima debe incluir el factor del territorio", 62500L, engine.rate(50000L, 40, 2, 6, 1, 0));
+    }
+
+    @Test
+    public void testVehicleSymbolFactor() {
+        // Prueba los factores por símbolo de vehículo y el símbolo por defecto
+        assertEquals("El símbolo por defecto no tiene recargo", 1.0, engine.vehicleSymbolFactor(0), 0.0);
+        assertEquals("El símbolo económico debe tener 10% de descuento", 0.9, engine.vehicleSymbolFactor(1), 0.0);
+        assertEquals("El símbolo deportivo debe pagar 40% más", 1.4, engine.vehicleSymbolFactor(4), 0.0);
+        assertEquals("Un símbolo desconocido debe usar el de por defecto", 1.0, engine.vehicleSymbolFactor(77), 0.0);
+        assertEquals("La prima debe incluir el factor del símbolo", 70000L, engine.rate(50000L, 40, 2, 6, 0, 4));
+        assertNotEquals("Símbolos distintos deben tener celdas distintas",
+            engine.ratingCell(40, 2, 12, 0, 1), engine.ratingCell(40, 2, 12, 0, 4));
+    }
+
+    @Test
+    public void testFromProperties_TerritoryGaps() {
+        // Prueba que los territorios sin factor usan el del territorio por defecto
+        Properties rules = new Properties();
+        rules.setProperty("version", "test");
+        rules.setProperty("driverAge.bands", "0:1.0");
+        rules.setProperty("vehicleAge.bands", "0:1.0");
+        rules.setProperty("duration.bands", "0:1.0");
+        rules.setProperty("territory.factors", "0:1.1, 5:2.0");
+        RatingEngine custom = RatingEngine.fromProperties(rules);
+        assertEquals("El territorio 3 no tiene factor propio", 1.1, custom.territoryFactor(3), 0.0);
+        assertEquals("El territorio 5 tiene factor propio", 2.0, custom.territoryFactor(5), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromProperties_MissingDefaultTerritory() {
+        // Prueba que el territorio por defecto es obligatorio
+        Properties rules = new Properties();
+        rules.setProperty("version", "test");
+        rules.setProperty("driverAge.bands", "0:1.0");
+        rules.setProperty("vehicleAge.bands", "0:1.0");
+        rules.setProperty("duration.bands", "0:1.0");
+        rules.setProperty("territory.factors", "1:1.2");
+        RatingEngine.fromProperties(rules);
+    }
+
+    @Test
+    public void testRatingCell_Territory() {
+        // Prueba que el territorio distingue celdas de tarificación
+        assertNotEquals("Territorios distintos deben tener celdas distintas",
+            engine.ratingCell(40, 2, 12, 1, 0), engine.ratingCell(40, 2, 12, 2, 0));
+        assertEquals("Un territorio desconocido comparte celda con el de por defecto",
+            engine.ratingCell(40, 2, 12, 0, 0), engine.ratingCell(40, 2, 12, 999, 0));
+    }
+
+    @Test
+    public void testRate_CombinedFactors() {
+        // Prueba la combinación de factores y el redondeo
+        assertEquals("La prima debe combinar todos los factores",
+                    162000L, engine.rate(100000L, 20, 8, 12));
+        assertEquals("La prima debe redondearse al centavo",
+                    50000L, engine.rate(33333L, 20, 1, 1));
+    }
+
+    @Test
+    public void testRateBatch_MatchesScalar() {
+        // Prueba que el cálculo por lotes coincide con el cálculo fila por fila
+        PremiumBatch batch = new PremiumBatch(5000);
+        for (int i = 0; i < batch.capacity(); i++) {
+            batch.add(10000L + i * 37L, i % 100 - 5, i % 45 - 2, i % 30 - 1, i % 6, i % 4);
+        }
+        engine.rate(batch);
+
+        for (int i = 0; i < batch.size(); i++) {
+            int duration = i % 30 - 1;
+            long expected = duration > 0 ? engine.rate(10000L + i * 37L, i % 100 - 5, i % 45 - 2, duration, i % 6, i % 4) : 0L;
+            assertEquals("La fila " + i + " debe coincidir con el cálculo escalar", expected, batch.getPremiumCents(i));
+        }
+    }
+
+    @Test
+    public void testRateBatch_Reuse() {
+        // Prueba que un lote se puede vaciar y reutilizar
+        PremiumBatch batch = new PremiumBatch(2);
+        batch.add(100000L, 40, 1, 12);
+        batch.add(100000L, 20, 1, 12);
+        engine.rate(batch);
+        batch.clear();
+        batch.add(100000L, 40, 1, 1);
+        engine.rate(batch);
+
+        assertEquals("El lote debe tener una fila", 1, batch.size());
+        assertEquals("La fila debe recalcularse", 100000L, batch.getPremiumCents(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRateBatch_Full() {
+        // Prueba que no se pueden agregar filas a un lote lleno
+        PremiumBatch batch = new PremiumBatch(1);
+        batch.add(100000L, 40, 1, 12);
+        batch.add(100000L, 40, 1, 12);
+    }
+
+    @Test
+    public void testFromProperties_CustomRules() {
+        // Prueba la compilación de reglas con otros factores
+        Properties rules = new Properties();
+        rules.setProperty("version", "prueba-1");
+        rules.setProperty("driverAge.bands", "0:2.0, 25:1.0");
+        rules.setProperty("vehicleAge.bands", "0:1.0");
+        rules.setProperty("duration.bands", "0:1.0, 6:0.8");
+        RatingEngine custom = RatingEngine.fromProperties(rules);
+
+        assertEquals("Debe conservar la versión", "prueba-1", custom.getVersion());
+        assertEquals("Debe aplicar el nuevo factor de edad", 2.0, custom.driverAgeFactor(24), 0.0);
+        assertEquals("Debe aplicar el nuevo descuento por duración", 0.8, custom.durationFactor(6), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromProperties_MissingVersion() {
+        // Prueba que la versión es obligatoria
+        Properties rules = new Properties();
+        rules.setProperty("driverAge.bands", "0:1.0");
+        rules.setProperty("vehicleAge.bands", "0:1.0");
+        rules.setProperty("duration.bands", "0:1.0");
+        RatingEngine.fromProperties(rules);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromProperties_InvalidFactor() {
+        // Prueba que los factores deben ser positivos
+        Properties rules = new Properties();
+        rules.setProperty("version", "prueba-2");
+        rules.setProperty("driverAge.bands", "0:-1.0");
+        rules.setProperty("vehicleAge.bands", "0:1.0");
+        rules.setProperty("duration.bands", "0:1.0");
+        RatingEngine.fromProperties(rules);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTable_BandsNotStartingAtZero() {
+        // Prueba que las bandas deben empezar en 0
+        RatingEngine.table(10, new int[] {1, 5}, new double[] {1.0, 1.1});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTable_DescendingBands() {
+        // Prueba que los límites deben ser ascendentes
+        RatingEngine.table(10, new int[] {0, 5, 3}, new double[] {1.0, 1.1, 1.2});
+    }
+
+    @Test
+    public void testRate_ParityWithLegacyBranches() {
+        // Prueba que las reglas compiladas dan la misma prima que el cálculo original con if/else
+        long[] bases = {1L, 99L, 50000L, 123457L, 9999999L};
+        for (long base : bases) {
+            for (int age = 0; age <= RatingEngine.MAX_DRIVER_AGE; age++) {
+                for (int vehicleAge = 0; vehicleAge <= RatingEngine.MAX_VEHICLE_AGE; vehicleAge++) {
+                    for (int months = 1; months <= 24; months++) {
+                        assertEquals("Prima distinta para base " + base + ", edad " + age
+                                + ", antigüedad " + vehicleAge + ", meses " + months,
+                            legacyPremiumCents(base, age, vehicleAge, months),
+                            engine.rate(base, age, vehicleAge, months));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Cálculo original de InsuranceService, escrito a mano, usado como referencia
+     */
+    private static long legacyPremiumCents(long baseCents, int customerAge, int vehicleAge, int durationInMonths) {
+        double finalPremium = baseCents;
+        if (customerAge < 25) {
+            finalPremium *= 1.5;
+        } else if (customerAge < 30) {
+            finalPremium *= 1.3;
+        } else if (customerAge > 65) {
+            finalPremium *= 1.2;
+        }
+        if (vehicleAge > 10) {
+            finalPremium *= 1.4;
+        } else if (vehicleAge > 5) {
+            finalPremium *= 1.2;
+        }
+        if (durationInMonths >= 12) {
+            finalPremium *= 0.9;
+        }
+        return Math.round(finalPremium);
+    }
+}
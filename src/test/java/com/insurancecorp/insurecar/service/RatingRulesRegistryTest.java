@@ -0,0 +1,107 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pruebas de caja blanca para RatingRulesRegistry
+ */
+public class RatingRulesRegistryTest {
+
+    @After
+    public void tearDown() {
+        // Restaurar las reglas por defecto para el resto de las pruebas
+        RatingRulesRegistry.install(RatingRulesRegistry.load());
+    }
+
+    private Path writeRules(String version, String driverAgeBands) throws IOException {
+        Path file = Files.createTempFile("rating-rules", ".properties");
+        file.toFile().deleteOnExit();
+        Files.write(file, ("version=" + version + "\n"
+            + "driverAge.bands=" + driverAgeBands + "\n"
+            + "vehicleAge.bands=0:1.0, 6:1.2, 11:1.4\n"
+            + "duration.bands=0:1.0, 12:0.9\n").getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testCurrent_DefaultRules() {
+        // Prueba que las reglas por defecto se cargan del classpath
+        assertEquals("Debe cargar la versión por defecto", "2025.3", RatingRulesRegistry.current().getVersion());
+    }
+
+    @Test
+    public void testReload_SwapsVersion() throws IOException {
+        // Prueba que una recarga publica la nueva versión
+        RatingRulesRegistry.reload(writeRules("2026.1", "0:1.6, 25:1.3, 30:1.0, 66:1.2"));
+        assertEquals("Debe publicar la nueva versión", "2026.1", RatingRulesRegistry.current().getVersion());
+        assertEquals("Debe aplicar el nuevo factor", 1.6, RatingRulesRegistry.current().driverAgeFactor(20), 0.0);
+    }
+
+    @Test
+    public void testReload_InvalidRulesKeepCurrent() throws IOException {
+        // Prueba que unas reglas inválidas no reemplazan a las vigentes
+        RatingEngine before = RatingRulesRegistry.current();
+        try {
+            RatingRulesRegistry.reload(writeRules("2026.2", "5:1.0"));
+            fail("Debe rechazar reglas inválidas");
+        } catch (IllegalStateException e) {
+            assertSame("Debe conservar las reglas vigentes", before, RatingRulesRegistry.current());
+        }
+    }
+
+    @Test
+    public void testQuote_RecordsVersionUnderReload() throws Exception {
+        // Prueba que cada cotización es coherente con la versión que registra mientras se recarga
+        Path v1 = writeRules("v1", "0:1.0");
+        Path v2 = writeRules("v2", "0:2.0");
+        RatingRulesRegistry.reload(v1);
+
+        Customer customer = new Customer();
+        customer.setDateOfBirth(LocalDate.now().minusYears(40));
+        Vehicle vehicle = new Vehicle();
+        vehicle.setYear(String.valueOf(LocalDate.now().getYear()));
+        Coverage coverage = new Coverage();
+        coverage.setBasePremium(100.0);
+        InsuranceService service = new InsuranceService();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger inconsistent = new AtomicInteger();
+        Set<String> versions = ConcurrentHashMap.newKeySet();
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                while (running.get()) {
+                    PremiumQuote quote = service.quote(customer, vehicle, coverage, 1);
+                    versions.add(quote.getRulesVersion());
+                    long expected = "v1".equals(quote.getRulesVersion()) ? 10000L : 20000L;
+                    if (quote.getPremiumCents() != expected) {
+                        inconsistent.incrementAndGet();
+                    }
+                }
+            });
+            readers[i].start();
+        }
+        for (int i = 0; i < 200; i++) {
+            RatingRulesRegistry.reload(i % 2 == 0 ? v2 : v1);
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertEquals("Ninguna cotización debe mezclar versiones", 0, inconsistent.get());
+        assertFalse("Debe registrarse la versión de cada cotización", versions.isEmpty());
+    }
+}
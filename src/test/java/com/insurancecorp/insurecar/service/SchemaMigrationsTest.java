@@ -0,0 +1,251 @@
+package com.insurancecorp.insurecar.service;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Pruebas de caja blanca para SchemaMigrations sobre una base HSQLDB en
+ * memoria con el esquema y los datos de data/insurecar-db.script
+ */
+public class SchemaMigrationsTest {
+
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    private JDBCDataSource dataSource;
+    private Connection connection; // mantiene viva la base en memoria
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new JDBCDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:migrations" + databases.incrementAndGet());
+        dataSource.setUser("sa");
+        connection = dataSource.getConnection();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("shutdown");
+        }
+        connection.close();
+    }
+
+    /**
+     * Crea el esquema y los datos anteriores a las columnas en centavos
+     */
+    private void createLegacySchema() throws SQLException {
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("CREATE MEMORY TABLE PUBLIC.COVERAGE(ID BIGINT GENERATED BY DEFAULT AS IDENTITY(START WITH 1)"
+                + " NOT NULL PRIMARY KEY,BASEPREMIUM DOUBLE,CREATEDAT DATE,DESCRIPTION VARCHAR(255),ISACTIVE BOOLEAN,"
+                + "NAME VARCHAR(255),UPDATEDAT DATE)");
+            ddl.execute("CREATE MEMORY TABLE PUBLIC.POLICY(ID BIGINT GENERATED BY DEFAULT AS IDENTITY(START WITH 1)"
+                + " NOT NULL PRIMARY KEY,CREATEDAT DATE,ENDDATE DATE,POLICYNUMBER VARCHAR(255),PREMIUM DOUBLE,"
+                + "STARTDATE DATE,STATUS VARCHAR(255),UPDATEDAT DATE,COVERAGE_ID BIGINT,CUSTOMER_ID BIGINT,"
+                + "VEHICLE_ID BIGINT)");
+            ddl.execute("CREATE MEMORY TABLE PUBLIC.PAYMENT(ID BIGINT GENERATED BY DEFAULT AS IDENTITY(START WITH 1)"
+                + " NOT NULL PRIMARY KEY,AMOUNT DOUBLE,CREATEDAT DATE,METHOD VARCHAR(255),PAYMENTDATE DATE,"
+                + "STATUS VARCHAR(255),UPDATEDAT DATE,POLICY_ID BIGINT)");
+            ddl.execute("INSERT INTO COVERAGE VALUES(1,500.0E0,NULL,'Comprehensive and Collision insurance',TRUE,"
+                + "'Full Coverage',NULL)");
+            ddl.execute("INSERT INTO PAYMENT VALUES(5,500.0E0,NULL,'Card','2025-06-10','Completed',NULL,3)");
+            ddl.execute("INSERT INTO POLICY VALUES(3,NULL,'2025-06-30','12345',500.0E0,'2024-06-01','PAID',NULL,1,1,1)");
+            ddl.execute("INSERT INTO POLICY VALUES(4,NULL,'2025-06-30','12346',0.125E0,'2024-06-01','PAID',NULL,1,1,1)");
+        }
+    }
+
+    private long value(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            assertTrue(rs.next());
+            return rs.getLong(1);
+        }
+    }
+
+    @Test
+    public void testMoneyCents() throws SQLException {
+        // Prueba que los importes decimales existentes pasan a centavos y las columnas decimales se eliminan
+        createLegacySchema();
+        SchemaMigrations migrations = new SchemaMigrations(dataSource);
+        assertTrue(migrations.migrate().contains("money-cents"));
+
+        assertEquals(50_000, value("select premiumCents from Policy where id = 3"));
+        assertEquals("Redondea igual que Money.ofAmount", 13, value("select premiumCents from Policy where id = 4"));
+        assertEquals(50_000, value("select amountCents from Payment where id = 5"));
+        assertEquals(50_000, value("select basePremiumCents from Coverage where id = 1"));
+        assertFalse(SchemaMigrations.columns(connection, "Policy").contains("PREMIUM"));
+        assertFalse(SchemaMigrations.columns(connection, "Payment").contains("AMOUNT"));
+        assertFalse(SchemaMigrations.columns(connection, "Coverage").contains("BASEPREMIUM"));
+
+        assertEquals("Una migración aplicada no se repite", Collections.emptyList(), migrations.migrate());
+    }
+
+    @Test
+    public void testMoneyCents_ColumnAddedByUpdate() throws SQLException {
+        // Prueba que si la actualización del esquema ya agregó la columna en centavos vacía, igual se completa
+        createLegacySchema();
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("alter table Policy add column premiumCents bigint");
+        }
+        new SchemaMigrations(dataSource).migrate();
+        assertEquals(50_000, value("select premiumCents from Policy where id = 3"));
+    }
+
+    @Test
+    public void testPolicyNumberSequence() throws SQLException {
+        // Prueba que la secuencia continúa después del mayor número POL-XXXXXX ya emitido
+        createLegacySchema();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("insert into Policy (id, policyNumber) values (10, 'POL-004211'), (11, 'POL-000007'),"
+                + " (12, 'POL-ABCDEF')");
+        }
+        new SchemaMigrations(dataSource).migrate();
+        assertEquals(4212, value(InsuranceService.NEXT_POLICY_NUMBER));
+        assertEquals(4213, value(InsuranceService.NEXT_POLICY_NUMBER));
+    }
+
+    @Test
+    public void testUniqueKeys_DuplicatesPending() throws SQLException {
+        // Prueba que con valores repetidos la restricción no se crea y la migración queda pendiente hasta corregirlos
+        createLegacySchema();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table Vehicle (id bigint primary key, vin varchar(17))");
+            statement.execute("insert into Vehicle values (1, '1A1B2C3D4E5F6G7H8'), (2, '1HGBH41JXMN109186'),"
+                + " (3, '1A1B2C3D4E5F6G7H8'), (4, null), (5, null)");
+        }
+        SchemaMigrations migrations = new SchemaMigrations(dataSource);
+        assertFalse("Queda pendiente", migrations.migrate().contains("unique-keys"));
+        assertEquals("{1A1B2C3D4E5F6G7H8=[1, 3]}",
+            SchemaMigrations.duplicates(connection, UniquenessChecker.UniqueKey.VEHICLE_VIN).toString());
+        assertFalse(SchemaMigrations.constraintExists(connection, "UK_VEHICLE_VIN"));
+        assertTrue("Las claves sin repetidos se crean igual", SchemaMigrations.constraintExists(connection, "UK_POLICY_NUMBER"));
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("update Vehicle set vin = '1M8GDM9AXKP042788' where id = 3");
+        }
+        assertEquals(Collections.singletonList("unique-keys"), migrations.migrate());
+        assertTrue(SchemaMigrations.constraintExists(connection, "UK_VEHICLE_VIN"));
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("insert into Vehicle values (6, '1HGBH41JXMN109186')");
+            fail("La restricción debe rechazar un VIN repetido");
+        } catch (SQLException e) {
+            // esperado
+        }
+    }
+
+    @Test
+    public void testPaymentTotals() throws SQLException {
+        // Prueba que los totales de las pólizas existentes se calculan desde sus pagos completados
+        createLegacySchema();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("insert into Payment (id, amount, status, policy_id) values (6, 125.5, 'completed', 3),"
+                + " (7, 999.0, 'Failed', 3), (8, 10.0, 'COMPLETED', 4)");
+        }
+        new SchemaMigrations(dataSource).migrate();
+        assertEquals(62_550, value("select totalPaidCents from Policy where id = 3"));
+        assertEquals(2, value("select completedPaymentCount from Policy where id = 3"));
+        assertEquals(1_000, value("select totalPaidCents from Policy where id = 4"));
+        assertEquals(1, value("select completedPaymentCount from Policy where id = 4"));
+    }
+
+    @Test
+    public void testPaymentTotals_ColumnsAddedByUpdate() throws SQLException {
+        // Prueba que si la actualización del esquema ya agregó las columnas vacías, igual se completan
+        createLegacySchema();
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("alter table Policy add column totalPaidCents bigint");
+            ddl.execute("alter table Policy add column completedPaymentCount integer");
+        }
+        new SchemaMigrations(dataSource).migrate();
+        assertEquals(50_000, value("select totalPaidCents from Policy where id = 3"));
+        assertEquals(0, value("select count(*) from Policy where totalPaidCents is null or completedPaymentCount is null"));
+    }
+
+    @Test
+    public void testPaymentStatusLowercase() throws SQLException {
+        // Prueba que los estados guardados con mayúsculas o espacios quedan normalizados
+        createLegacySchema();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("insert into Payment (id, amount, status, policy_id) values (6, 1.0, ' FAILED ', 3),"
+                + " (7, 1.0, 'pending', 3), (8, 1.0, null, 3)");
+        }
+        new SchemaMigrations(dataSource).migrate();
+        assertEquals(1, value("select count(*) from Payment where id = 5 and status = 'completed'"));
+        assertEquals(1, value("select count(*) from Payment where id = 6 and status = 'failed'"));
+        assertEquals(1, value("select count(*) from Payment where id = 7 and status = 'pending'"));
+        assertEquals(1, value("select count(*) from Payment where id = 8 and status is null"));
+    }
+
+    @Test
+    public void testPolicyVersion() throws SQLException {
+        // Prueba que las pólizas guardadas antes de la versión quedan con versión 0
+        createLegacySchema();
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("alter table Policy add column version bigint");
+        }
+        new SchemaMigrations(dataSource).migrate();
+        assertEquals(0, value("select count(*) from Policy where version is null"));
+        assertEquals(0, value("select version from Policy where id = 3"));
+    }
+
+    @Test
+    public void testPaymentJournalInstance() throws SQLException {
+        // Prueba que los pagos con diario quedan con la instancia de este servidor y se quita la restricción por secuencia
+        createLegacySchema();
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("alter table Payment add column journalSequence bigint");
+            ddl.execute("alter table Payment add constraint UK_PAYMENT_JOURNAL_SEQUENCE unique (journalSequence)");
+            ddl.execute("insert into Payment (id, amount, status, policy_id, journalSequence) values (6, 1.0, 'completed', 3, 1)");
+        }
+        new SchemaMigrations(dataSource).migrate();
+        assertEquals(1, value("select count(*) from Payment where id = 6 and journalInstance = '"
+            + PaymentJournal.DEFAULT_INSTANCE + "'"));
+        assertEquals("Un pago sin diario queda sin instancia", 1,
+            value("select count(*) from Payment where id = 5 and journalInstance is null"));
+        assertFalse(SchemaMigrations.constraintExists(connection, "UK_PAYMENT_JOURNAL_SEQUENCE"));
+    }
+
+    @Test
+    public void testMigrate_NewDatabase() throws SQLException {
+        // Prueba que sobre una base sin tablas las migraciones se registran sin cambios
+        List<String> ids = SchemaMigrations.MIGRATIONS.stream().map(migration -> migration.id).collect(Collectors.toList());
+        assertEquals(ids, new SchemaMigrations(dataSource).migrate());
+        assertFalse(SchemaMigrations.tableExists(connection, "Policy"));
+        assertEquals(ids.size(), value("select count(*) from SchemaMigration"));
+    }
+
+    @Test
+    public void testMigrate_EntitySchema() throws SQLException {
+        // Prueba que sobre el esquema de las entidades todas las migraciones se aplican y no quedan pendientes
+        List<String> ids = SchemaMigrations.MIGRATIONS.stream().map(migration -> migration.id).collect(Collectors.toList());
+        try (TestDatabase database = TestDatabase.createEntitySchema("entity-migrations")) {
+            SchemaMigrations migrations = new SchemaMigrations(database.getDataSource());
+            assertEquals(ids, migrations.migrate());
+            assertEquals("Una segunda pasada no aplica nada", Collections.emptyList(), migrations.migrate());
+            assertTrue(SchemaMigrations.tableExists(database.getConnection(), "PaymentJournalProgress"));
+            assertTrue(SchemaMigrations.constraintExists(database.getConnection(), "UK_VEHICLE_VIN"));
+        }
+    }
+
+    @Test
+    public void testMigrate_PendingRetried() throws SQLException {
+        // Prueba que una migración que no pudo aplicarse no se registra y se reintenta
+        boolean[] ready = {false};
+        SchemaMigrations migrations = new SchemaMigrations(dataSource, Arrays.asList(
+            new SchemaMigrations.Migration("first", connection -> true),
+            new SchemaMigrations.Migration("pending", connection -> ready[0])));
+        assertEquals(Collections.singletonList("first"), migrations.migrate());
+        ready[0] = true;
+        assertEquals(Collections.singletonList("pending"), migrations.migrate());
+    }
+}
@@ -0,0 +1,87 @@
+package com.insurancecorp.insurecar.service;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Pruebas de caja blanca para TerritoryTable
+ */
+public class TerritoryTableTest {
+
+    private static TerritoryTable parse(String content) throws IOException {
+        return TerritoryTable.parse(new StringReader(content));
+    }
+
+    @Test
+    public void testTerritoryOf_RangesAndSingleCodes() throws IOException {
+        // Prueba rangos, códigos sueltos y líneas desordenadas
+        TerritoryTable table = parse("# comentario\n"
+            + "20000,29999,3\n"
+            + "\n"
+            + "10000,19999,2\n"
+            + "00501,1\n");
+        assertEquals("Debe tener tres rangos", 3, table.size());
+        assertEquals("Código suelto", 1, table.territoryOf(501));
+        assertEquals("Inicio de rango", 2, table.territoryOf(10000));
+        assertEquals("Fin de rango", 2, table.territoryOf(19999));
+        assertEquals("Rango siguiente", 3, table.territoryOf(20000));
+        assertEquals("Código fuera de los rangos", TerritoryTable.DEFAULT_TERRITORY, table.territoryOf(500));
+        assertEquals("Código después del último rango", TerritoryTable.DEFAULT_TERRITORY, table.territoryOf(30000));
+    }
+
+    @Test
+    public void testTerritoryOf_ZipCodeFormats() throws IOException {
+        // Prueba los formatos de código postal de Customer
+        TerritoryTable table = parse("12000,12999,4\n");
+        assertEquals("Formato de cinco dígitos", 4, table.territoryOf("12345"));
+        assertEquals("Formato extendido", 4, table.territoryOf("12345-6789"));
+        assertEquals("Código nulo", TerritoryTable.DEFAULT_TERRITORY, table.territoryOf(null));
+        assertEquals("Código corto", TerritoryTable.DEFAULT_TERRITORY, table.territoryOf("123"));
+        assertEquals("Código no numérico", TerritoryTable.DEFAULT_TERRITORY, table.territoryOf("12A45"));
+    }
+
+    @Test
+    public void testParse_FullZipTable() throws IOException {
+        // Prueba una tabla por código postal del tamaño de la tabla completa
+        StringBuilder content = new StringBuilder();
+        for (int zip = 0; zip < 40_000; zip++) {
+            content.append(zip * 2).append(',').append(zip % 50).append('\n');
+        }
+        TerritoryTable table = parse(content.toString());
+        assertEquals("Debe cargar todos los códigos", 40_000, table.size());
+        assertEquals("Debe ocupar 10 bytes por código", 400_000L, table.getFootprintBytes());
+        for (int zip = 0; zip < 40_000; zip++) {
+            assertEquals("Código " + zip * 2, zip % 50, table.territoryOf(zip * 2));
+            assertEquals("Código ausente " + (zip * 2 + 1), TerritoryTable.DEFAULT_TERRITORY, table.territoryOf(zip * 2 + 1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_OverlappingRanges() throws IOException {
+        // Prueba que se rechazan rangos superpuestos
+        parse("10000,19999,1\n15000,25000,2\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_InvalidLine() throws IOException {
+        // Prueba que se rechazan líneas mal formadas
+        parse("10000;1\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_InvalidTerritory() throws IOException {
+        // Prueba que se rechazan territorios fuera de rango
+        parse("10000,5000\n");
+    }
+
+    @Test
+    public void testShared_DefaultResource() {
+        // Prueba que la tabla por defecto se carga del classpath
+        TerritoryTable table = TerritoryTable.shared();
+        assertTrue("Debe cargar rangos", table.size() > 0);
+        assertEquals("Nueva York debe ser urbano denso", 1, table.territoryOf("10001"));
+        assertEquals("Montana debe ser rural", 4, table.territoryOf("59001"));
+    }
+}
@@ -0,0 +1,186 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import org.h2.jdbcx.JdbcDataSource;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.*;
+
+/**
+ * Base H2 en memoria con el esquema de la aplicación, compartida por las
+ * pruebas que usan JDBC.
+ *
+ * Las tablas se crean desde las anotaciones JPA de las entidades, con los
+ * tipos que genera la actualización del esquema: id con identidad, columnas
+ * primitivas no nulas, {@code <campo>_id} por cada {@code @ManyToOne}, y los
+ * índices y restricciones únicas de {@code @Table}. Después se aplican las
+ * {@link SchemaMigrations}, igual que al iniciar la aplicación. No se crean
+ * claves foráneas: cada prueba carga solo las filas que usa.
+ *
+ * La conexión de {@link #getConnection()} mantiene viva la base hasta
+ * {@link #close()}.
+ */
+final class TestDatabase implements AutoCloseable {
+
+    /** Entidades en el orden en que se crean sus tablas */
+    static final List<Class<?>> ENTITIES =
+        Arrays.asList(Customer.class, Vehicle.class, Coverage.class, Policy.class, Payment.class);
+
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    private final String url;
+    private final JdbcDataSource dataSource;
+    private final Connection connection;
+
+    private TestDatabase(String url) throws SQLException {
+        this.url = url;
+        dataSource = new JdbcDataSource();
+        dataSource.setURL(url);
+        connection = dataSource.getConnection();
+    }
+
+    /**
+     * Crea una base nueva con el esquema de las entidades y las migraciones aplicadas
+     * @param name prefijo del nombre de la base, para reconocerla en los errores
+     * @return base lista para usar
+     */
+    static TestDatabase create(String name) throws SQLException {
+        TestDatabase database = createEntitySchema(name);
+        try {
+            new SchemaMigrations(database.dataSource).migrate();
+        } catch (RuntimeException e) {
+            database.close();
+            throw e;
+        }
+        return database;
+    }
+
+    /**
+     * Crea una base nueva con el esquema de las entidades, sin aplicar las migraciones
+     * @param name prefijo del nombre de la base, para reconocerla en los errores
+     * @return base con las tablas vacías
+     */
+    static TestDatabase createEntitySchema(String name) throws SQLException {
+        // YEAR es una columna de Vehicle
+        TestDatabase database = new TestDatabase("jdbc:h2:mem:" + name + databases.incrementAndGet()
+            + ";NON_KEYWORDS=YEAR");
+        try {
+            database.execute(schema().toArray(new String[0]));
+        } catch (SQLException | RuntimeException e) {
+            database.close();
+            throw e;
+        }
+        return database;
+    }
+
+    /** @return URL JDBC de la base, por ejemplo para abrir un pool propio */
+    String getUrl() {
+        return url;
+    }
+
+    JdbcDataSource getDataSource() {
+        return dataSource;
+    }
+
+    /** @return conexión que mantiene viva la base; no se debe cerrar */
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Ejecuta sentencias con la conexión de la base
+     * @param statements sentencias SQL, en orden
+     */
+    void execute(String... statements) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        connection.close();
+    }
+
+    /**
+     * Genera el DDL de las entidades
+     * @return sentencias create table, create index y las restricciones únicas
+     */
+    static List<String> schema() {
+        List<String> ddl = new ArrayList<>();
+        for (Class<?> entity : ENTITIES) {
+            String table = entity.getSimpleName();
+            List<String> columns = new ArrayList<>();
+            for (Field field : entity.getDeclaredFields()) {
+                String column = column(field);
+                if (column != null) {
+                    columns.add(column);
+                }
+            }
+            ddl.add("create table " + table + " (" + String.join(", ", columns) + ")");
+            Table annotation = entity.getAnnotation(Table.class);
+            if (annotation == null) {
+                continue;
+            }
+            for (UniqueConstraint unique : annotation.uniqueConstraints()) {
+                ddl.add("alter table " + table + " add constraint " + unique.name()
+                    + " unique (" + String.join(", ", unique.columnNames()) + ")");
+            }
+            for (Index index : annotation.indexes()) {
+                ddl.add("create index " + index.name() + " on " + table + " (" + index.columnList() + ")");
+            }
+        }
+        return ddl;
+    }
+
+    /**
+     * @return definición de la columna de un campo, o null si el campo no se guarda
+     */
+    private static String column(Field field) {
+        if (Modifier.isStatic(field.getModifiers()) || field.isAnnotationPresent(Transient.class)
+                || field.isAnnotationPresent(OneToMany.class) || Collection.class.isAssignableFrom(field.getType())) {
+            return null;
+        }
+        if (field.isAnnotationPresent(ManyToOne.class)) {
+            return field.getName() + "_id bigint";
+        }
+        if (field.isAnnotationPresent(Id.class)) {
+            return field.getName() + " bigint generated by default as identity primary key";
+        }
+        Class<?> type = field.getType();
+        String sqlType;
+        if (type == long.class || type == Long.class) {
+            sqlType = "bigint";
+        } else if (type == int.class || type == Integer.class) {
+            sqlType = "integer";
+        } else if (type == boolean.class || type == Boolean.class) {
+            sqlType = "boolean";
+        } else if (type == double.class || type == Double.class) {
+            sqlType = "double precision";
+        } else if (type == LocalDate.class) {
+            sqlType = "date";
+        } else if (type == LocalDateTime.class) {
+            sqlType = "timestamp";
+        } else if (type == String.class) {
+            sqlType = "varchar(255)";
+        } else if (type.isEnum()) {
+            Enumerated enumerated = field.getAnnotation(Enumerated.class);
+            sqlType = enumerated != null && enumerated.value() == EnumType.STRING ? "varchar(255)" : "integer";
+        } else {
+            throw new IllegalArgumentException("Tipo sin columna para " + field);
+        }
+        return field.getName() + " " + sqlType + (type.isPrimitive() ? " not null" : "");
+    }
+}
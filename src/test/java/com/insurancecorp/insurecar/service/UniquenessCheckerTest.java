@@ -0,0 +1,143 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+
+/**
+ * Pruebas de caja blanca para UniquenessChecker sobre una base H2 en memoria
+ */
+public class UniquenessCheckerTest {
+
+    private TestDatabase database;
+    private AtomicInteger queries;
+    private UniquenessChecker checker;
+
+    @Before
+    public void setUp() throws SQLException {
+        database = TestDatabase.create("uniqueness");
+        database.execute("insert into Customer (id, email) values (1, 'juan.perez@email.com')",
+            "insert into Vehicle (id, vin) values (10, '1HGBH41JXMN109186')",
+            "insert into Policy (id, policyNumber, premiumCents, totalPaidCents, completedPaymentCount, version)"
+                + " values (100, 'POL-000100', 0, 0, 0, 0)");
+        queries = new AtomicInteger();
+        checker = new UniquenessChecker(countingQueries(database.getDataSource(), queries));
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    /**
+     * Fuente de datos que cuenta las sentencias preparadas
+     */
+    private static DataSource countingQueries(DataSource target, AtomicInteger queries) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[] {DataSource.class},
+            (proxy, method, args) -> {
+                Object result = method.invoke(target, args);
+                if (!(result instanceof Connection)) {
+                    return result;
+                }
+                Connection connection = (Connection) result;
+                return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                    (connectionProxy, connectionMethod, connectionArgs) -> {
+                        if (connectionMethod.getName().equals("prepareStatement")) {
+                            queries.incrementAndGet();
+                        }
+                        return connectionMethod.invoke(connection, connectionArgs);
+                    });
+            });
+    }
+
+    private static Customer customer(String email) {
+        Customer customer = new Customer();
+        customer.setEmail(email);
+        return customer;
+    }
+
+    private static Vehicle vehicle(String vin) {
+        Vehicle vehicle = new Vehicle();
+        vehicle.setVin(vin);
+        return vehicle;
+    }
+
+    private static Policy policy(String policyNumber) {
+        Policy policy = new Policy();
+        policy.setPolicyNumber(policyNumber);
+        return policy;
+    }
+
+    @Test
+    public void testCheck_ExistingAndRepeatedKeys() {
+        // Prueba que se informan las claves ya guardadas y las repetidas dentro del bloque
+        List<UniquenessChecker.Conflict> conflicts = checker.check(
+            Arrays.asList(customer("ana@email.com"), customer("juan.perez@email.com"), customer("ana@email.com")),
+            Arrays.asList(vehicle("1HGBH41JXMN109186"), vehicle("1M8GDM9AXKP042788")),
+            Arrays.asList(policy("POL-000001"), policy("POL-000002"), policy("POL-000100"), policy("POL-000001")));
+
+        assertEquals("Debe informar cinco conflictos", 5, conflicts.size());
+        UniquenessChecker.Conflict vin = conflicts.get(0);
+        assertEquals(UniquenessChecker.UniqueKey.VEHICLE_VIN, vin.getKey());
+        assertEquals("Debe indicar la fila", 0, vin.getRow());
+        assertEquals("Debe indicar el registro guardado", Long.valueOf(10), vin.getExistingId());
+
+        assertEquals(UniquenessChecker.UniqueKey.POLICY_NUMBER, conflicts.get(1).getKey());
+        assertEquals("Fila 2: el número de póliza POL-000100 ya existe (id 100)", conflicts.get(1).toString());
+        assertEquals("Fila 3: el número de póliza POL-000001 se repite en la fila 0", conflicts.get(2).toString());
+
+        assertEquals(UniquenessChecker.UniqueKey.CUSTOMER_EMAIL, conflicts.get(3).getKey());
+        assertEquals("Debe indicar el email guardado", 1, conflicts.get(3).getRow());
+        assertEquals("Debe indicar el email repetido", 2, conflicts.get(4).getRow());
+        assertEquals("Debe indicar la fila repetida", 0, conflicts.get(4).getDuplicateOfRow());
+    }
+
+    @Test
+    public void testCheck_OneQueryPerKeyType() {
+        // Prueba que un bloque grande se resuelve con una consulta por tipo de clave
+        List<Customer> customers = new ArrayList<>();
+        List<Vehicle> vehicles = new ArrayList<>();
+        List<Policy> policies = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            customers.add(customer("cliente" + i + "@email.com"));
+            vehicles.add(vehicle(String.format("VIN%014d", i)));
+            policies.add(policy(String.format("POL-%06d", 1000 + i)));
+        }
+        assertTrue("No debe haber conflictos", checker.check(customers, vehicles, policies).isEmpty());
+        assertEquals("Debe hacer una consulta por tipo de clave", 3, queries.get());
+    }
+
+    @Test
+    public void testCheck_SplitsLargeInLists() {
+        // Prueba que las listas IN se parten al superar el máximo de parámetros
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < UniquenessChecker.MAX_IN_PARAMETERS * 2 + 1; i++) {
+            customers.add(customer("cliente" + i + "@email.com"));
+        }
+        customers.add(customer("juan.perez@email.com"));
+        List<UniquenessChecker.Conflict> conflicts = checker.check(customers, Collections.emptyList(),
+            Collections.emptyList());
+        assertEquals("Debe encontrar el email guardado", 1, conflicts.size());
+        assertEquals("Debe hacer tres consultas", 3, queries.get());
+    }
+
+    @Test
+    public void testCheck_SameEntityIsNotAConflict() {
+        // Prueba que una entidad guardada no entra en conflicto consigo misma
+        Customer saved = customer("juan.perez@email.com");
+        saved.setId(1L);
+        assertTrue("No debe haber conflictos", checker.check(Arrays.asList(saved, customer(null)),
+            Collections.emptyList(), Collections.emptyList()).isEmpty());
+    }
+}
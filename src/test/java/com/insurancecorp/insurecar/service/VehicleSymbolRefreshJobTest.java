@@ -0,0 +1,63 @@
+package com.insurancecorp.insurecar.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Pruebas de caja blanca para VehicleSymbolRefreshJob sobre una base H2 en memoria
+ */
+public class VehicleSymbolRefreshJobTest {
+
+    private TestDatabase database;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        database = TestDatabase.create("symbols");
+        connection = database.getConnection();
+        database.execute("insert into Vehicle (id, make, model, ratingSymbol) values"
+            + " (1, 'Toyota', 'RAV4', 2),"    // símbolo de la tabla anterior
+            + " (2, 'Toyota', 'Corolla', 2)," // sin cambios
+            + " (3, 'BMW', 'X5', null),"      // guardado antes de la columna
+            + " (4, 'Lada', 'Niva', 4),"      // la marca salió de la tabla
+            + " (5, null, null, null)");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    private Integer symbol(long id) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select ratingSymbol from Vehicle where id = " + id)) {
+            rs.next();
+            int symbol = rs.getInt(1);
+            return rs.wasNull() ? null : symbol;
+        }
+    }
+
+    @Test
+    public void testRefresh() throws SQLException, IOException {
+        // Prueba que solo se corrigen los vehículos cuyo símbolo no coincide con la tabla vigente
+        VehicleSymbolTable table = VehicleSymbolTable.parse(new StringReader("Toyota,*,2\nToyota,RAV4,3\nBMW,*,4\n"));
+        VehicleSymbolRefreshJob job = new VehicleSymbolRefreshJob(database.getDataSource(), table, 2);
+
+        assertEquals("Deben corregirse tres vehículos", 3, job.refresh());
+        assertEquals(Integer.valueOf(3), symbol(1));
+        assertEquals(Integer.valueOf(2), symbol(2));
+        assertEquals(Integer.valueOf(4), symbol(3));
+        assertEquals("Una marca desconocida usa el símbolo por defecto",
+            Integer.valueOf(VehicleSymbolTable.DEFAULT_SYMBOL), symbol(4));
+        assertNull("Sin marca ni modelo no hay nada que resolver", symbol(5));
+        assertEquals("Una segunda pasada no cambia nada", 0, job.refresh());
+    }
+}
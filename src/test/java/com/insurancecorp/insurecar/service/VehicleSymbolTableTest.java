@@ -0,0 +1,114 @@
+package com.insurancecorp.insurecar.service;
+
+import com.insurancecorp.insurecar.model.Vehicle;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Pruebas de caja blanca para VehicleSymbolTable
+ */
+public class VehicleSymbolTableTest {
+
+    private VehicleSymbolTable table;
+
+    @Before
+    public void setUp() throws IOException {
+        table = VehicleSymbolTable.parse(new StringReader("# comentario\n"
+            + "Toyota,*,2\n"
+            + "Toyota,RAV4,3\n"
+            + "\n"
+            + "Ford,Ranger,3\n"
+            + "bmw,*,4\n"));
+    }
+
+    @Test
+    public void testSymbolOf_ModelMakeAndDefault() {
+        // Prueba la prioridad modelo, marca y símbolo por defecto
+        assertEquals("Debe usar el símbolo del modelo", 3, table.symbolOf("Toyota", "RAV4"));
+        assertEquals("Debe usar el símbolo de la marca", 2, table.symbolOf("Toyota", "Corolla"));
+        assertEquals("Un modelo de otra marca no debe aplicar", 2, table.symbolOf("Toyota", "Ranger"));
+        assertEquals("Marca sin comodín y modelo desconocido", VehicleSymbolTable.DEFAULT_SYMBOL,
+            table.symbolOf("Ford", "Focus"));
+        assertEquals("Marca desconocida", VehicleSymbolTable.DEFAULT_SYMBOL, table.symbolOf("Lada", "Niva"));
+        assertEquals("Marca nula", VehicleSymbolTable.DEFAULT_SYMBOL, table.symbolOf(null, "RAV4"));
+        assertEquals("Modelo nulo", 4, table.symbolOf("BMW", null));
+    }
+
+    @Test
+    public void testSymbolOf_IgnoresCaseAndSpaces() {
+        // Prueba que marca y modelo no distinguen mayúsculas ni espacios externos
+        assertEquals("Debe ignorar mayúsculas", 3, table.symbolOf("toyota", "rav4"));
+        assertEquals("Debe ignorar espacios", 4, table.symbolOf("  Bmw ", "X5"));
+    }
+
+    @Test
+    public void testSymbolOf_InternedIds() {
+        // Prueba que los identificadores internados son densos y dan el mismo símbolo
+        int toyota = table.makeId("TOYOTA");
+        int rav4 = table.modelId("rav4");
+        assertEquals("Las marcas deben numerarse desde 0", 0, toyota);
+        assertEquals("Tres marcas distintas", 3, table.getMakeCount());
+        assertEquals("Debe resolver por identificadores", 3, table.symbolOf(toyota, rav4));
+        assertEquals("Marca desconocida", VehicleSymbolTable.UNKNOWN, table.makeId("Lada"));
+        assertEquals("Identificador desconocido", VehicleSymbolTable.DEFAULT_SYMBOL,
+            table.symbolOf(VehicleSymbolTable.UNKNOWN, rav4));
+    }
+
+    @Test
+    public void testAssign_StoresSymbolOnVehicle() {
+        // Prueba que el símbolo se guarda en el vehículo y se reutiliza
+        Vehicle vehicle = new Vehicle();
+        vehicle.setMake("Toyota");
+        vehicle.setModel("RAV4");
+        assertTrue("Debe asignar el símbolo", table.assign(vehicle));
+        assertEquals("Debe guardar el símbolo", Integer.valueOf(3), vehicle.getRatingSymbol());
+        assertFalse("Sin cambios no debe reasignar", table.assign(vehicle));
+        vehicle.setRatingSymbol(1);
+        assertEquals("Debe usar el símbolo guardado", 1, table.symbolOf(vehicle));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_Duplicate() throws IOException {
+        // Prueba que se rechazan asignaciones repetidas
+        VehicleSymbolTable.parse(new StringReader("Toyota,RAV4,3\nTOYOTA,rav4,2\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_InvalidLine() throws IOException {
+        // Prueba que se rechazan líneas mal formadas
+        VehicleSymbolTable.parse(new StringReader("Toyota,3\n"));
+    }
+
+    @Test
+    public void testParse_LargeTable() throws IOException {
+        // Prueba una tabla con muchas marcas y modelos
+        StringBuilder content = new StringBuilder();
+        for (int make = 0; make < 200; make++) {
+            content.append("MAKE").append(make).append(",*,1\n");
+            for (int model = 0; model < 100; model++) {
+                content.append("MAKE").append(make).append(",MODEL").append(model).append(',')
+                    .append((make + model) % 5).append('\n');
+            }
+        }
+        VehicleSymbolTable large = VehicleSymbolTable.parse(new StringReader(content.toString()));
+        assertEquals("Debe cargar todas las asignaciones", 200 * 101, large.size());
+        for (int make = 0; make < 200; make++) {
+            for (int model = 0; model < 100; model++) {
+                assertEquals("Marca " + make + " modelo " + model, (make + model) % 5,
+                    large.symbolOf("MAKE" + make, "MODEL" + model));
+            }
+        }
+    }
+
+    @Test
+    public void testShared_DefaultResource() {
+        // Prueba que la tabla por defecto se carga del classpath
+        VehicleSymbolTable shared = VehicleSymbolTable.shared();
+        assertTrue("Debe cargar símbolos", shared.size() > 0);
+        assertEquals("Honda Civic debe ser estándar", 2, shared.symbolOf("Honda", "Civic"));
+        assertEquals("Porsche debe ser deportivo", 4, shared.symbolOf("Porsche", "911"));
+    }
+}